@@ -19,17 +19,27 @@
  */
 package org.neo4j.backup;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.neo4j.com.Client;
+import org.neo4j.com.Deserializer;
 import org.neo4j.com.MasterCaller;
 import org.neo4j.com.ObjectSerializer;
 import org.neo4j.com.Protocol;
 import org.neo4j.com.RequestType;
 import org.neo4j.com.Response;
+import org.neo4j.com.Serializer;
 import org.neo4j.com.SlaveContext;
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFileRange;
 import org.neo4j.com.StoreIdGetter;
 import org.neo4j.com.StoreWriter;
 import org.neo4j.com.ToNetworkStoreWriter;
+import org.neo4j.helpers.Pair;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 class BackupClient extends Client<TheBackupInterface> implements TheBackupInterface
@@ -48,16 +58,59 @@ class BackupClient extends Client<TheBackupInterface> implements TheBackupInterf
                 Protocol.EMPTY_SERIALIZER, new Protocol.FileStreamsDeserializer( storeWriter ) );
     }
 
+    public Response<StoreCopyPlan> planFullBackup( final int parts )
+    {
+        return sendRequest( BackupRequestType.PLAN_FULL_BACKUP, SlaveContext.EMPTY, new Serializer()
+        {
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                buffer.writeInt( parts );
+            }
+        }, Protocol.STORE_COPY_PLAN_DESERIALIZER );
+    }
+
+    public Response<Void> fullBackupPart( final Tx[] startTransactions, final List<StoreFileRange> ranges,
+            StoreWriter storeWriter )
+    {
+        return sendRequest( BackupRequestType.FULL_BACKUP_PART, SlaveContext.EMPTY, new Serializer()
+        {
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                Protocol.writeTransactions( buffer, startTransactions );
+                Protocol.writeStoreFileRanges( buffer, ranges );
+            }
+        }, new Protocol.FileStreamsDeserializer( storeWriter ) );
+    }
+
     public Response<Void> incrementalBackup( SlaveContext context )
     {
         return sendRequest( BackupRequestType.INCREMENTAL_BACKUP, context,
                 Protocol.EMPTY_SERIALIZER, Protocol.VOID_DESERIALIZER );
     }
 
+    public Response<Pair<Integer,Long>> getMasterIdForCommittedTx( final long txId )
+    {
+        return sendRequest( BackupRequestType.GET_MASTER_ID_FOR_TX, SlaveContext.EMPTY, new Serializer()
+        {
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                buffer.writeLong( txId );
+            }
+        }, new Deserializer<Pair<Integer,Long>>()
+        {
+            @Override
+            public Pair<Integer, Long> read( ChannelBuffer buffer, ByteBuffer temporaryBuffer ) throws IOException
+            {
+                return Pair.of( buffer.readInt(), buffer.readLong() );
+            }
+        } );
+    }
+
     @Override
     protected boolean shouldCheckStoreId( RequestType<TheBackupInterface> type )
     {
-        return type != BackupRequestType.FULL_BACKUP;
+        return type != BackupRequestType.FULL_BACKUP && type != BackupRequestType.PLAN_FULL_BACKUP &&
+                type != BackupRequestType.FULL_BACKUP_PART;
     }
 
     public static enum BackupRequestType implements RequestType<TheBackupInterface>
@@ -77,7 +130,40 @@ class BackupClient extends Client<TheBackupInterface> implements TheBackupInterf
             {
                 return master.incrementalBackup( context );
             }
-        }, Protocol.VOID_SERIALIZER )
+        }, Protocol.VOID_SERIALIZER ),
+        PLAN_FULL_BACKUP( new MasterCaller<TheBackupInterface, StoreCopyPlan>()
+        {
+            public Response<StoreCopyPlan> callMaster( TheBackupInterface master, SlaveContext context,
+                    ChannelBuffer input, ChannelBuffer target )
+            {
+                return master.planFullBackup( input.readInt() );
+            }
+        }, Protocol.STORE_COPY_PLAN_SERIALIZER ),
+        FULL_BACKUP_PART( new MasterCaller<TheBackupInterface, Void>()
+        {
+            public Response<Void> callMaster( TheBackupInterface master, SlaveContext context,
+                    ChannelBuffer input, ChannelBuffer target )
+            {
+                return master.fullBackupPart( Protocol.readTransactions( input ),
+                        Protocol.readStoreFileRanges( input ), new ToNetworkStoreWriter( target ) );
+            }
+        }, Protocol.VOID_SERIALIZER ),
+        GET_MASTER_ID_FOR_TX( new MasterCaller<TheBackupInterface, Pair<Integer,Long>>()
+        {
+            public Response<Pair<Integer,Long>> callMaster( TheBackupInterface master, SlaveContext context,
+                    ChannelBuffer input, ChannelBuffer target )
+            {
+                return master.getMasterIdForCommittedTx( input.readLong() );
+            }
+        }, new ObjectSerializer<Pair<Integer,Long>>()
+        {
+            @Override
+            public void write( Pair<Integer, Long> responseObject, ChannelBuffer result ) throws IOException
+            {
+                result.writeInt( responseObject.first() );
+                result.writeLong( responseObject.other() );
+            }
+        } )
 
         ;
         @SuppressWarnings( "rawtypes" )
@@ -20,12 +20,23 @@
 
 package org.neo4j.backup;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
 import org.neo4j.com.MasterUtil;
+import org.neo4j.com.ParallelStoreCopy;
 import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFilePrefix;
+import org.neo4j.com.StoreFileRange;
 import org.neo4j.com.StoreWriter;
 import org.neo4j.graphdb.factory.GraphDatabaseSetting;
+import org.neo4j.helpers.Pair;
 import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 
 class BackupImpl implements TheBackupInterface
 {
@@ -43,10 +54,79 @@ class BackupImpl implements TheBackupInterface
         return packResponse( context );
     }
     
+    public Response<StoreCopyPlan> planFullBackup( int parts )
+    {
+        StoreCopyPlan plan = MasterUtil.rotateLogsAndPlanStoreCopy( graphDb, false,
+                Collections.<String, StoreFilePrefix>emptyMap(), parts, ParallelStoreCopy.DEFAULT_RANGE_SIZE );
+        return MasterUtil.packResponseWithoutTransactionStream( graphDb, SlaveContext.EMPTY, plan );
+    }
+
+    public Response<Void> fullBackupPart( Tx[] startTransactions, List<StoreFileRange> ranges, StoreWriter writer )
+    {
+        MasterUtil.streamStoreFileRanges( graphDb, ranges, writer );
+        writer.done();
+        if ( startTransactions.length == 0 )
+        {
+            return MasterUtil.packResponseWithoutTransactionStream( graphDb, SlaveContext.EMPTY, null );
+        }
+        return packResponse( SlaveContext.anonymous( startTransactions ) );
+    }
+
     public Response<Void> incrementalBackup( SlaveContext context )
     {
+        assertNotBranched( context );
         return packResponse( context );
     }
+
+    /**
+     * Contexts carrying the master id and checksum of the last neo store
+     * transaction of the target have it compared to the same transaction here,
+     * see {@link OnlineBackup#incrementalUnlessBranched(GraphDatabaseAPI)}.
+     * Other contexts, f.ex. from older clients, are let through as before.
+     */
+    private void assertNotBranched( SlaveContext context )
+    {
+        if ( context.getMasterId() == SlaveContext.EMPTY.getMasterId() &&
+                context.getChecksum() == SlaveContext.EMPTY.getChecksum() ) return;
+        XaDataSource dataSource = graphDb.getXaDataSourceManager().getNeoStoreDataSource();
+        for ( Tx tx : context.lastAppliedTransactions() )
+        {
+            if ( !tx.getDataSourceName().equals( dataSource.getName() ) ) continue;
+            if ( tx.getTxId() > dataSource.getLastCommittedTxId() )
+            {
+                throw new BranchedFromSourceException( "Target has transaction " + tx.getTxId() +
+                        ", the last one here is " + dataSource.getLastCommittedTxId() );
+            }
+            Pair<Integer, Long> mine;
+            try
+            {
+                mine = dataSource.getMasterForCommittedTx( tx.getTxId() );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Couldn't get master ID for " + tx.getTxId(), e );
+            }
+            if ( !mine.equals( Pair.of( context.getMasterId(), context.getChecksum() ) ) )
+            {
+                throw new BranchedFromSourceException( "Transaction " + tx.getTxId() + " of target has master id " +
+                        context.getMasterId() + " and checksum " + context.getChecksum() + ", here " + mine );
+            }
+        }
+    }
+
+    public Response<Pair<Integer,Long>> getMasterIdForCommittedTx( long txId )
+    {
+        try
+        {
+            Pair<Integer, Long> masterId = graphDb.getXaDataSourceManager().getNeoStoreDataSource()
+                    .getMasterForCommittedTx( txId );
+            return MasterUtil.packResponseWithoutTransactionStream( graphDb, SlaveContext.EMPTY, masterId );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Couldn't get master ID for " + txId, e );
+        }
+    }
     
     private Response<Void> packResponse( SlaveContext context )
     {
@@ -22,7 +22,9 @@ package org.neo4j.backup;
 import org.jboss.netty.channel.Channel;
 import org.neo4j.backup.BackupClient.BackupRequestType;
 import org.neo4j.com.Client;
+import org.neo4j.com.Compression;
 import org.neo4j.com.Protocol;
+import org.neo4j.com.RequestClass;
 import org.neo4j.com.RequestType;
 import org.neo4j.com.Server;
 import org.neo4j.com.SlaveContext;
@@ -31,22 +33,54 @@ import org.neo4j.kernel.impl.util.StringLogger;
 
 class BackupServer extends Server<TheBackupInterface, Object>
 {
-    static final byte PROTOCOL_VERSION = 1;
+    /* Version 1 first version
+     * Version 2 since 2026-10-18, full backups can be taken over several streams
+     * and the master id of a committed transaction can be asked for */
+    static final byte PROTOCOL_VERSION = 2;
     private final BackupRequestType[] contexts = BackupRequestType.values();
     static int DEFAULT_PORT = DEFAULT_BACKUP_PORT;
     static final int FRAME_LENGTH = Protocol.MEGA*4;
+    private final StringLogger logger;
+    private final Compression compression;
     
     public BackupServer( TheBackupInterface realMaster, int port, StringLogger logger )
+    {
+        this( realMaster, port, logger, new Compression() );
+    }
+
+    public BackupServer( TheBackupInterface realMaster, int port, StringLogger logger, Compression compression )
     {
         super( realMaster, port, logger, FRAME_LENGTH, PROTOCOL_VERSION,
                 DEFAULT_MAX_NUMBER_OF_CONCURRENT_TRANSACTIONS, Client.DEFAULT_READ_RESPONSE_TIMEOUT_SECONDS,
-                TxChecksumVerifier.ALWAYS_MATCH );
+                TxChecksumVerifier.ALWAYS_MATCH, compression );
+        this.logger = logger;
+        this.compression = compression;
     }
 
     @Override
     protected void responseWritten( RequestType<TheBackupInterface> type, Channel channel,
             SlaveContext context )
     {
+        if ( compression.compresses() )
+        {
+            logger.logMessage( "Backup " + type + " sent, " + compression + " has so far compressed " +
+                    compression.getBytesBeforeCompression() + " bytes to " + compression.getBytesAfterCompression() +
+                    " in " + compression.getCompressionTimeMillis() + "ms" );
+        }
+    }
+
+    /**
+     * Backups are all big transfers, keep them off the threads of any other server.
+     */
+    @Override
+    protected RequestClass getRequestClass( RequestType<TheBackupInterface> type )
+    {
+        return RequestClass.BULK;
+    }
+
+    public Compression getCompression()
+    {
+        return compression;
     }
 
     @Override
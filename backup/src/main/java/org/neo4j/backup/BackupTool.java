@@ -40,6 +40,7 @@ public class BackupTool
     private static final String INCREMENTAL = "incremental";
     private static final String FULL = "full";
     private static final String VERIFY = "verify";
+    private static final String STREAMS = "streams";
     public static final String DEFAULT_SCHEME = "single";
 
     public static void main( String[] args )
@@ -52,6 +53,7 @@ public class BackupTool
         String from = arguments.get( FROM, null );
         String to = arguments.get( TO, null );
         boolean verify = arguments.getBoolean( VERIFY, true, true );
+        int streams = Integer.parseInt( arguments.get( STREAMS, "1" ) );
         URI backupURI = null;
         try
         {
@@ -86,7 +88,7 @@ public class BackupTool
           // passed URI
             backupURI = service.resolve( backupURI, arguments );
         }
-        doBackup( full, backupURI, to, verify );
+        doBackup( full, backupURI, to, verify, streams );
     }
 
     private static void checkArguments( Args arguments )
@@ -117,11 +119,11 @@ public class BackupTool
     }
 
     private static void doBackup( boolean trueForFullFalseForIncremental,
-            URI from, String to, boolean verify )
+            URI from, String to, boolean verify, int streams )
     {
         if ( trueForFullFalseForIncremental )
         {
-            doBackupFull( from, to, verify );
+            doBackupFull( from, to, verify, streams );
         }
         else
         {
@@ -130,13 +132,13 @@ public class BackupTool
         System.out.println( "Done" );
     }
 
-    private static void doBackupFull( URI from, String to, boolean verify )
+    private static void doBackupFull( URI from, String to, boolean verify, int streams )
     {
         System.out.println( "Performing full backup from '" + from + "'" );
         OnlineBackup backup = newOnlineBackup( from );
         try
         {
-            backup.full( to, verify );
+            backup.full( to, verify, streams );
         }
         catch ( ComException e )
         {
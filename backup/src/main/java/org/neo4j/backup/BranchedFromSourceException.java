@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.backup;
+
+/**
+ * Thrown by the source of an incremental backup when the last transaction of
+ * the target isn't the same as its own transaction with that id, see
+ * {@link OnlineBackup#incrementalUnlessBranched(org.neo4j.kernel.GraphDatabaseAPI)}.
+ */
+public class BranchedFromSourceException extends RuntimeException
+{
+    public BranchedFromSourceException( String message )
+    {
+        super( message );
+    }
+}
@@ -35,19 +35,28 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 import org.neo4j.backup.check.ConsistencyCheck;
 import org.neo4j.com.Client;
+import org.neo4j.com.ComException;
 import org.neo4j.com.MasterUtil;
 import org.neo4j.com.MasterUtil.TxHandler;
+import org.neo4j.com.ParallelStoreCopy;
+import org.neo4j.com.ParallelTransactionApplier;
 import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
 import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFilePrefix;
+import org.neo4j.com.StoreFileRange;
 import org.neo4j.com.StoreWriter;
 import org.neo4j.com.ToFileStoreWriter;
+import org.neo4j.com.TransactionReceivePipeline;
 import org.neo4j.com.TransactionStream;
 import org.neo4j.com.TxExtractor;
 import org.neo4j.graphdb.factory.GraphDatabaseSetting;
 import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.ProgressIndicator;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.kernel.DefaultFileSystemAbstraction;
@@ -76,6 +85,8 @@ public class OnlineBackup
     private final String hostNameOrIp;
     private final int port;
     private final Map<String, Long> lastCommittedTxs = new TreeMap<String, Long>();
+    private final ParallelTransactionApplier applier =
+            new ParallelTransactionApplier( ParallelTransactionApplier.DEFAULT_THREADS );
 
     public static OnlineBackup from( String hostNameOrIp, int port )
     {
@@ -99,6 +110,15 @@ public class OnlineBackup
     }
 
     public OnlineBackup full( String targetDirectory, boolean verification )
+    {
+        return full( targetDirectory, verification, 1 );
+    }
+
+    /**
+     * @param streams how many streams to copy the store files over at the same
+     * time, see {@link ParallelStoreCopy}.
+     */
+    public OnlineBackup full( String targetDirectory, boolean verification, int streams )
     {
         if ( directoryContainsDb( targetDirectory ) )
         {
@@ -109,8 +129,10 @@ public class OnlineBackup
         long timestamp = System.currentTimeMillis();
         try
         {
-            Response<Void> response = client.fullBackup( decorateWithProgressIndicator(
-                    new ToFileStoreWriter( targetDirectory ) ) );
+            Response<Void> response = streams > 1 ?
+                    ParallelStoreCopy.copy( fullBackupSource( client ), Collections.<String, StoreFilePrefix>emptyMap(),
+                            streams, new ToFileStoreWriter( targetDirectory ) ) :
+                    client.fullBackup( decorateWithProgressIndicator( new ToFileStoreWriter( targetDirectory ) ) );
             GraphDatabaseAPI targetDb = startTemporaryDb( targetDirectory,
                     VerificationLevel.NONE /* run full check instead */ );
             try
@@ -235,6 +257,24 @@ public class OnlineBackup
         return this;
     }
 
+    private ParallelStoreCopy.Source fullBackupSource( final BackupClient client )
+    {
+        return new ParallelStoreCopy.Source()
+        {
+            @Override
+            public Response<StoreCopyPlan> plan( Map<String, StoreFilePrefix> resumeFrom, int parts )
+            {
+                return client.planFullBackup( parts );
+            }
+
+            @Override
+            public Response<Void> copyPart( Tx[] startTransactions, List<StoreFileRange> ranges, StoreWriter writer )
+            {
+                return client.fullBackupPart( startTransactions, ranges, writer );
+            }
+        };
+    }
+
     private StoreWriter decorateWithProgressIndicator( final StoreWriter actual )
     {
         return new StoreWriter()
@@ -446,17 +486,101 @@ public class OnlineBackup
         return incrementalWithContext( targetDb, slaveContextOf( targetDb ) );
     }
 
+    /**
+     * Like {@link #incremental(GraphDatabaseAPI)}, but the source checks that
+     * {@code targetDb} hasn't branched off it, see {@link #hasBranchedFrom(GraphDatabaseAPI)},
+     * as part of the same request.
+     *
+     * @return {@code false}, without anything having been applied, if
+     * {@code targetDb} has branched off the source.
+     */
+    public boolean incrementalUnlessBranched( GraphDatabaseAPI targetDb )
+    {
+        XaDataSource ds = targetDb.getXaDataSourceManager().getNeoStoreDataSource();
+        long lastTx = ds.getLastCommittedTxId();
+        Pair<Integer, Long> master;
+        try
+        {
+            master = ds.getMasterForCommittedTx( lastTx );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Couldn't get master ID for " + lastTx, e );
+        }
+        SlaveContext context = SlaveContext.anonymous( slaveContextOf( targetDb ).lastAppliedTransactions(),
+                master.first(), master.other() );
+        try
+        {
+            incrementalWithContext( targetDb, context );
+            return true;
+        }
+        catch ( ComException e )
+        {
+            for ( Throwable cause = e; cause != null; cause = cause.getCause() )
+            {   // Thrown on the source, however it got wrapped on the way here
+                if ( cause instanceof BranchedFromSourceException ) return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether or not the last transaction committed in {@code targetDb}
+     * was committed by another master, or with other contents, than the same
+     * transaction in the source. If so incremental backups would apply the
+     * transactions after it on top of data the source doesn't have, so the
+     * store must be copied again instead.
+     */
+    public boolean hasBranchedFrom( GraphDatabaseAPI targetDb )
+    {
+        XaDataSource ds = targetDb.getXaDataSourceManager().getNeoStoreDataSource();
+        long lastTx = ds.getLastCommittedTxId();
+        Pair<Integer, Long> mine;
+        try
+        {
+            mine = ds.getMasterForCommittedTx( lastTx );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Couldn't get master ID for " + lastTx, e );
+        }
+        BackupClient client = new BackupClient( hostNameOrIp, port, targetDb.getMessageLog(),
+                Client.storeIdGetterForDb( targetDb ) );
+        try
+        {
+            Response<Pair<Integer, Long>> response = client.getMasterIdForCommittedTx( lastTx );
+            try
+            {
+                return !mine.equals( response.response() );
+            }
+            finally
+            {
+                response.close();
+            }
+        }
+        finally
+        {
+            client.shutdown();
+        }
+    }
+
     private void unpackResponse( Response<Void> response, GraphDatabaseAPI graphDb, TxHandler txHandler )
     {
+        ExecutorService receivers = TransactionReceivePipeline.newReceivers( "Backup transaction receiver", 1 );
         try
         {
-            MasterUtil.applyReceivedTransactions( response, graphDb, txHandler );
+            MasterUtil.applyReceivedTransactions( response, graphDb, txHandler, new TransactionReceivePipeline(
+                    TransactionReceivePipeline.DEFAULT_QUEUE_DEPTH, receivers ), applier );
             getLastCommittedTxs( graphDb );
         }
         catch ( IOException e )
         {
             throw new RuntimeException( "Unable to apply received transactions", e );
         }
+        finally
+        {
+            receivers.shutdown();
+        }
     }
 
     private void getLastCommittedTxs( GraphDatabaseAPI graphDb )
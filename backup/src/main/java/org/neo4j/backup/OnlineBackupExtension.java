@@ -20,6 +20,7 @@
 
 package org.neo4j.backup;
 
+import org.neo4j.com.Compression;
 import org.neo4j.helpers.Service;
 import org.neo4j.kernel.KernelData;
 import org.neo4j.kernel.KernelExtension;
@@ -51,8 +52,10 @@ public class OnlineBackupExtension extends KernelExtension<BackupServer>
         if (kernel.getConfig().getBoolean( OnlineBackupSettings.online_backup_enabled ))
         {
             TheBackupInterface backup = new BackupImpl( kernel.graphDatabase() );
+            Compression compression = new Compression( kernel.getConfig().get( OnlineBackupSettings.online_backup_compression ),
+                    kernel.getConfig().getInteger( OnlineBackupSettings.online_backup_compression_level ) );
             return new BackupServer( backup, kernel.getConfig().getInteger( OnlineBackupSettings.online_backup_port ),
-                                                    kernel.graphDatabase().getMessageLog());
+                                                    kernel.graphDatabase().getMessageLog(), compression );
         } else
             return null;
     }
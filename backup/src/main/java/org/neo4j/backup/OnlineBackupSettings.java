@@ -19,6 +19,7 @@
  */
 package org.neo4j.backup;
 
+import org.neo4j.com.Compression;
 import org.neo4j.graphdb.factory.Default;
 import org.neo4j.graphdb.factory.Description;
 import org.neo4j.graphdb.factory.GraphDatabaseSetting;
@@ -37,4 +38,27 @@ public class OnlineBackupSettings
     @Description( "Listening port for online backups" )
     @Default("6362")
     public static final GraphDatabaseSetting.PortSetting online_backup_port = new GraphDatabaseSetting.PortSetting( "online_backup_port" );
+
+    @Description( "Compression of store files and transactions sent to backup clients" )
+    @Default( BackupCompressionSetting.none )
+    public static final BackupCompressionSetting online_backup_compression = new BackupCompressionSetting();
+
+    @Description( "Compression level of online_backup_compression, 1 (fastest) to 9 (smallest)" )
+    @Default( "1" )
+    public static final GraphDatabaseSetting.IntegerSetting online_backup_compression_level = new GraphDatabaseSetting.IntegerSetting( "online_backup_compression_level", "Must be a valid compression level", 1, 9 );
+
+    public static final class BackupCompressionSetting
+        extends GraphDatabaseSetting.OptionsSetting
+    {
+        @Description( "Sent as they are" )
+        public static final String none = Compression.NONE;
+
+        @Description( "Compressed with deflate" )
+        public static final String deflate = Compression.DEFLATE;
+
+        public BackupCompressionSetting(  )
+        {
+            super( "online_backup_compression", none, deflate );
+        }
+    }
 }
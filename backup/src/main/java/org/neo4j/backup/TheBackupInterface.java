@@ -19,13 +19,32 @@
  */
 package org.neo4j.backup;
 
+import java.util.List;
+
 import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFileRange;
 import org.neo4j.com.StoreWriter;
+import org.neo4j.helpers.Pair;
 
 public interface TheBackupInterface
 {
     Response<Void> fullBackup( StoreWriter writer );
+
+    /**
+     * For a full backup over several streams, see {@link org.neo4j.com.ParallelStoreCopy}.
+     */
+    Response<StoreCopyPlan> planFullBackup( int parts );
+
+    Response<Void> fullBackupPart( Tx[] startTransactions, List<StoreFileRange> ranges, StoreWriter writer );
     
     Response<Void> incrementalBackup( SlaveContext context );
+
+    /**
+     * For telling whether or not a copy of the store has branched off this one,
+     * see {@link OnlineBackup#hasBranchedFrom(org.neo4j.kernel.GraphDatabaseAPI)}.
+     */
+    Response<Pair<Integer,Long>> getMasterIdForCommittedTx( long txId );
 }
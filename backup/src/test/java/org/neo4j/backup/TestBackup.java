@@ -237,6 +237,23 @@ public class TestBackup
         shutdownServer( server );
     }
 
+    @Test
+    public void fullOverSeveralStreamsThenIncremental() throws Exception
+    {
+        DbRepresentation initialDataSetRepresentation = createInitialDataSet( serverPath );
+        ServerInterface server = startServer( serverPath );
+        OnlineBackup backup = OnlineBackup.from( "localhost" );
+        backup.full( backupPath, true, 3 );
+        assertEquals( initialDataSetRepresentation, DbRepresentation.of( backupPath ) );
+        shutdownServer( server );
+
+        DbRepresentation furtherRepresentation = addMoreData( serverPath );
+        server = startServer( serverPath );
+        backup.incremental( backupPath );
+        assertEquals( furtherRepresentation, DbRepresentation.of( backupPath ) );
+        shutdownServer( server );
+    }
+
     @Test
     public void makeSureNoLogFileRemains() throws Exception
     {
@@ -297,6 +314,32 @@ public class TestBackup
         shutdownServer( server );
     }
 
+    @Test
+    public void incrementalUnlessBranchedAppliesNothingToBackupBranchedOffTheSource() throws Exception
+    {
+        createInitialDataSet( serverPath );
+        ServerInterface server = startServer( serverPath );
+        OnlineBackup backup = OnlineBackup.from( "localhost" );
+        backup.full( backupPath );
+        shutdownServer( server );
+
+        // Both go on from the same transaction, but with different transactions
+        DbRepresentation branchedRepresentation = addMoreData( backupPath );
+        addMoreData( serverPath );
+        server = startServer( serverPath );
+        GraphDatabaseAPI backupDb = (GraphDatabaseAPI) startGraphDatabase( backupPath );
+        try
+        {
+            assertFalse( backup.incrementalUnlessBranched( backupDb ) );
+            assertEquals( branchedRepresentation, DbRepresentation.of( backupDb ) );
+        }
+        finally
+        {
+            backupDb.shutdown();
+            shutdownServer( server );
+        }
+    }
+
     private ServerInterface startServer( String path ) throws Exception
     {
         /*
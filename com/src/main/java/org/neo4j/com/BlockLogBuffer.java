@@ -32,10 +32,18 @@ import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
  * of content which is flushed to the underlying channel when a maximum size is
  * reached. It is supposed to be used with {@link BlockLogReader}.
  * <p>
- * Every chunk is exactly 256 bytes in length, except for the last one which can
- * be anything greater than one and up to 256. This is signaled via the first
- * byte which is 0 for every non-last chunk and the actual number of bytes for
- * the last one (always > 0).
+ * There are two block formats, which one is used depends on the internal
+ * protocol version, see {@link #largeBlocksFor(ChannelBuffer)}.
+ * <p>
+ * Small blocks: every chunk is exactly 256 bytes in length, except for the
+ * last one which can be anything greater than one and up to 256. This is
+ * signaled via the first byte which is 0 for every non-last chunk and the
+ * actual number of bytes for the last one (always > 0).
+ * <p>
+ * Large blocks: every chunk starts with a 4 byte header, the number of bytes
+ * in the chunk with the sign bit set for every non-last chunk. A chunk holds
+ * up to 64k so most transactions end up as one chunk prefixed with its length.
+ * The internal buffer starts small and grows with the content.
  */
 public class BlockLogBuffer implements LogBuffer
 {
@@ -44,44 +52,97 @@ public class BlockLogBuffer implements LogBuffer
     static final int MAX_SIZE = 256; /* soft limit, incl. header */
     static final int DATA_SIZE = MAX_SIZE-1;
 
-    private final ChannelBuffer target;
+    // Set in the header of every large chunk that is not the last one
+    static final int LARGE_BLOCK_AND_MORE = 0x80000000;
+    static final int LARGE_HEADER_SIZE = 4;
+    static final int LARGE_MAX_SIZE = 64*1024; /* soft limit, incl. header */
+    private static final int LARGE_INITIAL_SIZE = 1024;
     // MAX_SIZE can be overcome by one primitive put(), the largest is 8 bytes
-    private final byte[] byteArray = new byte[MAX_SIZE + 8/*largest atom*/];
-    private final ByteBuffer byteBuffer = ByteBuffer.wrap( byteArray );
+    private static final int LARGEST_ATOM = 8;
+
+    private final ChannelBuffer target;
+    private final boolean largeBlocks;
+    private final int maxSize;
+    private byte[] byteArray;
+    private ByteBuffer byteBuffer;
 
     public BlockLogBuffer( ChannelBuffer target )
+    {
+        this( target, false );
+    }
+
+    public BlockLogBuffer( ChannelBuffer target, boolean largeBlocks )
     {
         this.target = target;
+        this.largeBlocks = largeBlocks;
+        this.maxSize = largeBlocks ? LARGE_MAX_SIZE : MAX_SIZE;
+        this.byteArray = new byte[(largeBlocks ? LARGE_INITIAL_SIZE : MAX_SIZE) + LARGEST_ATOM];
+        this.byteBuffer = ByteBuffer.wrap( byteArray );
         clearInternalBuffer();
     }
 
+    /**
+     * @return whether or not block data written to, or read from, {@code buffer}
+     * is in the large block format. That's decided by the internal protocol
+     * version of the request or response that the buffer belongs to, buffers
+     * not belonging to any use the small block format.
+     */
+    public static boolean largeBlocksFor( ChannelBuffer buffer )
+    {
+        if ( buffer instanceof ChunkingChannelBuffer )
+        {
+            return Server.hasLargeBlocks( ((ChunkingChannelBuffer) buffer).getInternalProtocolVersion() );
+        }
+        if ( buffer instanceof DechunkingChannelBuffer )
+        {
+            return Server.hasLargeBlocks( ((DechunkingChannelBuffer) buffer).getInternalProtocolVersion() );
+        }
+        return false;
+    }
+
     private void clearInternalBuffer()
     {
         byteBuffer.clear();
         // reserve space for size - assume we are going to fill the buffer
-        byteBuffer.put( FULL_BLOCK_AND_MORE );
+        if ( largeBlocks ) byteBuffer.putInt( LARGE_BLOCK_AND_MORE | (LARGE_MAX_SIZE - LARGE_HEADER_SIZE) );
+        else byteBuffer.put( FULL_BLOCK_AND_MORE );
     }
 
     /**
-     * If the position of the byteBuffer is larger than MAX_SIZE then
-     * MAX_SIZE bytes are flushed to the underlying channel. The remaining
+     * If the position of the byteBuffer is larger than the max size then
+     * that many bytes are flushed to the underlying channel. The remaining
      * bytes (1 up to and including 8 - see the byteArray field initializer)
-     * are moved over at the beginning of the cleared buffer.
+     * are moved over at the beginning of the cleared buffer. A large block
+     * buffer which hasn't reached its max size is grown if needed instead.
      *
      * @return the buffer
      */
     private LogBuffer checkFlush()
     {
-        if ( byteBuffer.position() > MAX_SIZE )
+        if ( byteBuffer.position() > maxSize )
         {
-            target.writeBytes( byteArray, 0, MAX_SIZE );
+            target.writeBytes( byteArray, 0, maxSize );
             int pos = byteBuffer.position();
             clearInternalBuffer();
-            byteBuffer.put( byteArray, MAX_SIZE, pos - MAX_SIZE );
+            byteBuffer.put( byteArray, maxSize, pos - maxSize );
+        }
+        else if ( byteBuffer.remaining() < LARGEST_ATOM )
+        {
+            grow();
         }
         return this;
     }
 
+    private void grow()
+    {
+        byte[] grown = new byte[Math.min( byteArray.length*2, maxSize + LARGEST_ATOM )];
+        System.arraycopy( byteArray, 0, grown, 0, byteBuffer.position() );
+        ByteBuffer grownBuffer = ByteBuffer.wrap( grown );
+        grownBuffer.position( byteBuffer.position() );
+        byteArray = grown;
+        byteBuffer = grownBuffer;
+    }
+
     public LogBuffer put( byte b ) throws IOException
     {
         byteBuffer.put( b );
@@ -168,15 +229,22 @@ public class BlockLogBuffer implements LogBuffer
     }
 
     /**
-     * Signals the end of use for this buffer over this channel - first byte of
-     * the chunk is set to the position of the buffer ( != 0, instead of
-     * FULL_BLOCK_AND_MORE) and it is written to the channel.
+     * Signals the end of use for this buffer over this channel - the header of
+     * the chunk is set to the size of its content, without the "more" marker,
+     * and it is written to the channel. The buffer can be used again afterwards.
      */
     public void done()
     {
-        assert byteBuffer.position() > 1 : "buffer should contain more than the header";
-        assert byteBuffer.position() <= MAX_SIZE : "buffer should not be over full";
-        byteBuffer.put( 0, (byte) ( byteBuffer.position() - 1 ) );
+        assert byteBuffer.position() <= maxSize : "buffer should not be over full";
+        if ( largeBlocks )
+        {
+            byteBuffer.putInt( 0, byteBuffer.position() - LARGE_HEADER_SIZE );
+        }
+        else
+        {
+            assert byteBuffer.position() > 1 : "buffer should contain more than the header";
+            byteBuffer.put( 0, (byte) ( byteBuffer.position() - 1 ) );
+        }
         byteBuffer.flip();
         target.writeBytes( byteBuffer );
         clearInternalBuffer();
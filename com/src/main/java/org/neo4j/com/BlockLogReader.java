@@ -34,18 +34,40 @@ import org.jboss.netty.buffer.ChannelBuffer;
  * integer is the total size of the chunk AND there are no more - the stream is
  * complete</li>
  *
+ * Large blocks, see {@link BlockLogBuffer}, are instead read straight from
+ * the source into the target buffer of each read, without going through an
+ * intermediate array.
  */
 public class BlockLogReader implements ReadableByteChannel
 {
     private final ChannelBuffer source;
-    private final byte[] byteArray = new byte[BlockLogBuffer.MAX_SIZE];
-    private final ByteBuffer byteBuffer = ByteBuffer.wrap( byteArray );
+    private final boolean largeBlocks;
+    private final byte[] byteArray;
+    private final ByteBuffer byteBuffer;
     private boolean moreBlocks;
+    // Bytes left to read of the current large block
+    private int remainingInBlock;
 
     public BlockLogReader( ChannelBuffer source )
+    {
+        this( source, false );
+    }
+
+    public BlockLogReader( ChannelBuffer source, boolean largeBlocks )
     {
         this.source = source;
-        readNextBlock();
+        this.largeBlocks = largeBlocks;
+        this.byteArray = largeBlocks ? null : new byte[BlockLogBuffer.MAX_SIZE];
+        this.byteBuffer = largeBlocks ? null : ByteBuffer.wrap( byteArray );
+        if ( largeBlocks ) readNextLargeBlockHeader();
+        else readNextBlock();
+    }
+
+    private void readNextLargeBlockHeader()
+    {
+        int header = source.readInt();
+        moreBlocks = (header & BlockLogBuffer.LARGE_BLOCK_AND_MORE) != 0;
+        remainingInBlock = header & ~BlockLogBuffer.LARGE_BLOCK_AND_MORE;
     }
 
     /**
@@ -78,6 +100,11 @@ public class BlockLogReader implements ReadableByteChannel
 
     public int read( ByteBuffer dst ) throws IOException
     {
+        if ( largeBlocks )
+        {
+            return readLargeBlocks( dst );
+        }
+
         /*
          * Fill up dst with what comes from the channel, until dst is full.
          * readAsMuchAsPossible() is constantly called reading essentially
@@ -99,6 +126,75 @@ public class BlockLogReader implements ReadableByteChannel
         return bytesRead == 0 && !moreBlocks ? -1 : bytesRead;
     }
 
+    private int readLargeBlocks( ByteBuffer dst )
+    {
+        int bytesRead = 0;
+        while ( dst.hasRemaining() )
+        {
+            if ( remainingInBlock == 0 )
+            {
+                if ( !moreBlocks ) break;
+                readNextLargeBlockHeader();
+                continue;
+            }
+            int bytesToRead = boundedBySource( source, Math.min( dst.remaining(), remainingInBlock ) );
+            ByteBuffer slice = dst.slice();
+            slice.limit( bytesToRead );
+            source.readBytes( slice );
+            dst.position( dst.position() + bytesToRead );
+            remainingInBlock -= bytesToRead;
+            bytesRead += bytesToRead;
+        }
+        return bytesRead == 0 && remainingInBlock == 0 && !moreBlocks ? -1 : bytesRead;
+    }
+
+    /**
+     * Wanting more than what the source has received so far and one more chunk
+     * of it could hold, see {@link DechunkingChannelBuffer}, is asking for
+     * trouble. Wanting one byte when it has none makes it receive a new chunk.
+     */
+    private static int boundedBySource( ChannelBuffer source, int bytesWanted )
+    {
+        return Math.min( bytesWanted, Math.max( source.readableBytes(), 1 ) );
+    }
+
+    /**
+     * Skips over block data in {@code source}, as written by a
+     * {@link BlockLogBuffer} in the given format.
+     */
+    static void skipBlocks( ChannelBuffer source, boolean largeBlocks )
+    {
+        if ( largeBlocks )
+        {
+            int header;
+            do
+            {
+                header = source.readInt();
+                skip( source, header & ~BlockLogBuffer.LARGE_BLOCK_AND_MORE );
+            }
+            while ( (header & BlockLogBuffer.LARGE_BLOCK_AND_MORE) != 0 );
+        }
+        else
+        {
+            int blockSize = 0;
+            while ( (blockSize = source.readUnsignedByte()) == 0 )
+            {
+                source.skipBytes( BlockLogBuffer.DATA_SIZE );
+            }
+            source.skipBytes( blockSize );
+        }
+    }
+
+    private static void skip( ChannelBuffer source, int bytes )
+    {
+        while ( bytes > 0 )
+        {
+            int bytesToSkip = boundedBySource( source, bytes );
+            source.skipBytes( bytesToSkip );
+            bytes -= bytesToSkip;
+        }
+    }
+
     /**
      * Reads in at most {@code maxBytesWanted} in {@code dst} but never more
      * than a chunk.
@@ -126,6 +222,14 @@ public class BlockLogReader implements ReadableByteChannel
      */
     private void readToTheEnd()
     {
+        if ( largeBlocks )
+        {
+            skip( source, remainingInBlock );
+            remainingInBlock = 0;
+            if ( moreBlocks ) skipBlocks( source, true );
+            moreBlocks = false;
+            return;
+        }
         while ( moreBlocks )
         {
             readNextBlock();
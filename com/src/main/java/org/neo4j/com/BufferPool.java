@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Keeps buffers around for reuse, so that busy servers and clients don't
+ * allocate new (and potentially big) buffers for every request and chunk.
+ * Buffers are kept in size classes of powers of two, {@link ChannelBuffer}s
+ * on heap and {@link ByteBuffer}s direct. At most {@code maxRetainedBytes}
+ * are kept, buffers released beyond that are left to the garbage collector.
+ *
+ * Whoever acquires a buffer is responsible for releasing it, and must not
+ * touch it after that. With leak tracking enabled (the system property
+ * {@value #TRACK_LEAKS_PROPERTY} for the {@link #SHARED} pool) the stack
+ * trace of every acquisition not yet released is kept, see {@link #assertNoLeaks()}.
+ */
+public class BufferPool
+{
+    public static final String TRACK_LEAKS_PROPERTY = "org.neo4j.com.BufferPool.trackLeaks";
+    public static final int DEFAULT_MAX_RETAINED_BYTES = 64 * Protocol.MEGA;
+    private static final int MIN_SIZE_CLASS = 12; // 4k
+    private static final int MAX_SIZE_CLASS = 26; // 64M
+
+    /**
+     * The pool used by {@link Server}s and {@link Client}s.
+     */
+    public static final BufferPool SHARED = new BufferPool( DEFAULT_MAX_RETAINED_BYTES,
+            Boolean.getBoolean( TRACK_LEAKS_PROPERTY ) );
+
+    private final long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong allocations = new AtomicLong();
+    private final Queue<ChannelBuffer>[] channelBuffers;
+    private final Queue<ByteBuffer>[] byteBuffers;
+    private final Map<Object, Throwable> acquiredBy; // Guarded by itself, null if not tracking leaks
+
+    public BufferPool( long maxRetainedBytes )
+    {
+        this( maxRetainedBytes, false );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public BufferPool( long maxRetainedBytes, boolean trackLeaks )
+    {
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.channelBuffers = new Queue[MAX_SIZE_CLASS + 1];
+        this.byteBuffers = new Queue[MAX_SIZE_CLASS + 1];
+        for ( int i = MIN_SIZE_CLASS; i <= MAX_SIZE_CLASS; i++ )
+        {
+            channelBuffers[i] = new ConcurrentLinkedQueue<ChannelBuffer>();
+            byteBuffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+        this.acquiredBy = trackLeaks ? new IdentityHashMap<Object, Throwable>() : null;
+    }
+
+    /**
+     * @return a cleared, dynamic buffer of whatever size is available.
+     */
+    public ChannelBuffer acquireChannelBuffer()
+    {
+        return acquireChannelBuffer( 0 );
+    }
+
+    /**
+     * @return a cleared, dynamic buffer of at least {@code minCapacity}. It may
+     * be bigger than asked for if a smaller one isn't available.
+     */
+    public ChannelBuffer acquireChannelBuffer( int minCapacity )
+    {
+        int sizeClass = sizeClassFor( minCapacity );
+        ChannelBuffer buffer = null;
+        for ( int i = sizeClass; buffer == null && i <= MAX_SIZE_CLASS; i++ )
+        {
+            buffer = channelBuffers[i].poll();
+        }
+        if ( buffer != null )
+        {
+            retainedBytes.addAndGet( -buffer.capacity() );
+            buffer.clear();
+        }
+        else
+        {
+            allocations.incrementAndGet();
+            buffer = ChannelBuffers.dynamicBuffer( 1 << sizeClass );
+        }
+        acquired( buffer );
+        return buffer;
+    }
+
+    public void release( ChannelBuffer buffer )
+    {
+        released( buffer );
+        int sizeClass = floorSizeClass( buffer.capacity() );
+        if ( sizeClass != -1 && retain( buffer.capacity() ) ) channelBuffers[sizeClass].offer( buffer );
+    }
+
+    /**
+     * @return a cleared, direct buffer of exactly {@code capacity}, which may be
+     * from a previous acquisition of the same capacity.
+     */
+    public ByteBuffer acquireByteBuffer( int capacity )
+    {
+        int sizeClass = sizeClassFor( capacity );
+        ByteBuffer buffer = sizeClass == exactSizeClass( capacity ) ? byteBuffers[sizeClass].poll() : null;
+        if ( buffer != null )
+        {
+            retainedBytes.addAndGet( -buffer.capacity() );
+            buffer.clear();
+        }
+        else
+        {
+            allocations.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect( capacity );
+        }
+        acquired( buffer );
+        return buffer;
+    }
+
+    public void release( ByteBuffer buffer )
+    {
+        released( buffer );
+        int sizeClass = exactSizeClass( buffer.capacity() );
+        if ( sizeClass != -1 && retain( buffer.capacity() ) ) byteBuffers[sizeClass].offer( buffer );
+    }
+
+    private boolean retain( int bytes )
+    {
+        if ( retainedBytes.addAndGet( bytes ) <= maxRetainedBytes ) return true;
+        retainedBytes.addAndGet( -bytes );
+        return false;
+    }
+
+    private void acquired( Object buffer )
+    {
+        outstanding.incrementAndGet();
+        if ( acquiredBy == null ) return;
+        synchronized ( acquiredBy )
+        {
+            acquiredBy.put( buffer, new Exception( "Acquired, but not released" ) );
+        }
+    }
+
+    private void released( Object buffer )
+    {
+        outstanding.decrementAndGet();
+        if ( acquiredBy == null ) return;
+        synchronized ( acquiredBy )
+        {
+            if ( acquiredBy.remove( buffer ) == null )
+            {
+                throw new IllegalStateException( buffer + " released, but not acquired from this pool" );
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalStateException with the stack traces of where outstanding
+     * buffers were acquired, if there are any. Requires leak tracking.
+     */
+    public void assertNoLeaks()
+    {
+        if ( acquiredBy == null ) throw new IllegalStateException( "Not tracking leaks" );
+        List<Throwable> leaks;
+        synchronized ( acquiredBy )
+        {
+            leaks = new ArrayList<Throwable>( acquiredBy.values() );
+        }
+        if ( leaks.isEmpty() ) return;
+        IllegalStateException exception = new IllegalStateException( leaks.size() + " buffer(s) never released" );
+        exception.initCause( leaks.get( 0 ) );
+        throw exception;
+    }
+
+    /**
+     * @return the number of buffers acquired, but not yet released.
+     */
+    public int getOutstanding()
+    {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the number of buffers that had to be allocated since none were
+     * available in the pool.
+     */
+    public long getAllocations()
+    {
+        return allocations.get();
+    }
+
+    public long getRetainedBytes()
+    {
+        return retainedBytes.get();
+    }
+
+    private static int sizeClassFor( int capacity )
+    {
+        int sizeClass = MIN_SIZE_CLASS;
+        while ( sizeClass < MAX_SIZE_CLASS && (1 << sizeClass) < capacity ) sizeClass++;
+        return sizeClass;
+    }
+
+    private static int floorSizeClass( int capacity )
+    {
+        if ( capacity < (1 << MIN_SIZE_CLASS) ) return -1;
+        return Math.min( 31 - Integer.numberOfLeadingZeros( capacity ), MAX_SIZE_CLASS );
+    }
+
+    private static int exactSizeClass( int capacity )
+    {
+        int sizeClass = floorSizeClass( capacity );
+        return sizeClass != -1 && (1 << sizeClass) == capacity ? sizeClass : -1;
+    }
+}
@@ -24,10 +24,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ScatteringByteChannel;
 import java.nio.charset.Charset;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
@@ -52,9 +52,9 @@ import org.jboss.netty.channel.ChannelFutureListener;
  * called, if content has been added.
  * <p>
  * Each chunk written is marked as pending and no more than
- * MAX_WRITE_AHEAD_CHUNKS are left pending - in such a case the write process
- * sleeps until some acknowledgment comes back from the other side that chunks
- * have been read.
+ * {@link FlowControl#getMaxWriteAheadChunks()} are left pending - in such a case
+ * the write process waits until it's notified that a pending chunk has been
+ * written to the socket, i.e. that the other side is reading them.
  */
 public class ChunkingChannelBuffer implements ChannelBuffer, ChannelFutureListener
 {
@@ -62,33 +62,85 @@ public class ChunkingChannelBuffer implements ChannelBuffer, ChannelFutureListen
     static final byte CONTINUATION_MORE = 1;
     static final byte OUTCOME_SUCCESS = 0;
     static final byte OUTCOME_FAILURE = 1;
-    private static final int MAX_WRITE_AHEAD_CHUNKS = 5;
+    static final byte FLAG_COMPRESSED = 1;
 
     private ChannelBuffer buffer;
     private final Channel channel;
     private final int capacity;
     private int continuationPosition;
-    private final AtomicInteger writeAheadCounter = new AtomicInteger();
+    private int writeAheadCounter; // Guarded by this
     private volatile boolean failure;
     private final byte applicationProtocolVersion;
     private final byte internalProtocolVersion;
+    private final int correlationId;
+    private final Compression compression;
+    private final FlowControl flowControl;
+    private final BufferPool pool;
+    private boolean pooled; // whether or not the current buffer is to be released to the pool when written
 
     public ChunkingChannelBuffer( ChannelBuffer buffer, Channel channel, int capacity, byte internalProtocolVersion, byte applicationProtocolVersion )
+    {
+        this( buffer, channel, capacity, internalProtocolVersion, applicationProtocolVersion, 0 );
+    }
+
+    /**
+     * @param correlationId written after the header of each chunk if the internal
+     * protocol version is one which multiplexes requests over shared channels,
+     * see {@link Server#isMultiplexing(byte)}.
+     */
+    public ChunkingChannelBuffer( ChannelBuffer buffer, Channel channel, int capacity, byte internalProtocolVersion,
+            byte applicationProtocolVersion, int correlationId )
+    {
+        this( buffer, channel, capacity, internalProtocolVersion, applicationProtocolVersion, correlationId, null,
+                new FlowControl(), null );
+    }
+
+    /**
+     * @param compression used to compress the content of each chunk if the internal
+     * protocol version is one where chunks carry flags, see {@link Server#isMultiplexing(byte)}.
+     * May be {@code null} for no compression.
+     * @param flowControl how many chunks may be pending at any given time.
+     * @param pool if not {@code null} {@code buffer} has been acquired from it, so
+     * has the buffer of each chunk after it. They are released back to it once
+     * written to the socket. {@code null} means that {@code buffer} is owned by
+     * the caller and chunks after it are allocated as needed.
+     */
+    public ChunkingChannelBuffer( ChannelBuffer buffer, Channel channel, int capacity, byte internalProtocolVersion,
+            byte applicationProtocolVersion, int correlationId, Compression compression, FlowControl flowControl,
+            BufferPool pool )
     {
         this.buffer = buffer;
         this.channel = channel;
         this.capacity = capacity;
         this.internalProtocolVersion = internalProtocolVersion;
         this.applicationProtocolVersion = applicationProtocolVersion;
+        this.correlationId = correlationId;
+        this.compression = compression != null && compression.compresses() &&
+                Server.isMultiplexing( internalProtocolVersion ) ? compression : null;
+        this.flowControl = flowControl;
+        this.pool = pool;
+        this.pooled = pool != null;
         addRoomForContinuationHeader();
     }
 
+    byte getInternalProtocolVersion()
+    {
+        return internalProtocolVersion;
+    }
+
     private void addRoomForContinuationHeader()
     {
         continuationPosition = writerIndex();
         // byte 0: [pppp,ppoc] p: internal protocol version, o: outcome, c: continuation
         // byte 1: [aaaa,aaaa] a: application protocol version
         buffer.writeBytes( header( CONTINUATION_LAST ) );
+        // byte 2-5: correlation id, only for multiplexing internal protocol versions
+        // byte 6: [0000,000z] z: content compressed, only for multiplexing internal protocol versions
+        if ( Server.isMultiplexing( internalProtocolVersion ) )
+        {
+            buffer.writeInt( correlationId );
+            buffer.writeByte( 0 );
+        }
     }
 
     private byte[] header( byte continuation )
@@ -532,41 +584,179 @@ public class ChunkingChannelBuffer implements ChannelBuffer, ChannelFutureListen
         {
             setContinuation( CONTINUATION_MORE );
             writeCurrentChunk();
-            // TODO Reuse buffers?
-            buffer = ChannelBuffers.dynamicBuffer();
+            newChunkBuffer();
             addRoomForContinuationHeader();
         }
     }
 
+    private void newChunkBuffer()
+    {
+        pooled = pool != null;
+        buffer = pooled ? pool.acquireChannelBuffer() : ChannelBuffers.dynamicBuffer();
+    }
+
     private void writeCurrentChunk()
+    {
+        final ChannelBuffer chunk = buffer;
+        Object toWrite = chunk;
+        if ( compression != null )
+        {
+            int contentPosition = continuationPosition + headerLength();
+            ChannelBuffer compressed = compression.compress( chunk, contentPosition,
+                    chunk.writerIndex() - contentPosition );
+            if ( compressed != null )
+            {
+                chunk.setByte( contentPosition - 1, FLAG_COMPRESSED );
+                toWrite = ChannelBuffers.wrappedBuffer(
+                        chunk.slice( chunk.readerIndex(), contentPosition - chunk.readerIndex() ), compressed );
+            }
+        }
+        if ( !pooled )
+        {
+            writeChunk( toWrite );
+            return;
+        }
+
+        // Whatever happens the pooled buffer isn't ours anymore, f.ex. a failure
+        // response written after done() mustn't end up in a released buffer.
+        buffer = ChannelBuffers.dynamicBuffer( 0 );
+        pooled = false;
+        ChannelFuture future;
+        try
+        {
+            future = writeChunk( toWrite );
+        }
+        catch ( RuntimeException e )
+        {
+            pool.release( chunk );
+            throw e;
+        }
+        future.addListener( new ChannelFutureListener()
+        {
+            @Override
+            public void operationComplete( ChannelFuture future )
+            {
+                pool.release( chunk );
+            }
+        } );
+    }
+
+    private ChannelFuture writeChunk( Object chunk )
     {
         if ( !channel.isOpen() || !channel.isConnected() || !channel.isBound() )
             throw new ComException( "Channel has been closed, so no need to try to write to it anymore. Client closed it?" );
         
         waitForClientToCatchUpOnReadingChunks();
-        ChannelFuture future = channel.write( buffer );
+        synchronized ( this )
+        {
+            writeAheadCounter++;
+        }
+        ChannelFuture future = channel.write( chunk );
         future.addListener( this );
-        writeAheadCounter.incrementAndGet();
+        return future;
+    }
+
+    /**
+     * @return whether or not the other side understands store files sent with
+     * {@link #writeFileRegion(FileChannel, long)}, which depends on the internal
+     * protocol version.
+     */
+    public boolean canWriteFileRegions()
+    {
+        // Regions go straight from the file to the socket, so they can't be compressed
+        return Server.isMultiplexing( internalProtocolVersion ) && compression == null;
+    }
+
+    /**
+     * Sends the first {@code count} bytes of {@code file} in chunks of their own,
+     * transferred from the file straight to the socket, see {@link FramedFileRegion}.
+     * Whatever has been written to this buffer before is sent first and writing
+     * can continue as usual afterwards. The chunks look like any other chunks to
+     * the {@link DechunkingChannelBuffer} on the other side.
+     *
+     * Returns when the whole region has been written to the socket so that the
+     * caller can close the file.
+     */
+    public void writeFileRegion( FileChannel file, long count )
+    {
+        writeFileRegion( file, 0, count );
+    }
+
+    /**
+     * Like {@link #writeFileRegion(FileChannel, long)}, but sends the {@code count}
+     * bytes of {@code file} starting at {@code position}.
+     */
+    public void writeFileRegion( FileChannel file, long position, long count )
+    {
+        if ( buffer.writerIndex() > continuationPosition + headerLength() )
+        {
+            setContinuation( CONTINUATION_MORE );
+            writeCurrentChunk();
+            newChunkBuffer();
+        }
+        else
+        {
+            buffer.writerIndex( continuationPosition );
+        }
+
+        ChannelFuture lastWrite = null;
+        int maxRegionLength = capacity - headerLength();
+        for ( long written = 0; written < count; )
+        {
+            int length = (int) Math.min( maxRegionLength, count - written );
+            // Length field, normally added by the frame encoder, see Protocol#addLengthFieldPipes
+            ChannelBuffer frameHeader = ChannelBuffers.buffer( 4 + headerLength() );
+            frameHeader.writeInt( headerLength() + length );
+            frameHeader.writeBytes( header( CONTINUATION_MORE ) );
+            if ( Server.isMultiplexing( internalProtocolVersion ) )
+            {
+                frameHeader.writeInt( correlationId );
+                frameHeader.writeByte( 0 );
+            }
+            lastWrite = writeChunk( new FramedFileRegion( frameHeader.toByteBuffer(), file, position + written,
+                    length ) );
+            written += length;
+        }
+
+        addRoomForContinuationHeader();
+        if ( lastWrite != null )
+        {
+            lastWrite.awaitUninterruptibly();
+            if ( !lastWrite.isSuccess() )
+            {
+                throw new ComException( "Unable to transfer file region", lastWrite.getCause() );
+            }
+        }
+    }
+
+    private int headerLength()
+    {
+        return Server.isMultiplexing( internalProtocolVersion ) ? 7 : 2;
     }
 
-    private void waitForClientToCatchUpOnReadingChunks()
+    private synchronized void waitForClientToCatchUpOnReadingChunks()
     {
         // Wait until channel gets disconnected or client catches up.
         // If channel has been disconnected we can exit and the next write
         // will produce a decent exception out.
         boolean waited = false;
-        while ( channel.isConnected() && writeAheadCounter.get() >= MAX_WRITE_AHEAD_CHUNKS )
+        long startTime = 0;
+        while ( channel.isConnected() && writeAheadCounter >= flowControl.getMaxWriteAheadChunks() )
         {
+            if ( !waited ) startTime = System.nanoTime();
             waited = true;
             try
             {
-                Thread.sleep( 200 );
+                // Notified by operationComplete, the timeout is a safety net for
+                // disconnects that don't fail any pending write
+                wait( 1000 );
             }
             catch ( InterruptedException e )
             {   // OK
                 Thread.interrupted();
             }
         }
+        if ( waited ) flowControl.stalled( System.nanoTime() - startTime );
 
         if ( waited && (!channel.isConnected() || !channel.isOpen()) )
         {
@@ -586,7 +776,11 @@ public class ChunkingChannelBuffer implements ChannelBuffer, ChannelFutureListen
         {
             future.getChannel().close();
         }
-        writeAheadCounter.decrementAndGet();
+        synchronized ( this )
+        {
+            writeAheadCounter--;
+            notifyAll();
+        }
     }
 
     public void done()
@@ -23,6 +23,7 @@ import static org.neo4j.com.Protocol.addLengthFieldPipes;
 import static org.neo4j.com.Protocol.readString;
 import static org.neo4j.com.Protocol.writeString;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
@@ -30,6 +31,8 @@ import java.util.Arrays;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
@@ -64,18 +67,38 @@ public abstract class Client<M> implements ChannelPipelineFactory
     // with the master in some way.
     public static final int DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT = 20;
     public static final int DEFAULT_READ_RESPONSE_TIMEOUT_SECONDS = 20;
+    // Number of channels which requests are multiplexed over, when talking a
+    // multiplexing internal protocol version.
+    public static final int DEFAULT_NUMBER_OF_MULTIPLEXED_CHANNELS = 2;
+
+    private static final String BLOCKING_HANDLER = "blockingHandler";
+    private static final int TEMPORARY_BUFFER_SIZE = 1024 * 1024;
+    // Pooled channels not used for this long are closed
+    private static final long CHANNEL_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
 
     private final ClientBootstrap bootstrap;
     private final SocketAddress address;
     private final StringLogger msgLog;
     private final ExecutorService executor;
-    private final ResourcePool<Triplet<Channel, ChannelBuffer, ByteBuffer>> channelPool;
+    // Reads responses to asynchronous requests once they've been received
+    private final ExecutorService completionExecutor;
+    private final ConcurrentResourcePool<Triplet<Channel, ChannelBuffer, ByteBuffer>> channelPool;
     private StoreId myStoreId;
     private final int frameLength;
     private final int readTimeout;
     private final byte applicationProtocolVersion;
     private final StoreIdGetter storeIdGetter;
     private final ResourceReleaser resourcePoolReleaser;
+    private final MultiplexedChannel[] multiplexedChannels; // Guarded by itself
+    private final boolean[] connecting; // Guarded by multiplexedChannels, slots reserved while connecting
+    private int channelsGeneration; // Guarded by multiplexedChannels, bumped when they are all closed
+    private final BufferPool bufferPool = BufferPool.SHARED;
+    // Bounds the temporary buffers of multiplexed requests the way the channel pool
+    // bounds those of requests over channels of their own
+    private final Semaphore temporaryBuffers;
+    private final FlowControl flowControl = new FlowControl();
+    private volatile boolean legacyServer;
+    private final Compression compression;
 
     public Client( String hostNameOrIp, int port, StringLogger logger,
             StoreIdGetter storeIdGetter, int frameLength,
@@ -92,43 +115,37 @@ public abstract class Client<M> implements ChannelPipelineFactory
             byte applicationProtocolVersion, int readTimeout,
             int maxConcurrentChannels, int maxUnusedPoolSize,
             final ConnectionLostHandler connectionLostHandler )
+    {
+        this( hostNameOrIp, port, logger, storeIdGetter, frameLength,
+                applicationProtocolVersion, readTimeout, maxConcurrentChannels,
+                maxUnusedPoolSize, connectionLostHandler, new Compression() );
+    }
+
+    /**
+     * @param compression decompresses compressed responses and keeps the metrics
+     * for it. Requests are sent uncompressed, it's up to the server to decide
+     * whether or not to compress its responses.
+     */
+    public Client( String hostNameOrIp, int port, StringLogger logger,
+            StoreIdGetter storeIdGetter, int frameLength,
+            byte applicationProtocolVersion, int readTimeout,
+            int maxConcurrentChannels, int maxUnusedPoolSize,
+            final ConnectionLostHandler connectionLostHandler, Compression compression )
     {
         this.msgLog = logger;
         this.storeIdGetter = storeIdGetter;
         this.frameLength = frameLength;
         this.applicationProtocolVersion = applicationProtocolVersion;
         this.readTimeout = readTimeout;
-        channelPool = new ResourcePool<Triplet<Channel, ChannelBuffer, ByteBuffer>>(
-                maxConcurrentChannels, maxUnusedPoolSize )
+        this.compression = compression;
+        channelPool = new ConcurrentResourcePool<Triplet<Channel, ChannelBuffer, ByteBuffer>>(
+                maxConcurrentChannels, maxUnusedPoolSize, true, CHANNEL_IDLE_TIMEOUT_MILLIS )
         {
             @Override
             protected Triplet<Channel, ChannelBuffer, ByteBuffer> create()
             {
-                ChannelFuture channelFuture = bootstrap.connect( address );
-                channelFuture.awaitUninterruptibly( 5, TimeUnit.SECONDS );
-                Triplet<Channel, ChannelBuffer, ByteBuffer> channel = null;
-                if ( channelFuture.isSuccess() )
-                {
-                    channel = Triplet.of( channelFuture.getChannel(),
-                            ChannelBuffers.dynamicBuffer(),
-                            ByteBuffer.allocateDirect( 1024 * 1024 ) );
-                    msgLog.logMessage( "Opened a new channel to " + address, true );
-                    return channel;
-                }
-
-                String msg = "Client could not connect to " + address;
-                msgLog.logMessage( msg, true );
-                ComException exception = new ComException( msg );
-                try
-                {
-                    Thread.sleep( 1000 );
-                }
-                catch ( InterruptedException e )
-                {
-                    msgLog.logMessage( "Interrupted", e );
-                }
-                // connectionLostHandler.handle( exception );
-                throw exception;
+                return Triplet.of( connect(), ChannelBuffers.dynamicBuffer(),
+                        bufferPool.acquireByteBuffer( TEMPORARY_BUFFER_SIZE ) );
             }
 
             @Override
@@ -144,11 +161,16 @@ public abstract class Client<M> implements ChannelPipelineFactory
             {
                 Channel channel = resource.first();
                 if ( channel.isConnected() ) channel.close();
+                bufferPool.release( resource.third() );
             }
         };
 
+        temporaryBuffers = new Semaphore( maxConcurrentChannels );
+        multiplexedChannels = new MultiplexedChannel[DEFAULT_NUMBER_OF_MULTIPLEXED_CHANNELS];
+        connecting = new boolean[DEFAULT_NUMBER_OF_MULTIPLEXED_CHANNELS];
         address = new InetSocketAddress( hostNameOrIp, port );
         executor = Executors.newCachedThreadPool();
+        completionExecutor = Executors.newCachedThreadPool();
         bootstrap = new ClientBootstrap( new NioClientSocketChannelFactory( executor, executor ) );
         bootstrap.setPipelineFactory( this );
         /*
@@ -168,6 +190,45 @@ public abstract class Client<M> implements ChannelPipelineFactory
         msgLog.logMessage( getClass().getSimpleName() + " communication started and bound to " + hostNameOrIp + ":" + port, true );
     }
 
+    private Channel connect()
+    {
+        ChannelFuture channelFuture = bootstrap.connect( address );
+        channelFuture.awaitUninterruptibly( 5, TimeUnit.SECONDS );
+        if ( channelFuture.isSuccess() )
+        {
+            msgLog.logMessage( "Opened a new channel to " + address, true );
+            return channelFuture.getChannel();
+        }
+
+        String msg = "Client could not connect to " + address;
+        msgLog.logMessage( msg, true );
+        ComException exception = new ComException( msg );
+        try
+        {
+            Thread.sleep( 1000 );
+        }
+        catch ( InterruptedException e )
+        {
+            msgLog.logMessage( "Interrupted", e );
+        }
+        // connectionLostHandler.handle( exception );
+        throw exception;
+    }
+
+    public Compression getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * @return the pool of channels used for requests that aren't multiplexed,
+     * exposed for its metrics.
+     */
+    public ConcurrentResourcePool<?> getChannelPool()
+    {
+        return channelPool;
+    }
+
     /**
      * Only exposed so that tests can control it. It's not configurable really.
      */
@@ -176,6 +237,16 @@ public abstract class Client<M> implements ChannelPipelineFactory
         return Server.INTERNAL_PROTOCOL_VERSION;
     }
 
+    /**
+     * The internal protocol version to use for the next request. Same as
+     * {@link #getInternalProtocolVersion()} unless the server has been found
+     * to not understand multiplexed requests.
+     */
+    private byte internalProtocolVersion()
+    {
+        return legacyServer ? Server.LEGACY_INTERNAL_PROTOCOL_VERSION : getInternalProtocolVersion();
+    }
+
     protected <R> Response<R> sendRequest( RequestType<M> type, SlaveContext context,
             Serializer serializer, Deserializer<R> deserializer )
     {
@@ -184,41 +255,84 @@ public abstract class Client<M> implements ChannelPipelineFactory
 
     protected <R> Response<R> sendRequest( RequestType<M> type, SlaveContext context,
             Serializer serializer, Deserializer<R> deserializer, StoreId specificStoreId )
+    {
+        byte internalProtocolVersion = internalProtocolVersion();
+        if ( Server.isMultiplexing( internalProtocolVersion ) )
+        {
+            return sendMultiplexedRequest( internalProtocolVersion, type, context, serializer, deserializer,
+                    specificStoreId );
+        }
+        return sendRequestOverOwnChannel( internalProtocolVersion, type, context, serializer, deserializer,
+                specificStoreId );
+    }
+
+    private <R> Response<R> sendMultiplexedRequest( byte internalProtocolVersion, RequestType<M> type,
+            SlaveContext context, Serializer serializer, Deserializer<R> deserializer, StoreId specificStoreId )
+    {
+        boolean success = true;
+        MultiplexedChannel channel = null;
+        int correlationId = 0;
+        ByteBuffer temporaryBuffer = null;
+        try
+        {
+            channel = getMultiplexedChannel( internalProtocolVersion );
+            MultiplexedChannel.ResponseQueue queue = channel.new ResponseQueue();
+            correlationId = channel.register( queue );
+            temporaryBuffer = acquireTemporaryBuffer();
+            ChunkingChannelBuffer chunkingBuffer = new ChunkingChannelBuffer( bufferPool.acquireChannelBuffer(),
+                    channel.channel(), frameLength, internalProtocolVersion, applicationProtocolVersion,
+                    correlationId, null, flowControl, bufferPool );
+            writeRequest( type, context, serializer, chunkingBuffer, temporaryBuffer );
+            return readResponse( internalProtocolVersion, type, deserializer, specificStoreId,
+                    channel.new ResponseReader( queue, correlationId ), temporaryBuffer,
+                    multiplexedRequestReleaser( channel, correlationId, temporaryBuffer ) );
+        }
+        catch ( Throwable e )
+        {
+            success = false;
+            if ( e instanceof IllegalProtocolVersionException && channel != null && channel.legacyPeerDetected() )
+            {   // The server doesn't understand multiplexed requests. Nothing was done on
+                // the server side so it's safe to send the request again, the old way.
+                fallBackToLegacyProtocol();
+                return sendRequestOverOwnChannel( Server.LEGACY_INTERNAL_PROTOCOL_VERSION, type, context,
+                        serializer, deserializer, specificStoreId );
+            }
+            throw Exceptions.launderedException( ComException.class, e );
+        }
+        finally
+        {
+            /*
+             * Otherwise the user must call response.close() to prevent resource leaks.
+             * The channel is shared with other requests so it's left open, unless the
+             * response timed out, whatever the server sends for this request from now
+             * on is just dropped.
+             */
+            if ( !success )
+            {
+                if ( channel != null ) channel.unregister( correlationId );
+                if ( temporaryBuffer != null ) releaseTemporaryBuffer( temporaryBuffer );
+            }
+        }
+    }
+
+    private <R> Response<R> sendRequestOverOwnChannel( byte internalProtocolVersion, RequestType<M> type,
+            SlaveContext context, Serializer serializer, Deserializer<R> deserializer, StoreId specificStoreId )
     {
         boolean success = true;
         Triplet<Channel, ChannelBuffer, ByteBuffer> channelContext = null;
         try
         {
-            // Send 'em over the wire
             channelContext = getChannel( type );
             Channel channel = channelContext.first();
             channelContext.second().clear();
             ChunkingChannelBuffer chunkingBuffer = new ChunkingChannelBuffer( channelContext.second(),
-                    channel, frameLength, getInternalProtocolVersion(), applicationProtocolVersion );
-            chunkingBuffer.writeByte( type.id() );
-            writeContext( type, context, chunkingBuffer );
-            serializer.write( chunkingBuffer, channelContext.third() );
-            chunkingBuffer.done();
-
-            // Read the response
+                    channel, frameLength, internalProtocolVersion, applicationProtocolVersion );
             @SuppressWarnings( "unchecked" )
             BlockingReadHandler<ChannelBuffer> reader = (BlockingReadHandler<ChannelBuffer>)
-                    channel.getPipeline().get( "blockingHandler" );
-            DechunkingChannelBuffer dechunkingBuffer = new DechunkingChannelBuffer( reader, getReadTimeout( type, readTimeout ),
-                    getInternalProtocolVersion(), applicationProtocolVersion );
-
-            R response = deserializer.read( dechunkingBuffer, channelContext.third() );
-            StoreId storeId = readStoreId( dechunkingBuffer, channelContext.third() );
-            if ( shouldCheckStoreId( type ) )
-            {
-                // specificStoreId is there as a workaround for then the graphDb isn't initialized yet
-                if ( specificStoreId != null ) assertCorrectStoreId( storeId, specificStoreId );
-                else assertCorrectStoreId( storeId, getMyStoreId() );
-            }
-            TransactionStream txStreams = readTransactionStreams(
-                    dechunkingBuffer, channelPool );
-            return new Response<R>( response, storeId, txStreams,
-                    resourcePoolReleaser );
+                    channel.getPipeline().get( BLOCKING_HANDLER );
+            writeRequest( type, context, serializer, chunkingBuffer, channelContext.third() );
+            return readResponse( internalProtocolVersion, type, deserializer, specificStoreId, reader,
+                    channelContext.third(), resourcePoolReleaser );
         }
         catch ( Throwable e )
         {
@@ -241,6 +355,336 @@ public abstract class Client<M> implements ChannelPipelineFactory
         }
     }
 
+    /**
+     * Sends a request without waiting for the response. The returned future is
+     * completed when the response has been received up to its transactions,
+     * which are received as they are read, so many requests can be in flight
+     * from the same thread at the same time.
+     *
+     * If the server doesn't support multiplexing the request is sent
+     * synchronously and an already completed future is returned.
+     */
+    protected <R> ResponseFuture<R> sendRequestAsync( RequestType<M> type, SlaveContext context,
+            Serializer serializer, Deserializer<R> deserializer )
+    {
+        byte internalProtocolVersion = internalProtocolVersion();
+        if ( !Server.isMultiplexing( internalProtocolVersion ) )
+        {
+            try
+            {
+                return ResponseFuture.completed( sendRequestOverOwnChannel( internalProtocolVersion, type, context,
+                        serializer, deserializer, null ) );
+            }
+            catch ( Throwable e )
+            {
+                return ResponseFuture.failed( e );
+            }
+        }
+
+        MultiplexedChannel channel = null;
+        int correlationId = 0;
+        ByteBuffer temporaryBuffer = null;
+        try
+        {
+            channel = getMultiplexedChannel( internalProtocolVersion );
+            AsyncResponse<R> response = new AsyncResponse<R>( channel, internalProtocolVersion, type, context,
+                    serializer, deserializer );
+            correlationId = channel.register( response.chunks );
+            response.correlationId = correlationId;
+            temporaryBuffer = acquireTemporaryBuffer();
+            writeRequest( type, context, serializer, new ChunkingChannelBuffer( bufferPool.acquireChannelBuffer(),
+                    channel.channel(), frameLength, internalProtocolVersion, applicationProtocolVersion,
+                    correlationId, null, flowControl, bufferPool ), temporaryBuffer );
+            return response.future;
+        }
+        catch ( Throwable e )
+        {
+            if ( channel != null ) channel.unregister( correlationId );
+            return ResponseFuture.failed( e );
+        }
+        finally
+        {
+            if ( temporaryBuffer != null ) releaseTemporaryBuffer( temporaryBuffer );
+        }
+    }
+
+    /**
+     * Collects the chunks of a response to a request sent with
+     * {@link Client#sendRequestAsync(RequestType, SlaveContext, Serializer, Deserializer)}
+     * and, from when the first one has arrived, reads the response in the completion
+     * executor, not to hold up the Netty I/O thread.
+     */
+    private class AsyncResponse<R> implements Runnable
+    {
+        private final MultiplexedChannel.ResponseQueue chunks;
+        private final MultiplexedChannel channel;
+        private final byte internalProtocolVersion;
+        private final RequestType<M> type;
+        private final SlaveContext context;
+        private final Serializer serializer;
+        private final Deserializer<R> deserializer;
+        private final ResponseFuture<R> future;
+        private volatile int correlationId;
+
+        AsyncResponse( final MultiplexedChannel channel, byte internalProtocolVersion, RequestType<M> type,
+                SlaveContext context, Serializer serializer, Deserializer<R> deserializer )
+        {
+            this.channel = channel;
+            this.internalProtocolVersion = internalProtocolVersion;
+            this.type = type;
+            this.context = context;
+            this.serializer = serializer;
+            this.deserializer = deserializer;
+            this.future = new ResponseFuture<R>( getReadTimeout( type, readTimeout ), new ResourceReleaser()
+            {
+                @Override
+                public void release()
+                {   // See MultiplexedChannel.ResponseReader
+                    channel.abandon( correlationId );
+                }
+            } );
+            // Reading starts with the first chunk, the rest are read as they arrive
+            this.chunks = channel.new ResponseQueue( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    startReading();
+                }
+            } );
+        }
+
+        private void startReading()
+        {
+            try
+            {
+                completionExecutor.execute( this );
+            }
+            catch ( RejectedExecutionException e )
+            {   // Shutting down
+                channel.unregister( correlationId );
+                future.fail( new ComException( "Client has been shut down", e ) );
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            boolean success = false;
+            ByteBuffer temporaryBuffer = acquireTemporaryBuffer();
+            try
+            {
+                future.complete( readResponse( internalProtocolVersion, type, deserializer, null,
+                        channel.new ResponseReader( chunks, correlationId ), temporaryBuffer,
+                        multiplexedRequestReleaser( channel, correlationId, temporaryBuffer ) ) );
+                success = true;
+            }
+            catch ( Throwable e )
+            {
+                if ( e instanceof IllegalProtocolVersionException && channel.legacyPeerDetected() )
+                {   // See sendMultiplexedRequest
+                    fallBackToLegacyProtocol();
+                    try
+                    {
+                        future.complete( sendRequestOverOwnChannel( Server.LEGACY_INTERNAL_PROTOCOL_VERSION, type,
+                                context, serializer, deserializer, null ) );
+                    }
+                    catch ( Throwable retryFailure )
+                    {
+                        future.fail( retryFailure );
+                    }
+                }
+                else
+                {
+                    future.fail( e );
+                }
+            }
+            finally
+            {
+                if ( !success )
+                {
+                    channel.unregister( correlationId );
+                    releaseTemporaryBuffer( temporaryBuffer );
+                }
+            }
+        }
+    }
+
+    private void writeRequest( RequestType<M> type, SlaveContext context, Serializer serializer,
+            ChunkingChannelBuffer chunkingBuffer, ByteBuffer temporaryBuffer ) throws IOException
+    {
+        // Send 'em over the wire
+        chunkingBuffer.writeByte( type.id() );
+        writeContext( type, context, chunkingBuffer );
+        serializer.write( chunkingBuffer, temporaryBuffer );
+        chunkingBuffer.done();
+    }
+
+    private <R> Response<R> readResponse( byte internalProtocolVersion, RequestType<M> type,
+            Deserializer<R> deserializer, StoreId specificStoreId, BlockingReadHandler<ChannelBuffer> reader,
+            ByteBuffer temporaryBuffer, ResourceReleaser releaser ) throws IOException
+    {
+        DechunkingChannelBuffer dechunkingBuffer = new DechunkingChannelBuffer( reader, getReadTimeout( type, readTimeout ),
+                internalProtocolVersion, applicationProtocolVersion, compression, frameLength );
+
+        R response = deserializer.read( dechunkingBuffer, temporaryBuffer );
+        StoreId storeId = readStoreId( dechunkingBuffer, temporaryBuffer );
+        if ( shouldCheckStoreId( type ) )
+        {
+            // specificStoreId is there as a workaround for then the graphDb isn't initialized yet
+            if ( specificStoreId != null ) assertCorrectStoreId( storeId, specificStoreId );
+            else assertCorrectStoreId( storeId, getMyStoreId() );
+        }
+        TransactionStream txStreams = readTransactionStreams( dechunkingBuffer );
+        return new Response<R>( response, storeId, txStreams, releaser );
+    }
+
+    private MultiplexedChannel getMultiplexedChannel( byte internalProtocolVersion )
+    {
+        int slot;
+        int generation;
+        synchronized ( multiplexedChannels )
+        {
+            for ( ;; )
+            {
+                // Pick the least busy channel, but rather open a new one than share
+                // a busy one if there's room for it.
+                MultiplexedChannel best = null;
+                int free = -1;
+                for ( int i = 0; i < multiplexedChannels.length; i++ )
+                {
+                    MultiplexedChannel candidate = multiplexedChannels[i];
+                    if ( connecting[i] ) continue;
+                    if ( candidate == null || !candidate.isAlive() )
+                    {
+                        if ( free == -1 ) free = i;
+                    }
+                    else if ( best == null || isLessBusy( candidate, best ) )
+                    {
+                        best = candidate;
+                    }
+                }
+                if ( free != -1 && (best == null || best.pendingRequests() > 0 || best.isSuspended()) )
+                {
+                    connecting[free] = true;
+                    slot = free;
+                    generation = channelsGeneration;
+                    break;
+                }
+                if ( best != null ) return best;
+                // Every slot is being connected, wait for one of them
+                try
+                {
+                    multiplexedChannels.wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new ComException( e );
+                }
+            }
+        }
+
+        // The slot is reserved, connect without holding up requests picking the other channels
+        MultiplexedChannel channel = null;
+        try
+        {
+            channel = new MultiplexedChannel( connect(), BLOCKING_HANDLER, internalProtocolVersion );
+            return channel;
+        }
+        finally
+        {
+            synchronized ( multiplexedChannels )
+            {
+                if ( generation == channelsGeneration )
+                {
+                    multiplexedChannels[slot] = channel;
+                    connecting[slot] = false;
+                }
+                else if ( channel != null )
+                {   // The channels were closed while connecting
+                    channel.close();
+                }
+                multiplexedChannels.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * A channel suspended until a big response is read further is busier than
+     * any that isn't, since nothing is received over it meanwhile.
+     */
+    private static boolean isLessBusy( MultiplexedChannel candidate, MultiplexedChannel than )
+    {
+        if ( candidate.isSuspended() != than.isSuspended() ) return than.isSuspended();
+        return candidate.pendingRequests() < than.pendingRequests();
+    }
+
+    private ResourceReleaser multiplexedRequestReleaser( final MultiplexedChannel channel, final int correlationId,
+            final ByteBuffer temporaryBuffer )
+    {
+        return new ResourceReleaser()
+        {
+            public void release()
+            {
+                channel.unregister( correlationId );
+                releaseTemporaryBuffer( temporaryBuffer );
+            }
+        };
+    }
+
+    private void fallBackToLegacyProtocol()
+    {
+        if ( legacyServer ) return;
+        msgLog.logMessage( address + " doesn't support multiplexed requests, falling back to internal protocol version " +
+                Server.LEGACY_INTERNAL_PROTOCOL_VERSION, true );
+        legacyServer = true;
+        closeMultiplexedChannels();
+    }
+
+    private void closeMultiplexedChannels()
+    {
+        synchronized ( multiplexedChannels )
+        {
+            for ( int i = 0; i < multiplexedChannels.length; i++ )
+            {
+                if ( multiplexedChannels[i] != null ) multiplexedChannels[i].close();
+                multiplexedChannels[i] = null;
+                connecting[i] = false;
+            }
+            channelsGeneration++;
+            multiplexedChannels.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks, at most the read timeout, while as many temporary buffers as there
+     * may be pooled channels are held by requests in flight.
+     */
+    private ByteBuffer acquireTemporaryBuffer()
+    {
+        try
+        {
+            if ( !temporaryBuffers.tryAcquire( readTimeout, TimeUnit.SECONDS ) )
+            {
+                msgLog.logMessage( "Unable to acquire temporary buffer for a multiplexed request" );
+                throw new ComException( "Unable to acquire temporary buffer for a multiplexed request" );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ComException( e );
+        }
+        return bufferPool.acquireByteBuffer( TEMPORARY_BUFFER_SIZE );
+    }
+
+    private void releaseTemporaryBuffer( ByteBuffer buffer )
+    {
+        bufferPool.release( buffer );
+        temporaryBuffers.release();
+    }
+
     protected int getReadTimeout( RequestType<M> type, int readTimeout )
     {
         return readTimeout;
@@ -320,13 +764,15 @@ public abstract class Client<M> implements ChannelPipelineFactory
         addLengthFieldPipes( pipeline, frameLength );
         BlockingReadHandler<ChannelBuffer> reader = new BlockingReadHandler<ChannelBuffer>(
                 new ArrayBlockingQueue<ChannelEvent>( 3, false ) );
-        pipeline.addLast( "blockingHandler", reader );
+        pipeline.addLast( BLOCKING_HANDLER, reader );
         return pipeline;
     }
 
     public void shutdown()
     {
         channelPool.close( true );
+        closeMultiplexedChannels();
+        completionExecutor.shutdown();
         executor.shutdownNow();
         msgLog.logMessage( toString() + " shutdown", true );
     }
@@ -337,11 +783,10 @@ public abstract class Client<M> implements ChannelPipelineFactory
         return getClass().getSimpleName() + "[" + address + "]";
     }
 
-    protected static TransactionStream readTransactionStreams(
-            final ChannelBuffer buffer,
-            final ResourcePool<Triplet<Channel, ChannelBuffer, ByteBuffer>> resourcePool )
+    protected static TransactionStream readTransactionStreams( final ChannelBuffer buffer )
     {
         final String[] datasources = readTransactionStreamHeader( buffer );
+        final boolean largeBlocks = BlockLogBuffer.largeBlocksFor( buffer );
 
         if ( datasources.length == 1 )
         {
@@ -353,11 +798,11 @@ public abstract class Client<M> implements ChannelPipelineFactory
             @Override
             protected Triplet<String, Long, TxExtractor> fetchNextOrNull()
             {
-                makeSureNextTransactionIsFullyFetched( buffer );
+                makeSureNextTransactionIsFullyFetched( buffer, largeBlocks );
                 String datasource = datasources[buffer.readUnsignedByte()];
                 if ( datasource == null ) return null;
                 long txId = buffer.readLong();
-                TxExtractor extractor = TxExtractor.create( new BlockLogReader( buffer ) );
+                TxExtractor extractor = TxExtractor.create( new BlockLogReader( buffer, largeBlocks ) );
                 return Triplet.of( datasource, txId, extractor );
             }
 
@@ -381,7 +826,7 @@ public abstract class Client<M> implements ChannelPipelineFactory
         return datasources;
     }
 
-    private static void makeSureNextTransactionIsFullyFetched( ChannelBuffer buffer )
+    private static void makeSureNextTransactionIsFullyFetched( ChannelBuffer buffer, boolean largeBlocks )
     {
         buffer.markReaderIndex();
         try
@@ -389,12 +834,7 @@ public abstract class Client<M> implements ChannelPipelineFactory
             if ( buffer.readUnsignedByte() > 0 /* datasource id */ )
             {
                 buffer.skipBytes( 8 ); // tx id
-                int blockSize = 0;
-                while ( (blockSize = buffer.readUnsignedByte()) == 0 )
-                {
-                    buffer.skipBytes( BlockLogBuffer.DATA_SIZE );
-                }
-                buffer.skipBytes( blockSize );
+                BlockLogReader.skipBlocks( buffer, largeBlocks );
             }
         }
         finally
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Compression of the content of chunks, see {@link ChunkingChannelBuffer}, and
+ * the metrics for it. Which codec and level to compress with is decided by the
+ * sending side, responses are only compressed for requests in an internal
+ * protocol version where chunks can be marked as compressed, see
+ * {@link Server#isMultiplexing(byte)}. Chunks that don't get any smaller are
+ * sent as they are.
+ *
+ * Compressed content is the uncompressed length followed by the compressed
+ * bytes.
+ */
+public class Compression
+{
+    public static final String NONE = "none";
+    public static final String DEFLATE = "deflate";
+    // Small chunks, f.ex. most responses without transactions, aren't worth the effort
+    private static final int MIN_LENGTH = 128;
+    private static final int MAX_REUSED_LENGTH = 256 * 1024;
+
+    private final String codec;
+    private final int level;
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+    private final AtomicLong bytesBeforeDecompression = new AtomicLong();
+    private final AtomicLong decompressionNanos = new AtomicLong();
+    // Deflaters and inflaters are expensive to create, so each thread reuses its own
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>()
+    {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater( level );
+        }
+    };
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>()
+    {
+        @Override
+        protected Inflater initialValue()
+        {
+            return new Inflater();
+        }
+    };
+    private final ThreadLocal<byte[]> inputs = new ByteArrays();
+    private final ThreadLocal<byte[]> outputs = new ByteArrays();
+
+    /**
+     * No compression of chunks sent, but still keeps metrics of decompressed chunks.
+     */
+    public Compression()
+    {
+        this( NONE, 0 );
+    }
+
+    public Compression( String codec, int level )
+    {
+        if ( !NONE.equals( codec ) && !DEFLATE.equals( codec ) )
+        {
+            throw new IllegalArgumentException( "Unknown compression codec '" + codec + "'" );
+        }
+        if ( level < 0 || level > 9 )
+        {
+            throw new IllegalArgumentException( "Compression level must be 0-9, was " + level );
+        }
+        this.codec = codec;
+        this.level = level;
+    }
+
+    public boolean compresses()
+    {
+        return DEFLATE.equals( codec );
+    }
+
+    /**
+     * @return the compressed {@code length} bytes of {@code source} starting at
+     * {@code index}, or {@code null} if compressing didn't make them smaller.
+     */
+    ChannelBuffer compress( ChannelBuffer source, int index, int length )
+    {
+        if ( length < MIN_LENGTH ) return null;
+        long time = System.nanoTime();
+        // Not interested in the result if it isn't smaller
+        byte[] output = scratch( outputs, length );
+        Deflater deflater = deflaters.get();
+        int compressedLength;
+        try
+        {
+            if ( source.hasArray() )
+            {
+                deflater.setInput( source.array(), source.arrayOffset() + index, length );
+            }
+            else
+            {
+                byte[] input = scratch( inputs, length );
+                source.getBytes( index, input, 0, length );
+                deflater.setInput( input, 0, length );
+            }
+            deflater.finish();
+            compressedLength = deflater.deflate( output, 0, length );
+            if ( !deflater.finished() || compressedLength + 4 >= length )
+            {
+                compressedLength = -1;
+            }
+        }
+        finally
+        {
+            deflater.reset();
+        }
+        bytesBeforeCompression.addAndGet( length );
+        bytesAfterCompression.addAndGet( compressedLength == -1 ? length : compressedLength + 4 );
+        compressionNanos.addAndGet( System.nanoTime() - time );
+        if ( compressedLength == -1 ) return null;
+
+        ChannelBuffer result = ChannelBuffers.buffer( compressedLength + 4 );
+        result.writeInt( length );
+        result.writeBytes( output, 0, compressedLength );
+        return result;
+    }
+
+    /**
+     * Runs on the Netty I/O thread on the server side, so the length read from
+     * the chunk is checked before anything is allocated for it.
+     *
+     * @param maxLength the most bytes the content can decompress to, i.e. the
+     * frame length, since chunks are compressed one by one.
+     * @return the decompressed content of the readable bytes of {@code source}.
+     */
+    ChannelBuffer decompress( ChannelBuffer source, int maxLength )
+    {
+        long time = System.nanoTime();
+        int length = source.readInt();
+        if ( length < 0 || length > maxLength )
+        {
+            throw new ComException( "Corrupt compressed chunk, can't decompress to " + length +
+                    " bytes with frame length " + maxLength );
+        }
+        int compressedLength = source.readableBytes();
+        byte[] output = new byte[length];
+        Inflater inflater = inflaters.get();
+        try
+        {
+            if ( source.hasArray() )
+            {
+                inflater.setInput( source.array(), source.arrayOffset() + source.readerIndex(), compressedLength );
+            }
+            else
+            {
+                byte[] input = scratch( inputs, compressedLength );
+                source.getBytes( source.readerIndex(), input, 0, compressedLength );
+                inflater.setInput( input, 0, compressedLength );
+            }
+            source.skipBytes( compressedLength );
+            int inflated = inflater.inflate( output );
+            if ( inflated != length || !inflater.finished() )
+            {
+                throw new ComException( "Corrupt compressed chunk, expected " + length +
+                        " bytes but got " + inflated );
+            }
+        }
+        catch ( DataFormatException e )
+        {
+            throw new ComException( "Corrupt compressed chunk", e );
+        }
+        finally
+        {
+            inflater.reset();
+        }
+        bytesBeforeDecompression.addAndGet( compressedLength + 4 );
+        decompressionNanos.addAndGet( System.nanoTime() - time );
+        return ChannelBuffers.wrappedBuffer( output );
+    }
+
+    /**
+     * @return an array of at least {@code length} bytes for temporary use by
+     * the calling thread. Arrays for chunks bigger than
+     * {@link #MAX_REUSED_LENGTH} aren't kept, a thread would otherwise hold on
+     * to a whole frame worth of memory for as long as it lives.
+     */
+    private static byte[] scratch( ThreadLocal<byte[]> arrays, int length )
+    {
+        if ( length > MAX_REUSED_LENGTH ) return new byte[length];
+        byte[] array = arrays.get();
+        if ( array.length < length )
+        {
+            array = new byte[Math.max( length, Math.min( array.length * 2, MAX_REUSED_LENGTH ) )];
+            arrays.set( array );
+        }
+        return array;
+    }
+
+    public String getCodec()
+    {
+        return codec;
+    }
+
+    public int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * @return the number of bytes of chunk content that has been considered
+     * for compression.
+     */
+    public long getBytesBeforeCompression()
+    {
+        return bytesBeforeCompression.get();
+    }
+
+    /**
+     * @return the number of bytes actually sent for the chunk content in
+     * {@link #getBytesBeforeCompression()}.
+     */
+    public long getBytesAfterCompression()
+    {
+        return bytesAfterCompression.get();
+    }
+
+    /**
+     * @return sent bytes / bytes before compression, or 1 if nothing has been compressed.
+     */
+    public double getCompressionRatio()
+    {
+        long before = bytesBeforeCompression.get();
+        return before == 0 ? 1.0 : (double) bytesAfterCompression.get() / before;
+    }
+
+    public long getCompressionTimeMillis()
+    {
+        return compressionNanos.get() / 1000000;
+    }
+
+    /**
+     * @return the number of compressed bytes that have been received and decompressed.
+     */
+    public long getBytesBeforeDecompression()
+    {
+        return bytesBeforeDecompression.get();
+    }
+
+    public long getDecompressionTimeMillis()
+    {
+        return decompressionNanos.get() / 1000000;
+    }
+
+    private static class ByteArrays extends ThreadLocal<byte[]>
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[MIN_LENGTH];
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return codec + (compresses() ? " level " + level : "");
+    }
+}
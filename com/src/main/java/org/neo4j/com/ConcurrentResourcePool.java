@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Like {@link ResourcePool}, a resource acquired by a thread is held by that
+ * thread until it releases it and acquiring again meanwhile gives the same
+ * resource. Unlike it no locks are taken: unused resources are kept in a
+ * lock free queue and permits are handed out unfairly, so that a thread
+ * finding a permit available never queues up behind waiting threads.
+ *
+ * Optionally a thread gets back the resource it released last, if no other
+ * thread has taken it since. Resources unused for longer than the idle
+ * timeout are disposed of.
+ */
+public abstract class ConcurrentResourcePool<R>
+{
+    public static final long NO_IDLE_TIMEOUT = 0;
+    // Don't go looking for idle resources more often than this
+    private static final long EVICTION_INTERVAL_MILLIS = 1000;
+
+    private static class ResizableSemaphore extends Semaphore
+    {
+        private int permits;
+
+        ResizableSemaphore( int permits )
+        {
+            super( permits, false );
+            this.permits = permits;
+        }
+
+        synchronized void setPermits( int permits )
+        {
+            if ( permits > this.permits )
+            {
+                release( permits - this.permits );
+            }
+            else if ( permits < this.permits )
+            {
+                reducePermits( this.permits - permits );
+            }
+            this.permits = permits;
+        }
+    }
+
+    private static class Unused<R>
+    {
+        final R resource;
+        final long since;
+
+        Unused( R resource, long since )
+        {
+            this.resource = resource;
+            this.since = since;
+        }
+    }
+
+    private final Queue<Unused<R>> unused = new ConcurrentLinkedQueue<Unused<R>>();
+    private final AtomicInteger unusedCount = new AtomicInteger();
+    private final Map<Thread, R> current = new ConcurrentHashMap<Thread, R>();
+    private final ThreadLocal<Unused<R>> lastReleased;
+    private final ResizableSemaphore resources;
+    private final long idleTimeoutMillis;
+    private volatile int maxUnused;
+    private final AtomicLong lastEviction = new AtomicLong( System.currentTimeMillis() );
+
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong creations = new AtomicLong();
+    private final AtomicLong disposals = new AtomicLong();
+    private final AtomicLong deadResources = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    protected ConcurrentResourcePool( int maxResources, int maxUnused )
+    {
+        this( maxResources, maxUnused, false, NO_IDLE_TIMEOUT );
+    }
+
+    /**
+     * @param threadAffinity whether or not a thread should prefer the resource it released last.
+     * @param idleTimeoutMillis how long a resource may stay unused before it's
+     * disposed of, or {@link #NO_IDLE_TIMEOUT}.
+     */
+    protected ConcurrentResourcePool( int maxResources, int maxUnused, boolean threadAffinity, long idleTimeoutMillis )
+    {
+        this.maxUnused = maxUnused;
+        this.resources = new ResizableSemaphore( maxResources );
+        this.lastReleased = threadAffinity ? new ThreadLocal<Unused<R>>() : null;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    protected abstract R create();
+
+    protected void dispose( R resource )
+    {
+    }
+
+    protected boolean isAlive( R resource )
+    {
+        return true;
+    }
+
+    public final void setMaxResources( int maxResources )
+    {
+        resources.setPermits( maxResources );
+    }
+
+    public final R acquire()
+    {
+        Thread thread = Thread.currentThread();
+        R resource = current.get( thread );
+        if ( resource != null ) return resource;
+
+        if ( !resources.tryAcquire() )
+        {
+            long time = System.nanoTime();
+            resources.acquireUninterruptibly();
+            waits.incrementAndGet();
+            waitNanos.addAndGet( System.nanoTime() - time );
+        }
+        try
+        {
+            evictIdle();
+            resource = reuse();
+            if ( resource == null )
+            {
+                resource = create();
+                creations.incrementAndGet();
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            resources.release();
+            throw e;
+        }
+        current.put( thread, resource );
+        return resource;
+    }
+
+    private R reuse()
+    {
+        Unused<R> candidate = lastReleased != null ? lastReleased.get() : null;
+        if ( candidate != null )
+        {
+            lastReleased.remove();
+            if ( unused.remove( candidate ) )
+            {
+                unusedCount.decrementAndGet();
+                if ( alive( candidate.resource ) ) return candidate.resource;
+            }
+        }
+        for ( Unused<R> next; (next = unused.poll()) != null; )
+        {
+            unusedCount.decrementAndGet();
+            if ( alive( next.resource ) ) return next.resource;
+        }
+        return null;
+    }
+
+    private boolean alive( R resource )
+    {
+        if ( isAlive( resource ) ) return true;
+        deadResources.incrementAndGet();
+        disposeOf( resource );
+        return false;
+    }
+
+    public final void release()
+    {
+        Thread thread = Thread.currentThread();
+        R resource = current.remove( thread );
+        try
+        {
+            if ( resource != null )
+            {
+                if ( unusedCount.incrementAndGet() <= maxUnused )
+                {
+                    Unused<R> entry = new Unused<R>( resource, System.currentTimeMillis() );
+                    unused.offer( entry );
+                    if ( lastReleased != null ) lastReleased.set( entry );
+                }
+                else
+                {
+                    unusedCount.decrementAndGet();
+                    disposeOf( resource );
+                }
+            }
+        }
+        finally
+        {
+            resources.release();
+        }
+        evictIdle();
+    }
+
+    private void evictIdle()
+    {
+        if ( idleTimeoutMillis == NO_IDLE_TIMEOUT ) return;
+        long now = System.currentTimeMillis();
+        long last = lastEviction.get();
+        if ( now - last < EVICTION_INTERVAL_MILLIS || !lastEviction.compareAndSet( last, now ) ) return;
+
+        for ( Iterator<Unused<R>> iterator = unused.iterator(); iterator.hasNext(); )
+        {
+            Unused<R> entry = iterator.next();
+            if ( now - entry.since > idleTimeoutMillis && unused.remove( entry ) )
+            {
+                unusedCount.decrementAndGet();
+                evictions.incrementAndGet();
+                disposeOf( entry.resource );
+            }
+        }
+    }
+
+    private void disposeOf( R resource )
+    {
+        disposals.incrementAndGet();
+        dispose( resource );
+    }
+
+    public final void close( boolean force )
+    {
+        maxUnused = 0;
+        List<R> dead = new ArrayList<R>();
+        for ( Unused<R> next; (next = unused.poll()) != null; )
+        {
+            unusedCount.decrementAndGet();
+            dead.add( next.resource );
+        }
+        if ( force ) dead.addAll( current.values() );
+        for ( R resource : dead )
+        {
+            disposeOf( resource );
+        }
+    }
+
+    /**
+     * @return the number of times a thread had to wait for a resource to be released.
+     */
+    public long getWaits()
+    {
+        return waits.get();
+    }
+
+    public long getWaitTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( waitNanos.get() );
+    }
+
+    public long getCreations()
+    {
+        return creations.get();
+    }
+
+    public long getDisposals()
+    {
+        return disposals.get();
+    }
+
+    /**
+     * @return the number of unused resources found to be no longer alive, see {@link #isAlive(Object)}.
+     */
+    public long getDeadResources()
+    {
+        return deadResources.get();
+    }
+
+    /**
+     * @return the number of resources disposed of for being unused longer than the idle timeout.
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public int getUnused()
+    {
+        return unusedCount.get();
+    }
+}
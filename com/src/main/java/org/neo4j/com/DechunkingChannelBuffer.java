@@ -48,10 +48,25 @@ public class DechunkingChannelBuffer implements ChannelBuffer
     private boolean failure;
     private final byte applicationProtocolVersion;
     private final byte internalProtocolVersion;
+    private final Compression compression;
+    private final int frameLength;
 
     DechunkingChannelBuffer( BlockingReadHandler<ChannelBuffer> reader, int timeoutSeconds, byte internalProtocolVersion,
             byte applicationProtocolVersion )
     {
+        this( reader, timeoutSeconds, internalProtocolVersion, applicationProtocolVersion, new Compression(),
+                Protocol.DEFAULT_FRAME_LENGTH );
+    }
+
+    /**
+     * @param compression decompresses chunks marked as compressed and keeps the metrics for it.
+     * @param frameLength the most a compressed chunk may decompress to.
+     */
+    DechunkingChannelBuffer( BlockingReadHandler<ChannelBuffer> reader, int timeoutSeconds, byte internalProtocolVersion,
+            byte applicationProtocolVersion, Compression compression, int frameLength )
+    {
+        this.compression = compression;
+        this.frameLength = frameLength;
         this.reader = reader;
         this.timeoutSeconds = timeoutSeconds;
         this.internalProtocolVersion = internalProtocolVersion;
@@ -59,6 +74,11 @@ public class DechunkingChannelBuffer implements ChannelBuffer
         readNextChunk();
     }
     
+    byte getInternalProtocolVersion()
+    {
+        return internalProtocolVersion;
+    }
+
     protected ChannelBuffer readNext()
     {
         try
@@ -96,12 +116,22 @@ public class DechunkingChannelBuffer implements ChannelBuffer
          * [    ,    ][    ,   x] 0: last chunk in message, 1: there a more chunks after this one
          * [    ,    ][    ,  x ] 0: success, 1: failure
          * [    ,    ][xxxx,xx  ] internal protocol version
-         * [xxxx,xxxx][    ,    ] application protocol version */
+         * [xxxx,xxxx][    ,    ] application protocol version
+         * followed by a 4 byte correlation id and a flags byte for multiplexing internal protocol versions */
         byte[] header = new byte[2];
         readBuffer.readBytes( header );
         more = (header[0] & 0x1) != 0;
         failure = (header[0] & 0x2) != 0;
         assertSameProtocolVersion( header, internalProtocolVersion, applicationProtocolVersion );
+        if ( Server.isMultiplexing( internalProtocolVersion ) )
+        {
+            // The chunk has already been routed to us by its correlation id
+            readBuffer.skipBytes( 4 );
+            if ( (readBuffer.readByte() & ChunkingChannelBuffer.FLAG_COMPRESSED) != 0 )
+            {
+                readBuffer = compression.decompress( readBuffer, frameLength );
+            }
+        }
         
         if ( !more && buffer == null )
         {
@@ -109,6 +139,12 @@ public class DechunkingChannelBuffer implements ChannelBuffer
             // in this message.
             buffer = readBuffer;
         }
+        else if ( buffer != null && !buffer.readable() && !hasMarkedReaderIndex )
+        {
+            // Optimization: everything so far has been read, no need to copy
+            // the new chunk over to the old buffer, f.ex. with big store files.
+            buffer = readBuffer;
+        }
         else
         {
             buffer = buffer == null ? ChannelBuffers.dynamicBuffer() : buffer;
@@ -130,7 +166,7 @@ public class DechunkingChannelBuffer implements ChannelBuffer
          * It's highly unlikely that instances that are so far apart in versions will communicate
          * with each other.
          */ 
-        byte readInternalProtocolVersion = (byte) ((header[0] & 0x7C) >>> 2);
+        byte readInternalProtocolVersion = internalProtocolVersion( header[0] );
         if ( readInternalProtocolVersion != internalProtocolVersion )
         {
             throw new IllegalProtocolVersionException( "Unexpected internal protocol version " + readInternalProtocolVersion +
@@ -143,6 +179,11 @@ public class DechunkingChannelBuffer implements ChannelBuffer
         }
     }
 
+    static byte internalProtocolVersion( byte headerByte )
+    {
+        return (byte) ((headerByte & 0x7C) >>> 2);
+    }
+
     private Throwable readAndThrowFailureResponse()
     {
         Throwable cause = null;
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * The counterpart of {@link ChunkingChannelBuffer#writeFileRegion(java.nio.channels.FileChannel, long)},
+ * reads a known number of raw bytes from a {@link ChannelBuffer}. Unlike
+ * {@link BlockLogReader} there's no block format to unpack, so the bytes are
+ * copied into the target buffer in runs as big as what has been received so far.
+ */
+public class FileRegionReader implements ReadableByteChannel
+{
+    private final ChannelBuffer source;
+    private long remaining;
+
+    public FileRegionReader( ChannelBuffer source, long length )
+    {
+        this.source = source;
+        this.remaining = length;
+    }
+
+    public boolean isOpen()
+    {
+        return true;
+    }
+
+    public void close() throws IOException
+    {
+        // Leave the reader index of the source after the data, even if it
+        // wasn't all read.
+        while ( remaining > 0 )
+        {
+            int toSkip = (int) Math.min( remaining, Math.max( source.readableBytes(), 1 ) );
+            source.skipBytes( toSkip );
+            remaining -= toSkip;
+        }
+    }
+
+    public int read( ByteBuffer dst ) throws IOException
+    {
+        if ( remaining == 0 )
+        {
+            return -1;
+        }
+
+        int bytesRead = 0;
+        while ( dst.hasRemaining() && remaining > 0 )
+        {
+            /*
+             * Read what's already there in one go. If nothing is, asking for
+             * a single byte makes the source receive the next chunk.
+             */
+            int toRead = (int) Math.min( Math.min( dst.remaining(), remaining ),
+                    Math.max( source.readableBytes(), 1 ) );
+            ByteBuffer slice = dst.slice();
+            slice.limit( toRead );
+            source.readBytes( slice );
+            dst.position( dst.position() + toRead );
+            remaining -= toRead;
+            bytesRead += toRead;
+        }
+        return bytesRead;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How many chunks a {@link ChunkingChannelBuffer} may have written to the
+ * channel, but not yet seen written to the socket, before the writing thread
+ * has to wait for the other side to catch up. A larger window keeps fast links
+ * with a long round trip busy at the cost of more memory held per response.
+ *
+ * Also keeps track of how often, and for how long, writers have had to wait.
+ */
+public class FlowControl
+{
+    public static final int DEFAULT_MAX_WRITE_AHEAD_CHUNKS = 5;
+
+    private final int maxWriteAheadChunks;
+    private final AtomicLong stalls = new AtomicLong();
+    private final AtomicLong stallNanos = new AtomicLong();
+
+    public FlowControl()
+    {
+        this( DEFAULT_MAX_WRITE_AHEAD_CHUNKS );
+    }
+
+    public FlowControl( int maxWriteAheadChunks )
+    {
+        if ( maxWriteAheadChunks < 1 )
+        {
+            throw new IllegalArgumentException( "Max write ahead chunks must be positive, was " + maxWriteAheadChunks );
+        }
+        this.maxWriteAheadChunks = maxWriteAheadChunks;
+    }
+
+    public int getMaxWriteAheadChunks()
+    {
+        return maxWriteAheadChunks;
+    }
+
+    void stalled( long nanos )
+    {
+        stalls.incrementAndGet();
+        stallNanos.addAndGet( nanos );
+    }
+
+    /**
+     * @return the number of times a writer had to wait for the window to open up.
+     */
+    public long getStalls()
+    {
+        return stalls.get();
+    }
+
+    public long getStallTimeMillis()
+    {
+        return stallNanos.get() / 1000000;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "window of " + maxWriteAheadChunks + " chunks";
+    }
+}
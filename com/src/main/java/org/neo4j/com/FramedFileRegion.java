@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.jboss.netty.channel.FileRegion;
+
+/**
+ * A chunk, see {@link ChunkingChannelBuffer}, whose content is a region of a
+ * file. The frame length and chunk header are written first and then the file
+ * region is transferred straight from the file to the socket with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, never
+ * passing through the heap.
+ *
+ * The file isn't owned by this region, whoever opened it closes it.
+ */
+class FramedFileRegion implements FileRegion
+{
+    private final ByteBuffer header;
+    private final int headerLength;
+    private final FileChannel file;
+    private final long position;
+    private final long count;
+
+    FramedFileRegion( ByteBuffer header, FileChannel file, long position, long count )
+    {
+        this.header = header;
+        this.headerLength = header.remaining();
+        this.file = file;
+        this.position = position;
+        this.count = count;
+    }
+
+    @Override
+    public long getPosition()
+    {
+        return position;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return headerLength + count;
+    }
+
+    @Override
+    public long transferTo( WritableByteChannel target, long transferred ) throws IOException
+    {
+        if ( transferred < headerLength )
+        {
+            header.position( (int) transferred );
+            return target.write( header );
+        }
+        long fileTransferred = transferred - headerLength;
+        return file.transferTo( position + fileTransferred, count - fileTransferred, target );
+    }
+
+    @Override
+    public void releaseExternalResources()
+    {   // The file is closed by its owner
+    }
+}
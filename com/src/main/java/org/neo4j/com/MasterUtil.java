@@ -24,6 +24,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -31,10 +32,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.neo4j.com.SlaveContext.Tx;
 import org.neo4j.graphdb.event.ErrorState;
-import org.neo4j.helpers.Exceptions;
 import org.neo4j.helpers.Predicate;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.helpers.collection.ClosableIterable;
@@ -119,69 +120,284 @@ public class MasterUtil
 
     public static SlaveContext rotateLogsAndStreamStoreFiles( GraphDatabaseAPI graphDb,
             boolean includeLogicalLogs, StoreWriter writer )
+    {
+        return rotateLogsAndStreamStoreFiles( graphDb, includeLogicalLogs,
+                Collections.<String, StoreFilePrefix>emptyMap(), writer );
+    }
+
+    /**
+     * Like {@link #rotateLogsAndStreamStoreFiles(GraphDatabaseAPI, boolean, StoreWriter)},
+     * but resumes a copy of which the receiver already has {@code resumeFrom},
+     * see {@link #streamStoreFile(String, File, StoreFilePrefix, StoreWriter, ByteBuffer)}.
+     */
+    public static SlaveContext rotateLogsAndStreamStoreFiles( GraphDatabaseAPI graphDb,
+            boolean includeLogicalLogs, Map<String, StoreFilePrefix> resumeFrom, StoreWriter writer )
     {
         File baseDir = getBaseDir( graphDb );
         XaDataSourceManager dsManager =
                 graphDb.getXaDataSourceManager();
         SlaveContext context = SlaveContext.anonymous( rotateLogs( graphDb ) );
-        ByteBuffer temporaryBuffer = ByteBuffer.allocateDirect( 1024*1024 );
-        for ( XaDataSource ds : dsManager.getAllRegisteredDataSources() )
+        ByteBuffer temporaryBuffer = BufferPool.SHARED.acquireByteBuffer( 1024*1024 );
+        try
         {
-            try
+            for ( XaDataSource ds : dsManager.getAllRegisteredDataSources() )
             {
-                ClosableIterable<File> files = ds.listStoreFiles( includeLogicalLogs );
                 try
                 {
-                    for ( File storefile : files )
+                    ClosableIterable<File> files = ds.listStoreFiles( includeLogicalLogs );
+                    try
                     {
-                        FileInputStream stream = new FileInputStream( storefile );
-                        try
+                        for ( File storefile : files )
                         {
-                            writer.write( relativePath( baseDir, storefile ), stream.getChannel(), temporaryBuffer,
-                                    storefile.length() > 0 );
-                        }
-                        finally
-                        {
-                            stream.close();
+                            String path = relativePath( baseDir, storefile );
+                            streamStoreFile( path, storefile, resumeFrom.get( path ), writer, temporaryBuffer );
                         }
                     }
+                    finally
+                    {
+                        files.close();
+                    }
+                }
+                catch ( IOException e )
+                {
+                    throw new MasterFailureException( e );
+                }
+            }
+        }
+        finally
+        {
+            BufferPool.SHARED.release( temporaryBuffer );
+        }
+        return context;
+    }
+
+    /**
+     * Writes {@code file} to {@code writer} as {@code path}. If the receiver
+     * already has {@code prefix} of it and that is still how the file starts,
+     * only what comes after it is written. Otherwise, f.ex. if something has been
+     * written to that part of the file since, the whole file is written.
+     *
+     * @param prefix what the receiver has of the file, or {@code null} if nothing.
+     */
+    public static void streamStoreFile( String path, File file, StoreFilePrefix prefix, StoreWriter writer,
+            ByteBuffer temporaryBuffer ) throws IOException
+    {
+        FileInputStream stream = new FileInputStream( file );
+        try
+        {
+            FileChannel channel = stream.getChannel();
+            long offset = writer instanceof ResumableStoreWriter ?
+                    verifiedPrefixLength( channel, prefix, temporaryBuffer ) : 0;
+            streamFrom( path, channel, offset, writer, temporaryBuffer );
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    private static void streamFrom( String path, FileChannel channel, long offset, StoreWriter writer,
+            ByteBuffer temporaryBuffer ) throws IOException
+    {
+        if ( offset > 0 )
+        {
+            channel.position( offset );
+            ((ResumableStoreWriter) writer).write( path, channel, temporaryBuffer, channel.size() > offset, offset );
+        }
+        else
+        {
+            writer.write( path, channel, temporaryBuffer, channel.size() > 0 );
+        }
+    }
+
+    private static long verifiedPrefixLength( FileChannel channel, StoreFilePrefix prefix,
+            ByteBuffer temporaryBuffer ) throws IOException
+    {
+        if ( prefix == null || prefix.length() > channel.size() ) return 0;
+        return StoreCopyCheckpoint.checksum( channel, prefix.length(), temporaryBuffer ) == prefix.checksum() ?
+                prefix.length() : 0;
+    }
+
+    /**
+     * Rotates the logs and splits the store files into {@code parts} parts of
+     * about the same size, to be sent with {@link #streamStoreFileRanges(GraphDatabaseAPI, List, StoreWriter)}
+     * over separate streams. Files of which more than {@code rangeSize} bytes
+     * are to be sent are split into ranges of that size, so that a few big
+     * files can be spread out too. Files the receiver has a prefix of which is
+     * still the same here are only sent from where that prefix ends, like for
+     * {@link #rotateLogsAndStreamStoreFiles(GraphDatabaseAPI, boolean, Map, StoreWriter)}.
+     */
+    public static StoreCopyPlan rotateLogsAndPlanStoreCopy( GraphDatabaseAPI graphDb, boolean includeLogicalLogs,
+            Map<String, StoreFilePrefix> resumeFrom, int parts, long rangeSize )
+    {
+        File baseDir = getBaseDir( graphDb );
+        Tx[] startTransactions = rotateLogs( graphDb );
+        List<File> storeFiles = new ArrayList<File>();
+        try
+        {
+            for ( XaDataSource ds : graphDb.getXaDataSourceManager().getAllRegisteredDataSources() )
+            {
+                ClosableIterable<File> files = ds.listStoreFiles( includeLogicalLogs );
+                try
+                {
+                    for ( File storefile : files ) storeFiles.add( storefile );
                 }
                 finally
                 {
                     files.close();
                 }
             }
-            catch ( IOException e )
+            return new StoreCopyPlan( startTransactions,
+                    planStoreFileRanges( baseDir, storeFiles, resumeFrom, parts, rangeSize ) );
+        }
+        catch ( IOException e )
+        {
+            throw new MasterFailureException( e );
+        }
+    }
+
+    /**
+     * Splits {@code files} into {@code parts} parts of about the same size.
+     * What's left of a file after its verified prefix in {@code resumeFrom} is
+     * split into ranges of {@code rangeSize} bytes, if bigger than that.
+     */
+    public static List<List<StoreFileRange>> planStoreFileRanges( File baseDir, Collection<File> files,
+            Map<String, StoreFilePrefix> resumeFrom, int parts, long rangeSize ) throws IOException
+    {
+        if ( parts < 1 ) throw new IllegalArgumentException( "Need at least one part, got " + parts );
+        List<List<StoreFileRange>> plan = new ArrayList<List<StoreFileRange>>( parts );
+        for ( int i = 0; i < parts; i++ ) plan.add( new ArrayList<StoreFileRange>() );
+        long[] planned = new long[parts];
+        ByteBuffer temporaryBuffer = BufferPool.SHARED.acquireByteBuffer( 1024*1024 );
+        try
+        {
+            for ( File storefile : files )
             {
-                throw new MasterFailureException( e );
+                String path = relativePath( baseDir, storefile );
+                FileInputStream stream = new FileInputStream( storefile );
+                long offset;
+                long size;
+                try
+                {
+                    size = stream.getChannel().size();
+                    offset = verifiedPrefixLength( stream.getChannel(), resumeFrom.get( path ), temporaryBuffer );
+                }
+                finally
+                {
+                    stream.close();
+                }
+                if ( size - offset <= rangeSize )
+                {
+                    assign( plan, planned, new StoreFileRange( path, offset, StoreFileRange.TO_END ), size - offset );
+                    continue;
+                }
+                for ( long position = offset; position < size; position += rangeSize )
+                {
+                    long length = Math.min( rangeSize, size - position );
+                    assign( plan, planned, new StoreFileRange( path, position, length ), length );
+                }
             }
         }
-        return context;
+        finally
+        {
+            BufferPool.SHARED.release( temporaryBuffer );
+        }
+        return plan;
+    }
+
+    private static void assign( List<List<StoreFileRange>> plan, long[] planned, StoreFileRange range, long size )
+    {
+        int smallest = 0;
+        for ( int i = 1; i < planned.length; i++ )
+        {
+            if ( planned[i] < planned[smallest] ) smallest = i;
+        }
+        plan.get( smallest ).add( range );
+        planned[smallest] += size;
+    }
+
+    /**
+     * Sends one part of a {@link StoreCopyPlan}. Ranges are read as the files
+     * look now, the transactions after {@link StoreCopyPlan#startTransactions()}
+     * make up for any differences. {@code writer} has to be a {@link ResumableStoreWriter}
+     * unless all ranges are whole files.
+     */
+    public static void streamStoreFileRanges( GraphDatabaseAPI graphDb, List<StoreFileRange> ranges,
+            StoreWriter writer )
+    {
+        streamStoreFileRanges( getBaseDir( graphDb ), ranges, writer );
+    }
+
+    /**
+     * Sends {@code ranges} of the files in {@code baseDir}, see
+     * {@link #streamStoreFileRanges(GraphDatabaseAPI, List, StoreWriter)}.
+     */
+    public static void streamStoreFileRanges( File baseDir, List<StoreFileRange> ranges, StoreWriter writer )
+    {
+        ByteBuffer temporaryBuffer = BufferPool.SHARED.acquireByteBuffer( 1024*1024 );
+        try
+        {
+            for ( StoreFileRange range : ranges )
+            {
+                File file = new File( baseDir, range.path() );
+                // Only files of the store can be asked for
+                relativePath( baseDir, file );
+                FileInputStream stream = new FileInputStream( file );
+                try
+                {
+                    FileChannel channel = stream.getChannel();
+                    if ( range.isToEnd() )
+                    {
+                        streamFrom( range.path(), channel, range.offset(), writer, temporaryBuffer );
+                    }
+                    else
+                    {
+                        channel.position( range.offset() );
+                        ((ResumableStoreWriter) writer).writeRange( range.path(), channel, temporaryBuffer,
+                                range.offset(), range.length() );
+                    }
+                }
+                finally
+                {
+                    stream.close();
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new MasterFailureException( e );
+        }
+        finally
+        {
+            BufferPool.SHARED.release( temporaryBuffer );
+        }
     }
     
     /**
-     * For a given {@link XaDataSource} it extracts the transaction stream from
-     * startTxId up to endTxId (inclusive) in the provided {@link List} and
-     * returns the {@link LogExtractor} used to create the stream.
+     * The transactions startTxId up to endTxId (inclusive) of a {@link XaDataSource},
+     * produced one at a time as the stream is read, so that memory use doesn't
+     * depend on how long the range is.
      *
-     * @param dataSource The {@link XaDataSource} from which to extract the
-     *            transactions
-     * @param startTxId The first tx id in the stream
-     * @param endTxId The last tx id in the stream
-     * @param stream A list to contain the transaction stream - can already
-     *            contain transactions from other data sources.
-     * @return The {@link LogExtractor} used to create the transaction stream.
+     * Transactions at the start of the range that are in the replay cache are
+     * served from there. From the first one that isn't, a {@link LogExtractor} is
+     * opened and the rest are extracted from the log and put in the cache as they
+     * are. Most of the time the whole range is cached since every slave asks for
+     * the same recent transactions, and then the log isn't touched.
      */
-    private static LogExtractor getTransactionStreamForDatasource(
-            final XaDataSource dataSource, final long startTxId,
-            final long endTxId,
-            final List<Triplet<String, Long, TxExtractor>> stream,
-            Predicate<Long> filter )
+    private static class DataSourceTransactions
     {
-        LogExtractor logExtractor = null;
-        try
+        private final XaDataSource dataSource;
+        private final long endTxId;
+        private final Predicate<Long> filter;
+        private final TransactionReplayCache replayCache;
+        private long nextTxId;
+        private LogExtractor logExtractor;
+        private long firstTxIdFromLog;
+
+        DataSourceTransactions( XaDataSource dataSource, long startTxId, long endTxId, Predicate<Long> filter,
+                TransactionReplayCache replayCache )
         {
-            final long masterLastTx = dataSource.getLastCommittedTxId();
+            long masterLastTx = dataSource.getLastCommittedTxId();
             if ( masterLastTx < endTxId )
             {
                 throw new RuntimeException(
@@ -191,76 +407,95 @@ public class MasterUtil
                                 + " but largest transaction id in master is "
                                 + masterLastTx );
             }
+            this.dataSource = dataSource;
+            this.nextTxId = startTxId;
+            this.endTxId = endTxId;
+            this.filter = filter;
+            this.replayCache = replayCache;
+        }
+
+        Triplet<String, Long, TxExtractor> next()
+        {
+            while ( nextTxId <= endTxId )
+            {
+                long txId = nextTxId++;
+                if ( !filter.accept( txId ) ) continue;
+                if ( logExtractor == null )
+                {
+                    byte[] cached = replayCache.get( dataSource.getName(), txId );
+                    if ( cached != null ) return Triplet.of( dataSource.getName(), txId, TxExtractor.create( cached ) );
+                    openLogExtractor( txId );
+                }
+                return Triplet.of( dataSource.getName(), txId, logExtractor( txId ) );
+            }
+            return null;
+        }
+
+        private void openLogExtractor( long txId )
+        {
             try
             {
-                // TODO check here for startTxId >= endTxId and exit early
-                logExtractor = dataSource.getLogExtractor( startTxId, endTxId );
+                logExtractor = dataSource.getLogExtractor( txId, endTxId );
+                firstTxIdFromLog = txId;
             }
-            catch ( IOException ioe )
+            catch ( IOException e )
             {
-                throw new RuntimeException( ioe );
+                throw new RuntimeException( e );
             }
-            final LogExtractor finalLogExtractor = logExtractor;
-            for ( long txId = startTxId; txId <= endTxId; txId++ )
+        }
+
+        private TxExtractor logExtractor( final long txId )
+        {
+            final LogExtractor extractor = logExtractor;
+            return new TxExtractor()
             {
-                if ( filter.accept( txId ) )
+                @Override
+                public ReadableByteChannel extract()
                 {
-                    final long finalTxId = txId;
-                    TxExtractor extractor = new TxExtractor()
+                    InMemoryLogBuffer buffer = new InMemoryLogBuffer();
+                    extract( buffer );
+                    return buffer;
+                }
+
+                @Override
+                public void extract( LogBuffer buffer )
+                {
+                    try
                     {
-                        @Override
-                        public ReadableByteChannel extract()
+                        TransactionReplayCache.Capture capture =
+                                replayCache.capture( dataSource.getName(), txId, buffer );
+                        long extractedTxId = extractor.extractNext( capture );
+                        if ( extractedTxId == -1 )
                         {
-                            InMemoryLogBuffer buffer = new InMemoryLogBuffer();
-                            extract( buffer );
-                            return buffer;
+                            throw new RuntimeException(
+                                    "Transaction "
+                                            + txId
+                                            + " is missing and can't be extracted from "
+                                            + dataSource.getName()
+                                            + ". Was about to extract "
+                                            + firstTxIdFromLog + " to "
+                                            + endTxId );
                         }
-
-                        @Override
-                        public void extract( LogBuffer buffer )
+                        if ( extractedTxId != txId )
                         {
-                            try
-                            {
-                                long extractedTxId = finalLogExtractor.extractNext( buffer );
-                                if ( extractedTxId == -1 )
-                                {
-                                    throw new RuntimeException(
-                                            "Transaction "
-                                                    + finalTxId
-                                                    + " is missing and can't be extracted from "
-                                                    + dataSource.getName()
-                                                    + ". Was about to extract "
-                                                    + startTxId + " to "
-                                                    + endTxId );
-                                }
-                                if ( extractedTxId != finalTxId )
-                                {
-                                    throw new RuntimeException(
-                                            "Expected txId " + finalTxId
-                                                    + ", but was "
-                                                    + extractedTxId );
-                                }
-                            }
-                            catch ( IOException e )
-                            {
-                                throw new RuntimeException( e );
-                            }
+                            throw new RuntimeException(
+                                    "Expected txId " + txId
+                                            + ", but was "
+                                            + extractedTxId );
                         }
-                    };
-                    stream.add( Triplet.of( dataSource.getName(), txId,
-                            extractor ) );
+                        capture.done();
+                    }
+                    catch ( IOException e )
+                    {
+                        throw new RuntimeException( e );
+                    }
                 }
-            }
-            return logExtractor;
+            };
         }
-        catch ( Throwable t )
+
+        void close()
         {
-            /*
-             * If there's an error in here then close the log extractors,
-             * otherwise if we're successful the TransactionStream will close it.
-             */
             if ( logExtractor != null ) logExtractor.close();
-            throw Exceptions.launderedException( t );
         }
     }
 
@@ -281,38 +516,37 @@ public class MasterUtil
     public static <T> Response<T> packResponse( GraphDatabaseAPI graphDb,
             SlaveContext context, T response, Predicate<Long> filter )
     {
-        List<Triplet<String, Long, TxExtractor>> stream = new ArrayList<Triplet<String, Long, TxExtractor>>();
+        return packResponse( graphDb, context, response, filter, TransactionReplayCache.NONE );
+    }
+
+    /**
+     * @param replayCache where recently extracted transactions are cached, so
+     *            that the next slave asking for them gets them from memory.
+     * @see #packResponse(GraphDatabaseAPI, SlaveContext, Object, Predicate)
+     */
+    public static <T> Response<T> packResponse( GraphDatabaseAPI graphDb,
+            SlaveContext context, T response, Predicate<Long> filter, TransactionReplayCache replayCache )
+    {
+        List<DataSourceTransactions> sources = new ArrayList<DataSourceTransactions>();
         Set<String> resourceNames = new HashSet<String>();
         XaDataSourceManager dsManager = graphDb.getXaDataSourceManager();
-        final List<LogExtractor> logExtractors = new ArrayList<LogExtractor>();
-        try
+        for ( Tx txEntry : context.lastAppliedTransactions() )
         {
-            for ( Tx txEntry : context.lastAppliedTransactions() )
+            String resourceName = txEntry.getDataSourceName();
+            final XaDataSource dataSource = dsManager.getXaDataSource( resourceName );
+            if ( dataSource == null )
             {
-                String resourceName = txEntry.getDataSourceName();
-                final XaDataSource dataSource = dsManager.getXaDataSource( resourceName );
-                if ( dataSource == null )
-                {
-                    throw new RuntimeException( "No data source '" + resourceName + "' found" );
-                }
-                resourceNames.add( resourceName );
-                final long masterLastTx = dataSource.getLastCommittedTxId();
-                if ( txEntry.getTxId() >= masterLastTx ) continue;
-                LogExtractor logExtractor = getTransactionStreamForDatasource(
-                        dataSource, txEntry.getTxId() + 1, masterLastTx, stream,
-                        filter );
-                logExtractors.add( logExtractor );
+                throw new RuntimeException( "No data source '" + resourceName + "' found" );
             }
-            StoreId storeId = dsManager.getNeoStoreDataSource().getStoreId();
-            return new Response<T>( response, storeId, createTransactionStream( resourceNames, stream, logExtractors ),
-                    ResourceReleaser.NO_OP );
-        }
-        catch ( Throwable t )
-        {   // If there's an error in here then close the log extractors, otherwise if we're
-            // successful the TransactionStream will close it.
-            for ( LogExtractor extractor : logExtractors ) extractor.close();
-            throw Exceptions.launderedException( t );
+            resourceNames.add( resourceName );
+            final long masterLastTx = dataSource.getLastCommittedTxId();
+            if ( txEntry.getTxId() >= masterLastTx ) continue;
+            sources.add( new DataSourceTransactions( dataSource, txEntry.getTxId() + 1, masterLastTx, filter,
+                    replayCache ) );
         }
+        StoreId storeId = dsManager.getNeoStoreDataSource().getStoreId();
+        return new Response<T>( response, storeId, createTransactionStream( resourceNames, sources ),
+                ResourceReleaser.NO_OP );
     }
 
     /**
@@ -331,7 +565,16 @@ public class MasterUtil
     public static Response<Void> getTransactions( GraphDatabaseAPI graphDb,
             String dataSourceName, long startTx, long endTx )
     {
-        List<Triplet<String, Long, TxExtractor>> stream = new ArrayList<Triplet<String, Long, TxExtractor>>();
+        return getTransactions( graphDb, dataSourceName, startTx, endTx, TransactionReplayCache.NONE );
+    }
+
+    /**
+     * @param replayCache where recently extracted transactions are cached.
+     * @see #getTransactions(GraphDatabaseAPI, String, long, long)
+     */
+    public static Response<Void> getTransactions( GraphDatabaseAPI graphDb,
+            String dataSourceName, long startTx, long endTx, TransactionReplayCache replayCache )
+    {
         XaDataSourceManager dsManager = graphDb.getXaDataSourceManager();
         final XaDataSource dataSource = dsManager.getXaDataSource( dataSourceName );
         if ( dataSource == null )
@@ -340,33 +583,39 @@ public class MasterUtil
                                         + "' found" );
         }
 
-        List<LogExtractor> extractors = startTx < endTx ? Collections.singletonList(
-                getTransactionStreamForDatasource( dataSource, startTx, endTx, stream, MasterUtil.ALL ) ) :
-                Collections.<LogExtractor>emptyList();
+        List<DataSourceTransactions> sources = startTx < endTx ? Collections.singletonList(
+                new DataSourceTransactions( dataSource, startTx, endTx, MasterUtil.ALL, replayCache ) ) :
+                Collections.<DataSourceTransactions>emptyList();
         StoreId storeId = ( (NeoStoreXaDataSource) dsManager.getXaDataSource( Config.DEFAULT_DATA_SOURCE_NAME ) ).getStoreId();
         return new Response<Void>( null, storeId, createTransactionStream(
-                        Collections.singletonList( dataSourceName ), stream,
-                        extractors ), ResourceReleaser.NO_OP );
+                        Collections.singletonList( dataSourceName ), sources ), ResourceReleaser.NO_OP );
 
     }
 
     private static TransactionStream createTransactionStream( Collection<String> resourceNames,
-            final List<Triplet<String, Long, TxExtractor>> stream, final List<LogExtractor> logExtractors )
+            final List<DataSourceTransactions> sources )
     {
         return new TransactionStream( resourceNames.toArray( new String[resourceNames.size()] ) )
         {
-            private final Iterator<Triplet<String, Long, TxExtractor>> iterator = stream.iterator();
+            private final Iterator<DataSourceTransactions> iterator = sources.iterator();
+            private DataSourceTransactions current;
 
             @Override
             protected Triplet<String, Long, TxExtractor> fetchNextOrNull()
             {
-                return iterator.hasNext() ? iterator.next() : null;
+                while ( true )
+                {
+                    Triplet<String, Long, TxExtractor> next = current != null ? current.next() : null;
+                    if ( next != null ) return next;
+                    if ( !iterator.hasNext() ) return null;
+                    current = iterator.next();
+                }
             }
 
             @Override
             public void close()
             {
-                for ( LogExtractor extractor : logExtractors ) extractor.close();
+                for ( DataSourceTransactions source : sources ) source.close();
             }
         };
     }
@@ -390,30 +639,56 @@ public class MasterUtil
     };
 
     public static <T> void applyReceivedTransactions( Response<T> response, GraphDatabaseAPI graphDb, TxHandler txHandler ) throws IOException
+    {
+        applyReceivedTransactions( response, graphDb, txHandler, TransactionReceivePipeline.NONE );
+    }
+
+    /**
+     * @param pipeline lets the transactions be received in another thread
+     * while they are being applied.
+     * @see #applyReceivedTransactions(Response, GraphDatabaseAPI, TxHandler)
+     */
+    public static <T> void applyReceivedTransactions( Response<T> response, GraphDatabaseAPI graphDb,
+            TxHandler txHandler, TransactionReceivePipeline pipeline ) throws IOException
+    {
+        applyReceivedTransactions( response, graphDb, txHandler, pipeline, ParallelTransactionApplier.NONE );
+    }
+
+    /**
+     * @param applier lets transactions of different data sources be applied
+     * concurrently. All of them are applied when this method returns.
+     * @see #applyReceivedTransactions(Response, GraphDatabaseAPI, TxHandler, TransactionReceivePipeline)
+     */
+    public static <T> void applyReceivedTransactions( Response<T> response, GraphDatabaseAPI graphDb,
+            TxHandler txHandler, TransactionReceivePipeline pipeline, ParallelTransactionApplier applier )
+            throws IOException
     {
         XaDataSourceManager dataSourceManager = graphDb.getXaDataSourceManager();
+        TransactionStream transactions = pipeline.pipeline( response.transactions() );
+        ParallelTransactionApplier.Batch batch = applier.newBatch();
         try
         {
-            for ( Triplet<String, Long, TxExtractor> tx : IteratorUtil.asIterable( response.transactions() ) )
+            for ( Triplet<String, Long, TxExtractor> tx : IteratorUtil.asIterable( transactions ) )
             {
                 String resourceName = tx.first();
                 XaDataSource dataSource = dataSourceManager.getXaDataSource( resourceName );
                 txHandler.accept( tx, dataSource );
-                ReadableByteChannel txStream = tx.third().extract();
-                try
-                {
-                    dataSource.applyCommittedTransaction( tx.second(), txStream );
-                }
-                finally
-                {
-                    txStream.close();
-                }
+                batch.apply( dataSource, tx );
             }
+            batch.await();
             txHandler.done();
         }
         finally
         {
-            response.close();
+            try
+            {
+                batch.close();
+                if ( transactions != response.transactions() ) transactions.close();
+            }
+            finally
+            {
+                response.close();
+            }
         }
     }
 
@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.neo4j.com.DechunkingChannelBuffer.internalProtocolVersion;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.DefaultExceptionEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.jboss.netty.handler.queue.BlockingReadHandler;
+import org.jboss.netty.handler.queue.BlockingReadTimeoutException;
+
+/**
+ * A channel which many concurrent requests from a {@link Client} share. Each
+ * request registers itself under a new correlation id which is sent in every
+ * chunk of the request and echoed back by the {@link Server} in every chunk of
+ * the response. Incoming chunks are routed to the reader of the request they
+ * belong to, so that a slow or big response doesn't block the others.
+ */
+class MultiplexedChannel extends SimpleChannelUpstreamHandler
+{
+    /**
+     * Same as the queue of the {@link BlockingReadHandler} of a channel of its own.
+     */
+    static final int MAX_QUEUED_CHUNKS = 3;
+
+    /**
+     * Gets the chunks of a response, and failures of the channel, as they happen.
+     * Called from a Netty I/O thread so mustn't block.
+     */
+    interface Receiver
+    {
+        void receive( ChannelEvent event );
+    }
+
+    private final Channel channel;
+    private final byte internalProtocolVersion;
+    private final AtomicInteger correlationIds = new AtomicInteger();
+    private final ConcurrentMap<Integer, Receiver> pending = new ConcurrentHashMap<Integer, Receiver>();
+    private final Set<Receiver> full = new HashSet<Receiver>(); // Guarded by itself
+    private volatile boolean legacyPeer;
+
+    MultiplexedChannel( Channel channel, String blockingHandlerName, byte internalProtocolVersion )
+    {
+        this.channel = channel;
+        this.internalProtocolVersion = internalProtocolVersion;
+        channel.getPipeline().replace( blockingHandlerName, "multiplexer", this );
+    }
+
+    Channel channel()
+    {
+        return channel;
+    }
+
+    boolean isAlive()
+    {
+        return channel.isConnected();
+    }
+
+    int pendingRequests()
+    {
+        return pending.size();
+    }
+
+    /**
+     * @return whether or not the other side has been seen responding in the
+     * legacy, non-multiplexing, internal protocol version.
+     */
+    boolean legacyPeerDetected()
+    {
+        return legacyPeer;
+    }
+
+    int register( Receiver receiver )
+    {
+        for ( ;; )
+        {
+            int correlationId = correlationIds.incrementAndGet();
+            if ( pending.putIfAbsent( correlationId, receiver ) == null ) return correlationId;
+        }
+    }
+
+    /**
+     * Queues the chunks of one response for a {@link BlockingReadHandler} to read.
+     * Nothing more is read from the channel while the queue holds {@link #MAX_QUEUED_CHUNKS}
+     * or more, so that a big response, f.ex. a store copy, is received at the pace
+     * it's read instead of into memory as fast as the server can send it. That
+     * holds up the other requests sharing the channel too, which is why
+     * {@link Client} prefers channels that aren't {@link #isSuspended() suspended}.
+     */
+    class ResponseQueue extends LinkedBlockingQueue<ChannelEvent> implements Receiver
+    {
+        private final Runnable onFirstChunk;
+        private final AtomicBoolean received = new AtomicBoolean();
+
+        ResponseQueue()
+        {
+            this( null );
+        }
+
+        /**
+         * @param onFirstChunk called, in the Netty I/O thread, when the first chunk is queued.
+         */
+        ResponseQueue( Runnable onFirstChunk )
+        {
+            this.onFirstChunk = onFirstChunk;
+        }
+
+        @Override
+        public void receive( ChannelEvent event )
+        {
+            super.offer( event );
+            if ( size() >= MAX_QUEUED_CHUNKS ) suspendReading( this );
+            if ( onFirstChunk != null && received.compareAndSet( false, true ) ) onFirstChunk.run();
+        }
+
+        @Override
+        public ChannelEvent take() throws InterruptedException
+        {
+            return taken( super.take() );
+        }
+
+        @Override
+        public ChannelEvent poll( long timeout, TimeUnit unit ) throws InterruptedException
+        {
+            return taken( super.poll( timeout, unit ) );
+        }
+
+        @Override
+        public ChannelEvent poll()
+        {
+            return taken( super.poll() );
+        }
+
+        private ChannelEvent taken( ChannelEvent event )
+        {
+            if ( event != null && size() < MAX_QUEUED_CHUNKS ) resumeReading( this );
+            return event;
+        }
+    }
+
+    /**
+     * Reads the chunks of a {@link ResponseQueue}, {@link #abandon(int) abandoning}
+     * the request if it times out.
+     */
+    class ResponseReader extends BlockingReadHandler<ChannelBuffer>
+    {
+        private final int correlationId;
+
+        ResponseReader( ResponseQueue queue, int correlationId )
+        {
+            super( queue );
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public ChannelBuffer read( long timeout, TimeUnit unit ) throws IOException, InterruptedException
+        {
+            try
+            {
+                return super.read( timeout, unit );
+            }
+            catch ( BlockingReadTimeoutException e )
+            {
+                abandon( correlationId );
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return whether or not reading from the channel is suspended until a
+     * response is read further.
+     */
+    boolean isSuspended()
+    {
+        synchronized ( full )
+        {
+            return !full.isEmpty();
+        }
+    }
+
+    private void suspendReading( Receiver receiver )
+    {
+        synchronized ( full )
+        {
+            if ( full.add( receiver ) && full.size() == 1 ) channel.setReadable( false );
+        }
+    }
+
+    private void resumeReading( Receiver receiver )
+    {
+        synchronized ( full )
+        {
+            if ( full.remove( receiver ) && full.isEmpty() ) channel.setReadable( true );
+        }
+    }
+
+    void unregister( int correlationId )
+    {
+        Receiver receiver = pending.remove( correlationId );
+        // Whatever it has queued won't be read
+        if ( receiver != null ) resumeReading( receiver );
+    }
+
+    /**
+     * Gives up on a request which has timed out. Unregistering it isn't enough,
+     * the server would still think the request is being waited for and f.ex.
+     * keep the transaction of the slave sending it going. The server can't be
+     * told about a single request so the channel is closed, like a channel of
+     * its own would be, and the requests sharing it fail.
+     */
+    void abandon( int correlationId )
+    {
+        unregister( correlationId );
+        close();
+    }
+
+    void close()
+    {
+        if ( channel.isConnected() ) channel.close();
+    }
+
+    @Override
+    public void messageReceived( ChannelHandlerContext ctx, MessageEvent event ) throws Exception
+    {
+        ChannelBuffer message = (ChannelBuffer) event.getMessage();
+        byte version = internalProtocolVersion( message.getByte( message.readerIndex() ) );
+        if ( version == internalProtocolVersion )
+        {
+            Receiver receiver = pending.get( message.getInt( message.readerIndex() + 2 ) );
+            // No receiver means that the request has been given up on, f.ex. after a read timeout
+            if ( receiver != null ) receiver.receive( event );
+        }
+        else
+        {   // Not something we can route, most likely a failure response about
+            // protocol version mismatch. Let all waiting requests see it.
+            if ( version == Server.LEGACY_INTERNAL_PROTOCOL_VERSION ) legacyPeer = true;
+            for ( Receiver receiver : pending.values() )
+            {
+                receiver.receive( new UpstreamMessageEvent( channel, message.duplicate(), event.getRemoteAddress() ) );
+            }
+        }
+    }
+
+    @Override
+    public void exceptionCaught( ChannelHandlerContext ctx, ExceptionEvent event ) throws Exception
+    {
+        failAll( event );
+    }
+
+    @Override
+    public void channelClosed( ChannelHandlerContext ctx, ChannelStateEvent event ) throws Exception
+    {
+        failAll( new DefaultExceptionEvent( channel, new ComException( "Channel has been closed" ) ) );
+    }
+
+    private void failAll( ExceptionEvent event )
+    {
+        for ( Receiver receiver : pending.values() )
+        {
+            receiver.receive( event );
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.helpers.Exceptions;
+
+/**
+ * Copies a store over several streams at the same time, since a single stream
+ * seldom makes use of the whole bandwidth between two machines. The sending
+ * side splits the store files, and big files into ranges, into parts of about
+ * the same size, see {@link MasterUtil#rotateLogsAndPlanStoreCopy(org.neo4j.kernel.GraphDatabaseAPI,
+ * boolean, Map, int, long)}. The parts are then requested at the same time and
+ * put together by the {@link ResumableStoreWriter} they are written to.
+ *
+ * When all parts are copied, the transactions committed since the plan was made
+ * are requested. They are what makes the copy consistent, the same as the
+ * transactions sent after the files in a copy over a single stream.
+ */
+public class ParallelStoreCopy
+{
+    /**
+     * Where the store is copied from, f.ex. a master or a backup server.
+     */
+    public interface Source
+    {
+        Response<StoreCopyPlan> plan( Map<String, StoreFilePrefix> resumeFrom, int parts );
+
+        /**
+         * @param startTransactions the transactions after these are sent along.
+         */
+        Response<Void> copyPart( Tx[] startTransactions, List<StoreFileRange> ranges, StoreWriter writer );
+    }
+
+    /**
+     * Files bigger than this are split into ranges, so that one big file
+     * doesn't end up in one stream.
+     */
+    public static final long DEFAULT_RANGE_SIZE = 64*Protocol.MEGA;
+
+    private static final AtomicInteger copies = new AtomicInteger();
+
+    private ParallelStoreCopy()
+    {
+    }
+
+    /**
+     * Copies the store from {@code source} to {@code writer}, the parts over
+     * {@code parts} streams at the same time.
+     *
+     * @return the transactions to apply to the copy. The caller is responsible
+     * for closing it.
+     */
+    public static Response<Void> copy( final Source source, Map<String, StoreFilePrefix> resumeFrom, int parts,
+            ResumableStoreWriter writer )
+    {
+        Response<StoreCopyPlan> planResponse = source.plan( resumeFrom, parts );
+        StoreCopyPlan plan;
+        try
+        {
+            plan = planResponse.response();
+        }
+        finally
+        {
+            planResponse.close();
+        }
+
+        startOverRejectedPrefixes( plan, resumeFrom, writer );
+        final PartWriter partWriter = new PartWriter( writer );
+        ExecutorService executor = Executors.newFixedThreadPool( plan.parts(), new ThreadFactory()
+        {
+            private final int copy = copies.incrementAndGet();
+            private final AtomicInteger threads = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                return new Thread( runnable, "Store copy " + copy + " part " + threads.incrementAndGet() );
+            }
+        } );
+        Throwable failure = null;
+        try
+        {
+            List<Future<Void>> copiedParts = new ArrayList<Future<Void>>();
+            for ( final List<StoreFileRange> part : plan )
+            {
+                copiedParts.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        source.copyPart( new Tx[0], part, partWriter ).close();
+                        return null;
+                    }
+                } ) );
+            }
+            // Wait for all parts, also when one fails, so that nothing is written after this returns
+            for ( Future<Void> part : copiedParts )
+            {
+                try
+                {
+                    part.get();
+                }
+                catch ( ExecutionException e )
+                {
+                    partWriter.abort();
+                    if ( failure == null ) failure = e.getCause();
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            partWriter.abort();
+            failure = e;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        if ( failure != null ) throw Exceptions.launderedException( ComException.class, failure );
+
+        writer.done();
+        return source.copyPart( plan.startTransactions(), Collections.<StoreFileRange>emptyList(),
+                NO_FILES );
+    }
+
+    /**
+     * Files the sending side didn't resume from their prefix are sent from the
+     * start again. Ranges don't truncate what's already there, since the other
+     * ranges of the file are written at the same time, so that is done here first.
+     */
+    private static void startOverRejectedPrefixes( StoreCopyPlan plan, Map<String, StoreFilePrefix> resumeFrom,
+            ResumableStoreWriter writer )
+    {
+        Map<String, Long> startOffsets = new HashMap<String, Long>();
+        for ( List<StoreFileRange> part : plan )
+        {
+            for ( StoreFileRange range : part )
+            {
+                Long offset = startOffsets.get( range.path() );
+                if ( offset == null || range.offset() < offset ) startOffsets.put( range.path(), range.offset() );
+            }
+        }
+        ByteBuffer temporaryBuffer = ByteBuffer.allocate( 1 );
+        try
+        {
+            for ( Map.Entry<String, Long> start : startOffsets.entrySet() )
+            {
+                StoreFilePrefix prefix = resumeFrom.get( start.getKey() );
+                if ( prefix != null && prefix.length() != start.getValue() )
+                {
+                    writer.write( start.getKey(), null, temporaryBuffer, false, 0 );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new ComException( e );
+        }
+    }
+
+    /**
+     * The writer all parts write to. The whole copy is done when all parts are,
+     * and if one part fails the others fail as soon as they read more data.
+     */
+    private static class PartWriter implements ResumableStoreWriter
+    {
+        private final ResumableStoreWriter actual;
+        private volatile boolean aborted;
+
+        PartWriter( ResumableStoreWriter actual )
+        {
+            this.actual = actual;
+        }
+
+        void abort()
+        {
+            aborted = true;
+        }
+
+        @Override
+        public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, boolean hasData )
+                throws IOException
+        {
+            actual.write( path, abortable( data ), temporaryBuffer, hasData );
+        }
+
+        @Override
+        public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, boolean hasData,
+                long offset ) throws IOException
+        {
+            actual.write( path, abortable( data ), temporaryBuffer, hasData, offset );
+        }
+
+        @Override
+        public void writeRange( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, long offset,
+                long length ) throws IOException
+        {
+            actual.writeRange( path, abortable( data ), temporaryBuffer, offset, length );
+        }
+
+        private ReadableByteChannel abortable( final ReadableByteChannel data )
+        {
+            if ( data == null ) return null;
+            return new ReadableByteChannel()
+            {
+                @Override
+                public int read( ByteBuffer dst ) throws IOException
+                {
+                    if ( aborted ) throw new IOException( "Another part of the store copy failed" );
+                    return data.read( dst );
+                }
+
+                @Override
+                public boolean isOpen()
+                {
+                    return data.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    data.close();
+                }
+            };
+        }
+
+        @Override
+        public void done()
+        {   // All parts are, see ParallelStoreCopy#copy
+        }
+    }
+
+    private static final StoreWriter NO_FILES = new StoreWriter()
+    {
+        @Override
+        public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, boolean hasData )
+        {
+            throw new ComException( "Didn't ask for any files, got " + path );
+        }
+
+        @Override
+        public void done()
+        {
+        }
+    };
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.helpers.Exceptions;
+import org.neo4j.helpers.Triplet;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+
+/**
+ * Applies received transactions of different data sources, f.ex. the neo store
+ * and the lucene index data sources, concurrently. Transactions of the same
+ * data source are applied one after another in the order they were received.
+ *
+ * Transactions of the first data source seen in a batch are applied straight
+ * from the stream in the receiving thread, only the other data sources get a
+ * lane of their own which their transactions are copied into. A stream of a
+ * single data source is thereby applied just like when not applying in parallel.
+ *
+ * Transactions are applied in {@link Batch batches}, one for each received
+ * response, and {@link Batch#await()} returns only when everything in the batch
+ * has been applied so that what's visible after a response has been applied is
+ * the same as when applying serially.
+ */
+public class ParallelTransactionApplier
+{
+    public static final int DEFAULT_THREADS = 2;
+    public static final ParallelTransactionApplier NONE = new ParallelTransactionApplier( 0 );
+
+    /**
+     * Max number of received transactions of a batch waiting to be applied.
+     */
+    static final int MAX_IN_FLIGHT = 100;
+
+    private final int threads;
+    private final Executor executor;
+    private final AtomicLong appliedInParallel = new AtomicLong();
+    private final AtomicLong barrierNanos = new AtomicLong();
+
+    /**
+     * @param threads the max number of data sources applying transactions at
+     * the same time. 0 means that transactions are applied in the receiving thread.
+     */
+    public ParallelTransactionApplier( int threads )
+    {
+        if ( threads < 0 ) throw new IllegalArgumentException( "Threads must not be negative, was " + threads );
+        this.threads = threads;
+        if ( threads == 0 )
+        {
+            this.executor = null;
+        }
+        else
+        {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), threadFactory() );
+            pool.allowCoreThreadTimeOut( true );
+            this.executor = pool;
+        }
+    }
+
+    private static ThreadFactory threadFactory()
+    {
+        return new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "Transaction applier-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        };
+    }
+
+    public Batch newBatch()
+    {
+        return threads == 0 ? new Batch() : new ParallelBatch();
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * @return the number of transactions applied in another thread than the one receiving them.
+     */
+    public long getAppliedInParallel()
+    {
+        return appliedInParallel.get();
+    }
+
+    /**
+     * @return the total time spent waiting for batches to be fully applied.
+     */
+    public long getBarrierWaitTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( barrierNanos.get() );
+    }
+
+    private static void applyTransaction( XaDataSource dataSource, long txId, ReadableByteChannel txStream )
+            throws IOException
+    {
+        try
+        {
+            dataSource.applyCommittedTransaction( txId, txStream );
+        }
+        finally
+        {
+            txStream.close();
+        }
+    }
+
+    /**
+     * The transactions of one response. This one applies them right away.
+     */
+    public static class Batch
+    {
+        Batch()
+        {
+        }
+
+        /**
+         * Applies, or schedules to apply, {@code tx}. The transaction is read
+         * before returning so the stream it came from can move on to the next.
+         */
+        public void apply( XaDataSource dataSource, Triplet<String, Long, TxExtractor> tx ) throws IOException
+        {
+            applyTransaction( dataSource, tx.second(), tx.third().extract() );
+        }
+
+        /**
+         * Waits for all transactions given to {@link #apply(XaDataSource, Triplet)}
+         * to be applied.
+         * @throws IOException if any of them couldn't be applied.
+         */
+        public void await() throws IOException
+        {
+        }
+
+        /**
+         * Skips whatever hasn't been applied yet and waits for what's currently
+         * being applied. Called when done with the batch, whether it was applied or not.
+         */
+        public void close()
+        {
+        }
+    }
+
+    private class ParallelBatch extends Batch
+    {
+        private final Map<XaDataSource, Lane> lanes = new HashMap<XaDataSource, Lane>();
+        private XaDataSource direct;
+        private final Semaphore inFlight = new Semaphore( MAX_IN_FLIGHT );
+        private volatile Throwable failure;
+        private volatile boolean closed;
+
+        @Override
+        public void apply( XaDataSource dataSource, Triplet<String, Long, TxExtractor> tx ) throws IOException
+        {
+            checkFailure();
+            if ( direct == null ) direct = dataSource;
+            if ( dataSource == direct )
+            {
+                applyTransaction( dataSource, tx.second(), tx.third().extract() );
+                return;
+            }
+            byte[] transaction = TxExtractor.readFully( tx.third().extract() );
+            Lane lane = lanes.get( dataSource );
+            if ( lane == null )
+            {
+                lane = new Lane( dataSource );
+                lanes.put( dataSource, lane );
+            }
+            acquire( 1 );
+            lane.add( tx.second(), transaction );
+        }
+
+        @Override
+        public void await() throws IOException
+        {
+            long time = System.nanoTime();
+            acquire( MAX_IN_FLIGHT );
+            inFlight.release( MAX_IN_FLIGHT );
+            barrierNanos.addAndGet( System.nanoTime() - time );
+            checkFailure();
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+            inFlight.acquireUninterruptibly( MAX_IN_FLIGHT );
+            inFlight.release( MAX_IN_FLIGHT );
+        }
+
+        private void acquire( int permits )
+        {
+            try
+            {
+                inFlight.acquire( permits );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new ComException( e );
+            }
+        }
+
+        private void checkFailure() throws IOException
+        {
+            if ( failure != null ) throw Exceptions.launderedException( IOException.class, failure );
+        }
+
+        /**
+         * Applies the transactions of one data source in order, in one pool thread at a time.
+         */
+        private class Lane implements Runnable
+        {
+            private final XaDataSource dataSource;
+            private final Queue<Pending> queue = new LinkedList<Pending>(); // Guarded by this
+            private boolean scheduled; // Guarded by this
+
+            Lane( XaDataSource dataSource )
+            {
+                this.dataSource = dataSource;
+            }
+
+            void add( long txId, byte[] transaction )
+            {
+                synchronized ( this )
+                {
+                    queue.add( new Pending( txId, transaction ) );
+                    if ( scheduled ) return;
+                    scheduled = true;
+                }
+                try
+                {
+                    executor.execute( this );
+                }
+                catch ( RuntimeException e )
+                {
+                    synchronized ( this )
+                    {
+                        scheduled = false;
+                        inFlight.release( queue.size() );
+                        queue.clear();
+                    }
+                    throw e;
+                }
+            }
+
+            @Override
+            public void run()
+            {
+                while ( true )
+                {
+                    Pending next;
+                    synchronized ( this )
+                    {
+                        next = queue.poll();
+                        if ( next == null )
+                        {
+                            scheduled = false;
+                            return;
+                        }
+                    }
+                    try
+                    {
+                        if ( failure == null && !closed )
+                        {
+                            applyTransaction( dataSource, next.txId, TxExtractor.create( next.transaction ).extract() );
+                            appliedInParallel.incrementAndGet();
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        if ( failure == null ) failure = t;
+                    }
+                    finally
+                    {
+                        inFlight.release();
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Pending
+    {
+        private final long txId;
+        private final byte[] transaction;
+
+        Pending( long txId, byte[] transaction )
+        {
+            this.txId = txId;
+            this.transaction = transaction;
+        }
+    }
+}
@@ -21,11 +21,20 @@ package org.neo4j.com;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
 import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.neo4j.com.SlaveContext.Tx;
 
 public abstract class Protocol
 {
@@ -33,6 +42,15 @@ public abstract class Protocol
     public static final int MEGA = 1024 * 1024;
     public static final int DEFAULT_FRAME_LENGTH = 16*MEGA;
 
+    // How the data of a store file is sent, see FileStreamsDeserializer
+    static final byte STORE_FILE_NO_DATA = 0;
+    static final byte STORE_FILE_BLOCK_DATA = 1;
+    static final byte STORE_FILE_REGION_DATA = 2;
+    // Followed by the offset to resume from and then one of the above
+    static final byte STORE_FILE_RESUMED = 3;
+    // Followed by the offset of the range and then one of the data markers above
+    static final byte STORE_FILE_RANGE = 4;
+
     public static final ObjectSerializer<Integer> INTEGER_SERIALIZER = new ObjectSerializer<Integer>()
     {
         @SuppressWarnings( "boxing" )
@@ -91,19 +109,65 @@ public abstract class Protocol
             while ( 0 != ( pathLength = buffer.readUnsignedShort() ) )
             {
                 String path = readString( buffer, pathLength );
-                boolean hasData = buffer.readByte() == 1;
-                writer.write( path, hasData ? new BlockLogReader( buffer ) : null, temporaryBuffer, hasData );
+                ReadableByteChannel data = null;
+                long offset = 0;
+                byte type = buffer.readByte();
+                boolean range = type == STORE_FILE_RANGE;
+                if ( type == STORE_FILE_RESUMED || range )
+                {
+                    offset = buffer.readLong();
+                    type = buffer.readByte();
+                }
+                switch ( type )
+                {
+                case STORE_FILE_BLOCK_DATA:
+                    data = new BlockLogReader( buffer, BlockLogBuffer.largeBlocksFor( buffer ) );
+                    break;
+                case STORE_FILE_REGION_DATA:
+                    data = new FileRegionReader( buffer, buffer.readLong() );
+                    break;
+                }
+                if ( range )
+                {
+                    resumable( path ).writeRange( path, data, temporaryBuffer, offset, -1 );
+                }
+                else if ( offset > 0 )
+                {
+                    resumable( path ).write( path, data, temporaryBuffer, data != null, offset );
+                }
+                else
+                {
+                    writer.write( path, data, temporaryBuffer, data != null );
+                }
+                if ( data != null ) data.close();
             }
             writer.done();
             return null;
         }
+
+        private ResumableStoreWriter resumable( String path )
+        {
+            if ( !(writer instanceof ResumableStoreWriter) )
+            {
+                throw new ComException( path + " was sent in pieces, but " + writer + " can't write that" );
+            }
+            return (ResumableStoreWriter) writer;
+        }
     };
     
     public static void addLengthFieldPipes( ChannelPipeline pipeline, int frameLength )
     {
         pipeline.addLast( "frameDecoder",
                 new LengthFieldBasedFrameDecoder( frameLength+4, 0, 4, 0, 4 ) );
-        pipeline.addLast( "frameEncoder", new LengthFieldPrepender( 4 ) );
+        pipeline.addLast( "frameEncoder", new LengthFieldPrepender( 4 )
+        {
+            @Override
+            protected Object encode( ChannelHandlerContext ctx, Channel channel, Object msg ) throws Exception
+            {
+                // File regions come with their length field, see ChunkingChannelBuffer#writeFileRegion
+                return msg instanceof FileRegion ? msg : super.encode( ctx, channel, msg );
+            }
+        } );
     }
 
     public static void writeString( ChannelBuffer buffer, String name )
@@ -127,6 +191,110 @@ public abstract class Protocol
         return readString( buffer, buffer.readInt() );
     }
 
+    /**
+     * Writes what the receiver of a store copy already has of each file, see
+     * {@link StoreCopyCheckpoint}.
+     */
+    public static void writeStoreFilePrefixes( ChannelBuffer buffer, Map<String, StoreFilePrefix> prefixes )
+    {
+        buffer.writeInt( prefixes.size() );
+        for ( Map.Entry<String, StoreFilePrefix> prefix : prefixes.entrySet() )
+        {
+            writeString( buffer, prefix.getKey() );
+            buffer.writeLong( prefix.getValue().length() );
+            buffer.writeLong( prefix.getValue().checksum() );
+        }
+    }
+
+    public static final ObjectSerializer<StoreCopyPlan> STORE_COPY_PLAN_SERIALIZER =
+            new ObjectSerializer<StoreCopyPlan>()
+    {
+        public void write( StoreCopyPlan plan, ChannelBuffer result ) throws IOException
+        {
+            writeTransactions( result, plan.startTransactions() );
+            result.writeInt( plan.parts() );
+            for ( List<StoreFileRange> part : plan )
+            {
+                writeStoreFileRanges( result, part );
+            }
+        }
+    };
+
+    public static final Deserializer<StoreCopyPlan> STORE_COPY_PLAN_DESERIALIZER = new Deserializer<StoreCopyPlan>()
+    {
+        public StoreCopyPlan read( ChannelBuffer buffer, ByteBuffer temporaryBuffer ) throws IOException
+        {
+            Tx[] startTransactions = readTransactions( buffer );
+            int count = buffer.readInt();
+            List<List<StoreFileRange>> parts = new ArrayList<List<StoreFileRange>>( count );
+            for ( int i = 0; i < count; i++ )
+            {
+                parts.add( readStoreFileRanges( buffer ) );
+            }
+            return new StoreCopyPlan( startTransactions, parts );
+        }
+    };
+
+    public static void writeStoreFileRanges( ChannelBuffer buffer, List<StoreFileRange> ranges )
+    {
+        buffer.writeInt( ranges.size() );
+        for ( StoreFileRange range : ranges )
+        {
+            writeString( buffer, range.path() );
+            buffer.writeLong( range.offset() );
+            buffer.writeLong( range.length() );
+        }
+    }
+
+    public static List<StoreFileRange> readStoreFileRanges( ChannelBuffer buffer )
+    {
+        int count = buffer.readInt();
+        List<StoreFileRange> ranges = new ArrayList<StoreFileRange>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            String path = readString( buffer );
+            ranges.add( new StoreFileRange( path, buffer.readLong(), buffer.readLong() ) );
+        }
+        return ranges;
+    }
+
+    /**
+     * Writes the last committed transaction of some data sources, f.ex. where
+     * to start sending transactions from.
+     */
+    public static void writeTransactions( ChannelBuffer buffer, Tx[] transactions )
+    {
+        buffer.writeInt( transactions.length );
+        for ( Tx tx : transactions )
+        {
+            writeString( buffer, tx.getDataSourceName() );
+            buffer.writeLong( tx.getTxId() );
+        }
+    }
+
+    public static Tx[] readTransactions( ChannelBuffer buffer )
+    {
+        Tx[] transactions = new Tx[buffer.readInt()];
+        for ( int i = 0; i < transactions.length; i++ )
+        {
+            String dataSourceName = readString( buffer );
+            transactions[i] = SlaveContext.lastAppliedTx( dataSourceName, buffer.readLong() );
+        }
+        return transactions;
+    }
+
+    public static Map<String, StoreFilePrefix> readStoreFilePrefixes( ChannelBuffer buffer )
+    {
+        int count = buffer.readInt();
+        Map<String, StoreFilePrefix> prefixes = new HashMap<String, StoreFilePrefix>();
+        for ( int i = 0; i < count; i++ )
+        {
+            String path = readString( buffer );
+            prefixes.put( path, new StoreFilePrefix( buffer.readLong(), buffer.readLong() ) );
+        }
+        return prefixes;
+    }
+
     public static boolean readBoolean( ChannelBuffer buffer )
     {
         byte value = buffer.readByte();
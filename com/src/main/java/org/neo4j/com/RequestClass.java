@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+/**
+ * Classes of requests a {@link Server} handles, each scheduled on its own
+ * bounded set of threads with its own bounded queue, see {@link RequestScheduler}.
+ * That way f.ex. a number of slaves copying the store can't slow down commits.
+ * {@link #LOCKING} is the exception, it gets a thread per request.
+ */
+public enum RequestClass
+{
+    /**
+     * Short requests in the middle of transactions, f.ex. commit.
+     * Gets as many threads as the server allows concurrent transactions.
+     */
+    LATENCY_CRITICAL( -1, 1000 ),
+    /**
+     * Requests which may block waiting for other transactions, i.e. lock
+     * acquisition. Kept apart from {@link #LATENCY_CRITICAL} so that blocked
+     * lock requests can't hold up the commits which would let them through.
+     * Not bounded, like before there were request classes: a lock request
+     * queued behind blocked ones may come from the transaction holding the
+     * locks they wait for, a wait which the lock manager can't see and so
+     * can't report as a deadlock.
+     */
+    LOCKING( Integer.MAX_VALUE, 0 ),
+    /**
+     * Big transfers, f.ex. copying the store.
+     */
+    BULK( 4, 16 ),
+    /**
+     * Requests which are held by the server until there's something to respond
+     * with, f.ex. slaves awaiting new transactions. Kept apart so that idle
+     * waiting can't hold up any other kind of request.
+     * Gets as many threads as the server allows concurrent transactions.
+     */
+    WAITING( -1, 1000 ),
+    /**
+     * Anything else, f.ex. responding to clients with the wrong protocol version.
+     */
+    MAINTENANCE( 2, 100 );
+
+    private final int threads;
+    private final int queueDepth;
+
+    private RequestClass( int threads, int queueDepth )
+    {
+        this.threads = threads;
+        this.queueDepth = queueDepth;
+    }
+
+    int threads( int maxConcurrentTransactions )
+    {
+        return threads == -1 ? maxConcurrentTransactions : threads;
+    }
+
+    boolean isBounded()
+    {
+        return threads != Integer.MAX_VALUE;
+    }
+
+    int queueDepth()
+    {
+        return queueDepth;
+    }
+}
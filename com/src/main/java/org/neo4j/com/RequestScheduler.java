@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the requests of a {@link Server}, each {@link RequestClass} on its own
+ * bounded thread pool with its own bounded queue. Requests which don't fit in
+ * the queue of their class are rejected right away rather than piling up.
+ * Unbounded classes get a thread per request instead.
+ */
+public class RequestScheduler
+{
+    private final ThreadPoolExecutor[] executors;
+    private final AtomicLong[] scheduled;
+    private final AtomicLong[] rejected;
+    private final AtomicLong[] queueNanos;
+
+    public RequestScheduler( String name, int maxConcurrentTransactions )
+    {
+        RequestClass[] classes = RequestClass.values();
+        executors = new ThreadPoolExecutor[classes.length];
+        scheduled = new AtomicLong[classes.length];
+        rejected = new AtomicLong[classes.length];
+        queueNanos = new AtomicLong[classes.length];
+        for ( RequestClass requestClass : classes )
+        {
+            int i = requestClass.ordinal();
+            ThreadFactory threadFactory = threadFactory( name + " " + requestClass.name().toLowerCase() );
+            if ( requestClass.isBounded() )
+            {
+                int threads = requestClass.threads( maxConcurrentTransactions );
+                executors[i] = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>( requestClass.queueDepth() ), threadFactory );
+                executors[i].allowCoreThreadTimeOut( true );
+            }
+            else
+            {   // Like Executors.newCachedThreadPool, nothing is ever queued
+                executors[i] = new ThreadPoolExecutor( 0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(), threadFactory );
+            }
+            scheduled[i] = new AtomicLong();
+            rejected[i] = new AtomicLong();
+            queueNanos[i] = new AtomicLong();
+        }
+    }
+
+    private static ThreadFactory threadFactory( final String name )
+    {
+        return new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread( Runnable runnable )
+            {
+                return new Thread( runnable, name + "-" + count.incrementAndGet() );
+            }
+        };
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue of {@code requestClass}
+     * is full or the scheduler has been shut down.
+     */
+    public void schedule( final RequestClass requestClass, final Runnable request )
+    {
+        final int i = requestClass.ordinal();
+        final long queuedAt = System.nanoTime();
+        try
+        {
+            executors[i].execute( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    queueNanos[i].addAndGet( System.nanoTime() - queuedAt );
+                    request.run();
+                }
+            } );
+            scheduled[i].incrementAndGet();
+        }
+        catch ( RejectedExecutionException e )
+        {
+            rejected[i].incrementAndGet();
+            throw e;
+        }
+    }
+
+    public void shutdown()
+    {
+        for ( ThreadPoolExecutor executor : executors )
+        {
+            executor.shutdown();
+        }
+    }
+
+    public long getScheduled( RequestClass requestClass )
+    {
+        return scheduled[requestClass.ordinal()].get();
+    }
+
+    public long getRejected( RequestClass requestClass )
+    {
+        return rejected[requestClass.ordinal()].get();
+    }
+
+    /**
+     * @return the total time requests of {@code requestClass} have spent queued
+     * before a thread picked them up.
+     */
+    public long getQueueTimeMillis( RequestClass requestClass )
+    {
+        return TimeUnit.NANOSECONDS.toMillis( queueNanos[requestClass.ordinal()].get() );
+    }
+
+    public int getQueueDepth( RequestClass requestClass )
+    {
+        return executors[requestClass.ordinal()].getQueue().size();
+    }
+
+    public int getActive( RequestClass requestClass )
+    {
+        return executors[requestClass.ordinal()].getActiveCount();
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accumulated time a {@link Server} spends in each stage of handling requests,
+ * to see where request latency goes. Time spent queued between framing and
+ * decoding is measured by the {@link RequestScheduler}.
+ */
+public class RequestStageTimes
+{
+    public enum Stage
+    {
+        /**
+         * Reading chunk headers and putting chunks together, on the I/O thread.
+         */
+        FRAMING,
+        /**
+         * Reading the slave context and verifying its checksum.
+         */
+        DECODING,
+        /**
+         * The call to the master.
+         */
+        EXECUTING,
+        /**
+         * Serializing the response and its transaction streams.
+         */
+        WRITING;
+    }
+
+    private final AtomicLongArray nanos = new AtomicLongArray( Stage.values().length );
+    private final AtomicLongArray counts = new AtomicLongArray( Stage.values().length );
+
+    /**
+     * Records that {@code stage} started at {@code startNanos} and ended now.
+     * @return now, i.e. the start of the next stage.
+     */
+    long add( Stage stage, long startNanos )
+    {
+        long now = System.nanoTime();
+        nanos.addAndGet( stage.ordinal(), now - startNanos );
+        counts.incrementAndGet( stage.ordinal() );
+        return now;
+    }
+
+    public long getTimeMillis( Stage stage )
+    {
+        return TimeUnit.NANOSECONDS.toMillis( nanos.get( stage.ordinal() ) );
+    }
+
+    public long getCount( Stage stage )
+    {
+        return counts.get( stage.ordinal() );
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.neo4j.helpers.Exceptions;
+
+/**
+ * The result of a request sent with {@link Client#sendRequestAsync(RequestType, SlaveContext, Serializer, Deserializer)},
+ * which is completed when the response has been received up to its transactions. The calling thread
+ * is free to do other things, f.ex. send more requests, in the meantime.
+ * Whoever gets the {@link Response} out of it is responsible for closing it.
+ */
+public class ResponseFuture<T> implements Future<Response<T>>
+{
+    public interface Listener<T>
+    {
+        /**
+         * Called once the future is done, either in the thread completing it or,
+         * if already done, in the thread adding the listener.
+         */
+        void completed( ResponseFuture<T> future );
+    }
+
+    private final CountDownLatch done = new CountDownLatch( 1 );
+    private final int timeoutSeconds;
+    private final ResourceReleaser onTimeout;
+    private final List<Listener<T>> listeners = new ArrayList<Listener<T>>(); // Guarded by itself
+    private volatile Response<T> response;
+    private volatile Throwable failure;
+
+    /**
+     * @param timeoutSeconds how long {@link #awaitResponse()} waits for it to complete.
+     * @param onTimeout called if {@link #awaitResponse()} gives up waiting.
+     */
+    public ResponseFuture( int timeoutSeconds, ResourceReleaser onTimeout )
+    {
+        this.timeoutSeconds = timeoutSeconds;
+        this.onTimeout = onTimeout;
+    }
+
+    public static <T> ResponseFuture<T> completed( Response<T> response )
+    {
+        ResponseFuture<T> future = new ResponseFuture<T>( 0, ResourceReleaser.NO_OP );
+        future.complete( response );
+        return future;
+    }
+
+    public static <T> ResponseFuture<T> failed( Throwable failure )
+    {
+        ResponseFuture<T> future = new ResponseFuture<T>( 0, ResourceReleaser.NO_OP );
+        future.fail( failure );
+        return future;
+    }
+
+    /**
+     * @return {@code true} if this call completed the future. If it was already
+     * done the response is closed right away since noone will see it.
+     */
+    public boolean complete( Response<T> response )
+    {
+        synchronized ( listeners )
+        {
+            if ( isDone() )
+            {
+                response.close();
+                return false;
+            }
+            this.response = response;
+            done.countDown();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    public boolean fail( Throwable failure )
+    {
+        synchronized ( listeners )
+        {
+            if ( isDone() ) return false;
+            this.failure = failure;
+            done.countDown();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    public void addListener( Listener<T> listener )
+    {
+        synchronized ( listeners )
+        {
+            if ( !isDone() )
+            {
+                listeners.add( listener );
+                return;
+            }
+        }
+        listener.completed( this );
+    }
+
+    private void notifyListeners()
+    {
+        List<Listener<T>> toNotify;
+        synchronized ( listeners )
+        {
+            toNotify = new ArrayList<Listener<T>>( listeners );
+            listeners.clear();
+        }
+        for ( Listener<T> listener : toNotify )
+        {
+            listener.completed( this );
+        }
+    }
+
+    /**
+     * Waits for the response the way a synchronous request would, i.e. at most
+     * the read timeout of the request and with failures thrown as they are.
+     */
+    public Response<T> awaitResponse()
+    {
+        try
+        {
+            if ( !done.await( timeoutSeconds, TimeUnit.SECONDS ) ) timeOut();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ComException( e );
+        }
+        if ( failure != null ) throw Exceptions.launderedException( ComException.class, failure );
+        return response;
+    }
+
+    /**
+     * Gives up waiting for the response, failing this future if not already done.
+     * @return {@code true} if this call failed the future.
+     */
+    public boolean timeOut()
+    {
+        if ( !fail( new ComException( "Timed out waiting for response after " + timeoutSeconds + "s" ) ) )
+        {
+            return false;
+        }
+        onTimeout.release();
+        return true;
+    }
+
+    @Override
+    public Response<T> get() throws InterruptedException, ExecutionException
+    {
+        done.await();
+        return getNow();
+    }
+
+    @Override
+    public Response<T> get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException,
+            TimeoutException
+    {
+        if ( !done.await( timeout, unit ) ) throw new TimeoutException();
+        return getNow();
+    }
+
+    private Response<T> getNow() throws ExecutionException
+    {
+        if ( failure != null ) throw new ExecutionException( failure );
+        return response;
+    }
+
+    /**
+     * @return the failure if this future is done and failed, otherwise {@code null}.
+     */
+    public Throwable getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Requests can't be taken back once sent.
+     */
+    @Override
+    public boolean cancel( boolean mayInterruptIfRunning )
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        return done.getCount() == 0;
+    }
+}
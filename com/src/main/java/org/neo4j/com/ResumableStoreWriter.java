@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A {@link StoreWriter} that can write files in pieces, either continuing a
+ * file the receiver already has a verified prefix of, see {@link StoreCopyCheckpoint},
+ * or filling in a range of a file copied over several streams, see {@link ParallelStoreCopy}.
+ */
+public interface ResumableStoreWriter extends StoreWriter
+{
+    /**
+     * Like {@link #write(String, ReadableByteChannel, ByteBuffer, boolean)}, but
+     * {@code data} is what comes after the first {@code offset} bytes of the file.
+     */
+    void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, boolean hasData, long offset )
+            throws IOException;
+
+    /**
+     * Writes the {@code length} bytes of {@code path} starting at {@code offset},
+     * leaving the rest of the file as it is. Other ranges of the same file may
+     * be written at the same time. On the receiving side {@code data} ends with
+     * the range and {@code length} is -1.
+     */
+    void writeRange( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, long offset, long length )
+            throws IOException;
+}
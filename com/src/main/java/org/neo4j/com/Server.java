@@ -31,7 +31,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -49,9 +48,9 @@ import org.jboss.netty.channel.SimpleChannelHandler;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.neo4j.com.RequestStageTimes.Stage;
 import org.neo4j.com.SlaveContext.Tx;
 import org.neo4j.helpers.Exceptions;
-import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.helpers.collection.IteratorUtil;
 import org.neo4j.kernel.configuration.Config;
@@ -67,7 +66,14 @@ import static org.neo4j.com.DechunkingChannelBuffer.*;
  */
 public abstract class Server<M, R> extends Protocol implements ChannelPipelineFactory
 {
-    static final byte INTERNAL_PROTOCOL_VERSION = 2;
+    /* Version 2 one request at a time per channel
+     * Version 3 requests multiplexed over shared channels, each chunk carries a correlation id.
+     *           Block log data in large blocks, store files as raw file regions.
+     *           Each chunk carries flags, f.ex. whether or not its content is compressed */
+    static final byte INTERNAL_PROTOCOL_VERSION = 3;
+    /* Still accepted by servers talking a multiplexing version, for clients not yet upgraded */
+    static final byte LEGACY_INTERNAL_PROTOCOL_VERSION = 2;
+    static final byte MULTIPLEXING_INTERNAL_PROTOCOL_VERSION = 3;
     public static final int DEFAULT_BACKUP_PORT = 6362;
     
     // It's ok if there are more transactions, since these worker threads doesn't
@@ -79,13 +85,14 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
     private final ServerBootstrap bootstrap;
     private M realMaster;
     private final ChannelGroup channelGroup;
-    private final Map<Channel, Pair<SlaveContext, AtomicLong /*time last heard of*/>> connectedSlaveChannels =
-            new HashMap<Channel, Pair<SlaveContext,AtomicLong>>();
+    private final Map<Channel, Map<SlaveContext, InFlight>> connectedSlaveChannels =
+            new HashMap<Channel, Map<SlaveContext, InFlight>>();
     private final ExecutorService executor;
-    private final ExecutorService masterCallExecutor;
+    private final RequestScheduler scheduler;
+    private final RequestStageTimes stageTimes = new RequestStageTimes();
     private final StringLogger msgLog;
-    private final Map<Channel, PartialRequest> partialRequests =
-            Collections.synchronizedMap( new HashMap<Channel, PartialRequest>() );
+    private final Map<RequestKey, ChannelBuffer> partialRequests =
+            Collections.synchronizedMap( new HashMap<RequestKey, ChannelBuffer>() );
     private final int frameLength;
     private volatile boolean shuttingDown;
     
@@ -101,18 +108,47 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
     private final byte applicationProtocolVersion;
     private final int oldChannelThresholdMillis;
     private TxChecksumVerifier txVerifier;
+    private final Compression compression;
+    private final FlowControl flowControl;
+    private final BufferPool bufferPool = BufferPool.SHARED;
     
     public Server( M realMaster, final int port, StringLogger logger, int frameLength, byte applicationProtocolVersion,
             int maxNumberOfConcurrentTransactions, int oldChannelThreshold/*seconds*/, TxChecksumVerifier txVerifier )
+    {
+        this( realMaster, port, logger, frameLength, applicationProtocolVersion, maxNumberOfConcurrentTransactions,
+                oldChannelThreshold, txVerifier, new Compression() );
+    }
+
+    /**
+     * @param compression how to compress responses to clients talking an internal
+     * protocol version where chunks carry flags, see {@link #isMultiplexing(byte)}.
+     */
+    public Server( M realMaster, final int port, StringLogger logger, int frameLength, byte applicationProtocolVersion,
+            int maxNumberOfConcurrentTransactions, int oldChannelThreshold/*seconds*/, TxChecksumVerifier txVerifier,
+            Compression compression )
+    {
+        this( realMaster, port, logger, frameLength, applicationProtocolVersion, maxNumberOfConcurrentTransactions,
+                oldChannelThreshold, txVerifier, compression, new FlowControl() );
+    }
+
+    /**
+     * @param flowControl how many chunks of a response may be pending before
+     * the thread writing it has to wait for the client to catch up.
+     */
+    public Server( M realMaster, final int port, StringLogger logger, int frameLength, byte applicationProtocolVersion,
+            int maxNumberOfConcurrentTransactions, int oldChannelThreshold/*seconds*/, TxChecksumVerifier txVerifier,
+            Compression compression, FlowControl flowControl )
     {
         this.realMaster = realMaster;
         this.frameLength = frameLength;
         this.applicationProtocolVersion = applicationProtocolVersion;
         this.msgLog = logger;
         this.txVerifier = txVerifier;
+        this.compression = compression;
+        this.flowControl = flowControl;
         this.oldChannelThresholdMillis = oldChannelThreshold*1000;
         executor = Executors.newCachedThreadPool();
-        masterCallExecutor = Executors.newCachedThreadPool();
+        scheduler = new RequestScheduler( getClass().getSimpleName(), maxNumberOfConcurrentTransactions );
         unfinishedTransactionExecutor = Executors.newScheduledThreadPool( 2 );
         channelFactory = new NioServerSocketChannelFactory(
                 executor, executor, maxNumberOfConcurrentTransactions );
@@ -134,7 +170,8 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
         }
         channelGroup = new DefaultChannelGroup();
         channelGroup.add( channel );
-        msgLog.logMessage( getClass().getSimpleName() + " communication server started and bound to " + port, true );
+        msgLog.logMessage( getClass().getSimpleName() + " communication server started and bound to " + port +
+                ", compression " + compression + ", " + flowControl, true );
     }
 
     private Runnable silentChannelFinisher()
@@ -150,9 +187,9 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
                 Map<Channel, Boolean/*starting to get old?*/> channels = new HashMap<Channel, Boolean>();
                 synchronized ( connectedSlaveChannels )
                 {
-                    for ( Map.Entry<Channel, Pair<SlaveContext, AtomicLong>> channel : connectedSlaveChannels.entrySet() )
+                    for ( Map.Entry<Channel, Map<SlaveContext, InFlight>> channel : connectedSlaveChannels.entrySet() )
                     {   // Has this channel been silent for a while?
-                        long age = System.currentTimeMillis()-channel.getValue().other().get();
+                        long age = System.currentTimeMillis()-lastHeardOf( channel.getValue() );
                         if ( age > oldChannelThresholdMillis )
                         {
                             msgLog.logMessage( "Found a silent channel " + channel + ", " + age );
@@ -175,6 +212,16 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
         };
     }
     
+    private static long lastHeardOf( Map<SlaveContext, InFlight> requests )
+    {
+        long result = 0;
+        for ( InFlight inFlight : requests.values() )
+        {
+            result = Math.max( result, inFlight.lastHeardOf );
+        }
+        return result;
+    }
+
     /**
      * Only exposed so that tests can control it. It's not configurable really.
      */
@@ -183,6 +230,24 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
         return INTERNAL_PROTOCOL_VERSION;
     }
 
+    /**
+     * @return whether or not chunks in the given internal protocol version carries
+     * a correlation id, allowing many requests to share a channel.
+     */
+    static boolean isMultiplexing( byte internalProtocolVersion )
+    {
+        return internalProtocolVersion >= MULTIPLEXING_INTERNAL_PROTOCOL_VERSION;
+    }
+
+    /**
+     * @return whether or not block log data is sent in large blocks in the given
+     * internal protocol version, see {@link BlockLogBuffer}.
+     */
+    static boolean hasLargeBlocks( byte internalProtocolVersion )
+    {
+        return internalProtocolVersion >= MULTIPLEXING_INTERNAL_PROTOCOL_VERSION;
+    }
+
     public ChannelPipeline getPipeline() throws Exception
     {
         ChannelPipeline pipeline = Channels.pipeline();
@@ -241,30 +306,44 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
     
     protected void tryToFinishOffChannel( Channel channel )
     {
-        Pair<SlaveContext, AtomicLong> slave = null;
+        Map<SlaveContext, InFlight> slaves = null;
         synchronized ( connectedSlaveChannels )
         {
-            slave = connectedSlaveChannels.remove( channel );
+            slaves = connectedSlaveChannels.remove( channel );
         }
-        if ( slave == null )
+        if ( slaves == null )
         {
             return;
         }
-        tryToFinishOffChannel( channel, slave.first() );
+        // A multiplexed channel can have many requests in flight
+        for ( SlaveContext slave : slaves.keySet() )
+        {
+            tryToFinishOffChannel( channel, slave );
+        }
     }
 
     protected void tryToFinishOffChannel( Channel channel, SlaveContext slave )
+    {
+        if ( tryToFinishOff( channel, slave ) ) unmapSlave( channel, slave );
+    }
+
+    /**
+     * @return whether or not the transaction of {@code slave} was finished off,
+     * otherwise it's left to the unfinished transaction executor.
+     */
+    private boolean tryToFinishOff( Channel channel, SlaveContext slave )
     {
         try
         {
             finishOffChannel( channel, slave );
-            unmapSlave( channel, slave );
+            return true;
         }
         catch ( Throwable failure ) // Unknown error trying to finish off the tx
         {
             submitSilent( unfinishedTransactionExecutor, newTransactionFinisher( slave ) );
             if ( shouldLogFailureToFinishOffChannel( failure ) )
                 msgLog.logMessage( "Could not finish off dead channel", failure );
+            return false;
         }
     }
 
@@ -319,112 +398,178 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
         };
     }
 
+    /**
+     * Runs on the Netty I/O thread, so only frames the request, i.e. puts its
+     * chunks together. Anything that may block, like reading the slave context
+     * and verifying its checksum against the log, is left to the thread the
+     * request is scheduled on, see {@link #masterCaller}.
+     */
     protected void handleRequest( ChannelBuffer buffer, final Channel channel ) throws IOException
     {
-        Byte continuation = readContinuationHeader( buffer, channel );
-        if ( continuation == null ) return;
-        if ( continuation == ChunkingChannelBuffer.CONTINUATION_MORE )
+        long time = System.nanoTime();
+        final ChunkHeader header = readChunkHeader( buffer, channel );
+        if ( header == null ) return;
+        if ( header.compressed ) buffer = compression.decompress( buffer, frameLength );
+        RequestKey key = new RequestKey( channel, header.correlationId );
+        if ( header.continuation == ChunkingChannelBuffer.CONTINUATION_MORE )
         {
-            PartialRequest partialRequest = partialRequests.get( channel );
+            ChannelBuffer partialRequest = partialRequests.get( key );
             if ( partialRequest == null )
             {
                 // This is the first chunk in a multi-chunk request
-                RequestType<M> type = getRequestContext( buffer.readByte() );
-                SlaveContext context = readContext( buffer );
-                ChannelBuffer targetBuffer = mapSlave( channel, context, type );
-                partialRequest = new PartialRequest( type, context, targetBuffer );
-                partialRequests.put( channel, partialRequest );
+                partialRequest = bufferPool.acquireChannelBuffer();
+                partialRequests.put( key, partialRequest );
             }
-            partialRequest.add( buffer );
+            partialRequest.writeBytes( buffer );
+            stageTimes.add( Stage.FRAMING, time );
+            return;
         }
-        else
-        {
-            PartialRequest partialRequest = partialRequests.remove( channel );
-            RequestType<M> type = null;
-            SlaveContext context = null;
-            ChannelBuffer targetBuffer;
-            ChannelBuffer bufferToReadFrom = null;
-            ChannelBuffer bufferToWriteTo = null;
-            if ( partialRequest == null )
-            {
-                // This is the one and single chunk in the request
-                type = getRequestContext( buffer.readByte() );
-                context = readContext( buffer );
-                targetBuffer = mapSlave( channel, context, type );
-                bufferToReadFrom = buffer;
-                bufferToWriteTo = targetBuffer;
-            }
-            else
-            {
-                // This is the last chunk in a multi-chunk request
-                type = partialRequest.type;
-                context = partialRequest.context;
-                targetBuffer = partialRequest.buffer;
-                partialRequest.add( buffer );
-                bufferToReadFrom = targetBuffer;
-                bufferToWriteTo = ChannelBuffers.dynamicBuffer();
-            }
 
-            bufferToWriteTo.clear();
-            final ChunkingChannelBuffer chunkingBuffer = new ChunkingChannelBuffer( bufferToWriteTo, channel, frameLength,
-                    getInternalProtocolVersion(), applicationProtocolVersion );
-            submitSilent( masterCallExecutor, masterCaller( type, channel, context, chunkingBuffer, bufferToReadFrom ) );
+        ChannelBuffer partialRequest = partialRequests.remove( key );
+        ChannelBuffer bufferToReadFrom = buffer;
+        if ( partialRequest != null )
+        {
+            // This is the last chunk in a multi-chunk request
+            partialRequest.writeBytes( buffer );
+            bufferToReadFrom = partialRequest;
         }
+        RequestType<M> type = getRequestContext( bufferToReadFrom.readByte() );
+        stageTimes.add( Stage.FRAMING, time );
+        try
+        {
+            scheduler.schedule( getRequestClass( type ), masterCaller( type, channel, header, bufferToReadFrom,
+                    partialRequest ) );
+        }
+        catch ( RejectedExecutionException e )
+        {   // Too much of this kind of request queued already, better to fail this one right
+            // away than to let the client wait for its read timeout.
+            if ( partialRequest != null ) bufferPool.release( partialRequest );
+            writeFailureResponse( new ComException( "Server too busy to handle " + type + ", try again later" ),
+                    newChunkingBuffer( ChannelBuffers.dynamicBuffer(), channel, header ) );
+        }
+    }
+
+    /**
+     * Responds in the same internal protocol version, and for multiplexed
+     * channels with the same correlation id, as the request came in with.
+     */
+    private ChunkingChannelBuffer newChunkingBuffer( ChannelBuffer buffer, Channel channel, ChunkHeader header )
+    {
+        return new ChunkingChannelBuffer( buffer, channel, frameLength, header.internalProtocolVersion,
+                applicationProtocolVersion, header.correlationId, compression, flowControl, bufferPool );
     }
 
-    private Byte readContinuationHeader( ChannelBuffer buffer, final Channel channel )
+    private ChunkHeader readChunkHeader( ChannelBuffer buffer, final Channel channel )
     {
         byte[] header = new byte[2];
         buffer.readBytes( header );
+        byte version = getInternalProtocolVersion();
         try
-        {   // Read request header and assert correct internal/application protocol version
-            assertSameProtocolVersion( header, getInternalProtocolVersion(), applicationProtocolVersion );
+        {   // Read request header and assert correct internal/application protocol version.
+            // Clients not yet talking the multiplexing version are still served, one request
+            // at a time per channel as they expect.
+            if ( isMultiplexing( version ) &&
+                    internalProtocolVersion( header[0] ) == LEGACY_INTERNAL_PROTOCOL_VERSION )
+            {
+                version = LEGACY_INTERNAL_PROTOCOL_VERSION;
+            }
+            assertSameProtocolVersion( header, version, applicationProtocolVersion );
         }
         catch ( final IllegalProtocolVersionException e )
-        {   // Version mismatch, fail with a good exception back to the client
+        {   // Version mismatch, fail with a good exception back to the client. If it's only the
+            // application protocol version that differs the rest of the request header can be
+            // read and the failure routed back to the request it belongs to.
+            byte responseVersion = getInternalProtocolVersion();
+            int correlationId = 0;
+            if ( internalProtocolVersion( header[0] ) == version )
+            {
+                responseVersion = version;
+                if ( isMultiplexing( version ) && buffer.readableBytes() >= 4 ) correlationId = buffer.readInt();
+            }
             final ChunkingChannelBuffer failureResponse = new ChunkingChannelBuffer( ChannelBuffers.dynamicBuffer(), channel,
-                    frameLength, getInternalProtocolVersion(), applicationProtocolVersion );
-            submitSilent( masterCallExecutor, new Runnable()
+                    frameLength, responseVersion, applicationProtocolVersion, correlationId );
+            try
             {
-                @Override
-                public void run()
+                scheduler.schedule( RequestClass.MAINTENANCE, new Runnable()
                 {
-                    writeFailureResponse( e, failureResponse );
-                }
-            } );
+                    @Override
+                    public void run()
+                    {
+                        writeFailureResponse( e, failureResponse );
+                    }
+                } );
+            }
+            catch ( RejectedExecutionException ree )
+            {
+                if ( !shuttingDown ) msgLog.logMessage( "Couldn't schedule protocol version failure response", ree );
+            }
             return null;
         }
-        return (byte) (header[0] & 0x1);
+        int correlationId = 0;
+        boolean compressed = false;
+        if ( isMultiplexing( version ) )
+        {
+            correlationId = buffer.readInt();
+            compressed = (buffer.readByte() & ChunkingChannelBuffer.FLAG_COMPRESSED) != 0;
+        }
+        return new ChunkHeader( (byte) (header[0] & 0x1), version, correlationId, compressed );
     }
 
-    private Runnable masterCaller( final RequestType<M> type, final Channel channel, final SlaveContext context,
-            final ChunkingChannelBuffer targetBuffer, final ChannelBuffer bufferToReadFrom )
+    /**
+     * @param bufferToRelease released to the pool once the request has been
+     * handled, or {@code null} if the request wasn't read from a pooled buffer.
+     */
+    private Runnable masterCaller( final RequestType<M> type, final Channel channel, final ChunkHeader header,
+            final ChannelBuffer bufferToReadFrom, final ChannelBuffer bufferToRelease )
     {
         return new Runnable()
         {
             @SuppressWarnings( "unchecked" )
             public void run()
             {
+                long time = System.nanoTime();
+                SlaveContext context;
+                try
+                {
+                    context = readContext( bufferToReadFrom );
+                }
+                catch ( Throwable e )
+                {   // Treated as any other broken request, i.e. the channel is closed
+                    if ( bufferToRelease != null ) bufferPool.release( bufferToRelease );
+                    msgLog.logMessage( "Error handling request", e );
+                    channel.close();
+                    tryToFinishOffChannel( channel );
+                    return;
+                }
+                time = stageTimes.add( Stage.DECODING, time );
+
+                ChannelBuffer bufferToWriteTo = mapSlave( channel, context, type );
+                bufferToWriteTo.clear();
+                ChunkingChannelBuffer targetBuffer = newChunkingBuffer( bufferToWriteTo, channel, header );
                 Response<R> response = null;
                 try
                 {
                     response = type.getMasterCaller().callMaster( realMaster, context, bufferToReadFrom, targetBuffer );
+                    time = stageTimes.add( Stage.EXECUTING, time );
                     type.getObjectSerializer().write( response.response(), targetBuffer );
                     writeStoreId( response.getStoreId(), targetBuffer );
                     writeTransactionStreams( response.transactions(), targetBuffer );
                     targetBuffer.done();
+                    stageTimes.add( Stage.WRITING, time );
                     responseWritten( type, channel, context );
                 }
                 catch ( Throwable e )
                 {
                     targetBuffer.clear( true );
                     writeFailureResponse( e, targetBuffer );
-                    tryToFinishOffChannel( channel, context );
+                    // Unmapped below, like any other request
+                    tryToFinishOff( channel, context );
                     throw Exceptions.launderedException( e );
                 }
                 finally
                 {
                     if ( response != null ) response.close();
+                    if ( bufferToRelease != null ) bufferPool.release( bufferToRelease );
                     unmapSlave( channel, context );
                 }
             }
@@ -451,6 +596,25 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
     protected void responseWritten( RequestType<M> type, Channel channel, SlaveContext context )
     {
     }
+
+    /**
+     * @return which {@link RequestScheduler} pool requests of {@code type} should
+     * run on. Everything is {@link RequestClass#LATENCY_CRITICAL} by default.
+     */
+    protected RequestClass getRequestClass( RequestType<M> type )
+    {
+        return RequestClass.LATENCY_CRITICAL;
+    }
+
+    public RequestScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    public RequestStageTimes getStageTimes()
+    {
+        return stageTimes;
+    }
     
     private static void writeStoreId( StoreId storeId, ChannelBuffer targetBuffer )
     {
@@ -475,11 +639,11 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
             writeString( buffer, datasource );
             datasourceId.put( datasource, i + 1/*0 means "no more transactions"*/);
         }
+        BlockLogBuffer blockBuffer = new BlockLogBuffer( buffer, BlockLogBuffer.largeBlocksFor( buffer ) );
         for ( Triplet<String, Long, TxExtractor> tx : IteratorUtil.asIterable( txStream ) )
         {
             buffer.writeByte( datasourceId.get( tx.first() ) );
             buffer.writeLong( tx.second() );
-            BlockLogBuffer blockBuffer = new BlockLogBuffer( buffer );
             tx.third().extract( blockBuffer );
             blockBuffer.done();
         }
@@ -523,26 +687,42 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
             // which some communication points pass in as context.
             if ( slave != null && slave.machineId() != SlaveContext.EMPTY.machineId() )
             {
-                Pair<SlaveContext, AtomicLong> previous = connectedSlaveChannels.get( channel );
-                if ( previous != null )
+                Map<SlaveContext, InFlight> requests = connectedSlaveChannels.get( channel );
+                if ( requests == null )
                 {
-                    previous.other().set( System.currentTimeMillis() );
+                    requests = new HashMap<SlaveContext, InFlight>();
+                    connectedSlaveChannels.put( channel, requests );
                 }
-                else
+                InFlight inFlight = requests.get( slave );
+                if ( inFlight == null )
                 {
-                    connectedSlaveChannels.put( channel, Pair.of( slave, new AtomicLong( System.currentTimeMillis() ) ) );
+                    inFlight = new InFlight();
+                    requests.put( slave, inFlight );
                 }
+                inFlight.count++;
+                inFlight.lastHeardOf = System.currentTimeMillis();
             }
         }
-        return ChannelBuffers.dynamicBuffer();
+        return bufferPool.acquireChannelBuffer();
     }
 
     protected void unmapSlave( Channel channel, SlaveContext slave )
     {
         synchronized ( connectedSlaveChannels )
         {
-            connectedSlaveChannels.remove( channel );
-            channelGroup.remove( channel );
+            Map<SlaveContext, InFlight> requests = connectedSlaveChannels.get( channel );
+            if ( requests != null )
+            {   // Requests in flight over a multiplexed channel can have equal contexts
+                InFlight inFlight = requests.get( slave );
+                if ( inFlight != null && --inFlight.count > 0 ) return;
+                requests.remove( slave );
+            }
+            if ( requests == null || requests.isEmpty() )
+            {
+                // Other requests may still be in flight over a multiplexed channel
+                connectedSlaveChannels.remove( channel );
+                channelGroup.remove( channel );
+            }
         }
     }
     
@@ -557,7 +737,7 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
         shuttingDown = true;
         silentChannelExecutor.shutdown();
         unfinishedTransactionExecutor.shutdown();
-        masterCallExecutor.shutdown();
+        scheduler.shutdown();
         channelGroup.close().awaitUninterruptibly();
         executor.shutdown();
         msgLog.logMessage( getClass().getSimpleName() + " shutdown", true );
@@ -578,9 +758,12 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
         Map<Channel, SlaveContext> result = new HashMap<Channel, SlaveContext>();
         synchronized ( connectedSlaveChannels )
         {
-            for ( Map.Entry<Channel, Pair<SlaveContext, AtomicLong>> entry : connectedSlaveChannels.entrySet() )
+            for ( Map.Entry<Channel, Map<SlaveContext, InFlight>> entry : connectedSlaveChannels.entrySet() )
             {
-                result.put( entry.getKey(), entry.getValue().first() );
+                if ( !entry.getValue().isEmpty() )
+                {
+                    result.put( entry.getKey(), entry.getValue().keySet().iterator().next() );
+                }
             }
         }
         return result;
@@ -591,22 +774,60 @@ public abstract class Server<M, R> extends Protocol implements ChannelPipelineFa
     // but exposed so that other tools can reach that information.
     // =====================================================================
 
-    private class PartialRequest
+    /**
+     * The requests in flight over a channel for one slave context.
+     * Guarded by {@link Server#connectedSlaveChannels}, except for reading
+     * {@link #lastHeardOf}.
+     */
+    private static class InFlight
+    {
+        int count;
+        volatile long lastHeardOf;
+    }
+
+    private static class ChunkHeader
     {
-        final SlaveContext context;
-        final ChannelBuffer buffer;
-        final RequestType<M> type;
+        final byte continuation;
+        final byte internalProtocolVersion;
+        final int correlationId;
+        final boolean compressed;
 
-        public PartialRequest( RequestType<M> type, SlaveContext context, ChannelBuffer buffer )
+        ChunkHeader( byte continuation, byte internalProtocolVersion, int correlationId, boolean compressed )
         {
-            this.type = type;
-            this.context = context;
-            this.buffer = buffer;
+            this.continuation = continuation;
+            this.internalProtocolVersion = internalProtocolVersion;
+            this.correlationId = correlationId;
+            this.compressed = compressed;
         }
+    }
 
-        public void add( ChannelBuffer buffer )
+    /**
+     * Identifies a request in flight, there can be many of those per channel
+     * when requests are multiplexed.
+     */
+    private static class RequestKey
+    {
+        private final Channel channel;
+        private final int correlationId;
+
+        RequestKey( Channel channel, int correlationId )
+        {
+            this.channel = channel;
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * channel.hashCode() + correlationId;
+        }
+
+        @Override
+        public boolean equals( Object obj )
         {
-            this.buffer.writeBytes( buffer );
+            if ( !(obj instanceof RequestKey) ) return false;
+            RequestKey other = (RequestKey) obj;
+            return channel.equals( other.channel ) && correlationId == other.correlationId;
         }
     }
 }
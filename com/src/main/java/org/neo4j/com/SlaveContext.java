@@ -69,9 +69,20 @@ public final class SlaveContext
     private final long sessionId;
     private final int masterId;
     private final long checksum;
+    private final boolean initializesTx;
 
     public SlaveContext( long sessionId, int machineId, int eventIdentifier,
             Tx[] lastAppliedTransactions, int masterId, long checksum )
+    {
+        this( sessionId, machineId, eventIdentifier, lastAppliedTransactions, masterId, checksum, false );
+    }
+
+    /**
+     * @param initializesTx whether or not the request this context goes with
+     * is the first one of its transaction, which then begins it on the master.
+     */
+    public SlaveContext( long sessionId, int machineId, int eventIdentifier,
+            Tx[] lastAppliedTransactions, int masterId, long checksum, boolean initializesTx )
     {
         this.sessionId = sessionId;
         this.machineId = machineId;
@@ -79,6 +90,7 @@ public final class SlaveContext
         this.lastAppliedTransactions = lastAppliedTransactions;
         this.masterId = masterId;
         this.checksum = checksum;
+        this.initializesTx = initializesTx;
 
         long hash = sessionId;
         hash = (31 * hash) ^ eventIdentifier;
@@ -116,11 +128,32 @@ public final class SlaveContext
         return checksum;
     }
 
+    /**
+     * @return whether or not the master should begin the transaction of this
+     * context if it hasn't already, instead of having been asked to do so in a
+     * request of its own.
+     */
+    public boolean initializesTx()
+    {
+        return initializesTx;
+    }
+
+    /**
+     * @return a copy of this context which {@link #initializesTx() initializes}
+     * its transaction. Equal to this context.
+     */
+    public SlaveContext initializingTx()
+    {
+        return new SlaveContext( sessionId, machineId, eventIdentifier, lastAppliedTransactions, masterId, checksum,
+                true );
+    }
+
     @Override
     public String toString()
     {
         return "SlaveContext[session: " + sessionId + ", ID:" + machineId + ", eventIdentifier:" +
-                eventIdentifier + ", " + Arrays.asList( lastAppliedTransactions ) + "]";
+                eventIdentifier + ", " + Arrays.asList( lastAppliedTransactions ) +
+                (initializesTx ? ", initializesTx" : "") + "]";
     }
 
     @Override
@@ -147,4 +180,14 @@ public final class SlaveContext
         return new SlaveContext( EMPTY.sessionId, EMPTY.machineId, EMPTY.eventIdentifier,
                 lastAppliedTransactions, EMPTY.masterId, EMPTY.checksum );
     }
+
+    /**
+     * @param masterId master id of the last applied neo store transaction.
+     * @param checksum checksum of the last applied neo store transaction.
+     */
+    public static SlaveContext anonymous( Tx[] lastAppliedTransactions, int masterId, long checksum )
+    {
+        return new SlaveContext( EMPTY.sessionId, EMPTY.machineId, EMPTY.eventIdentifier,
+                lastAppliedTransactions, masterId, checksum );
+    }
 }
@@ -0,0 +1,439 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Checksum;
+
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Keeps track of how far each file of a store copy has been written to the
+ * target directory, so that a copy that fails part way can be resumed instead
+ * of started over. For every file the length written and forced to disk so far
+ * is recorded in a file in the target directory together with the checksum of
+ * those bytes, see {@link ToFileStoreWriter}. The checksum is the first 64 bits
+ * of the SHA-1 digest of the bytes, since a prefix wrongly taken to match means
+ * a corrupt store copy.
+ *
+ * When opened again the recorded prefixes are verified against the files and
+ * whatever isn't accounted for is removed. The prefixes are then sent along
+ * with the next copy request and the sending side only sends what comes after
+ * a prefix if it's still the same as the start of its own file. Since the files
+ * of a running database change, a prefix that doesn't match any more simply
+ * means that the file is sent from the start again.
+ *
+ * Files may be written from several threads at the same time, see
+ * {@link ParallelStoreCopy}. Only the range continuing the prefix of a file
+ * extends it, other ranges aren't recorded.
+ */
+public class StoreCopyCheckpoint
+{
+    public static final String FILE_NAME = "store-copy.checkpoint";
+
+    private final File directory;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final Set<String> written = new HashSet<String>();
+
+    private StoreCopyCheckpoint( File directory )
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @return whether or not there's a store copy to resume in {@code directory}.
+     */
+    public static boolean existsIn( File directory )
+    {
+        return new File( directory, FILE_NAME ).exists();
+    }
+
+    /**
+     * Opens the checkpoint of a store copy to {@code directory}. If there's a
+     * copy to resume, files and parts of files which can't be verified are
+     * removed. Otherwise the directory is cleared and the copy starts from scratch.
+     */
+    public static StoreCopyCheckpoint open( File directory ) throws IOException
+    {
+        StoreCopyCheckpoint checkpoint = new StoreCopyCheckpoint( directory );
+        if ( !existsIn( directory ) || !checkpoint.load() )
+        {
+            checkpoint.entries.clear();
+            FileUtils.deleteRecursively( directory );
+        }
+        directory.mkdirs();
+        checkpoint.removeUnverifiedFiles( directory, checkpoint.verifiedFiles() );
+        checkpoint.save();
+        return checkpoint;
+    }
+
+    /**
+     * @return the prefixes of files that can be resumed, by their path relative
+     * to the target directory.
+     */
+    public synchronized Map<String, StoreFilePrefix> prefixes()
+    {
+        Map<String, StoreFilePrefix> result = new HashMap<String, StoreFilePrefix>();
+        for ( Map.Entry<String, Entry> entry : entries.entrySet() )
+        {
+            if ( entry.getValue().length > 0 )
+            {
+                result.put( entry.getKey(), new StoreFilePrefix( entry.getValue().length,
+                        entry.getValue().recordedChecksum ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Called when {@code path} is about to be written from {@code offset}.
+     *
+     * @return the checksum to keep updating with the bytes written after {@code offset}.
+     * @throws IOException if there's no verified prefix of that length to resume from.
+     */
+    public synchronized Checksum resume( String path, long offset ) throws IOException
+    {
+        Entry entry = entries.get( path );
+        if ( offset == 0 || entry == null )
+        {
+            if ( offset != 0 )
+            {
+                throw new IOException( "Can't resume " + path + " at " + offset + ", nothing of it is verified" );
+            }
+            entry = new Entry( 0, newChecksum() );
+            entries.put( path, entry );
+        }
+        else if ( entry.length != offset )
+        {
+            throw new IOException( "Can't resume " + path + " at " + offset + ", " + entry.length +
+                    " bytes of it are verified" );
+        }
+        written.add( path );
+        entry.writing = true;
+        return entry.checksum;
+    }
+
+    /**
+     * Called when a range of {@code path} starting at {@code offset} is about
+     * to be written.
+     *
+     * @return the checksum to keep updating with the bytes of the range if it
+     * continues the verified prefix of the file, otherwise {@code null} and the
+     * range isn't recorded.
+     */
+    public synchronized Checksum continueAt( String path, long offset )
+    {
+        written.add( path );
+        Entry entry = entries.get( path );
+        if ( entry == null && offset == 0 )
+        {
+            entry = new Entry( 0, newChecksum() );
+            entries.put( path, entry );
+        }
+        if ( entry == null || entry.length != offset || entry.writing ) return null;
+        entry.writing = true;
+        return entry.checksum;
+    }
+
+    /**
+     * Called when done writing what {@link #resume(String, long)} or
+     * {@link #continueAt(String, long)} returned a checksum for.
+     */
+    public synchronized void finished( String path )
+    {
+        entries.get( path ).writing = false;
+    }
+
+    /**
+     * Records that the first {@code length} bytes of {@code path} are written
+     * and forced, and that the checksum last returned from {@link #resume(String, long)}
+     * is that of those bytes.
+     */
+    public synchronized void record( String path, long length ) throws IOException
+    {
+        Entry entry = entries.get( path );
+        entry.length = length;
+        entry.recordedChecksum = entry.checksum.getValue();
+        save();
+    }
+
+    /**
+     * Removes the files which weren't part of the copy this time around, i.e.
+     * files from a previous attempt which the sending side doesn't have any more.
+     */
+    public synchronized void removeFilesNotWritten() throws IOException
+    {
+        for ( Iterator<String> paths = entries.keySet().iterator(); paths.hasNext(); )
+        {
+            String path = paths.next();
+            if ( !written.contains( path ) )
+            {
+                new File( directory, path ).delete();
+                paths.remove();
+            }
+        }
+        save();
+    }
+
+    /**
+     * Removes the checkpoint once the copy is complete, so that a later copy
+     * to the same directory starts from scratch.
+     */
+    public void delete()
+    {
+        new File( directory, FILE_NAME ).delete();
+    }
+
+    /**
+     * @return the checksum of the first {@code length} bytes of {@code channel}.
+     */
+    public static long checksum( FileChannel channel, long length, ByteBuffer buffer ) throws IOException
+    {
+        return checksumOf( channel, length, buffer ).getValue();
+    }
+
+    private static Checksum checksumOf( FileChannel channel, long length, ByteBuffer buffer ) throws IOException
+    {
+        Checksum checksum = newChecksum();
+        for ( long position = 0; position < length; )
+        {
+            buffer.clear();
+            buffer.limit( (int) Math.min( buffer.capacity(), length - position ) );
+            int read = channel.read( buffer, position );
+            if ( read == -1 ) throw new IOException( "File ended at " + position + ", expected " + length + " bytes" );
+            buffer.flip();
+            update( checksum, buffer );
+            position += read;
+        }
+        buffer.clear();
+        return checksum;
+    }
+
+    /**
+     * @return a new checksum of the kind prefixes are compared by.
+     */
+    static Checksum newChecksum()
+    {
+        try
+        {
+            return new DigestChecksum( MessageDigest.getInstance( "SHA-1" ) );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {   // Every Java platform has SHA-1
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Updates {@code checksum} with the remaining bytes of {@code buffer},
+     * without changing its position.
+     */
+    public static void update( Checksum checksum, ByteBuffer buffer )
+    {
+        if ( buffer.hasArray() )
+        {
+            checksum.update( buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining() );
+            return;
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get( bytes );
+        checksum.update( bytes, 0, bytes.length );
+    }
+
+    private boolean load() throws IOException
+    {
+        BufferedReader reader = new BufferedReader( new FileReader( new File( directory, FILE_NAME ) ) );
+        ByteBuffer buffer = ByteBuffer.allocate( 1024*1024 );
+        try
+        {
+            String line;
+            while ( (line = reader.readLine()) != null )
+            {
+                // <length> <checksum> <path>
+                String[] parts = line.split( " ", 3 );
+                if ( parts.length != 3 ) return false;
+                verify( parts[2], Long.parseLong( parts[0] ), Long.parseLong( parts[1] ), buffer );
+            }
+            return true;
+        }
+        catch ( NumberFormatException e )
+        {   // Not written completely, start over
+            return false;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Keeps the recorded prefix of {@code path} if the file still starts with
+     * it and cuts off whatever comes after, since that wasn't forced to disk
+     * when the prefix was recorded.
+     */
+    private void verify( String path, long length, long checksum, ByteBuffer buffer ) throws IOException
+    {
+        File file = new File( directory, path );
+        if ( !file.exists() || file.length() < length ) return;
+        RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" );
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            Checksum actual = checksumOf( channel, length, buffer );
+            if ( actual.getValue() != checksum ) return;
+            channel.truncate( length );
+            entries.put( path, new Entry( length, actual ) );
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    private Set<File> verifiedFiles()
+    {
+        Set<File> files = new HashSet<File>();
+        for ( String path : entries.keySet() )
+        {
+            files.add( new File( directory, path ).getAbsoluteFile() );
+        }
+        files.add( new File( directory, FILE_NAME ).getAbsoluteFile() );
+        return files;
+    }
+
+    private void removeUnverifiedFiles( File directory, Set<File> verified )
+    {
+        File[] files = directory.listFiles();
+        if ( files == null ) return;
+        for ( File file : files )
+        {
+            if ( file.isDirectory() )
+            {
+                removeUnverifiedFiles( file, verified );
+                String[] left = file.list();
+                if ( left != null && left.length == 0 ) file.delete();
+            }
+            else if ( !verified.contains( file.getAbsoluteFile() ) )
+            {
+                file.delete();
+            }
+        }
+    }
+
+    private void save() throws IOException
+    {
+        File file = new File( directory, FILE_NAME );
+        File tmp = new File( directory, FILE_NAME + ".tmp" );
+        PrintWriter writer = new PrintWriter( new FileWriter( tmp ) );
+        try
+        {
+            for ( Map.Entry<String, Entry> entry : entries.entrySet() )
+            {
+                writer.println( entry.getValue().length + " " + entry.getValue().recordedChecksum + " " +
+                        entry.getKey() );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        if ( !tmp.renameTo( file ) )
+        {   // Some platforms won't rename onto an existing file
+            file.delete();
+            if ( !tmp.renameTo( file ) ) throw new IOException( "Couldn't write " + file );
+        }
+    }
+
+    /**
+     * A {@link Checksum} of the first 64 bits of a {@link MessageDigest}. The
+     * value can be asked for as the bytes are written, without disturbing the
+     * digest of what comes after.
+     */
+    private static class DigestChecksum implements Checksum
+    {
+        private final MessageDigest digest;
+
+        DigestChecksum( MessageDigest digest )
+        {
+            this.digest = digest;
+        }
+
+        @Override
+        public void update( int b )
+        {
+            digest.update( (byte) b );
+        }
+
+        @Override
+        public void update( byte[] bytes, int offset, int length )
+        {
+            digest.update( bytes, offset, length );
+        }
+
+        @Override
+        public long getValue()
+        {
+            try
+            {
+                return ByteBuffer.wrap( ((MessageDigest) digest.clone()).digest() ).getLong();
+            }
+            catch ( CloneNotSupportedException e )
+            {   // The SHA-1 digests of the platform are cloneable
+                throw new RuntimeException( e );
+            }
+        }
+
+        @Override
+        public void reset()
+        {
+            digest.reset();
+        }
+    }
+
+    private static class Entry
+    {
+        private long length;
+        private final Checksum checksum; // Updated by the writing thread as it goes
+        private long recordedChecksum;   // Of the first length bytes
+        private boolean writing;
+
+        Entry( long length, Checksum checksum )
+        {
+            this.length = length;
+            this.checksum = checksum;
+            this.recordedChecksum = checksum.getValue();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.neo4j.com.SlaveContext.Tx;
+
+/**
+ * How the store files are split into parts which are copied over separate
+ * streams at the same time, see {@link ParallelStoreCopy}. The logs are rotated
+ * when the plan is made, and since the parts are read after that, applying the
+ * transactions after {@link #startTransactions()} once all parts are copied
+ * makes the copy consistent, just like for a copy over a single stream.
+ */
+public class StoreCopyPlan implements Iterable<List<StoreFileRange>>
+{
+    private final Tx[] startTransactions;
+    private final List<List<StoreFileRange>> parts;
+
+    public StoreCopyPlan( Tx[] startTransactions, List<List<StoreFileRange>> parts )
+    {
+        this.startTransactions = startTransactions;
+        this.parts = parts;
+    }
+
+    /**
+     * @return the last committed transaction of each data source when the logs
+     * were rotated.
+     */
+    public Tx[] startTransactions()
+    {
+        return startTransactions.clone();
+    }
+
+    public int parts()
+    {
+        return parts.size();
+    }
+
+    public List<StoreFileRange> part( int index )
+    {
+        return parts.get( index );
+    }
+
+    @Override
+    public Iterator<List<StoreFileRange>> iterator()
+    {
+        return parts.iterator();
+    }
+}
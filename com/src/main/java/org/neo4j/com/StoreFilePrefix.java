@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+/**
+ * The first {@link #length()} bytes of a store file that the receiving side of a
+ * store copy already has, identified by their checksum so that the sending side
+ * can tell whether they are still the same as its own, see {@link StoreCopyCheckpoint}.
+ */
+public class StoreFilePrefix
+{
+    private final long length;
+    private final long checksum;
+
+    public StoreFilePrefix( long length, long checksum )
+    {
+        this.length = length;
+        this.checksum = checksum;
+    }
+
+    public long length()
+    {
+        return length;
+    }
+
+    public long checksum()
+    {
+        return checksum;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StoreFilePrefix[length:" + length + ", checksum:" + checksum + "]";
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+/**
+ * A part of a store file to send in a store copy, see {@link StoreCopyPlan}.
+ * Either a range of a given length, which may be sent at the same time as other
+ * ranges of the same file, or the file {@link #TO_END from an offset to its end}.
+ */
+public class StoreFileRange
+{
+    public static final long TO_END = -1;
+
+    private final String path;
+    private final long offset;
+    private final long length;
+
+    public StoreFileRange( String path, long offset, long length )
+    {
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public String path()
+    {
+        return path;
+    }
+
+    public long offset()
+    {
+        return offset;
+    }
+
+    /**
+     * @return the length of the range or {@link #TO_END}.
+     */
+    public long length()
+    {
+        return length;
+    }
+
+    public boolean isToEnd()
+    {
+        return length == TO_END;
+    }
+
+    @Override
+    public String toString()
+    {
+        return path + "[" + offset + "," + (isToEnd() ? "end" : String.valueOf( offset + length )) + ")";
+    }
+}
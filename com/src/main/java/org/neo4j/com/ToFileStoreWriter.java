@@ -25,56 +25,135 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.zip.Checksum;
 
-public class ToFileStoreWriter implements StoreWriter
+public class ToFileStoreWriter implements ResumableStoreWriter
 {
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 32*Protocol.MEGA;
+
     private final File basePath;
+    private final StoreCopyCheckpoint checkpoint;
+    private final long checkpointInterval;
 
     public ToFileStoreWriter( String graphDbStoreDir )
+    {
+        this( graphDbStoreDir, null, 0 );
+    }
+
+    /**
+     * @param checkpoint where to record how much of each file has been written,
+     * every {@code checkpointInterval} bytes and when the file is done, so that
+     * the copy can be resumed if it fails.
+     */
+    public ToFileStoreWriter( String graphDbStoreDir, StoreCopyCheckpoint checkpoint, long checkpointInterval )
     {
         this.basePath = new File( graphDbStoreDir );
+        this.checkpoint = checkpoint;
+        this.checkpointInterval = checkpointInterval;
     }
 
     public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer,
             boolean hasData ) throws IOException
+    {
+        write( path, data, temporaryBuffer, hasData, 0 );
+    }
+
+    public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer,
+            boolean hasData, long offset ) throws IOException
     {
         try
         {
-            temporaryBuffer.clear();
-            File file = new File( basePath, path );
-            RandomAccessFile randomAccessFile = null;
-            try
+            Checksum checksum = checkpoint != null ? checkpoint.resume( path, offset ) : null;
+            // Anything after the offset is left from an earlier attempt and not verified
+            write( path, data, temporaryBuffer, hasData, offset, true, checksum );
+        }
+        catch ( Throwable t )
+        {
+            t.printStackTrace();
+            throw new IOException( t );
+        }
+    }
+
+    public void writeRange( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer,
+            long offset, long length ) throws IOException
+    {
+        try
+        {
+            Checksum checksum = checkpoint != null ? checkpoint.continueAt( path, offset ) : null;
+            write( path, data, temporaryBuffer, true, offset, false, checksum );
+        }
+        catch ( Throwable t )
+        {
+            t.printStackTrace();
+            throw new IOException( t );
+        }
+    }
+
+    /**
+     * @param checksum of what's written so far, if it's to be recorded in the checkpoint.
+     */
+    private void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, boolean hasData,
+            long offset, boolean truncate, Checksum checksum ) throws IOException
+    {
+        temporaryBuffer.clear();
+        File file = new File( basePath, path );
+        RandomAccessFile randomAccessFile = null;
+        try
+        {
+            file.getParentFile().mkdirs();
+            randomAccessFile = new RandomAccessFile( file, "rw" );
+            FileChannel channel = randomAccessFile.getChannel();
+            if ( truncate ) channel.truncate( offset );
+            channel.position( offset );
+            long sinceCheckpoint = 0;
+            if ( hasData )
             {
-                file.getParentFile().mkdirs();
-                randomAccessFile = new RandomAccessFile( file, "rw" );
-                if ( hasData )
+                while ( data.read( temporaryBuffer ) >= 0 )
                 {
-                    FileChannel channel = randomAccessFile.getChannel();
-                    while ( data.read( temporaryBuffer ) >= 0 )
+                    temporaryBuffer.flip();
+                    sinceCheckpoint += temporaryBuffer.remaining();
+                    if ( checksum != null ) StoreCopyCheckpoint.update( checksum, temporaryBuffer );
+                    while ( temporaryBuffer.hasRemaining() )
                     {
-                        temporaryBuffer.flip();
                         channel.write( temporaryBuffer );
-                        temporaryBuffer.clear();
+                    }
+                    temporaryBuffer.clear();
+                    if ( checksum != null && sinceCheckpoint >= checkpointInterval )
+                    {
+                        checkpoint( path, channel );
+                        sinceCheckpoint = 0;
                     }
                 }
             }
-            finally
-            {
-                if ( randomAccessFile != null )
-                {
-                    randomAccessFile.close();
-                }
-            }
+            if ( checksum != null ) checkpoint( path, channel );
         }
-        catch ( Throwable t )
+        finally
         {
-            t.printStackTrace();
-            throw new IOException( t );
+            if ( checksum != null ) checkpoint.finished( path );
+            if ( randomAccessFile != null )
+            {
+                randomAccessFile.close();
+            }
         }
     }
 
+    private void checkpoint( String path, FileChannel channel ) throws IOException
+    {
+        // What's recorded has to be on disk, the checkpoint is used after crashes too
+        channel.force( false );
+        checkpoint.record( path, channel.position() );
+    }
+
     public void done()
     {
-        // Do nothing
+        if ( checkpoint == null ) return;
+        try
+        {
+            checkpoint.removeFilesNotWritten();
+        }
+        catch ( IOException e )
+        {
+            throw new ComException( e );
+        }
     }
 }
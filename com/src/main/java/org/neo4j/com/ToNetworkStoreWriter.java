@@ -21,11 +21,12 @@ package org.neo4j.com;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 
-public class ToNetworkStoreWriter implements StoreWriter
+public class ToNetworkStoreWriter implements ResumableStoreWriter
 {
     private final ChannelBuffer targetBuffer;
 
@@ -36,13 +37,36 @@ public class ToNetworkStoreWriter implements StoreWriter
     
     public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer,
             boolean hasData ) throws IOException
+    {
+        write( path, data, temporaryBuffer, hasData, 0 );
+    }
+
+    public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer,
+            boolean hasData, long offset ) throws IOException
     {
         char[] chars = path.toCharArray();
         targetBuffer.writeShort( chars.length );
         Protocol.writeChars( targetBuffer, chars );
-        targetBuffer.writeByte( hasData ? 1 : 0 );
+        if ( offset > 0 )
+        {
+            targetBuffer.writeByte( Protocol.STORE_FILE_RESUMED );
+            targetBuffer.writeLong( offset );
+        }
+        if ( hasData && canWriteFileRegion( data ) )
+        {
+            // Zero-copy, the file goes straight to the socket
+            FileChannel file = (FileChannel) data;
+            long position = file.position();
+            long size = file.size() - position;
+            targetBuffer.writeByte( Protocol.STORE_FILE_REGION_DATA );
+            targetBuffer.writeLong( size );
+            ((ChunkingChannelBuffer) targetBuffer).writeFileRegion( file, position, size );
+            return;
+        }
+
+        targetBuffer.writeByte( hasData ? Protocol.STORE_FILE_BLOCK_DATA : Protocol.STORE_FILE_NO_DATA );
         // TODO Make use of temporaryBuffer?
-        BlockLogBuffer buffer = new BlockLogBuffer( targetBuffer );
+        BlockLogBuffer buffer = new BlockLogBuffer( targetBuffer, BlockLogBuffer.largeBlocksFor( targetBuffer ) );
         if ( hasData )
         {
             buffer.write( data );
@@ -50,8 +74,79 @@ public class ToNetworkStoreWriter implements StoreWriter
         }
     }
 
+    public void writeRange( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer,
+            long offset, long length ) throws IOException
+    {
+        char[] chars = path.toCharArray();
+        targetBuffer.writeShort( chars.length );
+        Protocol.writeChars( targetBuffer, chars );
+        targetBuffer.writeByte( Protocol.STORE_FILE_RANGE );
+        targetBuffer.writeLong( offset );
+        if ( canWriteFileRegion( data ) )
+        {
+            targetBuffer.writeByte( Protocol.STORE_FILE_REGION_DATA );
+            targetBuffer.writeLong( length );
+            ((ChunkingChannelBuffer) targetBuffer).writeFileRegion( (FileChannel) data, offset, length );
+            return;
+        }
+
+        targetBuffer.writeByte( Protocol.STORE_FILE_BLOCK_DATA );
+        BlockLogBuffer buffer = new BlockLogBuffer( targetBuffer, BlockLogBuffer.largeBlocksFor( targetBuffer ) );
+        buffer.write( new LimitedChannel( data, length ) );
+        buffer.done();
+    }
+
+    private boolean canWriteFileRegion( ReadableByteChannel data )
+    {
+        return data instanceof FileChannel && targetBuffer instanceof ChunkingChannelBuffer &&
+                ((ChunkingChannelBuffer) targetBuffer).canWriteFileRegions();
+    }
+
     public void done()
     {
         targetBuffer.writeShort( 0 );
     }
+
+    /**
+     * The first {@code limit} bytes of a channel, for sending a range of a
+     * file as blocks.
+     */
+    private static class LimitedChannel implements ReadableByteChannel
+    {
+        private final ReadableByteChannel source;
+        private long left;
+
+        LimitedChannel( ReadableByteChannel source, long limit )
+        {
+            this.source = source;
+            this.left = limit;
+        }
+
+        public int read( ByteBuffer dst ) throws IOException
+        {
+            if ( left == 0 ) return -1;
+            int limit = dst.limit();
+            dst.limit( (int) Math.min( limit, dst.position() + left ) );
+            try
+            {
+                int read = source.read( dst );
+                if ( read > 0 ) left -= read;
+                return read;
+            }
+            finally
+            {
+                dst.limit( limit );
+            }
+        }
+
+        public boolean isOpen()
+        {
+            return source.isOpen();
+        }
+
+        public void close() throws IOException
+        {
+            source.close();
+        }
+    }
 }
@@ -0,0 +1,333 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.helpers.Exceptions;
+import org.neo4j.helpers.Triplet;
+
+/**
+ * Lets received transactions be read off the network, and decoded, in one
+ * thread while they are applied in another, so that catching up is limited by
+ * the slower of the two rather than their sum. The receiving thread reads whole
+ * transactions into a bounded queue which the applying thread takes them from.
+ *
+ * Streams with only a few transactions, i.e. the ones coming with responses to
+ * most requests, are handed out directly since a thread hand-off would only add
+ * latency for them. The receiving threads come from an executor owned by the
+ * caller, see {@link #newReceivers(String, int)}, and when none is to be had
+ * the stream is received in the applying thread as well.
+ */
+public class TransactionReceivePipeline
+{
+    public static final int DEFAULT_QUEUE_DEPTH = 100;
+    public static final int DEFAULT_RECEIVER_THREADS = 4;
+    public static final TransactionReceivePipeline NONE = new TransactionReceivePipeline( 0, null );
+
+    /**
+     * Number of transactions handed out directly before the rest of a stream is
+     * received in another thread.
+     */
+    static final int DIRECT_TRANSACTIONS = 16;
+
+    private static final Object END = new Object();
+
+    private final int queueDepth;
+    private final Executor receivers;
+    private final AtomicLong pipelinedStreams = new AtomicLong();
+    private final AtomicLong receiveStalls = new AtomicLong();
+    private final AtomicLong receiveStallNanos = new AtomicLong();
+    private final AtomicLong applyStalls = new AtomicLong();
+    private final AtomicLong applyStallNanos = new AtomicLong();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+
+    /**
+     * @param queueDepth the max number of received transactions waiting to be
+     * applied. 0 means that transactions are received in the applying thread.
+     * @param receivers runs the receiving of long streams. Not used if
+     * {@code queueDepth} is 0.
+     */
+    public TransactionReceivePipeline( int queueDepth, Executor receivers )
+    {
+        if ( queueDepth < 0 ) throw new IllegalArgumentException( "Queue depth must not be negative, was " + queueDepth );
+        if ( queueDepth > 0 && receivers == null ) throw new IllegalArgumentException( "No receivers given" );
+        this.queueDepth = queueDepth;
+        this.receivers = receivers;
+    }
+
+    /**
+     * @return an executor of at most {@code threads} receiving threads, which
+     * rejects streams rather than queueing them when they're all busy. To be
+     * shut down by the caller along with whatever it receives transactions for.
+     */
+    public static ExecutorService newReceivers( final String name, int threads )
+    {
+        return new ThreadPoolExecutor( 0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory()
+                {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread( Runnable runnable )
+                    {
+                        Thread thread = new Thread( runnable, name + "-" + count.incrementAndGet() );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                } );
+    }
+
+    /**
+     * @return a stream of the same transactions as {@code source}. Closing it
+     * stops receiving, but {@code source} is still to be closed by its owner.
+     */
+    public TransactionStream pipeline( TransactionStream source )
+    {
+        if ( queueDepth == 0 || source == TransactionStream.EMPTY ) return source;
+        return new PipelinedStream( source );
+    }
+
+    public int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    /**
+     * @return the number of streams long enough to be received in a thread of their own.
+     */
+    public long getPipelinedStreams()
+    {
+        return pipelinedStreams.get();
+    }
+
+    /**
+     * @return the number of times the receiving thread had to wait for the applying thread.
+     */
+    public long getReceiveStalls()
+    {
+        return receiveStalls.get();
+    }
+
+    public long getReceiveStallTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( receiveStallNanos.get() );
+    }
+
+    /**
+     * @return the number of times the applying thread had to wait for the receiving thread.
+     */
+    public long getApplyStalls()
+    {
+        return applyStalls.get();
+    }
+
+    public long getApplyStallTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( applyStallNanos.get() );
+    }
+
+    /**
+     * @return the number of received transactions currently waiting to be applied.
+     */
+    public int getQueued()
+    {
+        return queued.get();
+    }
+
+    public int getMaxQueued()
+    {
+        return maxQueued.get();
+    }
+
+    private static class Failure
+    {
+        private final Throwable cause;
+
+        Failure( Throwable cause )
+        {
+            this.cause = cause;
+        }
+    }
+
+    private class PipelinedStream extends TransactionStream implements Runnable
+    {
+        private final TransactionStream source;
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>( queueDepth );
+        private final CountDownLatch receiverDone = new CountDownLatch( 1 );
+        private volatile boolean closed;
+        private int handedOutDirectly;
+        private boolean receiving;
+        private boolean direct;
+
+        PipelinedStream( TransactionStream source )
+        {
+            this.source = source;
+        }
+
+        @Override
+        public String[] dataSourceNames()
+        {
+            return source.dataSourceNames();
+        }
+
+        @SuppressWarnings( "unchecked" )
+        @Override
+        protected Triplet<String, Long, TxExtractor> fetchNextOrNull()
+        {
+            if ( !receiving )
+            {
+                if ( !source.hasNext() ) return null;
+                if ( direct || handedOutDirectly++ < DIRECT_TRANSACTIONS ) return source.next();
+                try
+                {
+                    receivers.execute( this );
+                }
+                catch ( RejectedExecutionException e )
+                {   // All receivers busy, or shut down
+                    direct = true;
+                    return source.next();
+                }
+                receiving = true;
+                pipelinedStreams.incrementAndGet();
+            }
+
+            Object next = queue.poll();
+            if ( next == null )
+            {
+                applyStalls.incrementAndGet();
+                long time = System.nanoTime();
+                try
+                {
+                    next = queue.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new ComException( e );
+                }
+                applyStallNanos.addAndGet( System.nanoTime() - time );
+            }
+            if ( next == END ) return null;
+            queued.decrementAndGet();
+            if ( next instanceof Failure )
+            {
+                throw Exceptions.launderedException( ComException.class, ((Failure) next).cause );
+            }
+            return (Triplet<String, Long, TxExtractor>) next;
+        }
+
+        /**
+         * Receives the rest of the stream.
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                while ( !closed && source.hasNext() )
+                {
+                    Triplet<String, Long, TxExtractor> tx = source.next();
+                    byte[] transaction = TxExtractor.readFully( tx.third().extract() );
+                    enqueue( Triplet.of( tx.first(), tx.second(), TxExtractor.create( transaction ) ) );
+                }
+                enqueue( END );
+            }
+            catch ( Throwable t )
+            {
+                enqueue( new Failure( t ) );
+            }
+            finally
+            {
+                receiverDone.countDown();
+            }
+        }
+
+        private void enqueue( Object item )
+        {
+            if ( item != END ) updateMaxQueued( queued.incrementAndGet() );
+            if ( queue.offer( item ) ) return;
+            receiveStalls.incrementAndGet();
+            long time = System.nanoTime();
+            try
+            {
+                while ( !closed && !queue.offer( item, 100, TimeUnit.MILLISECONDS ) )
+                {   // Wait for the applying thread to catch up
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            receiveStallNanos.addAndGet( System.nanoTime() - time );
+        }
+
+        private void updateMaxQueued( int count )
+        {
+            for ( int max = maxQueued.get(); count > max && !maxQueued.compareAndSet( max, count ); )
+            {
+                max = maxQueued.get();
+            }
+        }
+
+        /**
+         * Waits for the receiving thread to be done with the source, since it may
+         * be reading from a channel that is released when the source is closed.
+         */
+        @Override
+        public void close()
+        {
+            closed = true;
+            if ( !receiving ) return;
+            try
+            {
+                while ( !receiverDone.await( 100, TimeUnit.MILLISECONDS ) )
+                {
+                    discardQueued();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            discardQueued();
+        }
+
+        private void discardQueued()
+        {
+            for ( Object item; (item = queue.poll()) != null; )
+            {
+                if ( item != END ) queued.decrementAndGet();
+            }
+        }
+    }
+}
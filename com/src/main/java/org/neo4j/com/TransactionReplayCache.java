@@ -0,0 +1,302 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
+
+/**
+ * Bounded in-memory cache of recently extracted transactions, in the form
+ * they are written to slaves, per data source. Every slave pulling updates
+ * asks for more or less the same transactions at the tail of the log, so
+ * with this only the first one has to read them from the log.
+ *
+ * Transactions are evicted oldest first when the total size of the cached
+ * transactions goes above the max size. A cache with max size 0 caches nothing.
+ */
+public class TransactionReplayCache
+{
+    public static final TransactionReplayCache NONE = new TransactionReplayCache( 0 );
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> transactions = new LinkedHashMap<Key, byte[]>(); // Guarded by itself
+    private long bytes; // Guarded by transactions
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TransactionReplayCache( long maxBytes )
+    {
+        if ( maxBytes < 0 ) throw new IllegalArgumentException( "Max size must not be negative, was " + maxBytes );
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the transaction {@code txId} of {@code dataSource} as written by a
+     * {@link LogBuffer} when extracted from the log, or {@code null} if it isn't cached.
+     */
+    public byte[] get( String dataSource, long txId )
+    {
+        if ( maxBytes == 0 ) return null;
+        byte[] result;
+        synchronized ( transactions )
+        {
+            result = transactions.get( new Key( dataSource, txId ) );
+        }
+        (result != null ? hits : misses).incrementAndGet();
+        return result;
+    }
+
+    public void put( String dataSource, long txId, byte[] transaction )
+    {
+        if ( transaction.length > maxBytes ) return;
+        synchronized ( transactions )
+        {
+            byte[] previous = transactions.put( new Key( dataSource, txId ), transaction );
+            if ( previous != null ) bytes -= previous.length;
+            bytes += transaction.length;
+            for ( Iterator<byte[]> eldest = transactions.values().iterator(); bytes > maxBytes; )
+            {
+                bytes -= eldest.next().length;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return a {@link LogBuffer} writing everything to {@code target}, which puts
+     * what was written in this cache as transaction {@code txId} of {@code dataSource}
+     * when {@link Capture#done() done}.
+     */
+    public Capture capture( String dataSource, long txId, LogBuffer target )
+    {
+        return new Capture( dataSource, txId, target );
+    }
+
+    /**
+     * Forgets everything, f.ex. when this instance becomes master and transactions
+     * may since have been replaced by those of another master.
+     */
+    public void clear()
+    {
+        synchronized ( transactions )
+        {
+            transactions.clear();
+            bytes = 0;
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public long getBytes()
+    {
+        synchronized ( transactions )
+        {
+            return bytes;
+        }
+    }
+
+    public int getTransactionCount()
+    {
+        synchronized ( transactions )
+        {
+            return transactions.size();
+        }
+    }
+
+    private static class Key
+    {
+        private final String dataSource;
+        private final long txId;
+
+        Key( String dataSource, long txId )
+        {
+            this.dataSource = dataSource;
+            this.txId = txId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * dataSource.hashCode() + (int) (txId ^ (txId >>> 32));
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( !(obj instanceof Key) ) return false;
+            Key other = (Key) obj;
+            return txId == other.txId && dataSource.equals( other.dataSource );
+        }
+    }
+
+    /**
+     * Captures a transaction as it is extracted from the log, see {@link #capture(String, long, LogBuffer)}.
+     */
+    public class Capture implements LogBuffer
+    {
+        private final String dataSource;
+        private final long txId;
+        private final LogBuffer target;
+        private ByteBuffer captured;
+
+        Capture( String dataSource, long txId, LogBuffer target )
+        {
+            this.dataSource = dataSource;
+            this.txId = txId;
+            this.target = target;
+            // Nothing is captured if nothing would be cached anyway
+            this.captured = maxBytes > 0 ? ByteBuffer.allocate( 1024 ) : null;
+        }
+
+        private ByteBuffer room( int size )
+        {
+            if ( captured.remaining() < size )
+            {
+                ByteBuffer grown = ByteBuffer.allocate( Math.max( captured.capacity()*2, captured.position()+size ) );
+                captured.flip();
+                grown.put( captured );
+                captured = grown;
+            }
+            return captured;
+        }
+
+        public LogBuffer put( byte b ) throws IOException
+        {
+            if ( captured != null ) room( 1 ).put( b );
+            target.put( b );
+            return this;
+        }
+
+        public LogBuffer putShort( short s ) throws IOException
+        {
+            if ( captured != null ) room( 2 ).putShort( s );
+            target.putShort( s );
+            return this;
+        }
+
+        public LogBuffer putInt( int i ) throws IOException
+        {
+            if ( captured != null ) room( 4 ).putInt( i );
+            target.putInt( i );
+            return this;
+        }
+
+        public LogBuffer putLong( long l ) throws IOException
+        {
+            if ( captured != null ) room( 8 ).putLong( l );
+            target.putLong( l );
+            return this;
+        }
+
+        public LogBuffer putFloat( float f ) throws IOException
+        {
+            if ( captured != null ) room( 4 ).putFloat( f );
+            target.putFloat( f );
+            return this;
+        }
+
+        public LogBuffer putDouble( double d ) throws IOException
+        {
+            if ( captured != null ) room( 8 ).putDouble( d );
+            target.putDouble( d );
+            return this;
+        }
+
+        public LogBuffer put( byte[] bytes ) throws IOException
+        {
+            if ( captured != null ) room( bytes.length ).put( bytes );
+            target.put( bytes );
+            return this;
+        }
+
+        public LogBuffer put( char[] chars ) throws IOException
+        {
+            if ( captured != null )
+            {
+                ByteBuffer buffer = room( chars.length*2 );
+                for ( char c : chars )
+                {
+                    buffer.putChar( c );
+                }
+            }
+            target.put( chars );
+            return this;
+        }
+
+        /**
+         * The whole transaction has been written, i.e. it can be cached.
+         */
+        public void done()
+        {
+            if ( captured == null ) return;
+            byte[] transaction = new byte[captured.position()];
+            captured.flip();
+            captured.get( transaction );
+            TransactionReplayCache.this.put( dataSource, txId, transaction );
+        }
+
+        @Override
+        public void writeOut() throws IOException
+        {
+            target.writeOut();
+        }
+
+        public void force() throws IOException
+        {
+            target.force();
+        }
+
+        public long getFileChannelPosition() throws IOException
+        {
+            return target.getFileChannelPosition();
+        }
+
+        public FileChannel getFileChannel()
+        {
+            return target.getFileChannel();
+        }
+    }
+}
@@ -19,8 +19,12 @@
  */
 package org.neo4j.com;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 
+import org.neo4j.kernel.impl.transaction.xaframework.InMemoryLogBuffer;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
 
 public abstract class TxExtractor
@@ -46,4 +50,57 @@ public abstract class TxExtractor
             }
         };
     }
+
+    /**
+     * @param transaction a whole transaction as written by a {@link LogBuffer}.
+     */
+    public static TxExtractor create( final byte[] transaction )
+    {
+        return new TxExtractor()
+        {
+            @Override
+            public ReadableByteChannel extract()
+            {
+                InMemoryLogBuffer buffer = new InMemoryLogBuffer();
+                extract( buffer );
+                return buffer;
+            }
+
+            @Override
+            public void extract( LogBuffer buffer )
+            {
+                try
+                {
+                    buffer.put( transaction );
+                }
+                catch ( IOException e )
+                {
+                    throw new RuntimeException( e );
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads all of {@code channel}, i.e. a whole transaction, into memory and closes it.
+     */
+    static byte[] readFully( ReadableByteChannel channel ) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate( 8192 );
+        try
+        {
+            while ( channel.read( buffer ) >= 0 )
+            {
+                buffer.flip();
+                bytes.write( buffer.array(), 0, buffer.limit() );
+                buffer.clear();
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+        return bytes.toByteArray();
+    }
 }
@@ -19,10 +19,14 @@
  */
 package org.neo4j.com;
 
+import static org.neo4j.com.Protocol.writeStoreFilePrefixes;
+import static org.neo4j.com.Protocol.writeStoreFileRanges;
 import static org.neo4j.com.Protocol.writeString;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.neo4j.com.MadeUpServer.MadeUpRequestType;
@@ -54,7 +58,19 @@ public class MadeUpClient extends Client<MadeUpCommunicationInterface> implement
     @Override
     public Response<Integer> multiply( final int value1, final int value2 )
     {
-        return sendRequest( MadeUpRequestType.MULTIPLY, SlaveContext.EMPTY, new Serializer()
+        return sendRequest( MadeUpRequestType.MULTIPLY, SlaveContext.EMPTY, multiplySerializer( value1, value2 ),
+                Protocol.INTEGER_DESERIALIZER );
+    }
+
+    public ResponseFuture<Integer> multiplyAsync( final int value1, final int value2 )
+    {
+        return sendRequestAsync( MadeUpRequestType.MULTIPLY, SlaveContext.EMPTY,
+                multiplySerializer( value1, value2 ), Protocol.INTEGER_DESERIALIZER );
+    }
+
+    private Serializer multiplySerializer( final int value1, final int value2 )
+    {
+        return new Serializer()
         {
             @Override
             public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
@@ -62,7 +78,7 @@ public class MadeUpClient extends Client<MadeUpCommunicationInterface> implement
                 buffer.writeInt( value1 );
                 buffer.writeInt( value2 );
             }
-        }, Protocol.INTEGER_DESERIALIZER );
+        };
     }
 
     @Override
@@ -107,6 +123,36 @@ public class MadeUpClient extends Client<MadeUpCommunicationInterface> implement
         } );
     }
 
+    @Override
+    public Response<Void> copyFile( final String path, final Map<String, StoreFilePrefix> resumeFrom,
+            StoreWriter writer )
+    {
+        return sendRequest( MadeUpRequestType.COPY_FILE, SlaveContext.EMPTY, new Serializer()
+        {
+            @Override
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                writeString( buffer, path );
+                writeStoreFilePrefixes( buffer, resumeFrom );
+            }
+        }, new Protocol.FileStreamsDeserializer( writer ) );
+    }
+
+    @Override
+    public Response<Void> copyFileRanges( final String directory, final List<StoreFileRange> ranges,
+            StoreWriter writer )
+    {
+        return sendRequest( MadeUpRequestType.COPY_FILE_RANGES, SlaveContext.EMPTY, new Serializer()
+        {
+            @Override
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                writeString( buffer, directory );
+                writeStoreFileRanges( buffer, ranges );
+            }
+        }, new Protocol.FileStreamsDeserializer( writer ) );
+    }
+
     @Override
     protected StoreId getMyStoreId()
     {
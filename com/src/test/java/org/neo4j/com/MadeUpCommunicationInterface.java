@@ -19,6 +19,9 @@
  */
 package org.neo4j.com;
 
+import java.util.List;
+import java.util.Map;
+
 public interface MadeUpCommunicationInterface
 {
     Response<Integer> multiply( int value1, int value2 );
@@ -26,4 +29,8 @@ public interface MadeUpCommunicationInterface
     Response<Void> streamSomeData( MadeUpWriter writer, int dataSize );
     
     Response<Integer> throwException( String messageInException );
+
+    Response<Void> copyFile( String path, Map<String, StoreFilePrefix> resumeFrom, StoreWriter writer );
+
+    Response<Void> copyFileRanges( String directory, List<StoreFileRange> ranges, StoreWriter writer );
 }
@@ -19,6 +19,12 @@
  */
 package org.neo4j.com;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
 import org.neo4j.kernel.impl.nioneo.store.StoreId;
 
 public class MadeUpImplementation implements MadeUpCommunicationInterface
@@ -53,6 +59,33 @@ public class MadeUpImplementation implements MadeUpCommunicationInterface
         throw new MadeUpException( messageInException, new Exception( "The cause of it" ) );
     }
 
+    @Override
+    public Response<Void> copyFile( String path, Map<String, StoreFilePrefix> resumeFrom, StoreWriter writer )
+    {
+        File file = new File( path );
+        try
+        {
+            MasterUtil.streamStoreFile( file.getName(), file, resumeFrom.get( file.getName() ), writer,
+                    ByteBuffer.allocate( 1000 ) );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+        writer.done();
+        return new Response<Void>( null, storeIdToRespondWith,
+                TransactionStream.EMPTY, ResourceReleaser.NO_OP );
+    }
+
+    @Override
+    public Response<Void> copyFileRanges( String directory, List<StoreFileRange> ranges, StoreWriter writer )
+    {
+        MasterUtil.streamStoreFileRanges( new File( directory ), ranges, writer );
+        writer.done();
+        return new Response<Void>( null, storeIdToRespondWith,
+                TransactionStream.EMPTY, ResourceReleaser.NO_OP );
+    }
+
     public boolean gotCalled()
     {
         return this.gotCalled;
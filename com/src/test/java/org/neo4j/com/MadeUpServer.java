@@ -32,9 +32,24 @@ public class MadeUpServer extends Server<MadeUpCommunicationInterface, Void>
 
     public MadeUpServer( MadeUpCommunicationInterface realMaster, int port, byte internalProtocolVersion,
             byte applicationProtocolVersion, TxChecksumVerifier txVerifier )
+    {
+        this( realMaster, port, internalProtocolVersion, applicationProtocolVersion, txVerifier, new Compression() );
+    }
+
+    public MadeUpServer( MadeUpCommunicationInterface realMaster, int port, byte internalProtocolVersion,
+            byte applicationProtocolVersion, TxChecksumVerifier txVerifier, Compression compression )
+    {
+        this( realMaster, port, internalProtocolVersion, applicationProtocolVersion, txVerifier, compression,
+                new FlowControl() );
+    }
+
+    public MadeUpServer( MadeUpCommunicationInterface realMaster, int port, byte internalProtocolVersion,
+            byte applicationProtocolVersion, TxChecksumVerifier txVerifier, Compression compression,
+            FlowControl flowControl )
     {
         super( realMaster, port, StringLogger.DEV_NULL, FRAME_LENGTH, applicationProtocolVersion,
-                DEFAULT_MAX_NUMBER_OF_CONCURRENT_TRANSACTIONS, Client.DEFAULT_READ_RESPONSE_TIMEOUT_SECONDS, txVerifier );
+                DEFAULT_MAX_NUMBER_OF_CONCURRENT_TRANSACTIONS, Client.DEFAULT_READ_RESPONSE_TIMEOUT_SECONDS, txVerifier,
+                compression, flowControl );
         this.internalProtocolVersion = internalProtocolVersion;
     }
 
@@ -112,6 +127,27 @@ public class MadeUpServer extends Server<MadeUpCommunicationInterface, Void>
             {
                 return master.throwException( readString( input ) );
             }
+        }, Protocol.VOID_SERIALIZER ),
+
+        COPY_FILE( new MasterCaller<MadeUpCommunicationInterface, Void>()
+        {
+            @Override
+            public Response<Void> callMaster( MadeUpCommunicationInterface master,
+                    SlaveContext context, ChannelBuffer input, ChannelBuffer target )
+            {
+                return master.copyFile( readString( input ), readStoreFilePrefixes( input ),
+                        new ToNetworkStoreWriter( target ) );
+            }
+        }, Protocol.VOID_SERIALIZER ),
+        COPY_FILE_RANGES( new MasterCaller<MadeUpCommunicationInterface, Void>()
+        {
+            @Override
+            public Response<Void> callMaster( MadeUpCommunicationInterface master,
+                    SlaveContext context, ChannelBuffer input, ChannelBuffer target )
+            {
+                return master.copyFileRanges( readString( input ), readStoreFileRanges( input ),
+                        new ToNetworkStoreWriter( target ) );
+            }
         }, Protocol.VOID_SERIALIZER );
         
         private final MasterCaller masterCaller;
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+public class TestBufferPool
+{
+    @Test
+    public void releasedBuffersAreReused() throws Exception
+    {
+        BufferPool pool = new BufferPool( Protocol.MEGA );
+        ChannelBuffer channelBuffer = pool.acquireChannelBuffer( 5000 );
+        assertTrue( channelBuffer.capacity() >= 5000 );
+        channelBuffer.writeInt( 10 );
+        pool.release( channelBuffer );
+        ChannelBuffer reused = pool.acquireChannelBuffer( 100 );
+        assertSame( channelBuffer, reused );
+        assertEquals( 0, reused.readableBytes() );
+
+        ByteBuffer byteBuffer = pool.acquireByteBuffer( 8192 );
+        byteBuffer.putInt( 10 );
+        pool.release( byteBuffer );
+        assertSame( byteBuffer, pool.acquireByteBuffer( 8192 ) );
+        assertEquals( 0, byteBuffer.position() );
+        assertEquals( 2, pool.getAllocations() );
+    }
+
+    @Test
+    public void neverRetainsMoreThanMaxBytes() throws Exception
+    {
+        BufferPool pool = new BufferPool( 10000 );
+        ByteBuffer first = pool.acquireByteBuffer( 8192 );
+        ByteBuffer second = pool.acquireByteBuffer( 8192 );
+        pool.release( first );
+        pool.release( second );
+        assertEquals( 8192, pool.getRetainedBytes() );
+        assertEquals( 0, pool.getOutstanding() );
+    }
+
+    @Test
+    public void tracksBuffersNeverReleased() throws Exception
+    {
+        BufferPool pool = new BufferPool( Protocol.MEGA, true );
+        ChannelBuffer released = pool.acquireChannelBuffer();
+        pool.acquireChannelBuffer();
+        pool.release( released );
+        assertEquals( 1, pool.getOutstanding() );
+        try
+        {
+            pool.assertNoLeaks();
+            fail( "Should have detected the leaked buffer" );
+        }
+        catch ( IllegalStateException e )
+        {   // Good
+        }
+    }
+}
@@ -22,19 +22,39 @@ package org.neo4j.com;
 import static java.lang.System.currentTimeMillis;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore.ALL_STORES_VERSION;
 import static org.neo4j.kernel.impl.nioneo.store.NeoStore.versionStringToLong;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.neo4j.com.RequestStageTimes.Stage;
 import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.nioneo.store.StoreId;
+import org.neo4j.kernel.impl.util.FileUtils;
 
 public class TestCommunication
 {
@@ -70,6 +90,24 @@ public class TestCommunication
         server.shutdown();
     }
 
+    @Test
+    public void eachStageOfHandlingRequestIsTimed() throws Exception
+    {
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = madeUpServer( serverImplementation );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, INTERNAL_PROTOCOL_VERSION, APPLICATION_PROTOCOL_VERSION );
+
+        client.multiply( 2, 3 ).close();
+        waitUntilResponseHasBeenWritten( server, 1000 );
+        for ( Stage stage : Stage.values() )
+        {
+            assertEquals( stage.name(), 1, server.getStageTimes().getCount( stage ) );
+        }
+        assertEquals( 1, server.getScheduler().getScheduled( RequestClass.LATENCY_CRITICAL ) );
+        client.shutdown();
+        server.shutdown();
+    }
+
     private MadeUpServer madeUpServer( MadeUpImplementation serverImplementation )
     {
         return madeUpServer( serverImplementation, INTERNAL_PROTOCOL_VERSION, APPLICATION_PROTOCOL_VERSION );
@@ -152,6 +190,20 @@ public class TestCommunication
         server.shutdown();
     }
 
+    @Test
+    public void makeSureClientCanStreamBigDataWithSmallWriteAheadWindow() throws Exception
+    {
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = new MadeUpServer( serverImplementation, PORT, INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION, TxChecksumVerifier.ALWAYS_MATCH, new Compression(), new FlowControl( 1 ) );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, INTERNAL_PROTOCOL_VERSION, APPLICATION_PROTOCOL_VERSION );
+
+        client.streamSomeData( new ToAssertionWriter(), MadeUpServer.FRAME_LENGTH*10 ).close();
+
+        client.shutdown();
+        server.shutdown();
+    }
+
     @Test
     public void clientThrowsServerSideErrorMidwayThroughStreaming() throws Exception
     {
@@ -262,6 +314,37 @@ public class TestCommunication
         server.shutdown();
     }
 
+    @Test
+    public void applicationProtocolVersionsMustMatchOverMultiplexedChannels() throws Exception
+    {
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = madeUpServer( serverImplementation, Server.INTERNAL_PROTOCOL_VERSION,
+                (byte) (APPLICATION_PROTOCOL_VERSION+1) );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, Server.INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+
+        List<ResponseFuture<Integer>> futures = new ArrayList<ResponseFuture<Integer>>();
+        for ( int i = 0; i < 5; i++ )
+        {
+            futures.add( client.multiplyAsync( i, 3 ) );
+        }
+        for ( ResponseFuture<Integer> future : futures )
+        {   // Routed back to each request well before its read timeout
+            try
+            {
+                future.get( Client.DEFAULT_READ_RESPONSE_TIMEOUT_SECONDS / 2, TimeUnit.SECONDS );
+                fail( "Shouldn't be able to communicate with different application protocol versions" );
+            }
+            catch ( ExecutionException e )
+            {
+                assertTrue( e.getCause().toString(), e.getCause() instanceof IllegalProtocolVersionException );
+            }
+        }
+
+        client.shutdown();
+        server.shutdown();
+    }
+
     @Test
     public void internalProtocolVersionsMustMatch() throws Exception
     {
@@ -329,6 +412,466 @@ public class TestCommunication
         server.shutdown();
     }
 
+    @Test
+    public void concurrentRequestsGetTheirOwnResponsesOverMultiplexedChannels() throws Exception
+    {
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = madeUpServer( serverImplementation, Server.INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+        final MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, Server.INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+        assertTrue( Server.isMultiplexing( Server.INTERNAL_PROTOCOL_VERSION ) );
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[Client.DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT*2];
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int threadId = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int i = 0; i < 50; i++ )
+                        {
+                            Response<Integer> response = client.multiply( threadId, i );
+                            assertEquals( (Integer) (threadId*i), response.response() );
+                            response.close();
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            };
+        }
+        for ( Thread thread : threads ) thread.start();
+        // A big response shouldn't stand in the way of the small ones
+        client.streamSomeData( new ToAssertionWriter(), MadeUpServer.FRAME_LENGTH*3 ).close();
+        for ( Thread thread : threads ) thread.join();
+        if ( failure.get() != null ) throw new AssertionError( failure.get() );
+
+        client.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void asyncRequestsCanBePipelinedFromOneThread() throws Exception
+    {
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = madeUpServer( serverImplementation, Server.INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, Server.INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+
+        List<ResponseFuture<Integer>> futures = new ArrayList<ResponseFuture<Integer>>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            futures.add( client.multiplyAsync( i, 3 ) );
+        }
+        for ( int i = 0; i < futures.size(); i++ )
+        {
+            Response<Integer> response = futures.get( i ).awaitResponse();
+            assertEquals( (Integer) (i*3), response.response() );
+            response.close();
+        }
+
+        client.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void asyncRequestToLegacyServerIsCompletedSynchronously() throws Exception
+    {
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = madeUpServer( serverImplementation, Server.LEGACY_INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, Server.LEGACY_INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+
+        ResponseFuture<Integer> future = client.multiplyAsync( 6, 7 );
+        assertTrue( future.isDone() );
+        Response<Integer> response = future.awaitResponse();
+        assertEquals( (Integer) 42, response.response() );
+        response.close();
+
+        client.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void multiplexingClientFallsBackToLegacyProtocolForOldServer() throws Exception
+    {
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = madeUpServer( serverImplementation, Server.LEGACY_INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, Server.INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+
+        assertEquals( (Integer) 50, client.multiply( 10, 5 ).response() );
+        assertEquals( (Integer) 60, client.multiply( 10, 6 ).response() );
+
+        client.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void multiplexingServerServesLegacyClients() throws Exception
+    {
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = madeUpServer( serverImplementation, Server.INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, Server.LEGACY_INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+
+        assertEquals( (Integer) 50, client.multiply( 10, 5 ).response() );
+
+        client.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void storeFilesAreTransferredAsFileRegions() throws Exception
+    {
+        copyFileOverProtocol( Server.INTERNAL_PROTOCOL_VERSION, new Compression() );
+    }
+
+    @Test
+    public void storeFilesAreTransferredAsBlocksToLegacyClients() throws Exception
+    {
+        // Legacy clients can't be told a chunk is compressed
+        Compression compression = new Compression( Compression.DEFLATE, 1 );
+        copyFileOverProtocol( Server.LEGACY_INTERNAL_PROTOCOL_VERSION, compression );
+        assertEquals( 0, compression.getBytesBeforeCompression() );
+    }
+
+    @Test
+    public void storeFilesAreCompressedIfConfigured() throws Exception
+    {
+        Compression compression = new Compression( Compression.DEFLATE, 1 );
+        copyFileOverProtocol( Server.INTERNAL_PROTOCOL_VERSION, compression );
+        assertTrue( compression.getBytesAfterCompression() < compression.getBytesBeforeCompression()/2 );
+    }
+
+    private void copyFileOverProtocol( byte internalProtocolVersion, Compression compression ) throws Exception
+    {
+        File source = new File( PATH, "source" );
+        File targetDir = new File( PATH, "target" + internalProtocolVersion + compression.getCodec() );
+        // Spans several chunks and doesn't end on a chunk boundary
+        byte[] data = new byte[MadeUpServer.FRAME_LENGTH*3 + 123];
+        for ( int i = 0; i < data.length; i++ ) data[i] = (byte) (i%10);
+        FileOutputStream out = new FileOutputStream( source );
+        out.write( data );
+        out.close();
+
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = new MadeUpServer( serverImplementation, PORT, internalProtocolVersion,
+                APPLICATION_PROTOCOL_VERSION, TxChecksumVerifier.ALWAYS_MATCH, compression );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, internalProtocolVersion,
+                APPLICATION_PROTOCOL_VERSION );
+        client.copyFile( source.getAbsolutePath(), Collections.<String, StoreFilePrefix>emptyMap(),
+                new ToFileStoreWriter( targetDir.getAbsolutePath() ) ).close();
+        client.shutdown();
+        server.shutdown();
+
+        File target = new File( targetDir, source.getName() );
+        assertEquals( data.length, target.length() );
+        byte[] copied = new byte[data.length];
+        DataInputStream in = new DataInputStream( new FileInputStream( target ) );
+        in.readFully( copied );
+        in.close();
+        assertTrue( Arrays.equals( data, copied ) );
+    }
+
+    @Test
+    public void interruptedFileCopyIsResumedFromCheckpoint() throws Exception
+    {
+        copyFileInterruptedPartWay( Server.INTERNAL_PROTOCOL_VERSION, false );
+    }
+
+    @Test
+    public void interruptedFileCopyIsResumedFromCheckpointWithBlocks() throws Exception
+    {
+        copyFileInterruptedPartWay( Server.LEGACY_INTERNAL_PROTOCOL_VERSION, false );
+    }
+
+    @Test
+    public void fileChangedSinceInterruptedCopyIsCopiedFromStart() throws Exception
+    {
+        copyFileInterruptedPartWay( Server.INTERNAL_PROTOCOL_VERSION, true );
+    }
+
+    private void copyFileInterruptedPartWay( byte internalProtocolVersion, boolean changeFileInBetween )
+            throws Exception
+    {
+        File source = new File( PATH, "source" );
+        File targetDir = new File( PATH, "resumed-target" + internalProtocolVersion + changeFileInBetween );
+        byte[] data = new byte[MadeUpServer.FRAME_LENGTH*3 + 123];
+        for ( int i = 0; i < data.length; i++ ) data[i] = (byte) (i%10);
+        FileOutputStream out = new FileOutputStream( source );
+        out.write( data );
+        out.close();
+        int checkpointInterval = MadeUpServer.FRAME_LENGTH/2;
+
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = new MadeUpServer( serverImplementation, PORT, internalProtocolVersion,
+                APPLICATION_PROTOCOL_VERSION, TxChecksumVerifier.ALWAYS_MATCH );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, internalProtocolVersion,
+                APPLICATION_PROTOCOL_VERSION );
+        StoreCopyCheckpoint checkpoint = StoreCopyCheckpoint.open( targetDir );
+        try
+        {
+            client.copyFile( source.getAbsolutePath(), checkpoint.prefixes(), new InterruptingStoreWriter(
+                    new ToFileStoreWriter( targetDir.getAbsolutePath(), checkpoint, checkpointInterval ),
+                    checkpointInterval*3 + 100 ) ).close();
+            fail( "Should have been interrupted" );
+        }
+        catch ( Exception e )
+        {   // Expected
+        }
+        client.shutdown();
+
+        if ( changeFileInBetween )
+        {
+            data[0] = 100;
+            RandomAccessFile file = new RandomAccessFile( source, "rw" );
+            file.write( data, 0, 1 );
+            file.close();
+        }
+
+        // Picks up what was written and forced before the failure
+        checkpoint = StoreCopyCheckpoint.open( targetDir );
+        Map<String, StoreFilePrefix> resumeFrom = checkpoint.prefixes();
+        StoreFilePrefix prefix = resumeFrom.get( source.getName() );
+        assertNotNull( prefix );
+        assertTrue( prefix.length() >= checkpointInterval && prefix.length() < data.length );
+        client = new MadeUpClient( PORT, storeIdToUse, internalProtocolVersion, APPLICATION_PROTOCOL_VERSION );
+        InterruptingStoreWriter writer = new InterruptingStoreWriter(
+                new ToFileStoreWriter( targetDir.getAbsolutePath(), checkpoint, checkpointInterval ), Long.MAX_VALUE );
+        client.copyFile( source.getAbsolutePath(), resumeFrom, writer ).close();
+        client.shutdown();
+        server.shutdown();
+
+        assertEquals( changeFileInBetween ? 0 : prefix.length(), writer.resumedAt );
+        File target = new File( targetDir, source.getName() );
+        assertEquals( data.length, target.length() );
+        byte[] copied = new byte[data.length];
+        DataInputStream in = new DataInputStream( new FileInputStream( target ) );
+        in.readFully( copied );
+        in.close();
+        assertTrue( Arrays.equals( data, copied ) );
+    }
+
+    @Test
+    public void storeCopiedOverSeveralStreamsIsPutTogether() throws Exception
+    {
+        copyOverSeveralStreams( Server.INTERNAL_PROTOCOL_VERSION );
+    }
+
+    @Test
+    public void storeCopiedOverSeveralStreamsIsPutTogetherWithBlocks() throws Exception
+    {
+        copyOverSeveralStreams( Server.LEGACY_INTERNAL_PROTOCOL_VERSION );
+    }
+
+    private void copyOverSeveralStreams( byte internalProtocolVersion ) throws Exception
+    {
+        File sourceDir = new File( PATH, "parallel-source" );
+        File targetDir = new File( PATH, "parallel-target" + internalProtocolVersion );
+        FileUtils.deleteRecursively( sourceDir );
+        FileUtils.deleteRecursively( targetDir );
+        byte[] big = writeFile( sourceDir, "big", MadeUpServer.FRAME_LENGTH*3 + 123 );
+        byte[] small = writeFile( sourceDir, "small", 1000 );
+        byte[] empty = writeFile( sourceDir, "empty", 0 );
+        long rangeSize = MadeUpServer.FRAME_LENGTH/2;
+        List<List<StoreFileRange>> plan = MasterUtil.planStoreFileRanges( sourceDir,
+                Arrays.asList( sourceDir.listFiles() ), Collections.<String, StoreFilePrefix>emptyMap(), 3, rangeSize );
+        for ( List<StoreFileRange> part : plan )
+        {   // The big file is spread out over all of them
+            assertFalse( part.isEmpty() );
+        }
+
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = new MadeUpServer( serverImplementation, PORT, internalProtocolVersion,
+                APPLICATION_PROTOCOL_VERSION, TxChecksumVerifier.ALWAYS_MATCH );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, internalProtocolVersion,
+                APPLICATION_PROTOCOL_VERSION );
+        parallelCopy( client, sourceDir, Collections.<String, StoreFilePrefix>emptyMap(), 3, rangeSize,
+                new ToFileStoreWriter( targetDir.getAbsolutePath() ) );
+        client.shutdown();
+        server.shutdown();
+
+        assertFileContains( new File( targetDir, "big" ), big );
+        assertFileContains( new File( targetDir, "small" ), small );
+        assertFileContains( new File( targetDir, "empty" ), empty );
+    }
+
+    @Test
+    public void fileNotStartingWithPrefixAnyMoreIsCopiedFromStartOverSeveralStreams() throws Exception
+    {
+        File sourceDir = new File( PATH, "parallel-changed-source" );
+        File targetDir = new File( PATH, "parallel-changed-target" );
+        FileUtils.deleteRecursively( sourceDir );
+        byte[] data = writeFile( sourceDir, "big", MadeUpServer.FRAME_LENGTH*2 );
+
+        // What's left from an earlier attempt is different, and longer than the file is now
+        StoreCopyCheckpoint checkpoint = StoreCopyCheckpoint.open( targetDir );
+        byte[] stale = new byte[data.length + 1000];
+        Arrays.fill( stale, (byte) 7 );
+        new ToFileStoreWriter( targetDir.getAbsolutePath(), checkpoint, stale.length ).write( "big",
+                Channels.newChannel( new ByteArrayInputStream( stale ) ), ByteBuffer.allocate( 1000 ), true );
+        checkpoint = StoreCopyCheckpoint.open( targetDir );
+        Map<String, StoreFilePrefix> resumeFrom = checkpoint.prefixes();
+        assertEquals( stale.length, resumeFrom.get( "big" ).length() );
+
+        MadeUpImplementation serverImplementation = new MadeUpImplementation( storeIdToUse );
+        MadeUpServer server = madeUpServer( serverImplementation );
+        MadeUpClient client = new MadeUpClient( PORT, storeIdToUse, INTERNAL_PROTOCOL_VERSION,
+                APPLICATION_PROTOCOL_VERSION );
+        parallelCopy( client, sourceDir, resumeFrom, 3, MadeUpServer.FRAME_LENGTH/2, new ToFileStoreWriter(
+                targetDir.getAbsolutePath(), checkpoint, ToFileStoreWriter.DEFAULT_CHECKPOINT_INTERVAL ) );
+        client.shutdown();
+        server.shutdown();
+
+        assertFileContains( new File( targetDir, "big" ), data );
+    }
+
+    private void parallelCopy( final MadeUpClient client, final File sourceDir,
+            Map<String, StoreFilePrefix> resumeFrom, int streams, final long rangeSize, ResumableStoreWriter writer )
+    {
+        ParallelStoreCopy.Source source = new ParallelStoreCopy.Source()
+        {
+            @Override
+            public Response<StoreCopyPlan> plan( Map<String, StoreFilePrefix> resumeFrom, int parts )
+            {
+                try
+                {
+                    List<List<StoreFileRange>> ranges = MasterUtil.planStoreFileRanges( sourceDir,
+                            Arrays.asList( sourceDir.listFiles() ), resumeFrom, parts, rangeSize );
+                    return new Response<StoreCopyPlan>( new StoreCopyPlan( new SlaveContext.Tx[0], ranges ),
+                            storeIdToUse, TransactionStream.EMPTY, ResourceReleaser.NO_OP );
+                }
+                catch ( IOException e )
+                {
+                    throw new RuntimeException( e );
+                }
+            }
+
+            @Override
+            public Response<Void> copyPart( SlaveContext.Tx[] startTransactions, List<StoreFileRange> ranges,
+                    StoreWriter writer )
+            {
+                return client.copyFileRanges( sourceDir.getAbsolutePath(), ranges, writer );
+            }
+        };
+        ParallelStoreCopy.copy( source, resumeFrom, streams, writer ).close();
+    }
+
+    private byte[] writeFile( File directory, String name, int size ) throws IOException
+    {
+        directory.mkdirs();
+        byte[] data = new byte[size];
+        for ( int i = 0; i < data.length; i++ ) data[i] = (byte) (i%251);
+        FileOutputStream out = new FileOutputStream( new File( directory, name ) );
+        out.write( data );
+        out.close();
+        return data;
+    }
+
+    private void assertFileContains( File file, byte[] data ) throws IOException
+    {
+        assertEquals( data.length, file.length() );
+        byte[] copied = new byte[data.length];
+        DataInputStream in = new DataInputStream( new FileInputStream( file ) );
+        in.readFully( copied );
+        in.close();
+        assertTrue( Arrays.equals( data, copied ) );
+    }
+
+    /**
+     * Fails the copy after a given number of bytes and remembers where the
+     * last file was resumed from.
+     */
+    private static class InterruptingStoreWriter implements ResumableStoreWriter
+    {
+        private final ResumableStoreWriter actual;
+        private long bytesLeft;
+        private long resumedAt;
+
+        InterruptingStoreWriter( ResumableStoreWriter actual, long failAfterBytes )
+        {
+            this.actual = actual;
+            this.bytesLeft = failAfterBytes;
+        }
+
+        @Override
+        public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, boolean hasData )
+                throws IOException
+        {
+            write( path, data, temporaryBuffer, hasData, 0 );
+        }
+
+        @Override
+        public void write( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, boolean hasData,
+                long offset ) throws IOException
+        {
+            resumedAt = offset;
+            actual.write( path, interrupting( data ), temporaryBuffer, hasData, offset );
+        }
+
+        @Override
+        public void writeRange( String path, ReadableByteChannel data, ByteBuffer temporaryBuffer, long offset,
+                long length ) throws IOException
+        {
+            actual.writeRange( path, interrupting( data ), temporaryBuffer, offset, length );
+        }
+
+        private ReadableByteChannel interrupting( final ReadableByteChannel data )
+        {
+            return new ReadableByteChannel()
+            {
+                @Override
+                public int read( ByteBuffer dst ) throws IOException
+                {
+                    if ( bytesLeft <= 0 ) throw new IOException( "Failing part way on purpose" );
+                    int limit = dst.limit();
+                    dst.limit( (int) Math.min( limit, dst.position() + bytesLeft ) );
+                    try
+                    {
+                        int read = data.read( dst );
+                        if ( read > 0 ) bytesLeft -= read;
+                        return read;
+                    }
+                    finally
+                    {
+                        dst.limit( limit );
+                    }
+                }
+
+                @Override
+                public boolean isOpen()
+                {
+                    return data.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    data.close();
+                }
+            };
+        }
+
+        @Override
+        public void done()
+        {
+            actual.done();
+        }
+    }
+
     @Test
     public void serverContextVerificationCanThrowException() throws Exception
     {
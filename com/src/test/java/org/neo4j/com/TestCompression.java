@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+public class TestCompression
+{
+    @Test
+    public void chunksCompressedOneAfterTheOtherDecompressToTheSameContent() throws Exception
+    {
+        Compression compression = new Compression( Compression.DEFLATE, 1 );
+        for ( int length = 1000; length <= 100000; length *= 10 )
+        {
+            ChannelBuffer content = ChannelBuffers.buffer( length );
+            for ( int i = 0; i < length; i++ )
+            {
+                content.writeByte( i % 7 );
+            }
+            ChannelBuffer compressed = compression.compress( content, 0, length );
+            assertNotNull( compressed );
+            assertEquals( content, compression.decompress( compressed, length ) );
+        }
+    }
+
+    @Test
+    public void negativeLengthIsRejectedWithoutAllocating() throws Exception
+    {
+        assertCorrupt( -1 );
+    }
+
+    @Test
+    public void lengthLargerThanTheFrameIsRejectedWithoutAllocating() throws Exception
+    {
+        assertCorrupt( Integer.MAX_VALUE );
+    }
+
+    private void assertCorrupt( int length )
+    {
+        ChannelBuffer chunk = ChannelBuffers.buffer( 8 );
+        chunk.writeInt( length );
+        chunk.writeInt( 0 );
+        try
+        {
+            new Compression().decompress( chunk, Protocol.DEFAULT_FRAME_LENGTH );
+            fail( "Should have rejected length " + length );
+        }
+        catch ( ComException e )
+        {   // Good
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestConcurrentResourcePool
+{
+    @Test
+    public void dontReuseBrokenInstances() throws Exception
+    {
+        ConcurrentResourcePool<Something> pool = new SomethingPool( false, ConcurrentResourcePool.NO_IDLE_TIMEOUT );
+
+        Something somethingFirst = pool.acquire();
+        pool.release();
+
+        Something something = pool.acquire();
+        assertSame( somethingFirst, something );
+        something.close();
+        pool.release();
+
+        Something somethingElse = pool.acquire();
+        assertFalse( something == somethingElse );
+        assertEquals( 1, pool.getDeadResources() );
+        assertEquals( 2, pool.getCreations() );
+    }
+
+    @Test
+    public void threadGetsBackWhatItReleasedLast() throws Exception
+    {
+        final ConcurrentResourcePool<Something> pool = new SomethingPool( true, ConcurrentResourcePool.NO_IDLE_TIMEOUT );
+        final CountDownLatch acquired = new CountDownLatch( 1 );
+        final CountDownLatch othersReleased = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Something mine = pool.acquire();
+                    acquired.countDown();
+                    othersReleased.await();
+                    pool.release();
+                    // Another one was released before this one so it's first in line
+                    assertSame( mine, pool.acquire() );
+                    pool.release();
+                }
+                catch ( Throwable e )
+                {
+                    failure.set( e );
+                }
+            }
+        };
+        thread.start();
+        acquired.await();
+        pool.acquire();
+        pool.release();
+        othersReleased.countDown();
+        thread.join();
+        if ( failure.get() != null ) throw new Exception( failure.get() );
+    }
+
+    @Test
+    public void disposesOfInstancesIdleTooLong() throws Exception
+    {
+        ConcurrentResourcePool<Something> pool = new SomethingPool( false, 10 );
+        Something something = pool.acquire();
+        pool.release();
+        Thread.sleep( 1500 );
+        assertFalse( something == pool.acquire() );
+        assertEquals( 1, pool.getEvictions() );
+        assertEquals( 1, pool.getDisposals() );
+    }
+
+    private static class SomethingPool extends ConcurrentResourcePool<Something>
+    {
+        SomethingPool( boolean threadAffinity, long idleTimeoutMillis )
+        {
+            super( 10, 5, threadAffinity, idleTimeoutMillis );
+        }
+
+        @Override
+        protected Something create()
+        {
+            return new Something();
+        }
+
+        @Override
+        protected boolean isAlive( Something resource )
+        {
+            return !resource.closed;
+        }
+    }
+
+    private static class Something
+    {
+        private boolean closed;
+
+        public void close()
+        {
+            this.closed = true;
+        }
+    }
+}
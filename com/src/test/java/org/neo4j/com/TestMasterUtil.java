@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.helpers.Triplet;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.impl.transaction.xaframework.InMemoryLogBuffer;
+import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
+import org.neo4j.test.TargetDirectory;
+
+public class TestMasterUtil
+{
+    private static final int TRANSACTIONS = 200;
+
+    private GraphDatabaseAPI db;
+    private long lastTxId;
+
+    @Before
+    public void createTransactions() throws Exception
+    {
+        String path = TargetDirectory.forTest( getClass() ).directory( "db", true ).getAbsolutePath();
+        db = (GraphDatabaseAPI) new GraphDatabaseFactory().newEmbeddedDatabase( path );
+        for ( int i = 0; i < TRANSACTIONS; i++ )
+        {
+            Transaction tx = db.beginTx();
+            db.createNode();
+            tx.success();
+            tx.finish();
+        }
+        lastTxId = db.getXaDataSourceManager().getNeoStoreDataSource().getLastCommittedTxId();
+    }
+
+    @After
+    public void shutdown()
+    {
+        db.shutdown();
+    }
+
+    @Test
+    public void streamsTransactionsInOrder() throws Exception
+    {
+        long firstTxId = lastTxId - TRANSACTIONS + 1;
+        Response<Void> response = MasterUtil.getTransactions( db, Config.DEFAULT_DATA_SOURCE_NAME, firstTxId,
+                lastTxId );
+        long expectedTxId = firstTxId;
+        try
+        {
+            for ( Triplet<String, Long, TxExtractor> tx : IteratorUtil.asIterable( response.transactions() ) )
+            {
+                assertEquals( Config.DEFAULT_DATA_SOURCE_NAME, tx.first() );
+                assertEquals( (Long) expectedTxId++, tx.second() );
+                tx.third().extract( new InMemoryLogBuffer() );
+            }
+        }
+        finally
+        {
+            response.close();
+        }
+        assertEquals( lastTxId + 1, expectedTxId );
+    }
+
+    @Test
+    public void streamedTransactionsAreNotHeldOnTo() throws Exception
+    {
+        // The memory a stream uses must not grow with its length. If it does, then
+        // transactions already streamed are still referenced by the stream.
+        Response<Void> response = MasterUtil.getTransactions( db, Config.DEFAULT_DATA_SOURCE_NAME,
+                lastTxId - TRANSACTIONS + 1, lastTxId );
+        try
+        {
+            TransactionStream stream = response.transactions();
+            Triplet<String, Long, TxExtractor> first = stream.next();
+            first.third().extract( new InMemoryLogBuffer() );
+            WeakReference<Object> firstRef = new WeakReference<Object>( first );
+            first = null;
+            int count = 1;
+            while ( stream.hasNext() )
+            {
+                stream.next().third().extract( new InMemoryLogBuffer() );
+                count++;
+            }
+            assertEquals( TRANSACTIONS, count );
+            for ( int i = 0; i < 10 && firstRef.get() != null; i++ )
+            {
+                System.gc();
+                Thread.sleep( 10 );
+            }
+            assertNull( "First transaction still referenced after having streamed all", firstRef.get() );
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+
+    @Test
+    public void longRangeIsExtractedFromTheLogOneTransactionAtATimeAsItIsConsumed() throws Exception
+    {
+        int longRange = 1000;
+        for ( int i = 0; i < longRange; i++ )
+        {
+            Transaction tx = db.beginTx();
+            db.createNode();
+            tx.success();
+            tx.finish();
+        }
+        long firstTxId = lastTxId + 1;
+        lastTxId += longRange;
+        final AtomicInteger extracted = new AtomicInteger();
+        TransactionReplayCache extractionCounter = new TransactionReplayCache( 0 )
+        {
+            @Override
+            public Capture capture( String dataSource, long txId, LogBuffer target )
+            {
+                extracted.incrementAndGet();
+                return super.capture( dataSource, txId, target );
+            }
+        };
+
+        Response<Void> response = MasterUtil.getTransactions( db, Config.DEFAULT_DATA_SOURCE_NAME, firstTxId,
+                lastTxId, extractionCounter );
+        try
+        {
+            assertEquals( "Extracted before being asked for", 0, extracted.get() );
+            int consumed = 0;
+            for ( Triplet<String, Long, TxExtractor> tx : IteratorUtil.asIterable( response.transactions() ) )
+            {
+                assertEquals( "Extracted ahead of the consumer", consumed, extracted.get() );
+                tx.third().extract( new InMemoryLogBuffer() );
+                consumed++;
+            }
+            assertEquals( longRange, consumed );
+            assertEquals( longRange, extracted.get() );
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+}
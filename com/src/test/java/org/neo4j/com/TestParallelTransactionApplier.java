@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.test.TargetDirectory;
+
+public class TestParallelTransactionApplier
+{
+    private static final int TRANSACTIONS = 200;
+
+    private GraphDatabaseAPI source;
+    private GraphDatabaseAPI target;
+
+    @Before
+    public void createDatabasesWithTheSameStore() throws Exception
+    {
+        TargetDirectory directory = TargetDirectory.forTest( getClass() );
+        File sourcePath = directory.directory( "source", true );
+        File targetPath = directory.directory( "target", true );
+        source = (GraphDatabaseAPI) new GraphDatabaseFactory().newEmbeddedDatabase( sourcePath.getAbsolutePath() );
+        createNodes( 1 );
+        source.shutdown();
+        FileUtils.copyDirectory( sourcePath, targetPath );
+        source = (GraphDatabaseAPI) new GraphDatabaseFactory().newEmbeddedDatabase( sourcePath.getAbsolutePath() );
+        target = (GraphDatabaseAPI) new GraphDatabaseFactory().newEmbeddedDatabase( targetPath.getAbsolutePath() );
+    }
+
+    @After
+    public void shutdown()
+    {
+        source.shutdown();
+        target.shutdown();
+    }
+
+    @Test
+    public void transactionsOfSingleDataSourceAreAppliedStraightFromTheStream() throws Exception
+    {
+        long firstTxId = lastTxId( target ) + 1;
+        createNodes( TRANSACTIONS );
+        ParallelTransactionApplier applier = new ParallelTransactionApplier( 2 );
+
+        MasterUtil.applyReceivedTransactions( MasterUtil.getTransactions( source, Config.DEFAULT_DATA_SOURCE_NAME,
+                firstTxId, lastTxId( source ) ), target, MasterUtil.NO_ACTION, TransactionReceivePipeline.NONE,
+                applier );
+
+        assertEquals( lastTxId( source ), lastTxId( target ) );
+        assertEquals( "Only one data source, nothing to apply in parallel with", 0,
+                applier.getAppliedInParallel() );
+        assertEquals( source.getNodeById( TRANSACTIONS ).getProperty( "name" ),
+                target.getNodeById( TRANSACTIONS ).getProperty( "name" ) );
+    }
+
+    @Test
+    public void transactionsOfOtherDataSourcesAreAppliedInParallel() throws Exception
+    {
+        SlaveContext context = lastAppliedTransactions( target );
+        createNodes( TRANSACTIONS, true );
+        ParallelTransactionApplier applier = new ParallelTransactionApplier( 2 );
+
+        MasterUtil.applyReceivedTransactions( MasterUtil.packResponse( source, context, null, MasterUtil.ALL ),
+                target, MasterUtil.NO_ACTION, TransactionReceivePipeline.NONE, applier );
+
+        assertEquals( lastTxId( source ), lastTxId( target ) );
+        assertEquals( "One of the two data sources applied in parallel", TRANSACTIONS,
+                applier.getAppliedInParallel() );
+        Node node = target.getNodeById( TRANSACTIONS );
+        assertEquals( node, target.index().forNodes( "names" ).get( "name", node.getProperty( "name" ) ).getSingle() );
+    }
+
+    private void createNodes( int count )
+    {
+        createNodes( count, false );
+    }
+
+    private void createNodes( int count, boolean indexed )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            Transaction tx = source.beginTx();
+            Node node = source.createNode();
+            node.setProperty( "name", "node " + node.getId() );
+            if ( indexed ) source.index().forNodes( "names" ).add( node, "name", node.getProperty( "name" ) );
+            tx.success();
+            tx.finish();
+        }
+    }
+
+    private static SlaveContext lastAppliedTransactions( GraphDatabaseAPI db )
+    {
+        List<SlaveContext.Tx> txs = new ArrayList<SlaveContext.Tx>();
+        for ( XaDataSource dataSource : db.getXaDataSourceManager().getAllRegisteredDataSources() )
+        {
+            txs.add( SlaveContext.lastAppliedTx( dataSource.getName(), dataSource.getLastCommittedTxId() ) );
+        }
+        return SlaveContext.anonymous( txs.toArray( new SlaveContext.Tx[txs.size()] ) );
+    }
+
+    private static long lastTxId( GraphDatabaseAPI db )
+    {
+        return db.getXaDataSourceManager().getNeoStoreDataSource().getLastCommittedTxId();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestRequestScheduler
+{
+    private final RequestScheduler scheduler = new RequestScheduler( "test", 10 );
+
+    @After
+    public void shutdown()
+    {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void fullClassRejectsRequestsWithoutAffectingOtherClasses() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        int capacity = RequestClass.BULK.threads( 10 ) + RequestClass.BULK.queueDepth();
+        for ( int i = 0; i < capacity; i++ )
+        {
+            scheduler.schedule( RequestClass.BULK, blockUntil( release ) );
+        }
+        try
+        {
+            scheduler.schedule( RequestClass.BULK, blockUntil( release ) );
+            fail( "Should have been rejected" );
+        }
+        catch ( RejectedExecutionException e )
+        {   // Good
+        }
+        assertEquals( capacity, scheduler.getScheduled( RequestClass.BULK ) );
+        assertEquals( 1, scheduler.getRejected( RequestClass.BULK ) );
+
+        CountDownLatch done = new CountDownLatch( 1 );
+        scheduler.schedule( RequestClass.LATENCY_CRITICAL, countDown( done ) );
+        assertTrue( "Latency critical request held up by bulk requests", done.await( 10, TimeUnit.SECONDS ) );
+        release.countDown();
+    }
+
+    @Test
+    public void moreBlockedLockersThanTransactionsCantHoldUpTheOneWhichWouldLetThemThrough() throws Exception
+    {
+        // Lock requests of other slaves blocked on locks held by a transaction...
+        CountDownLatch release = new CountDownLatch( 1 );
+        for ( int i = 0; i < 10 * 3; i++ )
+        {
+            scheduler.schedule( RequestClass.LOCKING, blockUntil( release ) );
+        }
+
+        // ...which needs one more lock before it can commit and release them
+        CountDownLatch done = new CountDownLatch( 1 );
+        scheduler.schedule( RequestClass.LOCKING, countDown( done ) );
+        assertTrue( "Lock request held up by blocked lock requests", done.await( 10, TimeUnit.SECONDS ) );
+        assertEquals( 0, scheduler.getRejected( RequestClass.LOCKING ) );
+        release.countDown();
+    }
+
+    private Runnable blockUntil( final CountDownLatch latch )
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    latch.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private Runnable countDown( final CountDownLatch latch )
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        };
+    }
+}
@@ -21,6 +21,7 @@ package org.neo4j.com;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
@@ -42,4 +43,15 @@ public class TestSlaveContext
         // Same everything
         assertEquals( new SlaveContext( 12345, 4, 9, new SlaveContext.Tx[0], 0, 0 ), new SlaveContext( 12345, 4, 9, new SlaveContext.Tx[0], 0, 0 ) );
     }
+
+    @Test
+    public void initializingTxDoesNotChangeIdentity()
+    {
+        SlaveContext context = new SlaveContext( 12345, 4, 9, new SlaveContext.Tx[0], 0, 0 );
+        SlaveContext initializing = context.initializingTx();
+        assertFalse( context.initializesTx() );
+        assertTrue( initializing.initializesTx() );
+        assertEquals( context, initializing );
+        assertEquals( context.hashCode(), initializing.hashCode() );
+    }
 }
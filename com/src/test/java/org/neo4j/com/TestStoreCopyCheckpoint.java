@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.test.TargetDirectory;
+
+public class TestStoreCopyCheckpoint
+{
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    private File directory;
+
+    @Before
+    public void clearDirectory() throws IOException
+    {
+        directory = TargetDirectory.forTest( getClass() ).directory( "copy", true );
+    }
+
+    @Test
+    public void recordsWrittenFilesAndCheckpointsWithin() throws Exception
+    {
+        StoreCopyCheckpoint checkpoint = StoreCopyCheckpoint.open( directory );
+        write( checkpoint, "a", data( 2500 ), 0 );
+        write( checkpoint, "dir/b", data( 10 ), 0 );
+
+        Map<String, StoreFilePrefix> prefixes = StoreCopyCheckpoint.open( directory ).prefixes();
+        assertEquals( 2500, prefixes.get( "a" ).length() );
+        assertEquals( 10, prefixes.get( "dir/b" ).length() );
+    }
+
+    @Test
+    public void filesWhichCantBeVerifiedAreRemoved() throws Exception
+    {
+        StoreCopyCheckpoint checkpoint = StoreCopyCheckpoint.open( directory );
+        write( checkpoint, "a", data( 2500 ), 0 );
+        write( checkpoint, "b", data( 2500 ), 0 );
+        corrupt( new File( directory, "b" ), 10 );
+        new FileOutputStream( new File( directory, "not-recorded" ) ).close();
+
+        Map<String, StoreFilePrefix> prefixes = StoreCopyCheckpoint.open( directory ).prefixes();
+        assertEquals( 2500, prefixes.get( "a" ).length() );
+        assertNull( prefixes.get( "b" ) );
+        assertFalse( new File( directory, "b" ).exists() );
+        assertFalse( new File( directory, "not-recorded" ).exists() );
+    }
+
+    @Test
+    public void dataWrittenAfterLastCheckpointIsCutOff() throws Exception
+    {
+        StoreCopyCheckpoint checkpoint = StoreCopyCheckpoint.open( directory );
+        write( checkpoint, "a", data( 2500 ), 0 );
+        RandomAccessFile file = new RandomAccessFile( new File( directory, "a" ), "rw" );
+        file.setLength( 3000 );
+        file.close();
+
+        assertEquals( 2500, StoreCopyCheckpoint.open( directory ).prefixes().get( "a" ).length() );
+        assertEquals( 2500, new File( directory, "a" ).length() );
+    }
+
+    @Test
+    public void resumedFileEndsUpWithChecksumOfAllOfIt() throws Exception
+    {
+        byte[] data = data( 2500 );
+        byte[] start = new byte[2000];
+        byte[] rest = new byte[data.length - start.length];
+        System.arraycopy( data, 0, start, 0, start.length );
+        System.arraycopy( data, start.length, rest, 0, rest.length );
+        write( StoreCopyCheckpoint.open( directory ), "a", start, 0 );
+        write( StoreCopyCheckpoint.open( directory ), "a", rest, start.length );
+
+        StoreFilePrefix prefix = StoreCopyCheckpoint.open( directory ).prefixes().get( "a" );
+        Checksum expected = StoreCopyCheckpoint.newChecksum();
+        expected.update( data, 0, data.length );
+        assertEquals( data.length, prefix.length() );
+        assertEquals( expected.getValue(), prefix.checksum() );
+    }
+
+    @Test
+    public void checksumTakenPartWayIsThatOfThePrefixAndDoesntDisturbTheRest() throws Exception
+    {
+        byte[] data = data( 2500 );
+        Checksum whole = StoreCopyCheckpoint.newChecksum();
+        whole.update( data, 0, 2000 );
+        Checksum prefix = StoreCopyCheckpoint.newChecksum();
+        prefix.update( data, 0, 2000 );
+        assertEquals( prefix.getValue(), whole.getValue() );
+
+        whole.update( data, 2000, 500 );
+        Checksum expected = StoreCopyCheckpoint.newChecksum();
+        expected.update( data, 0, data.length );
+        assertEquals( expected.getValue(), whole.getValue() );
+    }
+
+    @Test
+    public void filesNotPartOfResumedCopyAreRemoved() throws Exception
+    {
+        StoreCopyCheckpoint checkpoint = StoreCopyCheckpoint.open( directory );
+        write( checkpoint, "a", data( 10 ), 0 );
+        write( checkpoint, "b", data( 10 ), 0 );
+
+        checkpoint = StoreCopyCheckpoint.open( directory );
+        ToFileStoreWriter writer = write( checkpoint, "a", new byte[0], 10 );
+        writer.done();
+
+        assertTrue( new File( directory, "a" ).exists() );
+        assertFalse( new File( directory, "b" ).exists() );
+        assertNull( StoreCopyCheckpoint.open( directory ).prefixes().get( "b" ) );
+    }
+
+    @Test
+    public void onlyRangesContinuingThePrefixAreRecorded() throws Exception
+    {
+        byte[] data = data( 2500 );
+        StoreCopyCheckpoint checkpoint = StoreCopyCheckpoint.open( directory );
+        writeRange( checkpoint, "in-order", data, 0, 2000 );
+        writeRange( checkpoint, "in-order", data, 2000, 500 );
+        writeRange( checkpoint, "out-of-order", data, 2000, 500 );
+        writeRange( checkpoint, "out-of-order", data, 0, 2000 );
+
+        Map<String, StoreFilePrefix> prefixes = StoreCopyCheckpoint.open( directory ).prefixes();
+        assertEquals( 2500, prefixes.get( "in-order" ).length() );
+        assertEquals( 2000, prefixes.get( "out-of-order" ).length() );
+        assertEquals( 2000, new File( directory, "out-of-order" ).length() );
+    }
+
+    private void writeRange( StoreCopyCheckpoint checkpoint, String path, byte[] data, int offset, int length )
+            throws IOException
+    {
+        ToFileStoreWriter writer = new ToFileStoreWriter( directory.getPath(), checkpoint, CHECKPOINT_INTERVAL );
+        writer.writeRange( path, Channels.newChannel( new ByteArrayInputStream( data, offset, length ) ),
+                ByteBuffer.allocate( 100 ), offset, -1 );
+    }
+
+    private ToFileStoreWriter write( StoreCopyCheckpoint checkpoint, String path, byte[] data, long offset )
+            throws IOException
+    {
+        ToFileStoreWriter writer = new ToFileStoreWriter( directory.getPath(), checkpoint, CHECKPOINT_INTERVAL );
+        writer.write( path, Channels.newChannel( new ByteArrayInputStream( data ) ), ByteBuffer.allocate( 100 ),
+                data.length > 0, offset );
+        return writer;
+    }
+
+    private void corrupt( File file, long position ) throws IOException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" );
+        randomAccessFile.seek( position );
+        byte value = randomAccessFile.readByte();
+        randomAccessFile.seek( position );
+        randomAccessFile.writeByte( value + 1 );
+        randomAccessFile.close();
+    }
+
+    private byte[] data( int length )
+    {
+        byte[] data = new byte[length];
+        for ( int i = 0; i < length; i++ ) data[i] = (byte) (i%7);
+        return data;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.neo4j.helpers.Triplet;
+
+public class TestTransactionReceivePipeline
+{
+    private final ExecutorService receivers = TransactionReceivePipeline.newReceivers( "Test receiver", 1 );
+
+    @After
+    public void shutDownReceivers() throws Exception
+    {
+        receivers.shutdownNow();
+        assertTrue( receivers.awaitTermination( 10, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void shortStreamsAreHandedOutDirectly() throws Exception
+    {
+        TransactionReceivePipeline pipeline = new TransactionReceivePipeline( 10, receivers );
+        TransactionStream stream = pipeline.pipeline( transactions( 1, TransactionReceivePipeline.DIRECT_TRANSACTIONS ) );
+        assertTransactions( stream, 1, TransactionReceivePipeline.DIRECT_TRANSACTIONS );
+        assertFalse( stream.hasNext() );
+        stream.close();
+        assertEquals( 0, pipeline.getPipelinedStreams() );
+    }
+
+    @Test
+    public void longStreamsAreReceivedInOrderInAnotherThread() throws Exception
+    {
+        TransactionReceivePipeline pipeline = new TransactionReceivePipeline( 4, receivers );
+        TransactionStream stream = pipeline.pipeline( transactions( 1, 200 ) );
+        assertTransactions( stream, 1, 200 );
+        assertFalse( stream.hasNext() );
+        stream.close();
+        assertEquals( 1, pipeline.getPipelinedStreams() );
+        assertEquals( 0, pipeline.getQueued() );
+        assertTrue( pipeline.getMaxQueued() <= 4 );
+    }
+
+    @Test
+    public void closingStopsReceiving() throws Exception
+    {
+        TransactionReceivePipeline pipeline = new TransactionReceivePipeline( 2, receivers );
+        TransactionStream stream = pipeline.pipeline( transactions( 1, 1000 ) );
+        assertTransactions( stream, 1, TransactionReceivePipeline.DIRECT_TRANSACTIONS + 1 );
+        stream.close();
+        assertEquals( 0, pipeline.getQueued() );
+    }
+
+    @Test
+    public void longStreamIsReceivedInTheApplyingThreadWhenAllReceiversAreBusy() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        receivers.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    release.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } );
+        try
+        {
+            TransactionReceivePipeline pipeline = new TransactionReceivePipeline( 4, receivers );
+            TransactionStream stream = pipeline.pipeline( transactions( 1, 200 ) );
+            assertTransactions( stream, 1, 200 );
+            assertFalse( stream.hasNext() );
+            stream.close();
+            assertEquals( 0, pipeline.getPipelinedStreams() );
+        }
+        finally
+        {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void noQueueDepthMeansNoPipelining() throws Exception
+    {
+        TransactionStream source = transactions( 1, 100 );
+        assertSame( source, TransactionReceivePipeline.NONE.pipeline( source ) );
+    }
+
+    private void assertTransactions( TransactionStream stream, long from, long to ) throws Exception
+    {
+        for ( long txId = from; txId <= to; txId++ )
+        {
+            assertTrue( stream.hasNext() );
+            Triplet<String, Long, TxExtractor> tx = stream.next();
+            assertEquals( "ds", tx.first() );
+            assertEquals( (Long) txId, tx.second() );
+            ReadableByteChannel channel = tx.third().extract();
+            ByteBuffer buffer = ByteBuffer.allocate( 100 );
+            channel.read( buffer );
+            buffer.flip();
+            assertEquals( 8, buffer.remaining() );
+            assertEquals( txId, buffer.getLong() );
+        }
+    }
+
+    private TransactionStream transactions( final long from, final long to )
+    {
+        return new TransactionStream( "ds" )
+        {
+            private long next = from;
+
+            @Override
+            protected Triplet<String, Long, TxExtractor> fetchNextOrNull()
+            {
+                if ( next > to ) return null;
+                long txId = next++;
+                byte[] transaction = ByteBuffer.allocate( 8 ).putLong( txId ).array();
+                return Triplet.of( "ds", txId, TxExtractor.create( transaction ) );
+            }
+        };
+    }
+}
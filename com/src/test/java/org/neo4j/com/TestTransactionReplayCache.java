@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.com;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.neo4j.kernel.impl.transaction.xaframework.InMemoryLogBuffer;
+
+public class TestTransactionReplayCache
+{
+    @Test
+    public void oldestTransactionsAreEvictedToStayWithinMaxSize() throws Exception
+    {
+        TransactionReplayCache cache = new TransactionReplayCache( 25 );
+        cache.put( "ds", 1, new byte[10] );
+        cache.put( "ds", 2, new byte[10] );
+        cache.put( "other", 2, new byte[5] );
+        assertEquals( 25, cache.getBytes() );
+        cache.put( "ds", 3, new byte[10] );
+
+        assertNull( cache.get( "ds", 1 ) );
+        assertEquals( 10, cache.get( "ds", 2 ).length );
+        assertEquals( 5, cache.get( "other", 2 ).length );
+        assertEquals( 10, cache.get( "ds", 3 ).length );
+        assertEquals( 25, cache.getBytes() );
+        assertEquals( 1, cache.getEvictions() );
+        assertEquals( 3, cache.getHits() );
+        assertEquals( 1, cache.getMisses() );
+    }
+
+    @Test
+    public void transactionsLargerThanMaxSizeAreNotCached() throws Exception
+    {
+        TransactionReplayCache cache = new TransactionReplayCache( 10 );
+        cache.put( "ds", 1, new byte[5] );
+        cache.put( "ds", 2, new byte[11] );
+        assertEquals( 5, cache.get( "ds", 1 ).length );
+        assertNull( cache.get( "ds", 2 ) );
+    }
+
+    @Test
+    public void capturedTransactionIsWrittenThroughAndCachedWhenDone() throws Exception
+    {
+        TransactionReplayCache cache = new TransactionReplayCache( 1000 );
+        InMemoryLogBuffer target = new InMemoryLogBuffer();
+        TransactionReplayCache.Capture capture = cache.capture( "ds", 5, target );
+        capture.put( (byte) 1 ).putInt( 2 ).putLong( 3 ).put( new char[] { 'a', 'b' } );
+        assertNull( cache.get( "ds", 5 ) );
+        capture.done();
+
+        ByteBuffer written = ByteBuffer.allocate( 100 );
+        target.read( written );
+        written.flip();
+        byte[] writtenBytes = new byte[written.remaining()];
+        written.get( writtenBytes );
+        assertArrayEquals( writtenBytes, cache.get( "ds", 5 ) );
+        assertEquals( 1 + 4 + 8 + 4, writtenBytes.length );
+    }
+
+    @Test
+    public void disabledCacheCachesNothing() throws Exception
+    {
+        TransactionReplayCache.Capture capture = TransactionReplayCache.NONE.capture( "ds", 1,
+                new InMemoryLogBuffer() );
+        capture.putLong( 10 );
+        capture.done();
+        assertNull( TransactionReplayCache.NONE.get( "ds", 1 ) );
+        assertEquals( 0, TransactionReplayCache.NONE.getMisses() );
+    }
+}
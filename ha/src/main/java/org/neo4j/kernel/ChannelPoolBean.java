@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.com.ConcurrentResourcePool;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.ha.AbstractHAGraphDatabase;
+import org.neo4j.kernel.ha.Broker;
+import org.neo4j.kernel.ha.ChannelPoolInfo;
+import org.neo4j.kernel.ha.Master;
+import org.neo4j.kernel.ha.MasterClient;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class ChannelPoolBean extends ManagementBeanProvider
+{
+    public ChannelPoolBean()
+    {
+        super( ChannelPoolInfo.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) ) return null;
+        return new ChannelPoolInfoImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) ) return null;
+        return new ChannelPoolInfoImpl( management );
+    }
+
+    private static boolean isHA( ManagementData management )
+    {
+        return management.getKernelData().graphDatabase() instanceof AbstractHAGraphDatabase;
+    }
+
+    private static class ChannelPoolInfoImpl extends Neo4jMBean implements ChannelPoolInfo
+    {
+        private final HighlyAvailableGraphDatabase db;
+
+        ChannelPoolInfoImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.db = dbOf( management );
+        }
+
+        ChannelPoolInfoImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+            this.db = dbOf( management );
+        }
+
+        private static HighlyAvailableGraphDatabase dbOf( ManagementData management )
+        {
+            return ((AbstractHAGraphDatabase) management.getKernelData().graphDatabase())
+                    .getHighlyAvailableGraphDatabase();
+        }
+
+        /**
+         * @return the pool of the client to the current master, or {@code null}
+         * if this instance is the master or there is none.
+         */
+        private ConcurrentResourcePool<?> pool()
+        {
+            Broker broker = db.getBroker();
+            Master master = broker != null && broker.getMaster() != null ? broker.getMaster().first() : null;
+            return master instanceof MasterClient ? ((MasterClient) master).getChannelPool() : null;
+        }
+
+        @Override
+        public long getWaits()
+        {
+            ConcurrentResourcePool<?> pool = pool();
+            return pool != null ? pool.getWaits() : 0;
+        }
+
+        @Override
+        public long getWaitTimeMillis()
+        {
+            ConcurrentResourcePool<?> pool = pool();
+            return pool != null ? pool.getWaitTimeMillis() : 0;
+        }
+
+        @Override
+        public long getCreations()
+        {
+            ConcurrentResourcePool<?> pool = pool();
+            return pool != null ? pool.getCreations() : 0;
+        }
+
+        @Override
+        public long getDisposals()
+        {
+            ConcurrentResourcePool<?> pool = pool();
+            return pool != null ? pool.getDisposals() : 0;
+        }
+
+        @Override
+        public long getDeadChannels()
+        {
+            ConcurrentResourcePool<?> pool = pool();
+            return pool != null ? pool.getDeadResources() : 0;
+        }
+
+        @Override
+        public long getEvictions()
+        {
+            ConcurrentResourcePool<?> pool = pool();
+            return pool != null ? pool.getEvictions() : 0;
+        }
+
+        @Override
+        public int getUnused()
+        {
+            ConcurrentResourcePool<?> pool = pool();
+            return pool != null ? pool.getUnused() : 0;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.com.Compression;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.ha.AbstractHAGraphDatabase;
+import org.neo4j.kernel.ha.CompressionInfo;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class CompressionBean extends ManagementBeanProvider
+{
+    public CompressionBean()
+    {
+        super( CompressionInfo.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) ) return null;
+        return new CompressionInfoImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) ) return null;
+        return new CompressionInfoImpl( management );
+    }
+
+    private static boolean isHA( ManagementData management )
+    {
+        return management.getKernelData().graphDatabase() instanceof AbstractHAGraphDatabase;
+    }
+
+    private static class CompressionInfoImpl extends Neo4jMBean implements CompressionInfo
+    {
+        private final Compression compression;
+
+        CompressionInfoImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.compression = compressionOf( management );
+        }
+
+        CompressionInfoImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+            this.compression = compressionOf( management );
+        }
+
+        private static Compression compressionOf( ManagementData management )
+        {
+            return ((AbstractHAGraphDatabase) management.getKernelData().graphDatabase())
+                    .getHighlyAvailableGraphDatabase().getCompression();
+        }
+
+        @Override
+        public String getCodec()
+        {
+            return compression.toString();
+        }
+
+        @Override
+        public long getBytesBeforeCompression()
+        {
+            return compression.getBytesBeforeCompression();
+        }
+
+        @Override
+        public long getBytesAfterCompression()
+        {
+            return compression.getBytesAfterCompression();
+        }
+
+        @Override
+        public double getCompressionRatio()
+        {
+            return compression.getCompressionRatio();
+        }
+
+        @Override
+        public long getCompressionTimeMillis()
+        {
+            return compression.getCompressionTimeMillis();
+        }
+
+        @Override
+        public long getBytesBeforeDecompression()
+        {
+            return compression.getBytesBeforeDecompression();
+        }
+
+        @Override
+        public long getDecompressionTimeMillis()
+        {
+            return compression.getDecompressionTimeMillis();
+        }
+    }
+}
@@ -30,27 +30,49 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.transaction.TransactionManager;
 
+import org.neo4j.backup.OnlineBackup;
 import org.neo4j.backup.OnlineBackupSettings;
 import org.neo4j.com.ComException;
+import org.neo4j.com.Compression;
+import org.neo4j.com.FlowControl;
 import org.neo4j.com.MasterUtil;
+import org.neo4j.com.ParallelStoreCopy;
+import org.neo4j.com.ParallelTransactionApplier;
+import org.neo4j.com.ResourceReleaser;
 import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
 import org.neo4j.com.SlaveContext.Tx;
 import org.neo4j.com.StoreIdGetter;
+import org.neo4j.com.StoreCopyCheckpoint;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFileRange;
+import org.neo4j.com.StoreFilePrefix;
+import org.neo4j.com.StoreWriter;
 import org.neo4j.com.ToFileStoreWriter;
+import org.neo4j.com.TransactionReceivePipeline;
+import org.neo4j.com.TransactionReplayCache;
+import org.neo4j.com.TransactionStream;
+import org.neo4j.com.TxExtractor;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Transaction;
@@ -65,11 +87,13 @@ import org.neo4j.graphdb.index.IndexProvider;
 import org.neo4j.helpers.Exceptions;
 import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Service;
+import org.neo4j.helpers.Triplet;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.configuration.ConfigurationDefaults;
 import org.neo4j.kernel.guard.Guard;
 import org.neo4j.kernel.ha.BranchedDataException;
 import org.neo4j.kernel.ha.Broker;
+import org.neo4j.kernel.ha.CascadingReplica;
 import org.neo4j.kernel.ha.ClusterClient;
 import org.neo4j.kernel.ha.ClusterEventReceiver;
 import org.neo4j.kernel.ha.EnterpriseConfigurationMigrator;
@@ -80,6 +104,8 @@ import org.neo4j.kernel.ha.MasterGraphDatabase;
 import org.neo4j.kernel.ha.MasterServer;
 import org.neo4j.kernel.ha.SlaveDatabaseOperations;
 import org.neo4j.kernel.ha.SlaveGraphDatabase;
+import org.neo4j.kernel.ha.SlaveLockManager;
+import org.neo4j.kernel.ha.TxMetadataCache;
 import org.neo4j.kernel.ha.shell.ZooClientFactory;
 import org.neo4j.kernel.ha.zookeeper.Machine;
 import org.neo4j.kernel.ha.zookeeper.NoMasterException;
@@ -125,6 +151,13 @@ public class HighlyAvailableGraphDatabase
     private static final int NEW_MASTER_STARTUP_RETRIES = 3;
     public static final String COPY_FROM_MASTER_TEMP = "temp-copy";
     private static final int STORE_COPY_RETRIES = 3;
+    private static final int AWAIT_UPDATES_MILLIS = 1000;
+    private static final int IDLE_SUBSCRIBER_MILLIS = 100;
+    /**
+     * How many transactions behind the master a slave may be and still be
+     * picked to copy the store from.
+     */
+    private static final long MAX_STORE_COPY_SOURCE_LAG = 1000;
 
     private final int localGraphWait;
     protected volatile StoreId storeId;
@@ -155,6 +188,13 @@ public class HighlyAvailableGraphDatabase
     private BranchedDataPolicy branchedDataPolicy;
     private final SlaveUpdateMode slaveUpdateMode;
     private final Caches caches;
+    private final TxMetadataCache txMetadataCache;
+    private final TransactionReplayCache txReplayCache;
+    private final ExecutorService txReceivers;
+    private final TransactionReceivePipeline txReceivePipeline;
+    private final ParallelTransactionApplier txApplier;
+    private final Compression compression;
+    private final FlowControl flowControl;
 
     // This lock is used to safeguard access to internal database
     // Users will acquire readlock, and upon master/slave switch
@@ -216,6 +256,11 @@ public class HighlyAvailableGraphDatabase
 
         config = new ConfigurationDefaults( GraphDatabaseSettings.class, HaSettings.class, OnlineBackupSettings.class ).apply( configurationMigrator.migrateConfiguration( config ) );
         configuration.applyChanges( config );
+        if ( configuration.get( HaSettings.upstream ) != null )
+        {
+            throw new IllegalArgumentException( HaSettings.upstream.name() + " is only for " +
+                    CascadingReplica.class.getSimpleName() + ", which isn't a member of the cluster" );
+        }
 
         messageLog = logging.getLogger( Loggers.NEO4J );
         fileSystemAbstraction = new DefaultFileSystemAbstraction();
@@ -241,6 +286,17 @@ public class HighlyAvailableGraphDatabase
         this.machineId = configuration.getInteger( HaSettings.server_id );
         this.branchedDataPolicy = configuration.getEnum( BranchedDataPolicy.class, HaSettings.branched_data_policy );
         this.localGraphWait = configuration.getInteger( HaSettings.read_timeout );
+        this.txMetadataCache = new TxMetadataCache( configuration.getInteger( HaSettings.tx_metadata_cache_size ) );
+        this.txReplayCache = new TransactionReplayCache(
+                configuration.getInteger( HaSettings.tx_replay_cache_size ) * 1024L * 1024L );
+        this.txReceivers = TransactionReceivePipeline.newReceivers( "Transaction receiver[" + machineId + "]",
+                TransactionReceivePipeline.DEFAULT_RECEIVER_THREADS );
+        this.txReceivePipeline = new TransactionReceivePipeline(
+                configuration.getInteger( HaSettings.tx_receive_queue_depth ), txReceivers );
+        this.txApplier = new ParallelTransactionApplier( configuration.getInteger( HaSettings.tx_apply_threads ) );
+        this.compression = new Compression( configuration.get( HaSettings.com_compression ),
+                configuration.getInteger( HaSettings.com_compression_level ) );
+        this.flowControl = new FlowControl( configuration.getInteger( HaSettings.max_write_ahead_chunks ) );
 
         storeIdGetter = new StoreIdGetter()
         {
@@ -365,6 +421,44 @@ public class HighlyAvailableGraphDatabase
         shutdown( new IllegalStateException( "shutdown called" ), true );
     }
 
+    /**
+     * Write locks all of {@code entities} in the current transaction. On a
+     * slave the master is asked for all nodes and all relationships in one
+     * request each, instead of one request per entity as when they are locked
+     * one by one, f.ex. when modified. Locking them up front like this means
+     * they don't have to go to the master again when modified.
+     */
+    public void acquireWriteLocks( PropertyContainer... entities )
+    {
+        acquireLocks( LockType.WRITE, entities );
+    }
+
+    /**
+     * Read locks all of {@code entities} in the current transaction, on a slave
+     * in as few requests to the master as possible.
+     * @see #acquireWriteLocks(PropertyContainer...)
+     */
+    public void acquireReadLocks( PropertyContainer... entities )
+    {
+        acquireLocks( LockType.READ, entities );
+    }
+
+    private void acquireLocks( LockType type, PropertyContainer... entities )
+    {
+        LockManager lockManager = getLockManager();
+        LockReleaser lockReleaser = getLockReleaser();
+        if ( lockManager instanceof SlaveLockManager )
+        {
+            ((SlaveLockManager) lockManager).acquireOnMaster( type, (Object[]) entities );
+        }
+        for ( PropertyContainer entity : entities )
+        {
+            if ( type == LockType.WRITE ) lockManager.getWriteLock( entity );
+            else lockManager.getReadLock( entity );
+            lockReleaser.addLockToTransaction( entity, type );
+        }
+    }
+
     // GraphDatabaseSPI implementation
 
     @Override
@@ -473,9 +567,16 @@ public class HighlyAvailableGraphDatabase
                      * Either we branched so the previous store is not there
                      * or we did not detect a neostore file so the db is
                      * incomplete. Either way, it is safe to delete everything.
+                     * Everything except an unfinished copy from the master that is,
+                     * which is resumed.
                      */
                     BranchedDataPolicy.keep_none.handle( this );
-                    copyStoreFromMaster( master );
+                    // A branched store is better replaced with the master's own
+                    if ( branched || StoreCopyCheckpoint.existsIn( getTempDir() ) ||
+                         !copyStoreFromSlave( master.other() ) )
+                    {
+                        copyStoreFromMaster( master );
+                    }
                     moveCopiedStoreIntoWorkingDir();
                     return;
                 }
@@ -550,6 +651,8 @@ public class HighlyAvailableGraphDatabase
     {
         this.messageLog.logMessage( "Cleaning database " + storeDir + " (" + branchedDataPolicy.name() +
                                          ") to make way for new db from master" );
+        txMetadataCache.clear();
+        txReplayCache.clear();
         branchedDataPolicy.handle( this );
     }
 
@@ -771,10 +874,17 @@ public class HighlyAvailableGraphDatabase
     private void copyStoreFromMaster( Pair<Master, Machine> master )
             throws Exception
     {
-        getMessageLog().logMessage( "Copying store from master" );
-        String temp = getClearedTempDir().getAbsolutePath();
-        Response<Void> response = master.first().copyStore( emptyContext(),
-                new ToFileStoreWriter( temp ) );
+        StoreCopyCheckpoint checkpoint = StoreCopyCheckpoint.open( getTempDir() );
+        Map<String, StoreFilePrefix> resumeFrom = checkpoint.prefixes();
+        getMessageLog().logMessage( resumeFrom.isEmpty() ? "Copying store from master" :
+                "Resuming copy of store from master with " + resumeFrom.size() + " files started" );
+        String temp = getTempDir().getAbsolutePath();
+        ToFileStoreWriter writer = new ToFileStoreWriter( temp, checkpoint,
+                ToFileStoreWriter.DEFAULT_CHECKPOINT_INTERVAL );
+        int streams = configuration.getInteger( HaSettings.store_copy_streams );
+        Response<Void> response = streams > 1 ?
+                ParallelStoreCopy.copy( storeCopySource( master.first() ), resumeFrom, streams, writer ) :
+                master.first().copyStore( emptyContext(), resumeFrom, writer );
         long highestLogVersion = highestLogVersion( temp );
         if( highestLogVersion > -1 )
         {
@@ -787,16 +897,78 @@ public class HighlyAvailableGraphDatabase
 
         try
         {
-            MasterUtil.applyReceivedTransactions( response, copiedDb, MasterUtil.txHandlerForFullCopy() );
+            MasterUtil.applyReceivedTransactions( response, copiedDb, MasterUtil.txHandlerForFullCopy(),
+                    txReceivePipeline, txApplier );
         }
         finally
         {
             copiedDb.shutdown();
             response.close();
         }
+        checkpoint.delete();
         getMessageLog().logMessage( "Done copying store from master" );
     }
 
+    private ParallelStoreCopy.Source storeCopySource( final Master master )
+    {
+        return new ParallelStoreCopy.Source()
+        {
+            @Override
+            public Response<StoreCopyPlan> plan( Map<String, StoreFilePrefix> resumeFrom, int parts )
+            {
+                return master.planStoreCopy( emptyContext(), resumeFrom, parts );
+            }
+
+            @Override
+            public Response<Void> copyPart( Tx[] startTransactions, List<StoreFileRange> ranges, StoreWriter writer )
+            {
+                return master.copyStorePart( emptyContext(), startTransactions, ranges, writer );
+            }
+        };
+    }
+
+    /**
+     * Copies the store from a slave which is about as up to date as the master,
+     * over the backup protocol, so that instances joining at the same time
+     * don't all copy from the master. The coordinators don't know how loaded the
+     * slaves are, so the slave is picked at random to spread the copies out.
+     * The transactions missing from the copy are then pulled from the master
+     * as usual once started.
+     *
+     * @return whether or not the store was copied. If not it should be copied
+     * from the master instead.
+     */
+    private boolean copyStoreFromSlave( Machine master ) throws IOException
+    {
+        if ( !configuration.getBoolean( HaSettings.store_copy_from_slaves ) ) return false;
+        List<Machine> candidates = new ArrayList<Machine>();
+        for ( Machine slave : clusterClient.getConnectedSlaves() )
+        {
+            if ( slave.getMachineId() != machineId && slave.getMachineId() != master.getMachineId() &&
+                 slave.getLastCommittedTxId() >= master.getLastCommittedTxId() - MAX_STORE_COPY_SOURCE_LAG )
+            {
+                candidates.add( slave );
+            }
+        }
+        if ( candidates.isEmpty() ) return false;
+
+        Machine source = candidates.get( new Random().nextInt( candidates.size() ) );
+        String temp = getClearedTempDir().getAbsolutePath();
+        getMessageLog().logMessage( "Copying store from " + source );
+        try
+        {
+            OnlineBackup.from( source.getServer().first(), clusterClient.getBackupPort( source.getMachineId() ) )
+                    .full( temp, false, configuration.getInteger( HaSettings.store_copy_streams ) );
+        }
+        catch ( Exception e )
+        {   // F.ex. online backup isn't enabled on it
+            getMessageLog().logMessage( "Couldn't copy store from " + source + ", will copy from master", e );
+            return false;
+        }
+        getMessageLog().logMessage( "Done copying store from " + source );
+        return true;
+    }
+
     private SlaveContext emptyContext()
     {
         return new SlaveContext( 0, machineId, 0, new Tx[0], 0, 0 );
@@ -895,6 +1067,31 @@ public class HighlyAvailableGraphDatabase
         return this.broker;
     }
 
+    public TxMetadataCache getTxMetadataCache()
+    {
+        return this.txMetadataCache;
+    }
+
+    public TransactionReplayCache getTxReplayCache()
+    {
+        return this.txReplayCache;
+    }
+
+    public TransactionReceivePipeline getTxReceivePipeline()
+    {
+        return this.txReceivePipeline;
+    }
+
+    public Compression getCompression()
+    {
+        return this.compression;
+    }
+
+    public FlowControl getFlowControl()
+    {
+        return this.flowControl;
+    }
+
     public void pullUpdates()
     {
         try
@@ -1061,6 +1258,10 @@ public class HighlyAvailableGraphDatabase
                     internalShutdown( true );
                     newDb = startAsMaster( storeId );
                 }
+                else
+                { // Already master, there's nothing to pull or await
+                    shutdownUpdatePuller();
+                }
                 // fire rebound event
                 broker.rebindMaster();
             }
@@ -1296,6 +1497,11 @@ public class HighlyAvailableGraphDatabase
 
     private void instantiateAutoUpdatePullerIfConfigSaysSo()
     {
+        if ( configuration.getBoolean( HaSettings.subscribe_to_updates ) )
+        {
+            instantiateUpdateSubscriber();
+            return;
+        }
         long pullInterval = configuration.getDuration( HaSettings.pull_interval );
         if ( pullInterval > 0 && updatePuller == null )
         {
@@ -1322,15 +1528,86 @@ public class HighlyAvailableGraphDatabase
         }
     }
 
+    /**
+     * Keeps a request awaiting updates outstanding on the master, so that
+     * transactions committed there reach this slave as soon as they're written
+     * instead of with the next pull. Each request is held by the master for at
+     * most {@link #AWAIT_UPDATES_MILLIS}, or half the read timeout if that's
+     * shorter, and the next one isn't sent until the updates from the previous
+     * one have been applied. While there's nothing to await, f.ex. during a
+     * master switch, it only checks back every {@link #IDLE_SUBSCRIBER_MILLIS}.
+     */
+    private void instantiateUpdateSubscriber()
+    {
+        if ( updatePuller != null ) return;
+        final int maxWaitMillis = Math.min( AWAIT_UPDATES_MILLIS,
+                configuration.getInteger( HaSettings.read_timeout ) * 1000 / 2 );
+        final ScheduledThreadPoolExecutor subscriber = new ScheduledThreadPoolExecutor( 1 );
+        subscriber.setExecuteExistingDelayedTasksAfterShutdownPolicy( false );
+        updatePuller = subscriber;
+        subscriber.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                long delay = 0;
+                try
+                {
+                    if ( !pullUpdates || !awaitUpdates( maxWaitMillis ) ) delay = IDLE_SUBSCRIBER_MILLIS;
+                }
+                catch ( Exception e )
+                {
+                    messageLog.logMessage( "Await updates failed", e );
+                    // Don't hammer a master that isn't there
+                    delay = maxWaitMillis;
+                }
+                try
+                {
+                    subscriber.schedule( this, delay, TimeUnit.MILLISECONDS );
+                }
+                catch ( RejectedExecutionException e )
+                {   // Shut down
+                }
+            }
+        } );
+    }
+
+    /**
+     * @return whether or not updates were awaited, i.e. {@code false} if this is master.
+     */
+    private boolean awaitUpdates( int maxWaitMillis )
+    {
+        if ( masterServer != null ) return false;
+        try
+        {
+            Master master = broker.getMaster().first();
+            if ( master == null )
+            {
+                newMaster( storeId, new NullPointerException( "master returned from broker" ) );
+                return false;
+            }
+            slaveOperations.receive( master.awaitUpdates( slaveOperations.getSlaveContext( -1 ), maxWaitMillis ) );
+            return true;
+        }
+        catch ( ZooKeeperException e )
+        {
+            newMaster( storeId, e );
+            throw e;
+        }
+        catch ( NoMasterException e )
+        {
+            newMaster( storeId, e );
+            throw e;
+        }
+    }
+
     public TransactionBuilder tx()
     {
         return localGraph().tx();
     }
 
-    public synchronized void internalShutdown( boolean rotateLogs )
+    private synchronized void shutdownUpdatePuller()
     {
-        messageLog.logMessage( "Internal shutdown of HA db[" + machineId + "] reference=" + this + ", masterServer=" + masterServer, new InformativeStackTrace( "Internal shutdown" ), true );
-        pullUpdates = false;
         if ( this.updatePuller != null )
         {
             messageLog.logMessage( "Internal shutdown updatePuller", true );
@@ -1353,6 +1630,13 @@ public class HighlyAvailableGraphDatabase
                     true );
             this.updatePuller = null;
         }
+    }
+
+    public synchronized void internalShutdown( boolean rotateLogs )
+    {
+        messageLog.logMessage( "Internal shutdown of HA db[" + machineId + "] reference=" + this + ", masterServer=" + masterServer, new InformativeStackTrace( "Internal shutdown" ), true );
+        pullUpdates = false;
+        shutdownUpdatePuller();
         if ( this.masterServer != null )
         {
             messageLog.logMessage( "Internal shutdown masterServer", true );
@@ -1383,6 +1667,7 @@ public class HighlyAvailableGraphDatabase
             this.broker.shutdown();
         }
         internalShutdown( false );
+        txReceivers.shutdownNow();
 
         life.shutdown();
 
@@ -1525,7 +1810,7 @@ public class HighlyAvailableGraphDatabase
             public ZooClient newZooClient()
             {
                         return new ZooClient( storeDir, messageLog, storeIdGetter, configuration, /* as SlaveDatabaseOperations for extracting master for tx */
-                        slaveOperations, /* as ClusterEventReceiver */slaveOperations );
+                        slaveOperations, /* as ClusterEventReceiver */slaveOperations, compression, flowControl );
             }
         } );
     }
@@ -1652,7 +1937,8 @@ public class HighlyAvailableGraphDatabase
                 @Override
                 public boolean accept( File file )
                 {
-                    return !file.getName().equals( StringLogger.DEFAULT_NAME ) && !isBranchedDataRootDirectory( file );
+                    return !file.getName().equals( StringLogger.DEFAULT_NAME ) && !isBranchedDataRootDirectory( file ) &&
+                           !file.getName().equals( COPY_FROM_MASTER_TEMP );
                 }
             } );
         }
@@ -1699,8 +1985,49 @@ public class HighlyAvailableGraphDatabase
         }
     }
 
+    /**
+     * Passes on the received transactions, keeping the start entry of the last
+     * neo store transaction so that its master id and checksum can go into the
+     * {@link TxMetadataCache} once it's applied.
+     */
+    private class StartRecordingStream extends TransactionStream
+    {
+        private final TransactionStream source;
+        private long lastNeoStoreTxId = -1;
+        private TxMetadataCache.StartRecorder lastNeoStoreTx;
+
+        StartRecordingStream( TransactionStream source )
+        {
+            super( source.dataSourceNames() );
+            this.source = source;
+        }
+
+        @Override
+        protected Triplet<String, Long, TxExtractor> fetchNextOrNull()
+        {
+            if ( !source.hasNext() ) return null;
+            Triplet<String, Long, TxExtractor> tx = source.next();
+            if ( !tx.first().equals( Config.DEFAULT_DATA_SOURCE_NAME ) ) return tx;
+            lastNeoStoreTxId = tx.second();
+            lastNeoStoreTx = new TxMetadataCache.StartRecorder( tx.third().extract() );
+            return Triplet.of( tx.first(), tx.second(), TxExtractor.create( lastNeoStoreTx ) );
+        }
+
+        void applied()
+        {
+            if ( lastNeoStoreTx != null ) txMetadataCache.committed( lastNeoStoreTxId, lastNeoStoreTx );
+        }
+    }
+
     class LocalDatabaseOperations implements SlaveDatabaseOperations, ClusterEventReceiver
     {
+        /**
+         * Event identifier -> how far the transaction has come on the master,
+         * for transactions initialized with their first request.
+         */
+        private final ConcurrentMap<Integer, MasterTxState> txsOnMaster =
+                new ConcurrentHashMap<Integer, MasterTxState>();
+
         @Override
         public SlaveContext getSlaveContext( int eventIdentifier )
         {
@@ -1717,7 +2044,7 @@ public class HighlyAvailableGraphDatabase
                     long txId = dataSource.getLastCommittedTxId();
                     if( dataSource.getName().equals( Config.DEFAULT_DATA_SOURCE_NAME ) )
                     {
-                        master = dataSource.getMasterForCommittedTx( txId );
+                        master = txMetadataCache.getMasterForCommittedTx( dataSource, txId );
                     }
                     txs[i++] = SlaveContext.lastAppliedTx( dataSource.getName(), txId );
                 }
@@ -1734,7 +2061,11 @@ public class HighlyAvailableGraphDatabase
         {
             try
             {
-                MasterUtil.applyReceivedTransactions( response, HighlyAvailableGraphDatabase.this, MasterUtil.NO_ACTION );
+                StartRecordingStream transactions = new StartRecordingStream( response.transactions() );
+                MasterUtil.applyReceivedTransactions( new Response<T>( response.response(), response.getStoreId(),
+                        transactions, ResourceReleaser.NO_OP ), HighlyAvailableGraphDatabase.this,
+                        MasterUtil.NO_ACTION, txReceivePipeline, txApplier );
+                transactions.applied();
                 updateTime();
                 return response.response();
             }
@@ -1793,13 +2124,52 @@ public class HighlyAvailableGraphDatabase
         {
             try
             {
-                return localGraph().getXaDataSourceManager().getNeoStoreDataSource().getMasterForCommittedTx( tx ).first();
+                return txMetadataCache.getMasterForCommittedTx(
+                        localGraph().getXaDataSourceManager().getNeoStoreDataSource(), tx ).first();
             }
             catch ( IOException e )
             {
                 throw new ComException( "Master id not found for tx:" + tx, e );
             }
         }
+
+        @Override
+        public void initializeTxWithFirstRequest( int eventIdentifier )
+        {
+            txsOnMaster.putIfAbsent( eventIdentifier, MasterTxState.PENDING );
+        }
+
+        @Override
+        public boolean isTxInitializationPending( int eventIdentifier )
+        {
+            return txsOnMaster.get( eventIdentifier ) == MasterTxState.PENDING;
+        }
+
+        @Override
+        public void txBegunOnMaster( int eventIdentifier )
+        {
+            txsOnMaster.replace( eventIdentifier, MasterTxState.PENDING, MasterTxState.BEGUN );
+        }
+
+        @Override
+        public void txFinishedOnMaster( int eventIdentifier )
+        {
+            txsOnMaster.put( eventIdentifier, MasterTxState.FINISHED );
+        }
+
+        @Override
+        public boolean txFinished( int eventIdentifier )
+        {
+            MasterTxState state = txsOnMaster.remove( eventIdentifier );
+            return state == null || state == MasterTxState.BEGUN;
+        }
+    }
+
+    private static enum MasterTxState
+    {
+        PENDING,
+        BEGUN,
+        FINISHED;
     }
 
     private class TxManagerCheckKernelEventHandler
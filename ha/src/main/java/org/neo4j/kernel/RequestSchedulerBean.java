@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.com.RequestClass;
+import org.neo4j.com.RequestScheduler;
+import org.neo4j.com.RequestStageTimes;
+import org.neo4j.com.RequestStageTimes.Stage;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.ha.AbstractHAGraphDatabase;
+import org.neo4j.kernel.ha.MasterServer;
+import org.neo4j.kernel.ha.RequestSchedulerInfo;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class RequestSchedulerBean extends ManagementBeanProvider
+{
+    public RequestSchedulerBean()
+    {
+        super( RequestSchedulerInfo.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) ) return null;
+        return new RequestSchedulerInfoImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) ) return null;
+        return new RequestSchedulerInfoImpl( management );
+    }
+
+    private static boolean isHA( ManagementData management )
+    {
+        return management.getKernelData().graphDatabase() instanceof AbstractHAGraphDatabase;
+    }
+
+    private static class RequestSchedulerInfoImpl extends Neo4jMBean implements RequestSchedulerInfo
+    {
+        private final HighlyAvailableGraphDatabase db;
+
+        RequestSchedulerInfoImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.db = dbOf( management );
+        }
+
+        RequestSchedulerInfoImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+            this.db = dbOf( management );
+        }
+
+        private static HighlyAvailableGraphDatabase dbOf( ManagementData management )
+        {
+            return ((AbstractHAGraphDatabase) management.getKernelData().graphDatabase())
+                    .getHighlyAvailableGraphDatabase();
+        }
+
+        /**
+         * @return the scheduler of the master server, or {@code null} if this
+         * instance isn't the master.
+         */
+        private RequestScheduler scheduler()
+        {
+            MasterServer server = db.getMasterServerIfMaster();
+            return server != null ? server.getScheduler() : null;
+        }
+
+        private RequestStageTimes stageTimes()
+        {
+            MasterServer server = db.getMasterServerIfMaster();
+            return server != null ? server.getStageTimes() : null;
+        }
+
+        @Override
+        public String[] getRequestClasses()
+        {
+            RequestClass[] classes = RequestClass.values();
+            String[] result = new String[classes.length];
+            for ( int i = 0; i < classes.length; i++ )
+            {
+                result[i] = classes[i].name();
+            }
+            return result;
+        }
+
+        @Override
+        public long[] getScheduled()
+        {
+            RequestScheduler scheduler = scheduler();
+            long[] result = new long[RequestClass.values().length];
+            if ( scheduler != null ) for ( RequestClass requestClass : RequestClass.values() )
+            {
+                result[requestClass.ordinal()] = scheduler.getScheduled( requestClass );
+            }
+            return result;
+        }
+
+        @Override
+        public long[] getRejected()
+        {
+            RequestScheduler scheduler = scheduler();
+            long[] result = new long[RequestClass.values().length];
+            if ( scheduler != null ) for ( RequestClass requestClass : RequestClass.values() )
+            {
+                result[requestClass.ordinal()] = scheduler.getRejected( requestClass );
+            }
+            return result;
+        }
+
+        @Override
+        public long[] getQueueTimeMillis()
+        {
+            RequestScheduler scheduler = scheduler();
+            long[] result = new long[RequestClass.values().length];
+            if ( scheduler != null ) for ( RequestClass requestClass : RequestClass.values() )
+            {
+                result[requestClass.ordinal()] = scheduler.getQueueTimeMillis( requestClass );
+            }
+            return result;
+        }
+
+        @Override
+        public int[] getQueueDepth()
+        {
+            RequestScheduler scheduler = scheduler();
+            int[] result = new int[RequestClass.values().length];
+            if ( scheduler != null ) for ( RequestClass requestClass : RequestClass.values() )
+            {
+                result[requestClass.ordinal()] = scheduler.getQueueDepth( requestClass );
+            }
+            return result;
+        }
+
+        @Override
+        public int[] getActive()
+        {
+            RequestScheduler scheduler = scheduler();
+            int[] result = new int[RequestClass.values().length];
+            if ( scheduler != null ) for ( RequestClass requestClass : RequestClass.values() )
+            {
+                result[requestClass.ordinal()] = scheduler.getActive( requestClass );
+            }
+            return result;
+        }
+
+        @Override
+        public String[] getStages()
+        {
+            Stage[] stages = Stage.values();
+            String[] result = new String[stages.length];
+            for ( int i = 0; i < stages.length; i++ )
+            {
+                result[i] = stages[i].name();
+            }
+            return result;
+        }
+
+        @Override
+        public long[] getStageTimeMillis()
+        {
+            RequestStageTimes times = stageTimes();
+            long[] result = new long[Stage.values().length];
+            if ( times != null ) for ( Stage stage : Stage.values() )
+            {
+                result[stage.ordinal()] = times.getTimeMillis( stage );
+            }
+            return result;
+        }
+
+        @Override
+        public long[] getStageCounts()
+        {
+            RequestStageTimes times = stageTimes();
+            long[] result = new long[Stage.values().length];
+            if ( times != null ) for ( Stage stage : Stage.values() )
+            {
+                result[stage.ordinal()] = times.getCount( stage );
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.com.TransactionReceivePipeline;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.ha.AbstractHAGraphDatabase;
+import org.neo4j.kernel.ha.TxReceivePipelineInfo;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class TxReceivePipelineBean extends ManagementBeanProvider
+{
+    public TxReceivePipelineBean()
+    {
+        super( TxReceivePipelineInfo.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) ) return null;
+        return new TxReceivePipelineInfoImpl( management, true );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        if ( !isHA( management ) ) return null;
+        return new TxReceivePipelineInfoImpl( management );
+    }
+
+    private static boolean isHA( ManagementData management )
+    {
+        return management.getKernelData().graphDatabase() instanceof AbstractHAGraphDatabase;
+    }
+
+    private static class TxReceivePipelineInfoImpl extends Neo4jMBean implements TxReceivePipelineInfo
+    {
+        private final TransactionReceivePipeline pipeline;
+
+        TxReceivePipelineInfoImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.pipeline = pipelineOf( management );
+        }
+
+        TxReceivePipelineInfoImpl( ManagementData management, boolean isMXBean )
+        {
+            super( management, isMXBean );
+            this.pipeline = pipelineOf( management );
+        }
+
+        private static TransactionReceivePipeline pipelineOf( ManagementData management )
+        {
+            return ((AbstractHAGraphDatabase) management.getKernelData().graphDatabase())
+                    .getHighlyAvailableGraphDatabase().getTxReceivePipeline();
+        }
+
+        @Override
+        public int getQueueDepth()
+        {
+            return pipeline.getQueueDepth();
+        }
+
+        @Override
+        public int getQueued()
+        {
+            return pipeline.getQueued();
+        }
+
+        @Override
+        public int getMaxQueued()
+        {
+            return pipeline.getMaxQueued();
+        }
+
+        @Override
+        public long getPipelinedStreams()
+        {
+            return pipeline.getPipelinedStreams();
+        }
+
+        @Override
+        public long getReceiveStalls()
+        {
+            return pipeline.getReceiveStalls();
+        }
+
+        @Override
+        public long getReceiveStallTimeMillis()
+        {
+            return pipeline.getReceiveStallTimeMillis();
+        }
+
+        @Override
+        public long getApplyStalls()
+        {
+            return pipeline.getApplyStalls();
+        }
+
+        @Override
+        public long getApplyStallTimeMillis()
+        {
+            return pipeline.getApplyStallTimeMillis();
+        }
+    }
+}
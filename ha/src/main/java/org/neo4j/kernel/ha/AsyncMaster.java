@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import org.neo4j.com.ResponseFuture;
+import org.neo4j.com.SlaveContext;
+import org.neo4j.com.TxExtractor;
+import org.neo4j.kernel.IdType;
+
+/**
+ * The non-blocking counterpart of the {@link Master} calls a slave makes
+ * during normal operation. Every call returns as soon as the request has been
+ * sent, so that independent requests, f.ex. id allocations for several
+ * {@link IdType}s, can be in flight at the same time. The response is
+ * available from the returned {@link ResponseFuture} when the master has
+ * answered.
+ *
+ * Calls which stream big amounts of data, like copying the store, are only
+ * available on {@link Master}.
+ */
+public interface AsyncMaster
+{
+    ResponseFuture<IdAllocation> allocateIdsAsync( IdType idType );
+
+    ResponseFuture<Integer> createRelationshipTypeAsync( SlaveContext context, String name );
+
+    ResponseFuture<Void> initializeTxAsync( SlaveContext context );
+
+    ResponseFuture<LockResult> acquireNodeWriteLockAsync( SlaveContext context, long... nodes );
+
+    ResponseFuture<LockResult> acquireNodeReadLockAsync( SlaveContext context, long... nodes );
+
+    ResponseFuture<LockResult> acquireGraphWriteLockAsync( SlaveContext context );
+
+    ResponseFuture<LockResult> acquireGraphReadLockAsync( SlaveContext context );
+
+    ResponseFuture<LockResult> acquireRelationshipWriteLockAsync( SlaveContext context, long... relationships );
+
+    ResponseFuture<LockResult> acquireRelationshipReadLockAsync( SlaveContext context, long... relationships );
+
+    ResponseFuture<LockResult> acquireIndexWriteLockAsync( SlaveContext context, String index, String key );
+
+    ResponseFuture<LockResult> acquireIndexReadLockAsync( SlaveContext context, String index, String key );
+
+    ResponseFuture<Long> commitSingleResourceTransactionAsync( SlaveContext context, String resource,
+            TxExtractor txGetter );
+
+    ResponseFuture<Long> commitAndFinishTransactionAsync( SlaveContext context, String resource,
+            TxExtractor txGetter );
+
+    ResponseFuture<Void> finishTransactionAsync( SlaveContext context, boolean success );
+
+    ResponseFuture<Void> pullUpdatesAsync( SlaveContext context );
+
+    ResponseFuture<Void> awaitUpdatesAsync( SlaveContext context, int maxWaitMillis );
+}
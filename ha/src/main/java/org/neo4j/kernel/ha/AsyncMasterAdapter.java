@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import org.neo4j.com.Response;
+import org.neo4j.com.ResponseFuture;
+import org.neo4j.com.SlaveContext;
+import org.neo4j.com.TxExtractor;
+import org.neo4j.kernel.IdType;
+
+/**
+ * Makes any {@link Master} usable as an {@link AsyncMaster} by calling it
+ * synchronously and handing out already completed futures. Used for masters
+ * which aren't {@link MasterClient}s, f.ex. in tests.
+ */
+class AsyncMasterAdapter implements AsyncMaster
+{
+    private final Master master;
+
+    private AsyncMasterAdapter( Master master )
+    {
+        this.master = master;
+    }
+
+    static AsyncMaster asAsync( Master master )
+    {
+        return master instanceof AsyncMaster ? (AsyncMaster) master : new AsyncMasterAdapter( master );
+    }
+
+    private abstract static class Call<T>
+    {
+        ResponseFuture<T> invoke()
+        {
+            try
+            {
+                return ResponseFuture.completed( call() );
+            }
+            catch ( Throwable e )
+            {
+                return ResponseFuture.failed( e );
+            }
+        }
+
+        abstract Response<T> call();
+    }
+
+    @Override
+    public ResponseFuture<IdAllocation> allocateIdsAsync( final IdType idType )
+    {
+        return new Call<IdAllocation>()
+        {
+            @Override
+            Response<IdAllocation> call()
+            {
+                return master.allocateIds( idType );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<Integer> createRelationshipTypeAsync( final SlaveContext context, final String name )
+    {
+        return new Call<Integer>()
+        {
+            @Override
+            Response<Integer> call()
+            {
+                return master.createRelationshipType( context, name );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<Void> initializeTxAsync( final SlaveContext context )
+    {
+        return new Call<Void>()
+        {
+            @Override
+            Response<Void> call()
+            {
+                return master.initializeTx( context );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireNodeWriteLockAsync( final SlaveContext context, final long... nodes )
+    {
+        return new Call<LockResult>()
+        {
+            @Override
+            Response<LockResult> call()
+            {
+                return master.acquireNodeWriteLock( context, nodes );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireNodeReadLockAsync( final SlaveContext context, final long... nodes )
+    {
+        return new Call<LockResult>()
+        {
+            @Override
+            Response<LockResult> call()
+            {
+                return master.acquireNodeReadLock( context, nodes );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireGraphWriteLockAsync( final SlaveContext context )
+    {
+        return new Call<LockResult>()
+        {
+            @Override
+            Response<LockResult> call()
+            {
+                return master.acquireGraphWriteLock( context );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireGraphReadLockAsync( final SlaveContext context )
+    {
+        return new Call<LockResult>()
+        {
+            @Override
+            Response<LockResult> call()
+            {
+                return master.acquireGraphReadLock( context );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireRelationshipWriteLockAsync( final SlaveContext context,
+            final long... relationships )
+    {
+        return new Call<LockResult>()
+        {
+            @Override
+            Response<LockResult> call()
+            {
+                return master.acquireRelationshipWriteLock( context, relationships );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireRelationshipReadLockAsync( final SlaveContext context,
+            final long... relationships )
+    {
+        return new Call<LockResult>()
+        {
+            @Override
+            Response<LockResult> call()
+            {
+                return master.acquireRelationshipReadLock( context, relationships );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireIndexWriteLockAsync( final SlaveContext context, final String index,
+            final String key )
+    {
+        return new Call<LockResult>()
+        {
+            @Override
+            Response<LockResult> call()
+            {
+                return master.acquireIndexWriteLock( context, index, key );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireIndexReadLockAsync( final SlaveContext context, final String index,
+            final String key )
+    {
+        return new Call<LockResult>()
+        {
+            @Override
+            Response<LockResult> call()
+            {
+                return master.acquireIndexReadLock( context, index, key );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<Long> commitSingleResourceTransactionAsync( final SlaveContext context,
+            final String resource, final TxExtractor txGetter )
+    {
+        return new Call<Long>()
+        {
+            @Override
+            Response<Long> call()
+            {
+                return master.commitSingleResourceTransaction( context, resource, txGetter );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<Long> commitAndFinishTransactionAsync( final SlaveContext context,
+            final String resource, final TxExtractor txGetter )
+    {
+        return new Call<Long>()
+        {
+            @Override
+            Response<Long> call()
+            {
+                return master.commitAndFinishTransaction( context, resource, txGetter );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<Void> finishTransactionAsync( final SlaveContext context, final boolean success )
+    {
+        return new Call<Void>()
+        {
+            @Override
+            Response<Void> call()
+            {
+                return master.finishTransaction( context, success );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<Void> pullUpdatesAsync( final SlaveContext context )
+    {
+        return new Call<Void>()
+        {
+            @Override
+            Response<Void> call()
+            {
+                return master.pullUpdates( context );
+            }
+        }.invoke();
+    }
+
+    @Override
+    public ResponseFuture<Void> awaitUpdatesAsync( final SlaveContext context, final int maxWaitMillis )
+    {
+        return new Call<Void>()
+        {
+            @Override
+            Response<Void> call()
+            {
+                return master.awaitUpdates( context, maxWaitMillis );
+            }
+        }.invoke();
+    }
+}
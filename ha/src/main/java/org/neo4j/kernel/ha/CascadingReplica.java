@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.backup.OnlineBackup;
+import org.neo4j.backup.OnlineBackupSettings;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.graphdb.factory.GraphDatabaseSetting;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.HighlyAvailableGraphDatabase.BranchedDataPolicy;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.configuration.ConfigurationDefaults;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * A read-only replica of a cluster which gets its transactions from the
+ * instance configured with {@link HaSettings#upstream} instead of from the
+ * master. The upstream is typically a slave, or another replica, with online
+ * backup enabled. It serves both the initial copy of the store and the
+ * transactions after that from its own store and logs, over the backup
+ * protocol, so that replicas add read capacity without loading the master.
+ * A replica with online backup enabled can in turn be the upstream of other
+ * replicas.
+ *
+ * A replica isn't a member of the cluster. It isn't registered with the
+ * coordinators and so never takes part in master election, nor can it become
+ * master. Transactions other than those received from upstream can't be
+ * committed on it.
+ *
+ * Updates are pulled every {@link HaSettings#pull_interval}, or when
+ * {@link #pullUpdates()} is called. Every pull also has the upstream check that
+ * the replica hasn't branched off it, f.ex. after the upstream was rolled back
+ * by a master switch. If it has, its store is moved aside, like with
+ * {@link BranchedDataPolicy#keep_all}, and copied again.
+ */
+public class CascadingReplica
+{
+    private final String storeDir;
+    private final Map<String, String> dbConfig;
+    private volatile GraphDatabaseAPI graphDb;
+    private final OnlineBackup upstream;
+    private ScheduledExecutorService updatePuller;
+
+    public CascadingReplica( String storeDir, Map<String, String> config )
+    {
+        Config configuration = new Config( new ConfigurationDefaults( GraphDatabaseSettings.class,
+                HaSettings.class, OnlineBackupSettings.class ).apply( config ) );
+        this.upstream = upstream( configuration.get( HaSettings.upstream ) );
+        if ( !new File( storeDir, NeoStore.DEFAULT_NAME ).exists() )
+        {
+            upstream.full( storeDir, false );
+        }
+
+        this.storeDir = storeDir;
+        this.dbConfig = new HashMap<String, String>( config );
+        // Replicas further down may need any of the transactions
+        dbConfig.put( GraphDatabaseSettings.keep_logical_logs.name(), GraphDatabaseSetting.TRUE );
+        this.graphDb = startDb();
+
+        long pullInterval = configuration.getDuration( HaSettings.pull_interval );
+        if ( pullInterval > 0 )
+        {
+            updatePuller = new ScheduledThreadPoolExecutor( 1 );
+            updatePuller.scheduleWithFixedDelay( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        pullUpdates();
+                    }
+                    catch ( Exception e )
+                    {
+                        GraphDatabaseAPI db = graphDb;
+                        if ( db != null ) db.getMessageLog().logMessage( "Pull updates from upstream failed", e );
+                        else e.printStackTrace();
+                    }
+                }
+            }, pullInterval, pullInterval, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    private static OnlineBackup upstream( String upstream )
+    {
+        if ( upstream == null || upstream.length() == 0 )
+        {
+            throw new IllegalArgumentException( "A replica needs an upstream, " + HaSettings.upstream.name() +
+                    " isn't set" );
+        }
+        String[] hostAndPort = upstream.split( ":" );
+        return hostAndPort.length == 1 ? OnlineBackup.from( hostAndPort[0] ) :
+                OnlineBackup.from( hostAndPort[0], Integer.parseInt( hostAndPort[1] ) );
+    }
+
+    private GraphDatabaseAPI startDb()
+    {
+        GraphDatabaseAPI db = new EmbeddedGraphDatabase( storeDir, dbConfig );
+        db.registerTransactionEventHandler( READ_ONLY );
+        return db;
+    }
+
+    /**
+     * @return the database of this replica, which is replaced if the replica
+     * has to copy the store from upstream again, and {@code null} while it does.
+     */
+    public GraphDatabaseAPI getGraphDatabase()
+    {
+        return graphDb;
+    }
+
+    /**
+     * Applies the transactions committed upstream since the last pull, or
+     * copies the store again if the replica has branched off the upstream.
+     */
+    public synchronized void pullUpdates()
+    {
+        if ( graphDb == null )
+        {   // A previous copy failed part way
+            deleteStoreFiles();
+            copyStore();
+            return;
+        }
+        if ( upstream.incrementalUnlessBranched( graphDb ) ) return;
+        graphDb.getMessageLog().logMessage( "Branched off upstream, copying the store again", true );
+        graphDb.shutdown();
+        graphDb = null;
+        moveAwayStoreFiles();
+        copyStore();
+    }
+
+    private void copyStore()
+    {
+        upstream.full( storeDir, false );
+        graphDb = startDb();
+    }
+
+    private void moveAwayStoreFiles()
+    {
+        File branchedDataDir = BranchedDataPolicy.getBranchedDataDirectory( storeDir, System.currentTimeMillis() );
+        branchedDataDir.mkdirs();
+        for ( File file : storeFiles() )
+        {
+            try
+            {
+                FileUtils.moveFileToDirectory( file, branchedDataDir );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Couldn't move " + file + " to " + branchedDataDir, e );
+            }
+        }
+    }
+
+    private void deleteStoreFiles()
+    {
+        for ( File file : storeFiles() )
+        {
+            try
+            {
+                FileUtils.deleteRecursively( file );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Couldn't delete " + file, e );
+            }
+        }
+    }
+
+    private File[] storeFiles()
+    {
+        return new File( storeDir ).listFiles( new FileFilter()
+        {
+            @Override
+            public boolean accept( File file )
+            {
+                return !file.getName().equals( StringLogger.DEFAULT_NAME ) &&
+                        !BranchedDataPolicy.isBranchedDataRootDirectory( file );
+            }
+        } );
+    }
+
+    public void shutdown()
+    {
+        if ( updatePuller != null )
+        {
+            updatePuller.shutdown();
+            try
+            {
+                updatePuller.awaitTermination( 5, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        GraphDatabaseAPI db = graphDb;
+        if ( db != null ) db.shutdown();
+    }
+
+    /**
+     * Received transactions are applied below the level where these are
+     * called, so this only stops transactions committed on the replica itself.
+     */
+    private static final TransactionEventHandler<Void> READ_ONLY = new TransactionEventHandler<Void>()
+    {
+        @Override
+        public Void beforeCommit( TransactionData data ) throws Exception
+        {
+            throw new UnsupportedOperationException( "This is a read-only replica, write to the cluster instead" );
+        }
+
+        @Override
+        public void afterCommit( TransactionData data, Void state )
+        {
+        }
+
+        @Override
+        public void afterRollback( TransactionData data, Void state )
+        {
+        }
+    };
+}
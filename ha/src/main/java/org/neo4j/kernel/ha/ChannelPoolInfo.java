@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = ChannelPoolInfo.NAME )
+@Description( "Information about the pool of channels from this slave to the current master" )
+public interface ChannelPoolInfo
+{
+    final String NAME = "Master Channel Pool";
+
+    @Description( "The number of times a thread had to wait for a channel to become available" )
+    long getWaits();
+
+    @Description( "The total time threads have waited for a channel, in milliseconds" )
+    long getWaitTimeMillis();
+
+    @Description( "The number of channels opened" )
+    long getCreations();
+
+    @Description( "The number of channels closed" )
+    long getDisposals();
+
+    @Description( "The number of pooled channels found to be disconnected" )
+    long getDeadChannels();
+
+    @Description( "The number of channels closed for being unused for too long" )
+    long getEvictions();
+
+    @Description( "The number of channels currently unused in the pool" )
+    int getUnused();
+}
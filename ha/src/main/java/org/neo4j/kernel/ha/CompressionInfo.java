@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = CompressionInfo.NAME )
+@Description( "Information about the compression of responses sent between master and slaves" )
+public interface CompressionInfo
+{
+    final String NAME = "Communication Compression";
+
+    @Description( "The codec responses from this instance as master are compressed with" )
+    String getCodec();
+
+    @Description( "The number of response bytes that were considered for compression" )
+    long getBytesBeforeCompression();
+
+    @Description( "The number of bytes actually sent for those responses" )
+    long getBytesAfterCompression();
+
+    @Description( "Bytes sent / bytes before compression" )
+    double getCompressionRatio();
+
+    @Description( "The total time spent compressing responses, in milliseconds" )
+    long getCompressionTimeMillis();
+
+    @Description( "The number of compressed bytes received from the master" )
+    long getBytesBeforeDecompression();
+
+    @Description( "The total time spent decompressing responses from the master, in milliseconds" )
+    long getDecompressionTimeMillis();
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = FlowControlInfo.NAME )
+@Description( "Information about how often the master has to wait for slaves to catch up on reading responses" )
+public interface FlowControlInfo
+{
+    final String NAME = "Communication Flow Control";
+
+    @Description( "The number of chunks of a response that may be written ahead of the slave reading them" )
+    int getMaxWriteAheadChunks();
+
+    @Description( "The number of times the master had to wait for a slave to catch up" )
+    long getStalls();
+
+    @Description( "The total time the master spent waiting for slaves to catch up, in milliseconds" )
+    long getStallTimeMillis();
+}
@@ -20,8 +20,10 @@
 package org.neo4j.kernel.ha;
 
 import static org.neo4j.graphdb.factory.GraphDatabaseSetting.ANY;
+import static org.neo4j.graphdb.factory.GraphDatabaseSetting.FALSE;
 import static org.neo4j.graphdb.factory.GraphDatabaseSetting.TRUE;
 
+import org.neo4j.com.Compression;
 import org.neo4j.graphdb.factory.Default;
 import org.neo4j.graphdb.factory.Description;
 import org.neo4j.graphdb.factory.GraphDatabaseSetting;
@@ -69,6 +71,38 @@ public class HaSettings
     @Default( "0" )
     public static final StringSetting pull_interval = new StringSetting( "ha.pull_interval", ANY, "Must be valid interval setting" );
 
+    public static final StringSetting upstream = new StringSetting( "ha.upstream", ANY, "Must be a valid host name and optional port" );
+
+    @Default( FALSE )
+    public static final BooleanSetting subscribe_to_updates = new BooleanSetting( "ha.subscribe_to_updates" );
+
+    @Default( TRUE )
+    public static final BooleanSetting store_copy_from_slaves = new BooleanSetting( "ha.store_copy_from_slaves" );
+
+    @Default( "1" )
+    public static final IntegerSetting store_copy_streams = new IntegerSetting( "ha.store_copy_streams", "Must be a valid number of streams", 1, null );
+
+    @Default( "10000" )
+    public static final IntegerSetting tx_metadata_cache_size = new IntegerSetting( "ha.tx_metadata_cache_size", "Must be a valid number of transactions", 1, null );
+
+    @Default( "32" )
+    public static final IntegerSetting tx_replay_cache_size = new IntegerSetting( "ha.tx_replay_cache_size", "Must be a valid size in megabytes", 0, null );
+
+    @Default( "100" )
+    public static final IntegerSetting tx_receive_queue_depth = new IntegerSetting( "ha.tx_receive_queue_depth", "Must be a valid number of transactions", 0, null );
+
+    @Default( "2" )
+    public static final IntegerSetting tx_apply_threads = new IntegerSetting( "ha.tx_apply_threads", "Must be a valid number of threads", 0, null );
+
+    @Default( ComCompressionSetting.none )
+    public static final ComCompressionSetting com_compression = new ComCompressionSetting();
+
+    @Default( "1" )
+    public static final IntegerSetting com_compression_level = new IntegerSetting( "ha.com_compression_level", "Must be a valid compression level", 1, 9 );
+
+    @Default( "5" )
+    public static final IntegerSetting max_write_ahead_chunks = new IntegerSetting( "ha.max_write_ahead_chunks", "Must be a valid number of chunks", 1, null );
+
     public static final class SlaveUpdateModeSetting
         extends GraphDatabaseSetting.OptionsSetting
     {
@@ -87,6 +121,21 @@ public class HaSettings
         }
     }
 
+    public static final class ComCompressionSetting
+        extends GraphDatabaseSetting.OptionsSetting
+    {
+        @Description( "Responses from the master sent as they are" )
+        public static final String none = Compression.NONE;
+
+        @Description( "Responses from the master compressed with deflate" )
+        public static final String deflate = Compression.DEFLATE;
+
+        public ComCompressionSetting(  )
+        {
+            super( "ha.com_compression", none, deflate );
+        }
+    }
+
     public static final class BranchedDataPolicySetting
         extends GraphDatabaseSetting.OptionsSetting
     {
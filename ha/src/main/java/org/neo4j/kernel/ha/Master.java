@@ -19,8 +19,15 @@
  */
 package org.neo4j.kernel.ha;
 
+import java.util.List;
+import java.util.Map;
+
 import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFileRange;
+import org.neo4j.com.StoreFilePrefix;
 import org.neo4j.com.StoreWriter;
 import org.neo4j.com.TxExtractor;
 import org.neo4j.helpers.Pair;
@@ -57,10 +64,27 @@ public interface Master
     Response<Long> commitSingleResourceTransaction( SlaveContext context,
             String resource, TxExtractor txGetter );
 
+    /**
+     * Commits a transaction which only touches {@code resource} and finishes it,
+     * i.e. what {@link #commitSingleResourceTransaction(SlaveContext, String, TxExtractor)}
+     * followed by a successful {@link #finishTransaction(SlaveContext, boolean)} does,
+     * in one request. If the commit fails the transaction is left for the slave to
+     * finish as usual.
+     */
+    Response<Long> commitAndFinishTransaction( SlaveContext context,
+            String resource, TxExtractor txGetter );
+
     Response<Void> finishTransaction( SlaveContext context, boolean success );
 
     Response<Void> pullUpdates( SlaveContext context );
 
+    /**
+     * Like {@link #pullUpdates(SlaveContext)}, but if there are no transactions
+     * the slave hasn't got already the response is held until there are, or until
+     * {@code maxWaitMillis} has passed. Used by slaves subscribing to updates.
+     */
+    Response<Void> awaitUpdates( SlaveContext context, int maxWaitMillis );
+
     /**
      * Gets the master id for a given txId, also a checksum for that tx.
      * @param txId the transaction id to get the data for.
@@ -69,7 +93,25 @@ public interface Master
      */
     Response<Pair<Integer,Long>> getMasterIdForCommittedTx( long txId, StoreId myStoreId );
 
-    Response<Void> copyStore( SlaveContext context, StoreWriter writer );
+    /**
+     * Streams the store files to {@code writer}, resuming those the slave
+     * already has {@code resumeFrom} of if they still start the same way,
+     * see {@link org.neo4j.com.StoreCopyCheckpoint}.
+     */
+    Response<Void> copyStore( SlaveContext context, Map<String, StoreFilePrefix> resumeFrom, StoreWriter writer );
+
+    /**
+     * Splits the store files into {@code parts} parts of about the same size
+     * for the slave to copy at the same time, see {@link org.neo4j.com.ParallelStoreCopy}.
+     */
+    Response<StoreCopyPlan> planStoreCopy( SlaveContext context, Map<String, StoreFilePrefix> resumeFrom, int parts );
+
+    /**
+     * Streams one part of a {@link StoreCopyPlan} to {@code writer}, along with
+     * the transactions after {@code startTransactions} unless that is empty.
+     */
+    Response<Void> copyStorePart( SlaveContext context, Tx[] startTransactions, List<StoreFileRange> ranges,
+            StoreWriter writer );
 
     Response<Void> copyTransactions( SlaveContext context, String dsName,
             long startTxId, long endTxId );
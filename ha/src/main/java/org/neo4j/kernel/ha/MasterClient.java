@@ -22,20 +22,31 @@ package org.neo4j.kernel.ha;
 import static org.neo4j.com.Protocol.EMPTY_SERIALIZER;
 import static org.neo4j.com.Protocol.INTEGER_SERIALIZER;
 import static org.neo4j.com.Protocol.LONG_SERIALIZER;
+import static org.neo4j.com.Protocol.STORE_COPY_PLAN_DESERIALIZER;
+import static org.neo4j.com.Protocol.STORE_COPY_PLAN_SERIALIZER;
 import static org.neo4j.com.Protocol.VOID_DESERIALIZER;
 import static org.neo4j.com.Protocol.VOID_SERIALIZER;
 import static org.neo4j.com.Protocol.readBoolean;
+import static org.neo4j.com.Protocol.readStoreFilePrefixes;
+import static org.neo4j.com.Protocol.readStoreFileRanges;
 import static org.neo4j.com.Protocol.readString;
+import static org.neo4j.com.Protocol.readTransactions;
+import static org.neo4j.com.Protocol.writeStoreFilePrefixes;
+import static org.neo4j.com.Protocol.writeStoreFileRanges;
 import static org.neo4j.com.Protocol.writeString;
+import static org.neo4j.com.Protocol.writeTransactions;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.Map;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.neo4j.com.BlockLogBuffer;
 import org.neo4j.com.BlockLogReader;
 import org.neo4j.com.Client;
+import org.neo4j.com.Compression;
 import org.neo4j.com.Deserializer;
 import org.neo4j.com.MasterCaller;
 import org.neo4j.com.ObjectSerializer;
@@ -43,8 +54,13 @@ import org.neo4j.com.Protocol;
 import org.neo4j.com.RequestType;
 import org.neo4j.com.ResourceReleaser;
 import org.neo4j.com.Response;
+import org.neo4j.com.ResponseFuture;
 import org.neo4j.com.Serializer;
 import org.neo4j.com.SlaveContext;
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFileRange;
+import org.neo4j.com.StoreFilePrefix;
 import org.neo4j.com.StoreIdGetter;
 import org.neo4j.com.StoreWriter;
 import org.neo4j.com.ToNetworkStoreWriter;
@@ -62,7 +78,7 @@ import org.neo4j.kernel.impl.util.StringLogger;
  * {@link MasterServer} (which delegates to {@link MasterImpl}
  * on the master side.
  */
-public class MasterClient extends Client<Master> implements Master
+public class MasterClient extends Client<Master> implements Master, AsyncMaster
 {
     static final ObjectSerializer<LockResult> LOCK_SERIALIZER = new ObjectSerializer<LockResult>()
     {
@@ -84,15 +100,33 @@ public class MasterClient extends Client<Master> implements Master
                     status );
         }
     };
+    protected static final Deserializer<Long> LONG_DESERIALIZER = new Deserializer<Long>()
+    {
+        @SuppressWarnings( "boxing" )
+        public Long read( ChannelBuffer buffer, ByteBuffer temporaryBuffer ) throws IOException
+        {
+            return buffer.readLong();
+        }
+    };
     private final int lockReadTimeout;
+    private final int readTimeoutSeconds;
 
     public MasterClient( String hostNameOrIp, int port, StringLogger stringLogger, StoreIdGetter storeIdGetter,ConnectionLostHandler connectionLostHandler,
             int readTimeoutSeconds, int lockReadTimeout, int maxConcurrentChannels )
+    {
+        this( hostNameOrIp, port, stringLogger, storeIdGetter, connectionLostHandler, readTimeoutSeconds,
+                lockReadTimeout, maxConcurrentChannels, new Compression() );
+    }
+
+    public MasterClient( String hostNameOrIp, int port, StringLogger stringLogger, StoreIdGetter storeIdGetter,ConnectionLostHandler connectionLostHandler,
+            int readTimeoutSeconds, int lockReadTimeout, int maxConcurrentChannels, Compression compression )
     {
         super( hostNameOrIp, port, stringLogger, storeIdGetter,
                 MasterServer.FRAME_LENGTH, MasterServer.PROTOCOL_VERSION, readTimeoutSeconds,
-                maxConcurrentChannels, Math.min( maxConcurrentChannels, DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT ),connectionLostHandler );
+                maxConcurrentChannels, Math.min( maxConcurrentChannels, DEFAULT_MAX_NUMBER_OF_CONCURRENT_CHANNELS_PER_CLIENT ),connectionLostHandler,
+                compression );
         this.lockReadTimeout = lockReadTimeout;
+        this.readTimeoutSeconds = readTimeoutSeconds;
     }
 
     @Override
@@ -104,12 +138,27 @@ public class MasterClient extends Client<Master> implements Master
     @Override
     protected boolean shouldCheckStoreId( RequestType<Master> type )
     {
-        return type != HaRequestType.COPY_STORE;
+        // The store is what's being copied
+        return type != HaRequestType.COPY_STORE && type != HaRequestType.PLAN_STORE_COPY &&
+                type != HaRequestType.COPY_STORE_PART;
+    }
+
+    @Override
+    protected void writeContext( RequestType<Master> type, SlaveContext context, ChannelBuffer targetBuffer )
+    {
+        super.writeContext( type, context, targetBuffer );
+        targetBuffer.writeByte( context.initializesTx() ? 1 : 0 );
+    }
+
+    public Response<IdAllocation> allocateIds( IdType idType )
+    {
+        return allocateIdsAsync( idType ).awaitResponse();
     }
 
-    public Response<IdAllocation> allocateIds( final IdType idType )
+    @Override
+    public ResponseFuture<IdAllocation> allocateIdsAsync( final IdType idType )
     {
-        return sendRequest( HaRequestType.ALLOCATE_IDS, SlaveContext.EMPTY, new Serializer()
+        return sendRequestAsync( HaRequestType.ALLOCATE_IDS, SlaveContext.EMPTY, new Serializer()
         {
             public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
             {
@@ -124,9 +173,15 @@ public class MasterClient extends Client<Master> implements Master
         } );
     }
 
-    public Response<Integer> createRelationshipType( SlaveContext context, final String name )
+    public Response<Integer> createRelationshipType( SlaveContext context, String name )
     {
-        return sendRequest( HaRequestType.CREATE_RELATIONSHIP_TYPE, context, new Serializer()
+        return createRelationshipTypeAsync( context, name ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<Integer> createRelationshipTypeAsync( SlaveContext context, final String name )
+    {
+        return sendRequestAsync( HaRequestType.CREATE_RELATIONSHIP_TYPE, context, new Serializer()
         {
             public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
             {
@@ -145,113 +200,204 @@ public class MasterClient extends Client<Master> implements Master
     @Override
     public Response<Void> initializeTx( SlaveContext context )
     {
-        return sendRequest( HaRequestType.INITIALIZE_TX, context, EMPTY_SERIALIZER, VOID_DESERIALIZER );
+        return initializeTxAsync( context ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<Void> initializeTxAsync( SlaveContext context )
+    {
+        return sendRequestAsync( HaRequestType.INITIALIZE_TX, context, EMPTY_SERIALIZER, VOID_DESERIALIZER );
     }
 
     public Response<LockResult> acquireNodeWriteLock( SlaveContext context, long... nodes )
     {
-        return sendRequest( HaRequestType.ACQUIRE_NODE_WRITE_LOCK, context,
+        return acquireNodeWriteLockAsync( context, nodes ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireNodeWriteLockAsync( SlaveContext context, long... nodes )
+    {
+        return sendRequestAsync( HaRequestType.ACQUIRE_NODE_WRITE_LOCK, context,
                 new AcquireLockSerializer( nodes ), LOCK_RESULT_DESERIALIZER );
     }
 
     public Response<LockResult> acquireNodeReadLock( SlaveContext context, long... nodes )
     {
-        return sendRequest( HaRequestType.ACQUIRE_NODE_READ_LOCK, context,
+        return acquireNodeReadLockAsync( context, nodes ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireNodeReadLockAsync( SlaveContext context, long... nodes )
+    {
+        return sendRequestAsync( HaRequestType.ACQUIRE_NODE_READ_LOCK, context,
                 new AcquireLockSerializer( nodes ), LOCK_RESULT_DESERIALIZER );
     }
 
     public Response<LockResult> acquireRelationshipWriteLock( SlaveContext context,
             long... relationships )
     {
-        return sendRequest( HaRequestType.ACQUIRE_RELATIONSHIP_WRITE_LOCK, context,
+        return acquireRelationshipWriteLockAsync( context, relationships ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireRelationshipWriteLockAsync( SlaveContext context,
+            long... relationships )
+    {
+        return sendRequestAsync( HaRequestType.ACQUIRE_RELATIONSHIP_WRITE_LOCK, context,
                 new AcquireLockSerializer( relationships ), LOCK_RESULT_DESERIALIZER );
     }
 
     public Response<LockResult> acquireRelationshipReadLock( SlaveContext context,
             long... relationships )
     {
-        return sendRequest( HaRequestType.ACQUIRE_RELATIONSHIP_READ_LOCK, context,
+        return acquireRelationshipReadLockAsync( context, relationships ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireRelationshipReadLockAsync( SlaveContext context,
+            long... relationships )
+    {
+        return sendRequestAsync( HaRequestType.ACQUIRE_RELATIONSHIP_READ_LOCK, context,
                 new AcquireLockSerializer( relationships ), LOCK_RESULT_DESERIALIZER );
     }
 
     public Response<LockResult> acquireGraphWriteLock( SlaveContext context )
     {
-        return sendRequest( HaRequestType.ACQUIRE_GRAPH_WRITE_LOCK, context,
+        return acquireGraphWriteLockAsync( context ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireGraphWriteLockAsync( SlaveContext context )
+    {
+        return sendRequestAsync( HaRequestType.ACQUIRE_GRAPH_WRITE_LOCK, context,
                 EMPTY_SERIALIZER, LOCK_RESULT_DESERIALIZER );
     }
 
     public Response<LockResult> acquireGraphReadLock( SlaveContext context )
     {
-        return sendRequest( HaRequestType.ACQUIRE_GRAPH_READ_LOCK, context,
+        return acquireGraphReadLockAsync( context ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireGraphReadLockAsync( SlaveContext context )
+    {
+        return sendRequestAsync( HaRequestType.ACQUIRE_GRAPH_READ_LOCK, context,
                 EMPTY_SERIALIZER, LOCK_RESULT_DESERIALIZER );
     }
 
     @Override
     public Response<LockResult> acquireIndexReadLock( SlaveContext context, String index, String key )
     {
-        return sendRequest( HaRequestType.ACQUIRE_INDEX_READ_LOCK, context,
+        return acquireIndexReadLockAsync( context, index, key ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireIndexReadLockAsync( SlaveContext context, String index, String key )
+    {
+        return sendRequestAsync( HaRequestType.ACQUIRE_INDEX_READ_LOCK, context,
                 new AcquireIndexLockSerializer( index, key ), LOCK_RESULT_DESERIALIZER );
     }
 
     @Override
     public Response<LockResult> acquireIndexWriteLock( SlaveContext context, String index, String key )
     {
-        return sendRequest( HaRequestType.ACQUIRE_INDEX_WRITE_LOCK, context,
+        return acquireIndexWriteLockAsync( context, index, key ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<LockResult> acquireIndexWriteLockAsync( SlaveContext context, String index, String key )
+    {
+        return sendRequestAsync( HaRequestType.ACQUIRE_INDEX_WRITE_LOCK, context,
                 new AcquireIndexLockSerializer( index, key ), LOCK_RESULT_DESERIALIZER );
     }
 
     public Response<Long> commitSingleResourceTransaction( SlaveContext context,
-            final String resource, final TxExtractor txGetter )
+            String resource, TxExtractor txGetter )
+    {
+        return commitSingleResourceTransactionAsync( context, resource, txGetter ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<Long> commitSingleResourceTransactionAsync( SlaveContext context,
+            String resource, TxExtractor txGetter )
+    {
+        return sendRequestAsync( HaRequestType.COMMIT, context, new CommitSerializer( resource, txGetter ),
+                LONG_DESERIALIZER );
+    }
+
+    public Response<Long> commitAndFinishTransaction( SlaveContext context,
+            String resource, TxExtractor txGetter )
     {
-        return sendRequest( HaRequestType.COMMIT, context, new Serializer()
+        return commitAndFinishTransactionAsync( context, resource, txGetter ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<Long> commitAndFinishTransactionAsync( SlaveContext context,
+            String resource, TxExtractor txGetter )
+    {
+        return sendRequestAsync( HaRequestType.COMMIT_AND_FINISH, context,
+                new CommitSerializer( resource, txGetter ), LONG_DESERIALIZER );
+    }
+
+    public Response<Void> finishTransaction( SlaveContext context, boolean success )
+    {
+        return finishTransactionAsync( context, success ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<Void> finishTransactionAsync( SlaveContext context, final boolean success )
+    {
+        final ResponseFuture<Void> future = sendRequestAsync( HaRequestType.FINISH, context, new Serializer()
         {
             public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
             {
-                writeString( buffer, resource );
-                BlockLogBuffer blockLogBuffer = new BlockLogBuffer( buffer );
-                txGetter.extract( blockLogBuffer );
-                blockLogBuffer.done();
+                buffer.writeByte( success ? 1 : 0 );
             }
-        }, new Deserializer<Long>()
+        }, VOID_DESERIALIZER );
+        if ( success ) return future;
+
+        // Timing out the result means timing out the actual request
+        final ResponseFuture<Void> result = new ResponseFuture<Void>( getReadTimeout( HaRequestType.FINISH,
+                readTimeoutSeconds ), new ResourceReleaser()
         {
-            @SuppressWarnings( "boxing" )
-            public Long read( ChannelBuffer buffer, ByteBuffer temporaryBuffer ) throws IOException
+            @Override
+            public void release()
             {
-                return buffer.readLong();
+                future.timeOut();
             }
-        });
-    }
-
-    public Response<Void> finishTransaction( SlaveContext context, final boolean success )
-    {
-        try
+        } );
+        future.addListener( new ResponseFuture.Listener<Void>()
         {
-            return sendRequest( HaRequestType.FINISH, context, new Serializer()
+            @Override
+            public void completed( ResponseFuture<Void> finished )
             {
-                public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+                Throwable failure = finished.getFailure();
+                if ( failure == null )
                 {
-                    buffer.writeByte( success ? 1 : 0 );
+                    result.complete( finished.awaitResponse() );
                 }
-            }, VOID_DESERIALIZER );
-        }
-        catch ( UnableToResumeTransactionException e )
-        {
-            if ( !success )
-            {
-                /* Here we are in a state where the client failed while the request
-                 * was processing on the server and the tx.finish() in the usual
-                 * try-finally transaction block gets called, only to find that
-                 * the transaction is already active... which is totally expected.
-                 * The fact that the transaction is already active here shouldn't
-                 * hide the original exception on the client, the exception which
-                 * cause the client to fail while the request was processing on the master.
-                 * This is effectively the use case of awaiting a lock that isn't granted
-                 * within the lock read timeout period.
-                 */
-                return new Response<Void>( null, getMyStoreId(), TransactionStream.EMPTY, ResourceReleaser.NO_OP );
-            }
-            throw e;
-        }
+                else if ( failure instanceof UnableToResumeTransactionException )
+                {
+                    /* Here we are in a state where the client failed while the request
+                     * was processing on the server and the tx.finish() in the usual
+                     * try-finally transaction block gets called, only to find that
+                     * the transaction is already active... which is totally expected.
+                     * The fact that the transaction is already active here shouldn't
+                     * hide the original exception on the client, the exception which
+                     * cause the client to fail while the request was processing on the master.
+                     * This is effectively the use case of awaiting a lock that isn't granted
+                     * within the lock read timeout period.
+                     */
+                    result.complete( new Response<Void>( null, getMyStoreId(), TransactionStream.EMPTY,
+                            ResourceReleaser.NO_OP ) );
+                }
+                else
+                {
+                    result.fail( failure );
+                }
+            }
+        } );
+        return result;
     }
 
     public void rollbackOngoingTransactions( SlaveContext context )
@@ -261,7 +407,30 @@ public class MasterClient extends Client<Master> implements Master
 
     public Response<Void> pullUpdates( SlaveContext context )
     {
-        return sendRequest( HaRequestType.PULL_UPDATES, context, EMPTY_SERIALIZER, VOID_DESERIALIZER );
+        return pullUpdatesAsync( context ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<Void> pullUpdatesAsync( SlaveContext context )
+    {
+        return sendRequestAsync( HaRequestType.PULL_UPDATES, context, EMPTY_SERIALIZER, VOID_DESERIALIZER );
+    }
+
+    public Response<Void> awaitUpdates( SlaveContext context, int maxWaitMillis )
+    {
+        return awaitUpdatesAsync( context, maxWaitMillis ).awaitResponse();
+    }
+
+    @Override
+    public ResponseFuture<Void> awaitUpdatesAsync( SlaveContext context, final int maxWaitMillis )
+    {
+        return sendRequestAsync( HaRequestType.AWAIT_UPDATES, context, new Serializer()
+        {
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                buffer.writeInt( maxWaitMillis );
+            }
+        }, VOID_DESERIALIZER );
     }
 
     public Response<Pair<Integer,Long>> getMasterIdForCommittedTx( final long txId, StoreId storeId )
@@ -282,10 +451,45 @@ public class MasterClient extends Client<Master> implements Master
         }, storeId );
     }
 
-    public Response<Void> copyStore( SlaveContext context, final StoreWriter writer )
+    public Response<Void> copyStore( SlaveContext context, final Map<String, StoreFilePrefix> resumeFrom,
+            final StoreWriter writer )
     {
         context = stripFromTransactions( context );
-        return sendRequest( HaRequestType.COPY_STORE, context, EMPTY_SERIALIZER, new Protocol.FileStreamsDeserializer( writer ) );
+        return sendRequest( HaRequestType.COPY_STORE, context, new Serializer()
+        {
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                writeStoreFilePrefixes( buffer, resumeFrom );
+            }
+        }, new Protocol.FileStreamsDeserializer( writer ) );
+    }
+
+    public Response<StoreCopyPlan> planStoreCopy( SlaveContext context,
+            final Map<String, StoreFilePrefix> resumeFrom, final int parts )
+    {
+        context = stripFromTransactions( context );
+        return sendRequest( HaRequestType.PLAN_STORE_COPY, context, new Serializer()
+        {
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                writeStoreFilePrefixes( buffer, resumeFrom );
+                buffer.writeInt( parts );
+            }
+        }, STORE_COPY_PLAN_DESERIALIZER );
+    }
+
+    public Response<Void> copyStorePart( SlaveContext context, final Tx[] startTransactions,
+            final List<StoreFileRange> ranges, StoreWriter writer )
+    {
+        context = stripFromTransactions( context );
+        return sendRequest( HaRequestType.COPY_STORE_PART, context, new Serializer()
+        {
+            public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+            {
+                writeTransactions( buffer, startTransactions );
+                writeStoreFileRanges( buffer, ranges );
+            }
+        }, new Protocol.FileStreamsDeserializer( writer ) );
     }
 
     private SlaveContext stripFromTransactions( SlaveContext context )
@@ -424,7 +628,8 @@ public class MasterClient extends Client<Master> implements Master
                     ChannelBuffer input, ChannelBuffer target )
             {
                 String resource = readString( input );
-                final ReadableByteChannel reader = new BlockLogReader( input );
+                // The request came in the same internal protocol version as the response goes out
+                final ReadableByteChannel reader = new BlockLogReader( input, BlockLogBuffer.largeBlocksFor( target ) );
                 return master.commitSingleResourceTransaction( context, resource,
                         TxExtractor.create( reader ) );
             }
@@ -474,7 +679,8 @@ public class MasterClient extends Client<Master> implements Master
             public Response<Void> callMaster( Master master, SlaveContext context,
                     ChannelBuffer input, final ChannelBuffer target )
             {
-                return master.copyStore( context, new ToNetworkStoreWriter( target ) );
+                return master.copyStore( context, readStoreFilePrefixes( input ),
+                        new ToNetworkStoreWriter( target ) );
             }
 
         }, VOID_SERIALIZER, true ),
@@ -576,7 +782,51 @@ public class MasterClient extends Client<Master> implements Master
             {
                 return true;
             }
-        };
+        },
+
+        //====
+        COMMIT_AND_FINISH( new MasterCaller<Master, Long>()
+        {
+            public Response<Long> callMaster( Master master, SlaveContext context,
+                    ChannelBuffer input, ChannelBuffer target )
+            {
+                String resource = readString( input );
+                final ReadableByteChannel reader = new BlockLogReader( input, BlockLogBuffer.largeBlocksFor( target ) );
+                return master.commitAndFinishTransaction( context, resource,
+                        TxExtractor.create( reader ) );
+            }
+        }, LONG_SERIALIZER, true ),
+
+        //====
+        AWAIT_UPDATES( new MasterCaller<Master, Void>()
+        {
+            public Response<Void> callMaster( Master master, SlaveContext context,
+                    ChannelBuffer input, ChannelBuffer target )
+            {
+                return master.awaitUpdates( context, input.readInt() );
+            }
+        }, VOID_SERIALIZER, true ),
+
+        //====
+        PLAN_STORE_COPY( new MasterCaller<Master, StoreCopyPlan>()
+        {
+            public Response<StoreCopyPlan> callMaster( Master master, SlaveContext context,
+                    ChannelBuffer input, ChannelBuffer target )
+            {
+                return master.planStoreCopy( context, readStoreFilePrefixes( input ), input.readInt() );
+            }
+        }, STORE_COPY_PLAN_SERIALIZER, true ),
+
+        //====
+        COPY_STORE_PART( new MasterCaller<Master, Void>()
+        {
+            public Response<Void> callMaster( Master master, SlaveContext context,
+                    ChannelBuffer input, ChannelBuffer target )
+            {
+                return master.copyStorePart( context, readTransactions( input ), readStoreFileRanges( input ),
+                        new ToNetworkStoreWriter( target ) );
+            }
+        }, VOID_SERIALIZER, true );
 
         @SuppressWarnings( "rawtypes" )
         final MasterCaller caller;
@@ -675,6 +925,27 @@ public class MasterClient extends Client<Master> implements Master
         }
     }
 
+    protected static class CommitSerializer implements Serializer
+    {
+        private final String resource;
+        private final TxExtractor txGetter;
+
+        CommitSerializer( String resource, TxExtractor txGetter )
+        {
+            this.resource = resource;
+            this.txGetter = txGetter;
+        }
+
+        @Override
+        public void write( ChannelBuffer buffer, ByteBuffer readBuffer ) throws IOException
+        {
+            writeString( buffer, resource );
+            BlockLogBuffer blockLogBuffer = new BlockLogBuffer( buffer, BlockLogBuffer.largeBlocksFor( buffer ) );
+            txGetter.extract( blockLogBuffer );
+            blockLogBuffer.done();
+        }
+    }
+
     static abstract class AquireLockCall implements MasterCaller<Master, LockResult>
     {
         public Response<LockResult> callMaster( Master master, SlaveContext context,
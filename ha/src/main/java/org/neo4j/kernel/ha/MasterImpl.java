@@ -20,32 +20,44 @@
 package org.neo4j.kernel.ha;
 
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.transaction.NotSupportedException;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 import org.neo4j.com.MasterUtil;
+import org.neo4j.com.ParallelStoreCopy;
 import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFileRange;
+import org.neo4j.com.StoreFilePrefix;
 import org.neo4j.com.StoreWriter;
+import org.neo4j.com.TransactionReplayCache;
 import org.neo4j.com.TxExtractor;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
 import org.neo4j.helpers.Exceptions;
 import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Predicate;
 import org.neo4j.kernel.DeadlockDetectedException;
 import org.neo4j.kernel.GraphDatabaseAPI;
 import org.neo4j.kernel.IdType;
+import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.impl.core.LockReleaser;
 import org.neo4j.kernel.impl.core.NodeManager;
 import org.neo4j.kernel.impl.nioneo.store.IdGenerator;
@@ -67,17 +79,71 @@ public class MasterImpl implements Master
 {
     private static final int ID_GRAB_SIZE = 1000;
     public static final int UNFINISHED_TRANSACTION_CLEANUP_DELAY = 5;
+    /**
+     * The longest a slave awaiting updates is held, whatever it asks for,
+     * so that idle slaves can't occupy server threads for long.
+     */
+    public static final int MAX_AWAIT_UPDATES_MILLIS = 10000;
 
     private final GraphDatabaseAPI graphDb;
     private final StringLogger msgLog;
+    private final TxMetadataCache txMetadataCache;
+    private final TransactionReplayCache txReplayCache;
 
     private final Map<SlaveContext, MasterTransaction> transactions = synchronizedMap( new HashMap<SlaveContext, MasterTransaction>() );
     private final ScheduledExecutorService unfinishedTransactionsExecutor;
     private int unfinishedTransactionThreshold;
 
+    /**
+     * Notified whenever a transaction is committed, be it one from a slave or
+     * one of the master's own, to wake up slaves awaiting updates.
+     */
+    private final Object commits = new Object();
+    /**
+     * The master's own transactions are only listened to once some slave awaits
+     * updates, so that they don't pay for it otherwise.
+     */
+    private final AtomicBoolean commitNotifierRegistered = new AtomicBoolean();
+    private final TransactionEventHandler<Void> commitNotifier = new TransactionEventHandler<Void>()
+    {
+        @Override
+        public Void beforeCommit( TransactionData data ) throws Exception
+        {
+            return null;
+        }
+
+        @Override
+        public void afterCommit( TransactionData data, Void state )
+        {
+            notifyCommitted();
+        }
+
+        @Override
+        public void afterRollback( TransactionData data, Void state )
+        {
+        }
+    };
+
     public MasterImpl( GraphDatabaseAPI db, int timeOut )
+    {
+        this( db, new TxMetadataCache( TxMetadataCache.DEFAULT_CAPACITY ), timeOut );
+    }
+
+    public MasterImpl( GraphDatabaseAPI db, TxMetadataCache txMetadataCache, int timeOut )
+    {
+        this( db, txMetadataCache, TransactionReplayCache.NONE, timeOut );
+    }
+
+    /**
+     * @param txReplayCache recently committed transactions, so that slaves pulling
+     * updates don't all have to read them from the log.
+     */
+    public MasterImpl( GraphDatabaseAPI db, TxMetadataCache txMetadataCache, TransactionReplayCache txReplayCache,
+            int timeOut )
     {
         this.graphDb = db;
+        this.txMetadataCache = txMetadataCache;
+        this.txReplayCache = txReplayCache;
         this.msgLog = graphDb.getMessageLog();
         this.unfinishedTransactionThreshold = timeOut;
         this.unfinishedTransactionsExecutor = Executors.newSingleThreadScheduledExecutor();
@@ -149,31 +215,51 @@ public class MasterImpl implements Master
     private Response<LockResult> acquireLock( SlaveContext context,
             LockGrabber lockGrabber, Object... entities )
     {
-        Transaction otherTx = suspendOtherAndResumeThis( context, false );
+        Transaction otherTx = suspendOtherAndResumeThis( context, context.initializesTx() );
+        boolean success = false;
         try
         {
             LockManager lockManager = graphDb.getLockManager();
             LockReleaser lockReleaser = graphDb.getLockReleaser();
-            for ( Object entity : entities )
+            LockResult result;
+            try
             {
-                lockGrabber.grab( lockManager, lockReleaser, entity );
+                for ( Object entity : entities )
+                {
+                    lockGrabber.grab( lockManager, lockReleaser, entity );
+                }
+                result = new LockResult( LockStatus.OK_LOCKED );
             }
-            return packResponse( context, new LockResult( LockStatus.OK_LOCKED ) );
-        }
-        catch ( DeadlockDetectedException e )
-        {
-            return packResponse( context, new LockResult( e.getMessage() ) );
-        }
-        catch ( IllegalResourceException e )
-        {
-            return packResponse( context, new LockResult( LockStatus.NOT_LOCKED ) );
+            catch ( DeadlockDetectedException e )
+            {
+                result = new LockResult( e.getMessage() );
+            }
+            catch ( IllegalResourceException e )
+            {
+                result = new LockResult( LockStatus.NOT_LOCKED );
+            }
+            Response<LockResult> response = packResponse( context, result );
+            success = true;
+            return response;
         }
         finally
         {
-            suspendThisAndResumeOther( otherTx, context );
+            if ( success ) suspendThisAndResumeOther( otherTx, context );
+            else suspendOrRollBackFailed( otherTx, context );
         }
     }
 
+    /**
+     * The slave doesn't consider its transaction begun on the master until a
+     * request beginning it has succeeded, so if that request fails the slave
+     * won't finish it. It's rolled back right away instead.
+     */
+    private void suspendOrRollBackFailed( Transaction otherTx, SlaveContext context )
+    {
+        if ( context.initializesTx() ) finishThisAndResumeOther( otherTx, context, false );
+        else suspendThisAndResumeOther( otherTx, context );
+    }
+
     private <T> Response<T> packResponse( SlaveContext context, T response )
     {
         return packResponse( context, response, MasterUtil.ALL );
@@ -181,7 +267,7 @@ public class MasterImpl implements Master
 
     private <T> Response<T> packResponse( SlaveContext context, T response, Predicate<Long> filter )
     {
-        return MasterUtil.packResponse( graphDb, context, response, filter );
+        return MasterUtil.packResponse( graphDb, context, response, filter, txReplayCache );
     }
 
     private Transaction getTx( SlaveContext txId )
@@ -386,29 +472,75 @@ public class MasterImpl implements Master
     public Response<Long> commitSingleResourceTransaction( SlaveContext context, String resource,
             TxExtractor txGetter )
     {
-        Transaction otherTx = suspendOtherAndResumeThis( context, false );
+        Transaction otherTx = suspendOtherAndResumeThis( context, context.initializesTx() );
+        boolean success = false;
+        try
+        {
+            long txId = applyPreparedTransaction( resource, txGetter );
+            Response<Long> response = packResponse( context, txId, upUntil( txId ) );
+            success = true;
+            return response;
+        }
+        finally
+        {
+            if ( success ) suspendThisAndResumeOther( otherTx, context );
+            else suspendOrRollBackFailed( otherTx, context );
+        }
+    }
+
+    public Response<Long> commitAndFinishTransaction( SlaveContext context, String resource,
+            TxExtractor txGetter )
+    {
+        Transaction otherTx = suspendOtherAndResumeThis( context, context.initializesTx() );
+        long txId;
+        try
+        {
+            txId = applyPreparedTransaction( resource, txGetter );
+        }
+        catch ( RuntimeException e )
+        {   // The slave will roll it back with a separate finishTransaction, if it has begun it
+            suspendOrRollBackFailed( otherTx, context );
+            throw e;
+        }
+        finishThisAndResumeOther( otherTx, context, true );
+        return packResponse( context, txId, upUntil( txId ) );
+    }
+
+    private long applyPreparedTransaction( String resource, TxExtractor txGetter )
+    {
         try
         {
             XaDataSource dataSource = graphDb.getXaDataSourceManager()
                     .getXaDataSource( resource );
-            final long txId = dataSource.applyPreparedTransaction( txGetter.extract() );
-            Predicate<Long> upUntilThisTx = new Predicate<Long>()
+            ReadableByteChannel transaction = txGetter.extract();
+            TxMetadataCache.StartRecorder start = null;
+            if ( dataSource.getName().equals( Config.DEFAULT_DATA_SOURCE_NAME ) )
             {
-                public boolean accept( Long item )
-                {
-                    return item < txId;
-                }
-            };
-            return packResponse( context, txId, upUntilThisTx );
+                transaction = start = new TxMetadataCache.StartRecorder( transaction );
+            }
+            long txId = dataSource.applyPreparedTransaction( transaction );
+            if ( start != null )
+            {
+                txMetadataCache.committed( txId, start );
+            }
+            notifyCommitted();
+            return txId;
         }
         catch ( IOException e )
         {
             throw new RuntimeException( e );
         }
-        finally
+    }
+
+    private static Predicate<Long> upUntil( final long txId )
+    {
+        return new Predicate<Long>()
         {
-            suspendThisAndResumeOther( otherTx, context );
-        }
+            public boolean accept( Long item )
+            {
+                return item < txId;
+            }
+        };
     }
 
     public Response<Void> finishTransaction( SlaveContext context, boolean success )
@@ -439,6 +571,50 @@ public class MasterImpl implements Master
         return packResponse( context, null );
     }
 
+    public Response<Void> awaitUpdates( SlaveContext context, int maxWaitMillis )
+    {
+        long deadline = System.currentTimeMillis() + Math.min( maxWaitMillis, MAX_AWAIT_UPDATES_MILLIS );
+        if ( commitNotifierRegistered.compareAndSet( false, true ) )
+        {
+            graphDb.registerTransactionEventHandler( commitNotifier );
+        }
+        synchronized ( commits )
+        {
+            long remaining;
+            while ( !hasUpdatesFor( context ) && (remaining = deadline - System.currentTimeMillis()) > 0 )
+            {
+                try
+                {
+                    commits.wait( remaining );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return packResponse( context, null );
+    }
+
+    private boolean hasUpdatesFor( SlaveContext context )
+    {
+        for ( SlaveContext.Tx tx : context.lastAppliedTransactions() )
+        {
+            XaDataSource dataSource = graphDb.getXaDataSourceManager().getXaDataSource( tx.getDataSourceName() );
+            if ( dataSource != null && dataSource.getLastCommittedTxId() > tx.getTxId() ) return true;
+        }
+        return false;
+    }
+
+    private void notifyCommitted()
+    {
+        synchronized ( commits )
+        {
+            commits.notifyAll();
+        }
+    }
+
     public Response<Pair<Integer,Long>> getMasterIdForCommittedTx( long txId, StoreId storeId )
     {
         XaDataSource nioneoDataSource = graphDb.getXaDataSourceManager()
@@ -454,24 +630,55 @@ public class MasterImpl implements Master
         }
     }
 
-    public Response<Void> copyStore( SlaveContext context, StoreWriter writer )
+    public Response<Void> copyStore( SlaveContext context, Map<String, StoreFilePrefix> resumeFrom,
+            StoreWriter writer )
     {
-        context = MasterUtil.rotateLogsAndStreamStoreFiles( graphDb, true, writer );
+        context = MasterUtil.rotateLogsAndStreamStoreFiles( graphDb, true, resumeFrom, writer );
         writer.done();
         return packResponse( context, null );
     }
 
+    @Override
+    public Response<StoreCopyPlan> planStoreCopy( SlaveContext context, Map<String, StoreFilePrefix> resumeFrom,
+            int parts )
+    {
+        StoreCopyPlan plan = MasterUtil.rotateLogsAndPlanStoreCopy( graphDb, true, resumeFrom, parts,
+                ParallelStoreCopy.DEFAULT_RANGE_SIZE );
+        return MasterUtil.packResponseWithoutTransactionStream( graphDb, SlaveContext.EMPTY, plan );
+    }
+
+    @Override
+    public Response<Void> copyStorePart( SlaveContext context, Tx[] startTransactions, List<StoreFileRange> ranges,
+            StoreWriter writer )
+    {
+        MasterUtil.streamStoreFileRanges( graphDb, ranges, writer );
+        writer.done();
+        if ( startTransactions.length == 0 )
+        {
+            return MasterUtil.packResponseWithoutTransactionStream( graphDb, SlaveContext.EMPTY, null );
+        }
+        return packResponse( SlaveContext.anonymous( startTransactions ), null );
+    }
+
     @Override
     public Response<Void> copyTransactions( SlaveContext context,
             String dsName, long startTxId, long endTxId )
     {
-        return MasterUtil.getTransactions( graphDb, dsName, startTxId, endTxId );
+        return MasterUtil.getTransactions( graphDb, dsName, startTxId, endTxId, txReplayCache );
     }
 
     @Override
     public void shutdown()
     {
         unfinishedTransactionsExecutor.shutdown();
+        if ( !commitNotifierRegistered.get() ) return;
+        try
+        {
+            graphDb.unregisterTransactionEventHandler( commitNotifier );
+        }
+        catch ( RuntimeException e )
+        {   // The database is already shut down, and its handlers with it
+        }
     }
 
     private static interface LockGrabber
@@ -26,8 +26,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
+import org.neo4j.com.Compression;
+import org.neo4j.com.FlowControl;
 import org.neo4j.com.Protocol;
+import org.neo4j.com.RequestClass;
 import org.neo4j.com.RequestType;
 import org.neo4j.com.Server;
 import org.neo4j.com.SlaveContext;
@@ -43,16 +47,27 @@ public class MasterServer extends Server<Master, Void>
 {
     /* Version 1 first version
      * Version 2 since 2012-01-24
-     * Version 3 since 2012-02-16 */
-    static final byte PROTOCOL_VERSION = 3;
+     * Version 3 since 2012-02-16
+     * Version 4 since 2026-10-18, slave contexts say whether they initialize their transaction
+     *                            and commit can be combined with finishing the transaction,
+     *                            slaves can await updates and store copies can be resumed
+     *                            and run over several streams */
+    static final byte PROTOCOL_VERSION = 4;
 
     static final int FRAME_LENGTH = Protocol.DEFAULT_FRAME_LENGTH;
 
     public MasterServer( Master realMaster, final int port, StringLogger logger, int maxConcurrentTransactions,
             int oldChannelThreshold, TxChecksumVerifier txVerifier )
+    {
+        this( realMaster, port, logger, maxConcurrentTransactions, oldChannelThreshold, txVerifier, new Compression(),
+                new FlowControl() );
+    }
+
+    public MasterServer( Master realMaster, final int port, StringLogger logger, int maxConcurrentTransactions,
+            int oldChannelThreshold, TxChecksumVerifier txVerifier, Compression compression, FlowControl flowControl )
     {
         super( realMaster, port, logger, FRAME_LENGTH, PROTOCOL_VERSION, maxConcurrentTransactions,
-                oldChannelThreshold, txVerifier );
+                oldChannelThreshold, txVerifier, compression, flowControl );
     }
 
     @Override
@@ -61,12 +76,45 @@ public class MasterServer extends Server<Master, Void>
         return HaRequestType.values()[id];
     }
 
+    @Override
+    protected SlaveContext readContext( ChannelBuffer buffer )
+    {
+        SlaveContext context = super.readContext( buffer );
+        return buffer.readByte() != 0 ? context.initializingTx() : context;
+    }
+
     @Override
     protected void finishOffChannel( Channel channel, SlaveContext context )
     {
         getMaster().finishTransaction( context, false );
     }
 
+    @Override
+    protected RequestClass getRequestClass( RequestType<Master> type )
+    {
+        switch ( (HaRequestType) type )
+        {
+        case ACQUIRE_NODE_WRITE_LOCK:
+        case ACQUIRE_NODE_READ_LOCK:
+        case ACQUIRE_RELATIONSHIP_WRITE_LOCK:
+        case ACQUIRE_RELATIONSHIP_READ_LOCK:
+        case ACQUIRE_GRAPH_WRITE_LOCK:
+        case ACQUIRE_GRAPH_READ_LOCK:
+        case ACQUIRE_INDEX_WRITE_LOCK:
+        case ACQUIRE_INDEX_READ_LOCK:
+            return RequestClass.LOCKING;
+        case COPY_STORE:
+        case PLAN_STORE_COPY:
+        case COPY_STORE_PART:
+        case COPY_TRANSACTIONS:
+            return RequestClass.BULK;
+        case AWAIT_UPDATES:
+            return RequestClass.WAITING;
+        default:
+            return RequestClass.LATENCY_CRITICAL;
+        }
+    }
+
     @Override
     public void shutdown()
     {
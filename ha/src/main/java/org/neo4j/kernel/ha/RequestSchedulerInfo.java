@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = RequestSchedulerInfo.NAME )
+@Description( "Information about how requests from slaves are scheduled on this master, " +
+        "per class of request. All arrays are in the order of the request classes" )
+public interface RequestSchedulerInfo
+{
+    final String NAME = "Master Request Scheduler";
+
+    @Description( "The classes of requests, each with its own threads and queue" )
+    String[] getRequestClasses();
+
+    @Description( "The number of requests of each class accepted for scheduling" )
+    long[] getScheduled();
+
+    @Description( "The number of requests of each class rejected because its queue was full" )
+    long[] getRejected();
+
+    @Description( "The total time requests of each class have been queued, in milliseconds" )
+    long[] getQueueTimeMillis();
+
+    @Description( "The number of requests of each class currently queued" )
+    int[] getQueueDepth();
+
+    @Description( "The number of requests of each class currently being handled" )
+    int[] getActive();
+
+    @Description( "The stages of handling a request, from framing it on the I/O thread to writing the response" )
+    String[] getStages();
+
+    @Description( "The total time spent in each stage, in milliseconds" )
+    long[] getStageTimeMillis();
+
+    @Description( "The number of times each stage has been completed" )
+    long[] getStageCounts();
+}
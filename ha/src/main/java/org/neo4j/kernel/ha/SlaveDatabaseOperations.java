@@ -39,4 +39,40 @@ public interface SlaveDatabaseOperations extends ConnectionLostHandler
     void exceptionHappened( RuntimeException e );
 
     int getMasterForTx( long tx );
+
+    /**
+     * Notes that the transaction with {@code eventIdentifier} is to be begun on
+     * the master by its first lock or commit request, rather than by a request
+     * of its own. Does nothing if it has already been begun there.
+     */
+    void initializeTxWithFirstRequest( int eventIdentifier );
+
+    /**
+     * @return {@code true} if the transaction with {@code eventIdentifier} is yet
+     * to be begun on the master, in which case the request about to be sent for
+     * it should begin it, see {@link SlaveContext#initializesTx()}.
+     */
+    boolean isTxInitializationPending( int eventIdentifier );
+
+    /**
+     * Notes that a request beginning the transaction with {@code eventIdentifier}
+     * has got a response from the master. Until then it's still pending, so that
+     * if the request fails the transaction fails without being finished on a
+     * master which may never have begun it.
+     */
+    void txBegunOnMaster( int eventIdentifier );
+
+    /**
+     * Notes that the transaction with {@code eventIdentifier} has been finished
+     * on the master along with its commit, so that there's nothing left to
+     * finish there.
+     */
+    void txFinishedOnMaster( int eventIdentifier );
+
+    /**
+     * Forgets about the transaction with {@code eventIdentifier}.
+     * @return whether or not it has been begun, but not yet finished, on the
+     * master, and so has to be finished there.
+     */
+    boolean txFinished( int eventIdentifier );
 }
@@ -20,6 +20,8 @@
 
 package org.neo4j.kernel.ha;
 
+import static org.neo4j.kernel.ha.AsyncMasterAdapter.asAsync;
+
 import java.io.File;
 import java.util.EnumMap;
 import java.util.Map;
@@ -135,8 +137,8 @@ public class SlaveIdGenerator implements IdGenerator
             if ( nextId == VALUE_REPRESENTING_NULL )
             {
                 // If we dont have anymore grabbed ids from master, grab a bunch
-                Response<IdAllocation> response = master.first().allocateIds(
-                        idType );
+                Response<IdAllocation> response = asAsync( master.first() ).allocateIdsAsync(
+                        idType ).awaitResponse();
                 IdAllocation allocation = response.response();
                 response.close();
                 allocationMaster = master.other().getMachineId();
@@ -19,9 +19,23 @@
  */
 package org.neo4j.kernel.ha;
 
+import static org.neo4j.kernel.ha.AsyncMasterAdapter.asAsync;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 
 import org.neo4j.com.Response;
+import org.neo4j.com.ResponseFuture;
 import org.neo4j.com.SlaveContext;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -30,16 +44,34 @@ import org.neo4j.kernel.impl.core.GraphProperties;
 import org.neo4j.kernel.impl.core.NodeManager.IndexLock;
 import org.neo4j.kernel.impl.transaction.IllegalResourceException;
 import org.neo4j.kernel.impl.transaction.LockManager;
+import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.transaction.RagManager;
 import org.neo4j.kernel.impl.transaction.TxHook;
 import org.neo4j.kernel.impl.transaction.TxManager;
 
+/**
+ * Acquires locks on the master before acquiring them locally. Locks the master
+ * has granted a transaction are remembered until it completes, so asking for
+ * them again, f.ex. after they were declared up front with
+ * {@link #acquireOnMaster(LockType, Object...)}, only locks locally.
+ *
+ * Only locks declared up front are batched. Locks taken implicitly, as nodes and
+ * relationships are written, still go to the master one at a time since they
+ * must be held before the entity is read for the write.
+ */
 public class SlaveLockManager extends LockManager
 {
+    /**
+     * Beyond this many granted locks a transaction just asks the master again,
+     * so that huge transactions don't keep a set of all they've touched.
+     */
+    static final int MAX_REMEMBERED_LOCKS = 10000;
+
     private final Broker broker;
     private final TxManager tm;
     private final SlaveDatabaseOperations databaseOperations;
     private final TxHook txHook;
+    private final Map<Transaction, GrantedLocks> grantedLocks = new ConcurrentHashMap<Transaction, GrantedLocks>();
 
     public SlaveLockManager( RagManager ragManager, TxManager tm, TxHook txHook, Broker broker,
             SlaveDatabaseOperations databaseOperations )
@@ -60,37 +92,84 @@ public class SlaveLockManager extends LockManager
     public void getReadLock( Object resource ) throws DeadlockDetectedException,
             IllegalResourceException
     {
-        LockGrabber grabber = null;
-        if ( resource instanceof Node ) grabber = LockGrabber.NODE_READ;
-        else if ( resource instanceof Relationship ) grabber = LockGrabber.RELATIONSHIP_READ;
-        else if ( resource instanceof GraphProperties ) grabber = LockGrabber.GRAPH_READ;
-        else if ( resource instanceof IndexLock ) grabber = LockGrabber.INDEX_READ;
+        try
+        {
+            LockGrabber grabber = LockGrabber.forResource( LockType.READ, resource );
+            if ( grabber != null && !isGranted( LockType.READ, resource ) )
+            {
+                acquireOnMaster( grabber, resource );
+            }
+            super.getReadLock( resource );
+        }
+        catch ( RuntimeException e )
+        {
+            databaseOperations.exceptionHappened( e );
+            throw e;
+        }
+    }
 
+    @Override
+    public void getWriteLock( Object resource ) throws DeadlockDetectedException,
+            IllegalResourceException
+    {
         try
         {
-            if ( grabber == null )
+            LockGrabber grabber = LockGrabber.forResource( LockType.WRITE, resource );
+            if ( grabber != null && !isGranted( LockType.WRITE, resource ) )
             {
-                super.getReadLock( resource );
-                return;
+                acquireOnMaster( grabber, resource );
             }
+            super.getWriteLock( resource );
+        }
+        catch ( RuntimeException e )
+        {
+            databaseOperations.exceptionHappened( e );
+            throw e;
+        }
+    }
 
-            initializeTxIfFirst();
-            LockResult result = null;
-            do
+    /**
+     * Acquires locks of {@code type} on all of {@code resources} on the master
+     * for the current transaction, with one request for all nodes and one for
+     * all relationships rather than one per entity. Nothing is locked locally,
+     * that happens when the locks are later asked for the usual way, which
+     * then won't go to the master again.
+     *
+     * @throws DeadlockDetectedException if the master detected a deadlock.
+     */
+    public void acquireOnMaster( LockType type, Object... resources ) throws DeadlockDetectedException
+    {
+        Map<LockGrabber, List<Object>> batches = new LinkedHashMap<LockGrabber, List<Object>>();
+        for ( Object resource : resources )
+        {
+            LockGrabber grabber = LockGrabber.forResource( type, resource );
+            if ( grabber == null || isGranted( type, resource ) ) continue;
+            List<Object> batch = batches.get( grabber );
+            if ( batch == null )
             {
-                int eventIdentifier = getLocalTxId();
-                result = databaseOperations.receive( grabber.acquireLock( broker.getMaster().first(),
-                        databaseOperations.getSlaveContext( eventIdentifier ), resource ) );
-                switch ( result.getStatus() )
+                batch = new ArrayList<Object>();
+                batches.put( grabber, batch );
+            }
+            batch.add( resource );
+        }
+
+        try
+        {
+            for ( Map.Entry<LockGrabber, List<Object>> batch : batches.entrySet() )
+            {
+                LockGrabber grabber = batch.getKey();
+                if ( grabber.batchable )
+                {
+                    acquireOnMaster( grabber, batch.getValue().toArray() );
+                }
+                else
                 {
-                case OK_LOCKED:
-                    super.getReadLock( resource );
-                    return;
-                case DEAD_LOCKED:
-                    throw new DeadlockDetectedException( result.getDeadlockMessage() );
+                    for ( Object resource : batch.getValue() )
+                    {
+                        acquireOnMaster( grabber, resource );
+                    }
                 }
             }
-            while ( result.getStatus() == LockStatus.NOT_LOCKED );
         }
         catch ( RuntimeException e )
         {
@@ -99,6 +178,32 @@ public class SlaveLockManager extends LockManager
         }
     }
 
+    private void acquireOnMaster( LockGrabber grabber, Object... resources )
+    {
+        initializeTxIfFirst();
+        LockResult result = null;
+        do
+        {
+            int eventIdentifier = getLocalTxId();
+            SlaveContext context = databaseOperations.getSlaveContext( eventIdentifier );
+            boolean initializing = databaseOperations.isTxInitializationPending( eventIdentifier );
+            if ( initializing ) context = context.initializingTx();
+            Response<LockResult> response = grabber.acquireLock( asAsync( broker.getMaster().first() ),
+                    context, resources ).awaitResponse();
+            if ( initializing ) databaseOperations.txBegunOnMaster( eventIdentifier );
+            result = databaseOperations.receive( response );
+            switch ( result.getStatus() )
+            {
+            case OK_LOCKED:
+                granted( grabber.type, resources );
+                return;
+            case DEAD_LOCKED:
+                throw new DeadlockDetectedException( result.getDeadlockMessage() );
+            }
+        }
+        while ( result.getStatus() == LockStatus.NOT_LOCKED );
+    }
+
     private void initializeTxIfFirst()
     {
         // The main point of initializing transaction (for HA) is in TransactionImpl, so this is
@@ -107,123 +212,198 @@ public class SlaveLockManager extends LockManager
         if ( !txHook.hasAnyLocks( tx ) ) txHook.initializeTransaction( tm.getEventIdentifier() );
     }
 
-    @Override
-    public void getWriteLock( Object resource ) throws DeadlockDetectedException,
-            IllegalResourceException
+    private boolean isGranted( LockType type, Object resource )
     {
-        // Code copied from getReadLock. Fix!
-        LockGrabber grabber = null;
-        if ( resource instanceof Node ) grabber = LockGrabber.NODE_WRITE;
-        else if ( resource instanceof Relationship ) grabber = LockGrabber.RELATIONSHIP_WRITE;
-        else if ( resource instanceof GraphProperties ) grabber = LockGrabber.GRAPH_WRITE;
-        else if ( resource instanceof IndexLock ) grabber = LockGrabber.INDEX_WRITE;
+        Transaction tx = tm.getTransaction();
+        GrantedLocks granted = tx != null ? grantedLocks.get( tx ) : null;
+        return granted != null && granted.isGranted( type, resource );
+    }
 
-        try
+    private void granted( LockType type, Object[] resources )
+    {
+        Transaction tx = tm.getTransaction();
+        if ( tx == null ) return;
+        GrantedLocks granted = grantedLocks.get( tx );
+        if ( granted == null )
         {
-            if ( grabber == null )
+            granted = new GrantedLocks( tx );
+            try
             {
-                super.getWriteLock( resource );
+                tx.registerSynchronization( granted );
+            }
+            catch ( RollbackException e )
+            {   // Not remembering them just means asking the master again
                 return;
             }
-
-            initializeTxIfFirst();
-            LockResult result = null;
-            do
+            catch ( SystemException e )
             {
-                int eventIdentifier = getLocalTxId();
-                result = databaseOperations.receive( grabber.acquireLock( broker.getMaster().first(),
-                        databaseOperations.getSlaveContext( eventIdentifier ), resource ) );
-                switch ( result.getStatus() )
-                {
-                case OK_LOCKED:
-                    super.getWriteLock( resource );
-                    return;
-                case DEAD_LOCKED:
-                    throw new DeadlockDetectedException( result.getDeadlockMessage() );
-                }
+                return;
             }
-            while ( result.getStatus() == LockStatus.NOT_LOCKED );
-        }
-        catch ( RuntimeException e )
-        {
-            databaseOperations.exceptionHappened( e );
-            throw e;
+            grantedLocks.put( tx, granted );
         }
+        granted.add( type, resources );
     }
 
     // Release lock is as usual, since when the master committs it will release
     // the locks there and then when this slave committs it will release its
     // locks as usual here.
 
+    /**
+     * The locks the master has granted a transaction. A granted write lock
+     * covers read locking the same resource.
+     */
+    private class GrantedLocks implements Synchronization
+    {
+        private final Transaction tx;
+        private final Set<Object> readLocked = new HashSet<Object>();
+        private final Set<Object> writeLocked = new HashSet<Object>();
+
+        GrantedLocks( Transaction tx )
+        {
+            this.tx = tx;
+        }
+
+        synchronized boolean isGranted( LockType type, Object resource )
+        {
+            return writeLocked.contains( resource ) || (type == LockType.READ && readLocked.contains( resource ));
+        }
+
+        synchronized void add( LockType type, Object[] resources )
+        {
+            for ( Object resource : resources )
+            {
+                if ( readLocked.size() + writeLocked.size() >= MAX_REMEMBERED_LOCKS ) return;
+                (type == LockType.WRITE ? writeLocked : readLocked).add( resource );
+            }
+        }
+
+        @Override
+        public void beforeCompletion()
+        {
+        }
+
+        @Override
+        public void afterCompletion( int status )
+        {
+            grantedLocks.remove( tx );
+        }
+    }
+
     private static enum LockGrabber
     {
-        NODE_READ
+        NODE_READ( LockType.READ, true )
         {
             @Override
-            Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource )
+            ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources )
             {
-                return master.acquireNodeReadLock( context, ((Node)resource).getId() );
+                return master.acquireNodeReadLockAsync( context, nodeIds( resources ) );
             }
         },
-        NODE_WRITE
+        NODE_WRITE( LockType.WRITE, true )
         {
             @Override
-            Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource )
+            ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources )
             {
-                return master.acquireNodeWriteLock( context, ((Node)resource).getId() );
+                return master.acquireNodeWriteLockAsync( context, nodeIds( resources ) );
             }
         },
-        RELATIONSHIP_READ
+        RELATIONSHIP_READ( LockType.READ, true )
         {
             @Override
-            Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource )
+            ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources )
             {
-                return master.acquireRelationshipReadLock( context, ((Relationship)resource).getId() );
+                return master.acquireRelationshipReadLockAsync( context, relationshipIds( resources ) );
             }
         },
-        RELATIONSHIP_WRITE
+        RELATIONSHIP_WRITE( LockType.WRITE, true )
         {
             @Override
-            Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource )
+            ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources )
             {
-                return master.acquireRelationshipWriteLock( context, ((Relationship)resource).getId() );
+                return master.acquireRelationshipWriteLockAsync( context, relationshipIds( resources ) );
             }
         },
-        GRAPH_READ
+        GRAPH_READ( LockType.READ, false )
         {
             @Override
-            Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource )
+            ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources )
             {
-                return master.acquireGraphReadLock( context );
+                return master.acquireGraphReadLockAsync( context );
             }
         },
-        GRAPH_WRITE
+        GRAPH_WRITE( LockType.WRITE, false )
         {
             @Override
-            Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource )
+            ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources )
             {
-                return master.acquireGraphWriteLock( context );
+                return master.acquireGraphWriteLockAsync( context );
             }
         },
-        INDEX_WRITE
+        INDEX_WRITE( LockType.WRITE, false )
         {
             @Override
-            Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource )
+            ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources )
             {
-                IndexLock lock = (IndexLock) resource;
-                return master.acquireIndexWriteLock( context, lock.getIndex(), lock.getKey() );
+                IndexLock lock = (IndexLock) resources[0];
+                return master.acquireIndexWriteLockAsync( context, lock.getIndex(), lock.getKey() );
             }
         },
-        INDEX_READ
+        INDEX_READ( LockType.READ, false )
         {
             @Override
-            Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource )
+            ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources )
             {
-                IndexLock lock = (IndexLock) resource;
-                return master.acquireIndexReadLock( context, lock.getIndex(), lock.getKey() );
+                IndexLock lock = (IndexLock) resources[0];
+                return master.acquireIndexReadLockAsync( context, lock.getIndex(), lock.getKey() );
             }
         };
 
-        abstract Response<LockResult> acquireLock( Master master, SlaveContext context, Object resource );
+        private final LockType type;
+        private final boolean batchable;
+
+        private LockGrabber( LockType type, boolean batchable )
+        {
+            this.type = type;
+            this.batchable = batchable;
+        }
+
+        /**
+         * @param resources more than one only if this grabber is batchable.
+         */
+        abstract ResponseFuture<LockResult> acquireLock( AsyncMaster master, SlaveContext context, Object... resources );
+
+        /**
+         * @return the grabber for locking {@code resource} on the master, or
+         * {@code null} if it's only locked locally.
+         */
+        static LockGrabber forResource( LockType type, Object resource )
+        {
+            boolean write = type == LockType.WRITE;
+            if ( resource instanceof Node ) return write ? NODE_WRITE : NODE_READ;
+            if ( resource instanceof Relationship ) return write ? RELATIONSHIP_WRITE : RELATIONSHIP_READ;
+            if ( resource instanceof GraphProperties ) return write ? GRAPH_WRITE : GRAPH_READ;
+            if ( resource instanceof IndexLock ) return write ? INDEX_WRITE : INDEX_READ;
+            return null;
+        }
+
+        private static long[] nodeIds( Object[] resources )
+        {
+            long[] ids = new long[resources.length];
+            for ( int i = 0; i < resources.length; i++ )
+            {
+                ids[i] = ((Node) resources[i]).getId();
+            }
+            return ids;
+        }
+
+        private static long[] relationshipIds( Object[] resources )
+        {
+            long[] ids = new long[resources.length];
+            for ( int i = 0; i < resources.length; i++ )
+            {
+                ids[i] = ((Relationship) resources[i]).getId();
+            }
+            return ids;
+        }
     }
 }
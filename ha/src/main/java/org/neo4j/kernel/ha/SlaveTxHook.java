@@ -19,6 +19,8 @@
  */
 package org.neo4j.kernel.ha;
 
+import static org.neo4j.kernel.ha.AsyncMasterAdapter.asAsync;
+
 import javax.transaction.Transaction;
 import org.neo4j.kernel.GraphDatabaseAPI;
 import org.neo4j.kernel.impl.transaction.TxHook;
@@ -36,18 +38,14 @@ public class SlaveTxHook implements TxHook
         this.spi = spi;
     }
 
+    /**
+     * The transaction is begun on the master by its first lock or commit
+     * request instead, saving a round trip.
+     */
     @Override
     public void initializeTransaction( int eventIdentifier )
     {
-        try
-        {
-            databaseOperations.receive( broker.getMaster().first().initializeTx( databaseOperations.getSlaveContext( eventIdentifier ) ) );
-        }
-        catch ( RuntimeException e )
-        {
-            databaseOperations.exceptionHappened( e );
-            throw e;
-        }
+        databaseOperations.initializeTxWithFirstRequest( eventIdentifier );
     }
 
     public boolean hasAnyLocks( Transaction tx )
@@ -57,10 +55,14 @@ public class SlaveTxHook implements TxHook
 
     public void finishTransaction( int eventIdentifier, boolean success )
     {
+        if ( !databaseOperations.txFinished( eventIdentifier ) )
+        {   // Never got to the master, so there's nothing to finish there
+            return;
+        }
         try
         {
-            databaseOperations.receive( broker.getMaster().first().finishTransaction(
-                    databaseOperations.getSlaveContext( eventIdentifier ), success ) );
+            databaseOperations.receive( asAsync( broker.getMaster().first() ).finishTransactionAsync(
+                    databaseOperations.getSlaveContext( eventIdentifier ), success ).awaitResponse() );
         }
         catch ( RuntimeException e )
         {
@@ -28,6 +28,7 @@ import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
 import org.neo4j.com.SlaveContext.Tx;
 import org.neo4j.com.TxExtractor;
+import org.neo4j.kernel.impl.transaction.EnlistedResources;
 import org.neo4j.kernel.impl.transaction.TxManager;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
 import org.neo4j.kernel.impl.transaction.xaframework.TxIdGenerator;
@@ -69,36 +70,48 @@ public class SlaveTxIdGenerator implements TxIdGenerator
         try
         {
             final int eventIdentifier = txManager.getEventIdentifier();
-            Response<Long> response = broker.getMaster().first().commitSingleResourceTransaction(
-                    onlyForThisDataSource( databaseOperations.getSlaveContext( eventIdentifier ), dataSource ),
-                    dataSource.getName(), new TxExtractor()
+            SlaveContext context = databaseOperations.getSlaveContext( eventIdentifier );
+            boolean initializing = databaseOperations.isTxInitializationPending( eventIdentifier );
+            if ( initializing ) context = context.initializingTx();
+            TxExtractor txGetter = new TxExtractor()
+            {
+                @Override
+                public void extract( LogBuffer buffer )
+                {
+                    try
+                    {
+                        dataSource.getPreparedTransaction( identifier, buffer );
+                    }
+                    catch ( IOException e )
                     {
-                        @Override
-                        public void extract( LogBuffer buffer )
-                        {
-                            try
-                            {
-                                dataSource.getPreparedTransaction( identifier, buffer );
-                            }
-                            catch ( IOException e )
-                            {
-                                throw new RuntimeException( e );
-                            }
-                        }
+                        throw new RuntimeException( e );
+                    }
+                }
 
-                        @Override
-                        public ReadableByteChannel extract()
-                        {
-                            try
-                            {
-                                return dataSource.getPreparedTransaction( identifier );
-                            }
-                            catch ( IOException e )
-                            {
-                                throw new RuntimeException( e );
-                            }
-                        }
-                    });
+                @Override
+                public ReadableByteChannel extract()
+                {
+                    try
+                    {
+                        return dataSource.getPreparedTransaction( identifier );
+                    }
+                    catch ( IOException e )
+                    {
+                        throw new RuntimeException( e );
+                    }
+                }
+            };
+            Master master = broker.getMaster().first();
+            if ( isOnlyResource() )
+            {   // Nothing else can be part of this transaction, so let it be finished along with the commit
+                Response<Long> response = master.commitAndFinishTransaction( context, dataSource.getName(),
+                        txGetter );
+                databaseOperations.txFinishedOnMaster( eventIdentifier );
+                return databaseOperations.receive( response );
+            }
+            Response<Long> response = master.commitSingleResourceTransaction(
+                    onlyForThisDataSource( context, dataSource ), dataSource.getName(), txGetter );
+            if ( initializing ) databaseOperations.txBegunOnMaster( eventIdentifier );
             return databaseOperations.receive( response );
         }
         catch ( RuntimeException e )
@@ -108,6 +121,18 @@ public class SlaveTxIdGenerator implements TxIdGenerator
         }
     }
 
+    /**
+     * Finishing along with a commit which isn't the last one of the transaction
+     * would release its locks on the master before its other resources are
+     * committed there, so this is decided from the resources enlisted in this
+     * very transaction, f.ex. a transaction not touching any index commits in
+     * one round trip even with the index data source registered.
+     */
+    private boolean isOnlyResource()
+    {
+        return EnlistedResources.isSingleResource( txManager.getTransaction() );
+    }
+
     @SuppressWarnings( "unchecked" )
     private SlaveContext onlyForThisDataSource( SlaveContext slaveContext, XaDataSource dataSource )
     {
@@ -127,7 +152,7 @@ public class SlaveTxIdGenerator implements TxIdGenerator
         }
         return new SlaveContext( slaveContext.getSessionId(), slaveContext.machineId(),
                 slaveContext.getEventIdentifier(), new Tx[] {txForDs}, slaveContext.getMasterId(),
-                slaveContext.getChecksum() );
+                slaveContext.getChecksum(), slaveContext.initializesTx() );
     }
 
     public int getCurrentMasterId()
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.impl.transaction.xaframework.LogEntry;
+import org.neo4j.kernel.impl.transaction.xaframework.LogIoUtils;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+
+/**
+ * Bounded in-memory index of txId -> (master id, checksum) for the neo store
+ * data source. Looking these up otherwise means scanning the logical log for
+ * the start entry of the transaction, something that is done for every
+ * {@link org.neo4j.com.SlaveContext} a slave creates and every context the
+ * master verifies.
+ *
+ * The index is direct mapped on txId, so a slot is simply overwritten by a
+ * newer transaction mapping to it. Since transaction ids are sequential that
+ * means the most recent {@code capacity} transactions are kept. Reads and
+ * writes are lock free.
+ */
+public class TxMetadataCache
+{
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TxMetadataCache( int capacity )
+    {
+        if ( capacity < 1 ) throw new IllegalArgumentException( "Capacity must be positive, was " + capacity );
+        this.entries = new AtomicReferenceArray<Entry>( capacity );
+    }
+
+    /**
+     * @return the master id and checksum of {@code txId}, or {@code null} if
+     * it isn't in the index. Doesn't touch the hit/miss counters.
+     */
+    public Pair<Integer, Long> get( long txId )
+    {
+        Entry entry = entries.get( slot( txId ) );
+        return entry != null && entry.txId == txId ? entry.metadata : null;
+    }
+
+    public void put( long txId, int masterId, long checksum )
+    {
+        entries.set( slot( txId ), new Entry( txId, Pair.of( masterId, checksum ) ) );
+    }
+
+    /**
+     * Looks up the master id and checksum of {@code txId}, reading it from the
+     * logical log of {@code dataSource} and remembering it if it isn't already
+     * in the index.
+     */
+    public Pair<Integer, Long> getMasterForCommittedTx( XaDataSource dataSource, long txId ) throws IOException
+    {
+        Pair<Integer, Long> result = get( txId );
+        if ( result != null )
+        {
+            hits.incrementAndGet();
+            return result;
+        }
+        misses.incrementAndGet();
+        result = dataSource.getMasterForCommittedTx( txId );
+        put( txId, result.first(), result.other() );
+        return result;
+    }
+
+    /**
+     * Puts the just committed/applied transaction {@code txId} in the index,
+     * with the master id and checksum of the start entry it was applied from,
+     * so that the next slave context/verification doesn't have to go to the
+     * log. If the start entry can't be made out it's left to the log.
+     *
+     * @param applied the channel the transaction was applied from, after it's
+     * been applied.
+     */
+    public void committed( long txId, StartRecorder applied )
+    {
+        Pair<Integer, Long> metadata = applied.startEntryMetadata();
+        if ( metadata != null ) put( txId, metadata.first(), metadata.other() );
+    }
+
+    /**
+     * Wraps the channel a transaction is applied from, keeping the first bytes
+     * read from it, i.e. its start entry, from which the master id and checksum
+     * of the transaction are the same as when read back from the log.
+     */
+    public static class StartRecorder implements ReadableByteChannel
+    {
+        // Bigger than any start entry, Xid ids are at most 64 bytes each
+        private static final int MAX_START_ENTRY_SIZE = 256;
+
+        private final ReadableByteChannel source;
+        private final byte[] start = new byte[MAX_START_ENTRY_SIZE];
+        private int recorded;
+
+        public StartRecorder( ReadableByteChannel source )
+        {
+            this.source = source;
+        }
+
+        @Override
+        public int read( ByteBuffer dst ) throws IOException
+        {
+            int position = dst.position();
+            int read = source.read( dst );
+            if ( read > 0 && recorded < start.length )
+            {
+                ByteBuffer readBytes = dst.duplicate();
+                readBytes.position( position );
+                readBytes.limit( position + read );
+                int length = Math.min( read, start.length - recorded );
+                readBytes.get( start, recorded, length );
+                recorded += length;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return source.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            source.close();
+        }
+
+        /**
+         * @return master id and checksum of the start entry read from the
+         * channel, or {@code null} if it couldn't be made out.
+         */
+        Pair<Integer, Long> startEntryMetadata()
+        {
+            try
+            {
+                LogEntry entry = LogIoUtils.readEntry( ByteBuffer.allocate( MAX_START_ENTRY_SIZE ),
+                        Channels.newChannel( new ByteArrayInputStream( start, 0, recorded ) ), null );
+                if ( !(entry instanceof LogEntry.Start) ) return null;
+                LogEntry.Start startEntry = (LogEntry.Start) entry;
+                return Pair.of( startEntry.getMasterId(), startEntry.getChecksum() );
+            }
+            catch ( IOException e )
+            {
+                return null;
+            }
+            catch ( RuntimeException e )
+            {   // Cut short or not a start entry
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Forgets everything, f.ex. when the store has been replaced.
+     */
+    public void clear()
+    {
+        for ( int i = 0; i < entries.length(); i++ )
+        {
+            entries.set( i, null );
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public int getCapacity()
+    {
+        return entries.length();
+    }
+
+    private int slot( long txId )
+    {
+        return (int) (Math.abs( txId ) % entries.length());
+    }
+
+    private static class Entry
+    {
+        private final long txId;
+        private final Pair<Integer, Long> metadata;
+
+        Entry( long txId, Pair<Integer, Long> metadata )
+        {
+            this.txId = txId;
+            this.metadata = metadata;
+        }
+    }
+}
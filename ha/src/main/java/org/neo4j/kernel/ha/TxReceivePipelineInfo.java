@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = TxReceivePipelineInfo.NAME )
+@Description( "Information about transactions received from the master being read off the network in one thread " +
+        "while applied in another" )
+public interface TxReceivePipelineInfo
+{
+    final String NAME = "Transaction Receive Pipeline";
+
+    @Description( "The max number of received transactions waiting to be applied, 0 if not pipelined" )
+    int getQueueDepth();
+
+    @Description( "The number of received transactions currently waiting to be applied" )
+    int getQueued();
+
+    @Description( "The highest number of received transactions that have been waiting to be applied" )
+    int getMaxQueued();
+
+    @Description( "The number of transaction streams long enough to be received in a thread of their own" )
+    long getPipelinedStreams();
+
+    @Description( "The number of times receiving had to wait for applying to catch up" )
+    long getReceiveStalls();
+
+    @Description( "The total time receiving has waited for applying to catch up, in milliseconds" )
+    long getReceiveStallTimeMillis();
+
+    @Description( "The number of times applying had to wait for more transactions to be received" )
+    long getApplyStalls();
+
+    @Description( "The total time applying has waited for more transactions to be received, in milliseconds" )
+    long getApplyStallTimeMillis();
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = TxReplayCacheInfo.NAME )
+@Description( "Information about the in-memory cache of recently committed transactions the master sends to slaves" )
+public interface TxReplayCacheInfo
+{
+    final String NAME = "Transaction Replay Cache";
+
+    @Description( "The number of transactions sent to slaves from memory" )
+    long getHits();
+
+    @Description( "The number of transactions that had to be read from the logical log" )
+    long getMisses();
+
+    @Description( "The number of transactions evicted to keep the cache within its size" )
+    long getEvictions();
+
+    @Description( "The number of transactions currently in the cache" )
+    int getTransactionCount();
+
+    @Description( "The total size of the transactions currently in the cache, in bytes" )
+    long getBytes();
+
+    @Description( "The maximum total size of the transactions in the cache, in bytes" )
+    long getMaxBytes();
+}
@@ -30,9 +30,14 @@ import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.ZooKeeper;
 import org.neo4j.com.Client.ConnectionLostHandler;
 import org.neo4j.com.ComException;
+import org.neo4j.com.Compression;
 import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFileRange;
 import org.neo4j.com.StoreIdGetter;
+import org.neo4j.com.StoreFilePrefix;
 import org.neo4j.com.StoreWriter;
 import org.neo4j.com.TxExtractor;
 import org.neo4j.helpers.Pair;
@@ -196,7 +201,15 @@ public abstract class AbstractZooKeeperManager
         return new MasterClient( master.getServer().first(),
                 master.getServer().other(), this.msgLog, storeIdGetter,
                 ConnectionLostHandler.NO_ACTION, clientReadTimeout,
-                clientLockReadTimeout, maxConcurrentChannelsPerSlave );
+                clientLockReadTimeout, maxConcurrentChannelsPerSlave, getCompression() );
+    }
+
+    /**
+     * @return the compression for clients to the master to keep their metrics in.
+     */
+    protected Compression getCompression()
+    {
+        return new Compression();
     }
 
     protected abstract int getMyMachineId();
@@ -469,6 +482,12 @@ public abstract class AbstractZooKeeperManager
             throw noMasterException();
         }
 
+        @Override
+        public Response<Void> awaitUpdates( SlaveContext context, int maxWaitMillis )
+        {
+            throw noMasterException();
+        }
+
         private ComException noMasterException()
         {
             return new NoMasterException();
@@ -499,7 +518,22 @@ public abstract class AbstractZooKeeperManager
         }
 
         @Override
-        public Response<Void> copyStore( SlaveContext context, StoreWriter writer )
+        public Response<Void> copyStore( SlaveContext context, Map<String, StoreFilePrefix> resumeFrom,
+                StoreWriter writer )
+        {
+            throw noMasterException();
+        }
+
+        @Override
+        public Response<StoreCopyPlan> planStoreCopy( SlaveContext context, Map<String, StoreFilePrefix> resumeFrom,
+                int parts )
+        {
+            throw noMasterException();
+        }
+
+        @Override
+        public Response<Void> copyStorePart( SlaveContext context, Tx[] startTransactions,
+                List<StoreFileRange> ranges, StoreWriter writer )
         {
             throw noMasterException();
         }
@@ -518,6 +552,13 @@ public abstract class AbstractZooKeeperManager
             throw noMasterException();
         }
 
+        @Override
+        public Response<Long> commitAndFinishTransaction( SlaveContext context, String resource,
+                TxExtractor txGetter )
+        {
+            throw noMasterException();
+        }
+
         @Override
         public Response<IdAllocation> allocateIds( IdType idType )
         {
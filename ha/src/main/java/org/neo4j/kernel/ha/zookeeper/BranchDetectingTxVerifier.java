@@ -26,19 +26,23 @@ import org.neo4j.helpers.Pair;
 import org.neo4j.kernel.GraphDatabaseAPI;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.ha.BranchedDataException;
+import org.neo4j.kernel.ha.TxMetadataCache;
 import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 
 class BranchDetectingTxVerifier implements TxChecksumVerifier
 {
     private final GraphDatabaseAPI db;
+    private final TxMetadataCache txMetadataCache;
     private XaDataSource dataSource;
 
-    BranchDetectingTxVerifier( GraphDatabaseAPI db /* I'd like to get in StringLogger, XaDataSource instead */ )
+    BranchDetectingTxVerifier( GraphDatabaseAPI db /* I'd like to get in StringLogger, XaDataSource instead */,
+            TxMetadataCache txMetadataCache )
     {
         /* We cannot pass in XaResourceManager because it this time we don't have a
          * proper db, merely the HA graph db which is a layer around a not-yet-started db
          * Rickards restructuring will of course fix this */
         this.db = db;
+        this.txMetadataCache = txMetadataCache;
     }
     
     @Override
@@ -46,7 +50,7 @@ class BranchDetectingTxVerifier implements TxChecksumVerifier
     {
         try
         {
-            Pair<Integer, Long> readChecksum = dataSource().getMasterForCommittedTx( txId );
+            Pair<Integer, Long> readChecksum = txMetadataCache.getMasterForCommittedTx( dataSource(), txId );
             boolean match = masterId == readChecksum.first() && checksum == readChecksum.other();
             
             /* MP: This "packing" of a BranchedDataException inside a ComException is just to
@@ -28,6 +28,8 @@ import static org.neo4j.kernel.ha.HaSettings.read_timeout;
 import static org.neo4j.kernel.ha.HaSettings.server;
 import static org.neo4j.kernel.ha.HaSettings.server_id;
 import static org.neo4j.kernel.ha.HaSettings.slave_coordinator_update_mode;
+import static org.neo4j.kernel.ha.HaSettings.tx_metadata_cache_size;
+import static org.neo4j.kernel.ha.HaSettings.tx_replay_cache_size;
 import static org.neo4j.kernel.ha.HaSettings.zk_session_timeout;
 
 import java.io.IOException;
@@ -50,7 +52,10 @@ import org.apache.zookeeper.Watcher.Event.KeeperState;
 import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.ZooKeeper;
 import org.neo4j.backup.OnlineBackupSettings;
+import org.neo4j.com.Compression;
+import org.neo4j.com.FlowControl;
 import org.neo4j.com.StoreIdGetter;
+import org.neo4j.com.TransactionReplayCache;
 import org.neo4j.helpers.Exceptions;
 import org.neo4j.helpers.Pair;
 import org.neo4j.kernel.GraphDatabaseAPI;
@@ -58,6 +63,7 @@ import org.neo4j.kernel.HaConfig;
 import org.neo4j.kernel.InformativeStackTrace;
 import org.neo4j.kernel.SlaveUpdateMode;
 import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.ha.AbstractHAGraphDatabase;
 import org.neo4j.kernel.ha.ClusterEventReceiver;
 import org.neo4j.kernel.ha.ConnectionInformation;
 import org.neo4j.kernel.ha.HaSettings;
@@ -65,6 +71,7 @@ import org.neo4j.kernel.ha.Master;
 import org.neo4j.kernel.ha.MasterImpl;
 import org.neo4j.kernel.ha.MasterServer;
 import org.neo4j.kernel.ha.SlaveDatabaseOperations;
+import org.neo4j.kernel.ha.TxMetadataCache;
 import org.neo4j.kernel.impl.nioneo.store.StoreId;
 import org.neo4j.kernel.impl.transaction.xaframework.LogExtractor;
 import org.neo4j.kernel.impl.transaction.xaframework.NullLogBuffer;
@@ -101,9 +108,24 @@ public class ZooClient extends AbstractZooKeeperManager
     private final boolean writeLastCommittedTx;
     private final String clusterName;
     private final boolean allowCreateCluster;
+    private final Compression compression;
+    private final FlowControl flowControl;
 
     public ZooClient( String storeDir, StringLogger stringLogger, StoreIdGetter storeIdGetter, Config conf,
             SlaveDatabaseOperations localDatabase, ClusterEventReceiver clusterReceiver )
+    {
+        this( storeDir, stringLogger, storeIdGetter, conf, localDatabase, clusterReceiver, new Compression(),
+                new FlowControl() );
+    }
+
+    /**
+     * @param compression how the master server compresses its responses, also
+     * where clients to the master keep their metrics.
+     * @param flowControl how far ahead the master server may write responses.
+     */
+    public ZooClient( String storeDir, StringLogger stringLogger, StoreIdGetter storeIdGetter, Config conf,
+            SlaveDatabaseOperations localDatabase, ClusterEventReceiver clusterReceiver, Compression compression,
+            FlowControl flowControl )
     {
         super( conf.get( HaSettings.coordinators ),
             storeIdGetter, stringLogger,
@@ -115,6 +137,8 @@ public class ZooClient extends AbstractZooKeeperManager
         this.conf = conf;
         this.localDatabase = localDatabase;
         this.clusterReceiver = clusterReceiver;
+        this.compression = compression;
+        this.flowControl = flowControl;
         machineId = conf.getInteger( server_id );
         backupPort = conf.getInteger( OnlineBackupSettings.online_backup_port);
         haServer = conf.isSet(server) ? conf.get( server ) : defaultServer();
@@ -165,10 +189,42 @@ public class ZooClient extends AbstractZooKeeperManager
     public Object instantiateMasterServer( GraphDatabaseAPI graphDb )
     {
         int timeOut = conf.isSet( lock_read_timeout ) ? conf.getInteger( lock_read_timeout ) : conf.getInteger( read_timeout );
-        return new MasterServer( new MasterImpl( graphDb, timeOut ),
+        TxMetadataCache txMetadataCache = txMetadataCacheFor( graphDb );
+        return new MasterServer( new MasterImpl( graphDb, txMetadataCache, txReplayCacheFor( graphDb ), timeOut ),
                 Machine.splitIpAndPort( haServer ).other(), graphDb.getMessageLog(),
                 conf.getInteger( max_concurrent_channels_per_slave ),
-                clientLockReadTimeout, new BranchDetectingTxVerifier( graphDb ) );
+                clientLockReadTimeout, new BranchDetectingTxVerifier( graphDb, txMetadataCache ), compression,
+                flowControl );
+    }
+
+    @Override
+    protected Compression getCompression()
+    {
+        return compression;
+    }
+
+    private TxMetadataCache txMetadataCacheFor( GraphDatabaseAPI graphDb )
+    {
+        // Share the cache with the HA db so that it survives master/slave switches
+        if ( graphDb instanceof AbstractHAGraphDatabase )
+        {
+            return ((AbstractHAGraphDatabase) graphDb).getHighlyAvailableGraphDatabase().getTxMetadataCache();
+        }
+        return new TxMetadataCache( conf.getInteger( tx_metadata_cache_size ) );
+    }
+
+    private TransactionReplayCache txReplayCacheFor( GraphDatabaseAPI graphDb )
+    {
+        if ( graphDb instanceof AbstractHAGraphDatabase )
+        {
+            // Shared with the HA db for monitoring, but whatever it has from when this
+            // instance was master before may since have been replaced by another master
+            TransactionReplayCache cache = ((AbstractHAGraphDatabase) graphDb).getHighlyAvailableGraphDatabase()
+                    .getTxReplayCache();
+            cache.clear();
+            return cache;
+        }
+        return new TransactionReplayCache( conf.getInteger( tx_replay_cache_size ) * 1024L * 1024L );
     }
 
     @Override
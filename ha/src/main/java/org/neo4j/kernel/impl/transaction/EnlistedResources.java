@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction;
+
+import javax.transaction.Transaction;
+
+/**
+ * What {@link TransactionImpl} knows about the resources enlisted in it, but
+ * only tells classes in this package.
+ */
+public class EnlistedResources
+{
+    private EnlistedResources()
+    {
+    }
+
+    /**
+     * @return {@code true} if {@code tx} is known to have exactly one resource
+     * enlisted, i.e. committing that resource is committing the transaction.
+     */
+    public static boolean isSingleResource( Transaction tx )
+    {
+        return tx instanceof TransactionImpl && ((TransactionImpl) tx).getResourceCount() == 1;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.ha;
+
+import java.nio.ByteBuffer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Ignore;
+import org.neo4j.com.BlockLogBuffer;
+import org.neo4j.com.BlockLogReader;
+
+/**
+ * Compares the throughput of the small and large block formats of
+ * {@link BlockLogBuffer} for a catch-up stream, i.e. a lot of transactions
+ * written back to back the way the master sends them and then read the way a
+ * slave applies them.
+ *
+ * Arguments: [number of transactions] [transaction size in bytes] [rounds]
+ */
+@Ignore
+public class BlockFormatThroughput
+{
+    public static void main( String[] args ) throws Exception
+    {
+        int transactions = args.length > 0 ? Integer.parseInt( args[0] ) : 20000;
+        int transactionSize = args.length > 1 ? Integer.parseInt( args[1] ) : 2000;
+        int rounds = args.length > 2 ? Integer.parseInt( args[2] ) : 10;
+
+        for ( int round = 0; round < rounds; round++ )
+        {
+            // The first rounds are warmup
+            boolean print = round >= rounds/2;
+            run( "small blocks", false, transactions, transactionSize, print );
+            run( "large blocks", true, transactions, transactionSize, print );
+        }
+    }
+
+    private static void run( String name, boolean largeBlocks, int transactions, int transactionSize,
+            boolean print ) throws Exception
+    {
+        ChannelBuffer stream = ChannelBuffers.dynamicBuffer( transactions * (transactionSize + 16) );
+        byte[] command = new byte[50];
+        long start = System.nanoTime();
+        BlockLogBuffer writer = new BlockLogBuffer( stream, largeBlocks );
+        for ( int tx = 0; tx < transactions; tx++ )
+        {
+            stream.writeLong( tx );
+            // Roughly what a logical log entry looks like, some primitives and some data
+            for ( int written = 0; written < transactionSize; written += 8 + 4 + command.length )
+            {
+                writer.putLong( tx );
+                writer.putInt( written );
+                writer.put( command );
+            }
+            writer.done();
+        }
+        long written = System.nanoTime();
+
+        ByteBuffer target = ByteBuffer.allocate( transactionSize * 2 );
+        for ( int tx = 0; tx < transactions; tx++ )
+        {
+            stream.readLong();
+            BlockLogReader reader = new BlockLogReader( stream, largeBlocks );
+            target.clear();
+            while ( reader.read( target ) > 0 )
+            {
+                target.clear();
+            }
+        }
+        long read = System.nanoTime();
+
+        if ( print )
+        {
+            double megaBytes = (double) transactions * transactionSize / (1024*1024);
+            System.out.println( name + ": write " + (int) (megaBytes / ((written - start) / 1e9)) + " MB/s, read " +
+                    (int) (megaBytes / ((read - written) / 1e9)) + " MB/s, " + stream.writerIndex() + " bytes" );
+        }
+    }
+}
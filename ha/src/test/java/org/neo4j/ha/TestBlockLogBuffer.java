@@ -287,6 +287,73 @@ public class TestBlockLogBuffer
         assertThat( actual, new ArrayMatches<byte[]>( Arrays.copyOfRange( bytesValue, 510, 600 ) ) );
     }
     
+    @Test
+    public void largeBlocksAreLengthPrefixed() throws Exception
+    {
+        ChannelBuffer wrappedBuffer = ChannelBuffers.dynamicBuffer();
+        BlockLogBuffer buffer = new BlockLogBuffer( wrappedBuffer, true );
+
+        byte[] bytesValue = new byte[600];
+        bytesValue[0] = 1;
+        bytesValue[599] = 7;
+        buffer.put( bytesValue );
+        buffer.putLong( 123456 );
+        buffer.done();
+
+        assertEquals( 4 + 600 + 8, wrappedBuffer.readableBytes() );
+        assertEquals( 600 + 8, wrappedBuffer.readInt() );
+        byte[] actual = new byte[600];
+        wrappedBuffer.readBytes( actual );
+        assertThat( actual, new ArrayMatches<byte[]>( bytesValue ) );
+        assertEquals( 123456, wrappedBuffer.readLong() );
+    }
+
+    @Test
+    public void canReadLargeBlocksSpanningSeveralBlocks() throws Exception
+    {
+        ChannelBuffer wrappedBuffer = ChannelBuffers.dynamicBuffer();
+        BlockLogBuffer buffer = new BlockLogBuffer( wrappedBuffer, true );
+
+        // More than two large blocks worth, not aligned with the block size
+        byte[] bytesValue = new byte[150*1021];
+        for ( int i = 0; i < bytesValue.length; i++ ) bytesValue[i] = (byte) i;
+        buffer.put( bytesValue );
+        buffer.done();
+        wrappedBuffer.writeByte( 42 );
+
+        BlockLogReader reader = new BlockLogReader( wrappedBuffer, true );
+        ByteBuffer verificationBuffer = ByteBuffer.allocate( bytesValue.length + 1000 );
+        while ( reader.read( verificationBuffer ) >= 0 );
+        verificationBuffer.flip();
+        assertEquals( bytesValue.length, verificationBuffer.remaining() );
+        byte[] actual = new byte[bytesValue.length];
+        verificationBuffer.get( actual );
+        assertThat( actual, new ArrayMatches<byte[]>( bytesValue ) );
+        assertEquals( 42, wrappedBuffer.readByte() );
+    }
+
+    @Test
+    public void closingLargeBlockReaderSkipsUnreadBlocks() throws Exception
+    {
+        ChannelBuffer wrappedBuffer = ChannelBuffers.dynamicBuffer();
+        BlockLogBuffer buffer = new BlockLogBuffer( wrappedBuffer, true );
+        buffer.put( new byte[100*1024] );
+        buffer.done();
+        // The buffer can be reused for the next transaction
+        buffer.putInt( 1234 );
+        buffer.done();
+
+        BlockLogReader reader = new BlockLogReader( wrappedBuffer, true );
+        reader.read( ByteBuffer.allocate( 10 ) );
+        reader.close();
+        reader = new BlockLogReader( wrappedBuffer, true );
+        ByteBuffer verificationBuffer = ByteBuffer.allocate( 100 );
+        assertEquals( 4, reader.read( verificationBuffer ) );
+        verificationBuffer.flip();
+        assertEquals( 1234, verificationBuffer.getInt() );
+        assertEquals( -1, reader.read( verificationBuffer ) );
+    }
+
     private class ArrayMatches<T> extends BaseMatcher<T>
     {
         private final T expected;
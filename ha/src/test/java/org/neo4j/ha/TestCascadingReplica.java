@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+import static org.neo4j.test.TargetDirectory.forTest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.neo4j.backup.OnlineBackup;
+import org.neo4j.backup.OnlineBackupSettings;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionFailureException;
+import org.neo4j.graphdb.factory.GraphDatabaseSetting;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.HighlyAvailableGraphDatabase.BranchedDataPolicy;
+import org.neo4j.kernel.ha.CascadingReplica;
+import org.neo4j.kernel.ha.HaSettings;
+import org.neo4j.test.TargetDirectory;
+
+public class TestCascadingReplica
+{
+    private final TargetDirectory dir = forTest( getClass() );
+    private GraphDatabaseService upstream;
+    private final List<CascadingReplica> replicas = new ArrayList<CascadingReplica>();
+
+    @After
+    public void shutdown()
+    {
+        for ( CascadingReplica replica : replicas )
+        {
+            replica.shutdown();
+        }
+        if ( upstream != null ) upstream.shutdown();
+    }
+
+    @Test
+    public void replicaFollowsUpstreamAndServesReplicasOfItsOwn() throws Exception
+    {
+        // Stands in for a slave, anything with online backup enabled can be upstream
+        upstream = new EmbeddedGraphDatabase( dir.directory( "upstream", true ).getAbsolutePath(),
+                stringMap( OnlineBackupSettings.online_backup_enabled.name(), GraphDatabaseSetting.TRUE,
+                        OnlineBackupSettings.online_backup_port.name(), "6370" ) );
+        setName( upstream, "first" );
+
+        CascadingReplica replica = newReplica( "replica", "localhost:6370", "6371" );
+        CascadingReplica leaf = newReplica( "leaf", "localhost:6371", null );
+        assertEquals( "first", name( replica ) );
+        assertEquals( "first", name( leaf ) );
+
+        setName( upstream, "second" );
+        replica.pullUpdates();
+        leaf.pullUpdates();
+        assertEquals( "second", name( replica ) );
+        assertEquals( "second", name( leaf ) );
+    }
+
+    @Test
+    public void replicaBranchedOffUpstreamCopiesTheStoreAgain() throws Exception
+    {
+        upstream = newUpstream( "upstream", true );
+        setName( upstream, "first" );
+        CascadingReplica replica = newReplica( "replica", "localhost:6370", null );
+        // Same store, to take over from the upstream as if it had been rolled back
+        String fork = dir.directory( "fork", true ).getAbsolutePath();
+        OnlineBackup.from( "localhost", 6370 ).full( fork, false );
+
+        setName( upstream, "second" );
+        replica.pullUpdates();
+        assertEquals( "second", name( replica ) );
+
+        upstream.shutdown();
+        upstream = newUpstream( "fork", false );
+        setName( upstream, "second on fork" );
+        replica.pullUpdates();
+        assertEquals( "second on fork", name( replica ) );
+        File branched = new File( dir.directory( "replica", false ), "branched" );
+        assertTrue( "Branched store should have been kept", BranchedDataPolicy.isBranchedDataRootDirectory( branched ) );
+    }
+
+    @Test
+    public void cantCommitOnReplica() throws Exception
+    {
+        upstream = new EmbeddedGraphDatabase( dir.directory( "upstream", true ).getAbsolutePath(),
+                stringMap( OnlineBackupSettings.online_backup_enabled.name(), GraphDatabaseSetting.TRUE,
+                        OnlineBackupSettings.online_backup_port.name(), "6370" ) );
+        CascadingReplica replica = newReplica( "replica", "localhost:6370", null );
+        try
+        {
+            setName( replica.getGraphDatabase(), "written on replica" );
+            fail( "Shouldn't be able to commit on a replica" );
+        }
+        catch ( TransactionFailureException e )
+        {   // Good
+        }
+    }
+
+    private GraphDatabaseService newUpstream( String name, boolean clean )
+    {
+        return new EmbeddedGraphDatabase( dir.directory( name, clean ).getAbsolutePath(),
+                stringMap( OnlineBackupSettings.online_backup_enabled.name(), GraphDatabaseSetting.TRUE,
+                        OnlineBackupSettings.online_backup_port.name(), "6370" ) );
+    }
+
+    private CascadingReplica newReplica( String name, String upstream, String backupPort )
+    {
+        CascadingReplica replica = new CascadingReplica( dir.directory( name, true ).getAbsolutePath(),
+                backupPort == null ? stringMap( HaSettings.upstream.name(), upstream ) :
+                        stringMap( HaSettings.upstream.name(), upstream,
+                                OnlineBackupSettings.online_backup_enabled.name(), GraphDatabaseSetting.TRUE,
+                                OnlineBackupSettings.online_backup_port.name(), backupPort ) );
+        replicas.add( replica );
+        return replica;
+    }
+
+    private static void setName( GraphDatabaseService db, String name )
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node node = db.getReferenceNode();
+            node.setProperty( "name", name );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private static Object name( CascadingReplica replica )
+    {
+        return replica.getGraphDatabase().getReferenceNode().getProperty( "name" );
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.transaction.xaframework.InMemoryLogBuffer;
+import org.neo4j.kernel.impl.transaction.xaframework.LogExtractor;
+import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.test.TargetDirectory;
+
+public class TestTxMetadataCache
+{
+    @Test
+    public void shouldRememberPutTransactions() throws Exception
+    {
+        TxMetadataCache cache = new TxMetadataCache( 10 );
+        cache.put( 5, 1, 1234L );
+        cache.put( 6, 2, 5678L );
+
+        assertEquals( Pair.of( 1, 1234L ), cache.get( 5 ) );
+        assertEquals( Pair.of( 2, 5678L ), cache.get( 6 ) );
+        assertNull( cache.get( 7 ) );
+    }
+
+    @Test
+    public void newerTransactionShouldEvictOlderInSameSlot() throws Exception
+    {
+        TxMetadataCache cache = new TxMetadataCache( 10 );
+        cache.put( 3, 1, 10L );
+        cache.put( 13, 2, 20L );
+
+        assertNull( cache.get( 3 ) );
+        assertEquals( Pair.of( 2, 20L ), cache.get( 13 ) );
+    }
+
+    @Test
+    public void clearShouldForgetEverything() throws Exception
+    {
+        TxMetadataCache cache = new TxMetadataCache( 10 );
+        for ( long txId = 1; txId <= 10; txId++ )
+        {
+            cache.put( txId, 1, txId );
+        }
+        cache.clear();
+        for ( long txId = 1; txId <= 10; txId++ )
+        {
+            assertNull( cache.get( txId ) );
+        }
+    }
+
+    @Test
+    public void lookupOfCachedTransactionShouldCountAsHitAndNotTouchTheLog() throws Exception
+    {
+        TxMetadataCache cache = new TxMetadataCache( 10 );
+        cache.put( 42, 3, 99L );
+
+        // No data source given, a miss would blow up
+        assertEquals( Pair.of( 3, 99L ), cache.getMasterForCommittedTx( null, 42 ) );
+        assertEquals( 1, cache.getHits() );
+        assertEquals( 0, cache.getMisses() );
+    }
+
+    @Test
+    public void committedShouldRememberTheMasterAndChecksumOfTheAppliedStartEntry() throws Exception
+    {
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase(
+                TargetDirectory.forTest( getClass() ).directory( "committed", true ).getAbsolutePath() );
+        try
+        {
+            Transaction tx = db.beginTx();
+            db.createNode();
+            tx.success();
+            tx.finish();
+
+            XaDataSource dataSource = db.getXaDataSourceManager().getNeoStoreDataSource();
+            long txId = dataSource.getLastCommittedTxId();
+            LogExtractor extractor = dataSource.getXaContainer().getLogicalLog().getLogExtractor( txId, txId );
+            InMemoryLogBuffer transaction = new InMemoryLogBuffer();
+            assertEquals( txId, extractor.extractNext( transaction ) );
+            extractor.close();
+
+            TxMetadataCache.StartRecorder applied = new TxMetadataCache.StartRecorder( transaction );
+            ByteBuffer buffer = ByteBuffer.allocate( 100 );
+            while ( applied.read( buffer ) > 0 )
+            {
+                buffer.clear();
+            }
+            TxMetadataCache cache = new TxMetadataCache( 10 );
+            cache.committed( txId, applied );
+
+            assertEquals( dataSource.getMasterForCommittedTx( txId ), cache.get( txId ) );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void committedShouldLeaveTransactionsWithoutStartEntryToTheLog() throws Exception
+    {
+        TxMetadataCache cache = new TxMetadataCache( 10 );
+        cache.committed( 42, new TxMetadataCache.StartRecorder(
+                Channels.newChannel( new ByteArrayInputStream( new byte[] { 1, 2, 3 } ) ) ) );
+        assertNull( cache.get( 42 ) );
+    }
+}
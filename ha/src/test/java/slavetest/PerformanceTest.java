@@ -19,8 +19,18 @@
  */
 package slavetest;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.Ignore;
 import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseSetting;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.ha.HaSettings;
 
 @Ignore
 public class PerformanceTest
@@ -49,6 +59,114 @@ public class PerformanceTest
         testJob( new CommonJobs.PerformanceAcquireWriteLocksJob( 10000 ) );
     }
 
+    /**
+     * Prints the rate of small transactions committed on a slave for an
+     * increasing number of concurrent writers. Each of those commits is
+     * applied, and its log forced, on the master on its own, which is what
+     * eventually limits the write rate of the cluster.
+     */
+    @Test
+    public void concurrentSlaveCommits() throws Exception
+    {
+        SingleJvmTest single = new SingleJvmTest();
+        single.initializeDbs( 1 );
+        try
+        {
+            GraphDatabaseAPI slave = single.getSlave( 0 );
+            for ( int writers = 1; writers <= 32; writers *= 2 )
+            {
+                commitConcurrently( slave, writers, 200 );
+            }
+        }
+        finally
+        {
+            single.shutdownDbs();
+        }
+    }
+
+    private void commitConcurrently( final GraphDatabaseAPI db, int writers, final int txPerWriter )
+            throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < writers; i++ )
+        {
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for ( int j = 0; j < txPerWriter; j++ )
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                db.createNode();
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            };
+            thread.start();
+            threads.add( thread );
+        }
+        long t = System.currentTimeMillis();
+        start.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        long time = Math.max( 1, System.currentTimeMillis() - t );
+        if ( failure.get() != null ) throw new RuntimeException( failure.get() );
+        System.out.println( writers + " concurrent slave writers: " + (writers * txPerWriter * 1000L / time) +
+                " tx/s" );
+    }
+
+    /**
+     * Prints how long it takes a slave to copy the store of the master over
+     * 1, 2 and 4 streams, see {@link HaSettings#store_copy_streams}. The slaves
+     * are all started against the same master, one after the other.
+     */
+    @Test
+    public void storeCopyOverSeveralStreams() throws Exception
+    {
+        SingleJvmWithNettyTest cluster = new SingleJvmWithNettyTest();
+        cluster.clearExpectedResults();
+        cluster.disableVerificationAfterTest();
+        cluster.startUpMaster( MapUtil.stringMap() );
+        try
+        {
+            cluster.createBigMasterStore( 200 );
+            for ( int streams = 1; streams <= 4; streams *= 2 )
+            {
+                long t = System.currentTimeMillis();
+                cluster.addDb( MapUtil.stringMap( HaSettings.store_copy_streams.name(), Integer.toString( streams ),
+                        HaSettings.store_copy_from_slaves.name(), GraphDatabaseSetting.FALSE ), true );
+                cluster.awaitAllStarted();
+                System.out.println( "Store copied over " + streams + " streams in " +
+                        (System.currentTimeMillis() - t) + "ms" );
+            }
+        }
+        finally
+        {
+            cluster.shutdownDbs();
+            cluster.clearDb();
+        }
+    }
+
     public static void main( String[] args ) throws Exception
     {
         PerformanceTest perf = new PerformanceTest();
@@ -33,6 +33,10 @@ import static org.neo4j.helpers.collection.MapUtil.stringMap;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -41,9 +45,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Ignore;
@@ -64,6 +71,7 @@ import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.collection.IteratorUtil;
 import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.DeadlockDetectedException;
 import org.neo4j.kernel.GraphDatabaseAPI;
 import org.neo4j.kernel.HighlyAvailableGraphDatabase;
 import org.neo4j.kernel.configuration.Config;
@@ -364,6 +372,16 @@ public class SingleJvmWithNettyTest extends SingleJvmTest
         awaitAllStarted();
     }
 
+    @Test
+    public void slaveCopiesStoreOverSeveralStreams() throws Exception
+    {
+        startUpMaster( MapUtil.stringMap() );
+        createBigMasterStore( 10 );
+        addDb( MapUtil.stringMap( HaSettings.store_copy_streams.name(), "3" ), false );
+        awaitAllStarted();
+        // Verification is done @After
+    }
+
     @Test
     public void failCommitLongGoingTxOnSlaveAfterMasterRestart() throws Exception
     {
@@ -438,6 +456,196 @@ public class SingleJvmWithNettyTest extends SingleJvmTest
         assertEquals( Pair.of( slaveTxsBefore.first(), slaveTxsBefore.other()+1 ), getTransactionCounts( slave ) );
     }
 
+    @Test
+    public void locksAcquiredUpFrontOnSlaveAreReleasedOnCommit() throws Exception
+    {
+        initializeDbs( 1 );
+        long[] nodeIds = new long[5];
+        for ( int i = 0; i < nodeIds.length; i++ )
+        {
+            nodeIds[i] = executeJobOnMaster( new CommonJobs.CreateNodeJob( true ) );
+        }
+        pullUpdates();
+
+        HighlyAvailableGraphDatabase slave = (HighlyAvailableGraphDatabase) getSlave( 0 );
+        MasterSpy master = spyOnMaster( slave );
+        for ( int round = 0; round < 2; round++ )
+        {
+            int lockRequestsBefore = master.calls( "acquireNodeWriteLock" );
+            Transaction tx = slave.beginTx();
+            Node[] nodes = new Node[nodeIds.length];
+            for ( int i = 0; i < nodes.length; i++ )
+            {
+                nodes[i] = slave.getNodeById( nodeIds[i] );
+            }
+            slave.acquireWriteLocks( nodes );
+            assertEquals( "One request for all nodes", lockRequestsBefore + 1,
+                    master.calls( "acquireNodeWriteLock" ) );
+            for ( Node node : nodes )
+            {
+                node.setProperty( "round", round );
+            }
+            assertEquals( "Modifying locked nodes went to the master again", lockRequestsBefore + 1,
+                    master.calls( "acquireNodeWriteLock" ) );
+            tx.success();
+            tx.finish();
+        }
+
+        // Would block if any of the locks were still held on the master
+        for ( long nodeId : nodeIds )
+        {
+            assertTrue( executeJobOnMaster( new CommonJobs.SetNodePropertyJob( nodeId, "round", 2 ) ) );
+            assertEquals( 1, slave.getNodeById( nodeId ).getProperty( "round" ) );
+        }
+    }
+
+    @Test
+    public void deadlockAcrossLocksAcquiredUpFrontOnTwoSlavesIsDetected() throws Exception
+    {
+        initializeDbs( 2 );
+        long first = executeJobOnMaster( new CommonJobs.CreateNodeJob( true ) );
+        long second = executeJobOnMaster( new CommonJobs.CreateNodeJob( true ) );
+        pullUpdates();
+
+        // Each holds one of the nodes and then asks for both, in opposite order
+        CountDownLatch bothHoldOne = new CountDownLatch( 2 );
+        ExecutorService executor = newFixedThreadPool( 2 );
+        try
+        {
+            Future<Boolean> firstDeadlocked = executor.submit( lockOneThenBoth(
+                    (HighlyAvailableGraphDatabase) getSlave( 0 ), first, second, bothHoldOne ) );
+            Future<Boolean> secondDeadlocked = executor.submit( lockOneThenBoth(
+                    (HighlyAvailableGraphDatabase) getSlave( 1 ), second, first, bothHoldOne ) );
+            assertTrue( "Exactly one of them should have been told about the deadlock",
+                    firstDeadlocked.get().booleanValue() != secondDeadlocked.get().booleanValue() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return whether or not acquiring both nodes failed with a {@link DeadlockDetectedException}.
+     */
+    private Callable<Boolean> lockOneThenBoth( final HighlyAvailableGraphDatabase slave, final long mine,
+            final long other, final CountDownLatch bothHoldOne )
+    {
+        return new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call() throws Exception
+            {
+                Transaction tx = slave.beginTx();
+                try
+                {
+                    Node myNode = slave.getNodeById( mine );
+                    slave.acquireWriteLocks( myNode );
+                    bothHoldOne.countDown();
+                    bothHoldOne.await();
+                    slave.acquireWriteLocks( myNode, slave.getNodeById( other ) );
+                    tx.success();
+                    return false;
+                }
+                catch ( DeadlockDetectedException e )
+                {
+                    return true;
+                }
+                finally
+                {
+                    tx.finish();
+                }
+            }
+        };
+    }
+
+    @Test
+    public void singleResourceCommitOnSlaveIsOneRoundTripEvenWithIndexing() throws Exception
+    {
+        initializeDbs( 1 );
+        HighlyAvailableGraphDatabase slave = (HighlyAvailableGraphDatabase) getSlave( 0 );
+        Transaction tx = slave.beginTx();
+        slave.index().forNodes( "name" ).add( slave.createNode(), "key", "value" );
+        tx.success();
+        tx.finish();
+        MasterSpy master = spyOnMaster( slave );
+
+        tx = slave.beginTx();
+        slave.createNode();
+        tx.success();
+        tx.finish();
+        assertEquals( 1, master.calls( "commitAndFinishTransaction" ) );
+        assertEquals( 0, master.calls( "commitSingleResourceTransaction" ) );
+        assertEquals( 0, master.calls( "finishTransaction" ) );
+
+        // Both the neo store and the index, so committed one by one and finished separately
+        tx = slave.beginTx();
+        slave.index().forNodes( "name" ).add( slave.createNode(), "key", "other value" );
+        tx.success();
+        tx.finish();
+        assertEquals( 1, master.calls( "commitAndFinishTransaction" ) );
+        assertEquals( 2, master.calls( "commitSingleResourceTransaction" ) );
+        assertEquals( 1, master.calls( "finishTransaction" ) );
+    }
+
+    @Test
+    public void transactionWhoseFirstLockRequestFailsIsNotFinishedOnMaster() throws Exception
+    {
+        initializeDbs( 1 );
+        long nodeId = executeJobOnMaster( new CommonJobs.CreateNodeJob( true ) );
+        pullUpdates();
+        HighlyAvailableGraphDatabase slave = (HighlyAvailableGraphDatabase) getSlave( 0 );
+        MasterSpy master = spyOnMaster( slave );
+
+        master.failNext( "acquireNodeWriteLock" );
+        Transaction tx = slave.beginTx();
+        try
+        {
+            slave.getNodeById( nodeId ).setProperty( "key", "value" );
+            fail( "Lock request should have failed" );
+        }
+        catch ( RuntimeException e )
+        {   // Good
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertEquals( "Finished a transaction never begun on the master", 0, master.calls( "finishTransaction" ) );
+
+        // The next one is begun by its first lock request as usual
+        tx = slave.beginTx();
+        slave.getNodeById( nodeId ).setProperty( "key", "value" );
+        tx.success();
+        tx.finish();
+        assertTrue( executeJobOnMaster( new CommonJobs.SetNodePropertyJob( nodeId, "key", "other value" ) ) );
+    }
+
+    @Test
+    public void slaveSubscribedToUpdatesGetsMasterCommitsWithoutPulling() throws Exception
+    {
+        initializeDbs( 1, stringMap( HaSettings.subscribe_to_updates.name(), "true" ) );
+        GraphDatabaseAPI slave = getSlave( 0 );
+        for ( int i = 0; i < 3; i++ )
+        {
+            long nodeId = executeJobOnMaster( new CommonJobs.CreateNodeJob( true ) );
+            long endTime = System.currentTimeMillis() + 5000;
+            Node node = null;
+            while ( node == null && System.currentTimeMillis() < endTime )
+            {
+                try
+                {
+                    node = slave.getNodeById( nodeId );
+                }
+                catch ( NotFoundException e )
+                {
+                    Thread.sleep( 10 );
+                }
+            }
+            assertNotNull( "Master commit didn't reach the subscribed slave", node );
+        }
+    }
+
     @Test
     public void individuallyConfigurableLockReadTimeout() throws Exception
     {
@@ -800,6 +1008,71 @@ public class SingleJvmWithNettyTest extends SingleJvmTest
         return db.getNodeManager().getRelationshipTypeHolder().getRelationshipType( id );
     }
 
+    /**
+     * Makes the slave talk to the master through a {@link MasterSpy}, until the
+     * next test or until it looks for a new master.
+     */
+    private MasterSpy spyOnMaster( HighlyAvailableGraphDatabase slave )
+    {
+        Pair<Master, Machine> master = slave.getBroker().getMaster();
+        MasterSpy spy = new MasterSpy( master.first() );
+        cachedMasterOverride = Pair.of( (Master) Proxy.newProxyInstance( Master.class.getClassLoader(),
+                new Class<?>[] { Master.class }, spy ), master.other() );
+        return spy;
+    }
+
+    /**
+     * Counts the requests sent to the master, by method name, and fails those
+     * it's told to.
+     */
+    private static class MasterSpy implements InvocationHandler
+    {
+        private final Master master;
+        private final ConcurrentMap<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+        private final Set<String> failNext = new HashSet<String>();
+
+        MasterSpy( Master master )
+        {
+            this.master = master;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable
+        {
+            calls.putIfAbsent( method.getName(), new AtomicInteger() );
+            calls.get( method.getName() ).incrementAndGet();
+            synchronized ( failNext )
+            {
+                if ( failNext.remove( method.getName() ) )
+                {
+                    throw new RuntimeException( "Failing " + method.getName() + " on purpose" );
+                }
+            }
+            try
+            {
+                return method.invoke( master, args );
+            }
+            catch ( InvocationTargetException e )
+            {
+                throw e.getTargetException();
+            }
+        }
+
+        void failNext( String method )
+        {
+            synchronized ( failNext )
+            {
+                failNext.add( method );
+            }
+        }
+
+        int calls( String method )
+        {
+            AtomicInteger count = calls.get( method );
+            return count != null ? count.get() : 0;
+        }
+    }
+
     private Pair<Integer, Integer> getTransactionCounts( GraphDatabaseAPI master )
     {
         return Pair.of(
@@ -19,9 +19,16 @@
  */
 package slavetest;
 
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Ignore;
 import org.neo4j.com.Response;
 import org.neo4j.com.SlaveContext;
+import org.neo4j.com.SlaveContext.Tx;
+import org.neo4j.com.StoreCopyPlan;
+import org.neo4j.com.StoreFileRange;
+import org.neo4j.com.StoreFilePrefix;
 import org.neo4j.com.StoreWriter;
 import org.neo4j.com.TxExtractor;
 import org.neo4j.helpers.Pair;
@@ -115,6 +122,12 @@ class TestMaster implements Master
         return actual.commitSingleResourceTransaction( context, resource, txGetter );
     }
 
+    public Response<Long> commitAndFinishTransaction( SlaveContext context, String resource,
+            TxExtractor txGetter )
+    {
+        return actual.commitAndFinishTransaction( context, resource, txGetter );
+    }
+
     public Response<Void> finishTransaction( SlaveContext context, boolean success )
     {
         return actual.finishTransaction( context, success );
@@ -125,14 +138,32 @@ class TestMaster implements Master
         return actual.pullUpdates( context );
     }
 
+    public Response<Void> awaitUpdates( SlaveContext context, int maxWaitMillis )
+    {
+        return actual.awaitUpdates( context, maxWaitMillis );
+    }
+
     public Response<Pair<Integer, Long>> getMasterIdForCommittedTx( long txId, StoreId myStoreId )
     {
         return actual.getMasterIdForCommittedTx( txId, myStoreId );
     }
 
-    public Response<Void> copyStore( SlaveContext context, StoreWriter writer )
+    public Response<Void> copyStore( SlaveContext context, Map<String, StoreFilePrefix> resumeFrom,
+            StoreWriter writer )
+    {
+        return actual.copyStore( context, resumeFrom, writer );
+    }
+
+    public Response<StoreCopyPlan> planStoreCopy( SlaveContext context, Map<String, StoreFilePrefix> resumeFrom,
+            int parts )
+    {
+        return actual.planStoreCopy( context, resumeFrom, parts );
+    }
+
+    public Response<Void> copyStorePart( SlaveContext context, Tx[] startTransactions, List<StoreFileRange> ranges,
+            StoreWriter writer )
     {
-        return actual.copyStore( context, writer );
+        return actual.copyStorePart( context, startTransactions, ranges, writer );
     }
 
     public void shutdown()